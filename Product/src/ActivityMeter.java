@@ -0,0 +1,126 @@
+import java.awt.image.BufferedImage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This is the class that measures how much each display changes between captures, for the ActivitySamples a Client sends.
+ * Each capture is compared with the display's previous one tile by tile with the PixelKernels, and the bytes encoded for streaming are
+ * added up, so the measurements come almost for free from work the Client does anyway
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ActivityMeter {
+    private PixelKernels kernels = PixelKernels.get();
+    private Map<Integer, int[]> previous = new HashMap<Integer, int[]>();
+    private Map<Integer, long[]> latest = new HashMap<Integer, long[]>();
+    private Map<Integer, Long> measuredAt = new HashMap<Integer, Long>();
+    private long encodedBytes = 0;
+
+    private static final int tileSize = 16;
+
+    /**
+     * Compares a capture with the display's previous capture, replacing the display's latest measurement.
+     * The first capture of a display, or one whose size changed, counts as every tile changing
+     * 
+     * @param display The index of the display
+     * @param image The capture
+     */
+    public synchronized void measure(int display, BufferedImage image){
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = FramePixels.read(image);
+        int[] before = previous.get(display);
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        long changedTiles = tilesX * tilesY;
+        long changedPixels = pixels.length;
+
+        if(before != null && before.length == pixels.length && measuredWidth(display) == width){
+            changedTiles = 0;
+            changedPixels = 0;
+
+            for(int tileY = 0; tileY < tilesY; tileY++){
+                int bottom = Math.min(height, (tileY + 1) * tileSize);
+
+                for(int tileX = 0; tileX < tilesX; tileX++){
+                    int left = tileX * tileSize;
+                    int length = Math.min(tileSize, width - left);
+                    int changed = 0;
+
+                    for(int y = tileY * tileSize; y < bottom; y++){
+                        changed += kernels.countChanged(before, pixels, y * width + left, length);
+                    }
+
+                    if(changed > 0){
+                        changedTiles++;
+                        changedPixels += changed;
+                    }
+
+                }
+
+            }
+
+        }
+
+        // The pixels may be the image's own array, which a ScreenSource is free to reuse for its next capture
+        previous.put(display, pixels.clone());
+        latest.put(display, new long[]{changedTiles, tilesX * tilesY, changedPixels, pixels.length, width});
+        measuredAt.put(display, System.currentTimeMillis());
+    }
+
+    /**
+     * @param display The index of the display
+     * @return Returns the width of the display's latest measured capture, or 0 if it has none
+     */
+    private int measuredWidth(int display){
+        long[] measurement = latest.get(display);
+        return measurement == null ? 0 : (int) measurement[4];
+    }
+
+    /**
+     * Checks whether a display needs measuring again
+     * 
+     * @param display The index of the display
+     * @param interval The milliseconds a measurement stays current
+     * @return Returns whether the display's latest measurement is older than the interval
+     */
+    public synchronized Boolean isDue(int display, long interval){
+        Long at = measuredAt.get(display);
+        return at == null || System.currentTimeMillis() - at >= interval;
+    }
+
+    /**
+     * Adds the size of a frame encoded for streaming
+     * 
+     * @param bytes The size of the encoded frame
+     */
+    public synchronized void addEncoded(int bytes){
+        encodedBytes += bytes;
+    }
+
+    /**
+     * Combines the latest measurement of every display with the bytes encoded since the last call, then starts counting encoded bytes again
+     * 
+     * @return Returns the combined ActivitySample
+     */
+    public synchronized ActivitySample collect(){
+        long changedTiles = 0;
+        long tiles = 0;
+        long changedPixels = 0;
+        long pixels = 0;
+
+        for(long[] measurement : latest.values()){
+            changedTiles += measurement[0];
+            tiles += measurement[1];
+            changedPixels += measurement[2];
+            pixels += measurement[3];
+        }
+
+        ActivitySample sample = new ActivitySample((int) changedTiles, (int) tiles, pixels > 0 ? (float) changedPixels / pixels : 0, encodedBytes);
+        encodedBytes = 0;
+        return sample;
+    }
+
+}
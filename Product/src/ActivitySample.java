@@ -0,0 +1,87 @@
+import java.io.IOException;
+
+/**
+ * This is a summary of how much a client's displays changed over one activityInterval, sent as a command on the CONTROL channel.
+ * It is made from tile comparisons of frames the client captured anyway, so the server learns how active a seat is without decoding anything
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ActivitySample {
+    private int changedTiles;
+    private int tiles;
+    private float changedPixels;
+    private long encodedBytes;
+
+    /**
+     * Constructor for the ActivitySample class
+     * 
+     * @param changedTiles The number of tiles that differ from the previous capture, over every display
+     * @param tiles The number of tiles, over every display
+     * @param changedPixels The fraction of pixels that differ from the previous capture
+     * @param encodedBytes The bytes of frames encoded for streaming during the interval
+     */
+    public ActivitySample(int changedTiles, int tiles, float changedPixels, long encodedBytes){
+        this.changedTiles = changedTiles;
+        this.tiles = tiles;
+        this.changedPixels = changedPixels;
+        this.encodedBytes = encodedBytes;
+    }
+
+    /**
+     * Parses an ActivitySample from the text following the command string
+     * 
+     * @param text The comma separated changed tiles, tiles, changed pixel fraction, and encoded bytes
+     * @return Returns the parsed ActivitySample
+     * @throws IOException Throws an IOException when the text is malformed
+     */
+    public static ActivitySample parse(String text) throws IOException{
+        String[] fields = text.split(",");
+
+        if(fields.length != 4){
+            throw new IOException("Malformed activity sample " + text);
+        }
+
+        try{
+            return new ActivitySample(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Float.parseFloat(fields[2]), Long.parseLong(fields[3]));
+        } catch(NumberFormatException nfE){
+            throw new IOException("Malformed activity sample " + text);
+        }
+
+    }
+
+    /**
+     * @return Returns the text sent after the command string
+     */
+    public String format(){
+        return changedTiles + "," + tiles + "," + changedPixels + "," + encodedBytes;
+    }
+
+    /**
+     * @return Returns the fraction of tiles that changed, which is 0 when there are no tiles
+     */
+    public float getChangedTileFraction(){
+        return tiles > 0 ? Math.min(1, Math.max(0, (float) changedTiles / tiles)) : 0;
+    }
+
+    /**
+     * @return Returns the number of tiles that differ from the previous capture
+     */
+    public int getChangedTiles(){return changedTiles;}
+
+    /**
+     * @return Returns the number of tiles
+     */
+    public int getTiles(){return tiles;}
+
+    /**
+     * @return Returns the fraction of pixels that differ from the previous capture
+     */
+    public float getChangedPixels(){return changedPixels;}
+
+    /**
+     * @return Returns the bytes of frames encoded for streaming during the interval
+     */
+    public long getEncodedBytes(){return encodedBytes;}
+
+}
@@ -0,0 +1,73 @@
+/**
+ * This is the class that keeps a session's rolling activity score from the ActivitySamples its client sends.
+ * The score is the share of tiles changing, smoothed over about scoreWindow ms. A seat is active while samples keep showing changes, idle once
+ * none have for idleDelay, and frozen once its samples stop arriving although the session is still connected
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ActivityScore {
+    private double score = 0;
+    private double encodedRate = 0;
+    private long lastSample = 0;
+    private long lastActive = 0;
+
+    private static final double scoreWindow = 10000;
+    private static final float activeFraction = 0.002f;
+    private static final int frozenIntervals = 5;
+
+    /**
+     * Adds a sample to the score
+     * 
+     * @param sample The ActivitySample sent by the client
+     * @param now The time the sample arrived in milliseconds
+     */
+    public synchronized void add(ActivitySample sample, long now){
+        float changed = sample.getChangedTileFraction();
+
+        if(lastSample == 0){
+            score = changed;
+            encodedRate = 0;
+            lastActive = now;
+        } else{
+            long elapsed = Math.max(1, now - lastSample);
+            double weight = 1 - Math.exp(-elapsed / scoreWindow);
+            score += weight * (changed - score);
+            encodedRate += weight * (sample.getEncodedBytes() * 1000.0 / elapsed - encodedRate);
+        }
+
+        // A blinking caret or a clock changes a few tiles of an otherwise idle screen, which should not keep the seat active
+        if(changed > activeFraction){
+            lastActive = now;
+        }
+
+        lastSample = now;
+    }
+
+    /**
+     * Describes the seat for the client list, such as "Active 12%", "Idle 4 min", or "Frozen"
+     * 
+     * @param now The current time in milliseconds
+     * @param interval The milliseconds between the client's samples
+     * @param idleDelay The milliseconds without changes after which the seat is idle
+     * @return Returns the description, which is empty before the first sample
+     */
+    public synchronized String describe(long now, long interval, long idleDelay){
+
+        if(lastSample == 0){
+            return "";
+        }
+
+        if(now - lastSample > frozenIntervals * interval){
+            return "Frozen";
+        }
+
+        if(now - lastActive > idleDelay){
+            return "Idle " + (now - lastActive) / 60000 + " min";
+        }
+
+        String description = "Active " + Math.round(score * 100) + "%";
+        return encodedRate >= 1024 ? description + ", " + Math.round(encodedRate / 1024) + " KB/s" : description;
+    }
+
+}
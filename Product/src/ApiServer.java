@@ -0,0 +1,471 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This is the class that serves a read-only HTTP/JSON view of every room for dashboards and scripts, which otherwise could only watch the window.
+ * Every response carries an ETag, and a request whose If-None-Match names it is answered 304 without a body, so polling an unchanged resource
+ * costs almost nothing. Frames are the JPEG bytes the client sent, served as they were received. Instead of polling the session list,
+ * /api/events streams it as server-sent events whenever a session is added or removed.
+ * 
+ * GET /api/rooms, /api/sessions, /api/sessions/{id}, /api/sessions/{id}/frame, /api/events
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ApiServer {
+    private RoomHost host;
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+    private AtomicInteger streams = new AtomicInteger();
+    private Object changeLock = new Object();
+    private long changes = 0;
+
+    private static final String prefix = "/api/";
+    private static final String jsonType = "application/json; charset=utf-8";
+    private static final int maxStreams = 16;
+    private static final int keepaliveDelay = 15000;
+
+    /**
+     * Constructor for the ApiServer class
+     * 
+     * @param host The RoomHost whose rooms are served
+     */
+    public ApiServer(RoomHost host){
+        this.host = host;
+    }
+
+    /**
+     * Starts serving, and starts watching the registry of every room hosted now for event streams
+     * 
+     * @param address The address listened on
+     * @param port The port listened on
+     * @throws IOException Throws an IOException when the port cannot be listened on
+     */
+    public void start(String address, int port) throws IOException{
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ApiServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(prefix, this::handle);
+
+        for(Server room : host.getRooms()){
+            room.getRegistry().addListener(this::sessionsChanged);
+        }
+
+        server.start();
+        System.out.println("API listening on " + server.getAddress());
+    }
+
+    /**
+     * Stops serving, ending every event stream
+     */
+    public void stop(){
+
+        if(server != null){
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+    }
+
+    /**
+     * Wakes every event stream after a session was added or removed
+     */
+    private void sessionsChanged(){
+
+        synchronized(changeLock){
+            changes++;
+            changeLock.notifyAll();
+        }
+
+    }
+
+    /**
+     * Answers a request
+     * 
+     * @param exchange The request and its response
+     * @throws IOException Throws an IOException when the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException{
+
+        try{
+            String method = exchange.getRequestMethod();
+
+            if(!method.equals("GET") && !method.equals("HEAD")){
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            String[] path = exchange.getRequestURI().getPath().substring(prefix.length()).split("/");
+
+            if(path.length == 1 && path[0].equals("rooms")){
+                sendJson(exchange, roomsJson());
+            } else if(path.length == 1 && path[0].equals("sessions")){
+                sendJson(exchange, sessionsJson());
+            } else if(path.length == 1 && path[0].equals("events")){
+                streamEvents(exchange);
+            } else if(path.length >= 2 && path.length <= 3 && path[0].equals("sessions")){
+                ClientHandler client = findSession(path[1]);
+
+                if(client == null){
+                    sendError(exchange, 404, "No session " + path[1]);
+                } else if(path.length == 2){
+                    sendJson(exchange, sessionJson(client, true));
+                } else if(path[2].equals("frame")){
+                    sendFrame(exchange, client);
+                } else{
+                    sendError(exchange, 404, "Not found");
+                }
+
+            } else{
+                sendError(exchange, 404, "Not found");
+            }
+
+        } finally{
+            exchange.close();
+        }
+
+    }
+
+    /**
+     * Finds a session in any room
+     * 
+     * @param id The session id, as text
+     * @return Returns the ClientHandler of the session, or null if there is none
+     */
+    private ClientHandler findSession(String id){
+        long sessionId;
+
+        try{
+            sessionId = Long.parseLong(id);
+        } catch(NumberFormatException nfE){
+            return null;
+        }
+
+        for(Server room : host.getRooms()){
+            ClientHandler client = room.getRegistry().get(sessionId);
+
+            if(client != null){
+                return client;
+            }
+
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Returns the JSON array of rooms, with their session count and bandwidth in bytes per second (0 for unlimited)
+     */
+    private String roomsJson(){
+        StringBuilder json = new StringBuilder("[");
+
+        for(Server room : host.getRooms()){
+
+            if(json.length() > 1){
+                json.append(',');
+            }
+
+            json.append("{\"id\":").append(quote(room.getRoomId())).append(",\"sessions\":").append(room.getRegistry().size())
+                .append(",\"bytesPerSecond\":").append(room.getPacer().getBytesPerSecond()).append('}');
+        }
+
+        return json.append(']').toString();
+    }
+
+    /**
+     * @return Returns the JSON array of every session of every room, which are the sessions each room's client list shows
+     */
+    private String sessionsJson(){
+        StringBuilder json = new StringBuilder("[");
+
+        for(Server room : host.getRooms()){
+
+            for(ClientHandler client : room.getRegistry().snapshot()){
+
+                if(json.length() > 1){
+                    json.append(',');
+                }
+
+                json.append(sessionJson(client, false));
+            }
+
+        }
+
+        return json.append(']').toString();
+    }
+
+    /**
+     * Describes a session. The session list leaves out what changes with every frame, so that its ETag only changes when sessions do
+     * 
+     * @param client The ClientHandler of the session
+     * @param detail Whether to add the session's activity, newest frame, and latencies
+     * @return Returns the JSON object
+     */
+    private String sessionJson(ClientHandler client, Boolean detail){
+        StringBuilder json = new StringBuilder();
+        json.append("{\"id\":").append(client.getSessionId())
+            .append(",\"room\":").append(quote(client.getRoom()))
+            .append(",\"username\":").append(quote(client.usernameProperty().get()))
+            .append(",\"address\":").append(quote(client.getAddress().getHostAddress()))
+            .append(",\"connected\":").append(client.isConnected())
+            .append(",\"streaming\":").append(client.isStreaming())
+            .append(",\"codec\":").append(quote(client.getCodec()))
+            .append(",\"viewedDisplay\":").append(client.getViewedDisplay())
+            .append(",\"displays\":[");
+        List<String> displays = client.getDisplays();
+
+        for(int i = 0; i < displays.size(); i++){
+            json.append(i > 0 ? "," : "").append(quote(displays.get(i)));
+        }
+
+        json.append(']');
+
+        if(detail){
+            ClientHandler.CachedFrame frame = client.getLatestFrame();
+            json.append(",\"activity\":").append(quote(client.getActivity()))
+                .append(",\"lastHeartbeat\":").append(client.getLastHeartbeat())
+                .append(",\"throttle\":{\"step\":").append(client.getThrottle().getStep())
+                .append(",\"intervalPercent\":").append(client.getThrottle().getIntervalPercent())
+                .append(",\"scalePercent\":").append(client.getThrottle().getScalePercent())
+                .append(",\"reason\":").append(quote(client.getThrottle().getReason())).append('}')
+                .append(",\"frame\":").append(frame == null ? "null" : quote(frame.getTag()))
+                .append(",\"latency\":").append(client.getLatency().toJson());
+        }
+
+        return json.append('}').toString();
+    }
+
+    /**
+     * Sends a JSON body, or 304 if the client already has it
+     * 
+     * @param exchange The request and its response
+     * @param json The JSON body
+     * @throws IOException Throws an IOException when the response cannot be sent
+     */
+    private void sendJson(HttpExchange exchange, String json) throws IOException{
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        send(exchange, jsonType, "\"" + Long.toHexString(crc.getValue()) + "-" + body.length + "\"", body);
+    }
+
+    /**
+     * Sends the newest frame of a session as the JPEG bytes it arrived as, or 304 if the client already has it
+     * 
+     * @param exchange The request and its response
+     * @param client The ClientHandler of the session
+     * @throws IOException Throws an IOException when the response cannot be sent
+     */
+    private void sendFrame(HttpExchange exchange, ClientHandler client) throws IOException{
+        ClientHandler.CachedFrame frame = client.getLatestFrame();
+
+        if(frame == null){
+            sendError(exchange, 404, "No frame from session " + client.getSessionId());
+            return;
+        }
+
+        exchange.getResponseHeaders().set("X-Display", String.valueOf(frame.getFrame().getDisplay()));
+        send(exchange, "image/jpeg", "\"" + frame.getTag() + "\"", frame.getFrame().getData());
+    }
+
+    /**
+     * Sends a body with its ETag, or only 304 when the request's If-None-Match names the ETag
+     * 
+     * @param exchange The request and its response
+     * @param type The content type of the body
+     * @param etag The quoted ETag of the body
+     * @param body The body
+     * @throws IOException Throws an IOException when the response cannot be sent
+     */
+    private void send(HttpExchange exchange, String type, String etag, byte[] body) throws IOException{
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+
+        if(matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)){
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", type);
+
+        if(exchange.getRequestMethod().equals("HEAD")){
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(200, body.length);
+
+        try(OutputStream output = exchange.getResponseBody()){
+            output.write(body);
+        }
+
+    }
+
+    /**
+     * @param ifNoneMatch The If-None-Match header, which may be null
+     * @param etag The quoted ETag of the current body
+     * @return Returns whether the header names the ETag, weakly or not, or is "*"
+     */
+    private Boolean matches(String ifNoneMatch, String etag){
+
+        if(ifNoneMatch == null){
+            return false;
+        }
+
+        for(String tag : ifNoneMatch.split(",")){
+            tag = tag.trim();
+
+            if(tag.startsWith("W/")){
+                tag = tag.substring(2);
+            }
+
+            if(tag.equals("*") || tag.equals(etag)){
+                return true;
+            }
+
+        }
+
+        return false;
+    }
+
+    /**
+     * Sends an error as a JSON object
+     * 
+     * @param exchange The request and its response
+     * @param code The HTTP status code
+     * @param message The message of the error
+     * @throws IOException Throws an IOException when the response cannot be sent
+     */
+    private void sendError(HttpExchange exchange, int code, String message) throws IOException{
+        byte[] body = ("{\"error\":" + quote(message) + "}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", jsonType);
+
+        if(exchange.getRequestMethod().equals("HEAD")){
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(code, body.length);
+
+        try(OutputStream output = exchange.getResponseBody()){
+            output.write(body);
+        }
+
+    }
+
+    /**
+     * Streams the session list as server-sent "sessions" events, once on connecting and again whenever a session is added or removed,
+     * with a comment every keepaliveDelay ms so proxies and clients notice a dead stream. Runs until the client goes away
+     * 
+     * @param exchange The request and its response
+     * @throws IOException Throws an IOException when the stream cannot be started
+     */
+    private void streamEvents(HttpExchange exchange) throws IOException{
+
+        if(exchange.getRequestMethod().equals("HEAD")){
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        if(streams.incrementAndGet() > maxStreams){
+            streams.decrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "10");
+            sendError(exchange, 503, "Too many event streams");
+            return;
+        }
+
+        try{
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream output = exchange.getResponseBody();
+            String sent = null;
+            long seen;
+
+            synchronized(changeLock){
+                seen = changes;
+            }
+
+            while(true){
+                String sessions = sessionsJson();
+
+                if(!sessions.equals(sent)){
+                    output.write(("event: sessions\ndata: " + sessions + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    sent = sessions;
+                } else{
+                    output.write(": keepalive\n\n".getBytes(StandardCharsets.UTF_8));
+                }
+
+                output.flush();
+
+                synchronized(changeLock){
+
+                    if(changes == seen){
+                        changeLock.wait(keepaliveDelay);
+                    }
+
+                    seen = changes;
+                }
+
+            }
+
+        } catch(IOException ioE){
+            // The client closed the stream
+        } catch(InterruptedException iE){
+            Thread.currentThread().interrupt();
+        } finally{
+            streams.decrementAndGet();
+        }
+
+    }
+
+    /**
+     * Quotes a string as a JSON string
+     * 
+     * @param text The string, which may be null
+     * @return Returns the quoted and escaped string, or null
+     */
+    private static String quote(String text){
+
+        if(text == null){
+            return "null";
+        }
+
+        StringBuilder quoted = new StringBuilder("\"");
+
+        for(char c : text.toCharArray()){
+
+            if(c == '"' || c == '\\'){
+                quoted.append('\\').append(c);
+            } else if(c < 0x20){
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else{
+                quoted.append(c);
+            }
+
+        }
+
+        return quoted.append('"').toString();
+    }
+
+}
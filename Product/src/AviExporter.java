@@ -0,0 +1,379 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * This is the class that exports a student's recorded frames as an MJPEG AVI, which any video player can show, so a session can be handed to
+ * someone who does not run the Server. Recorded frames are already JPEG, so each file is copied into the AVI as one video frame without being
+ * decoded. The AVI plays at a fixed frame rate, and the time between frames is kept by empty frames, which players show as the previous frame
+ * held. Every size in the AVI is worked out from the file sizes before writing, so the AVI is written front to back in one pass through a
+ * large buffer, and memory does not grow with the length of the session beyond a few bytes per frame
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class AviExporter {
+    private int frameRate;
+    private long maxGap;
+
+    private static final int bufferSize = 1024 * 1024;
+    private static final int headerListSize = 192;
+    private static final int indexEntrySize = 16;
+    private static final int keyframeFlag = 0x10;
+    private static final int hasIndexFlag = 0x10;
+    private static final long maxRiffSize = 0xFFFFFFFFL;
+    private static final String frameExtension = ".jpg";
+
+    /**
+     * Constructor for the AviExporter class
+     * 
+     * @param frameRate The frames per second of the AVI, from 1 to 1000, which is how finely the time between recorded frames is kept
+     * @param maxGap The longest time in milliseconds a frame is held, longer gaps such as while the student was online are shortened to it
+     */
+    public AviExporter(int frameRate, long maxGap){
+        this.frameRate = Math.max(1, Math.min(1000, frameRate));
+        this.maxGap = maxGap;
+    }
+
+    /**
+     * Finds the recorded frames of a display in a student's history, or in one day of it
+     * 
+     * @param directory The directory of a student's history, or of one day of it
+     * @param display The index of the display
+     * @return Returns the frames, in the order they were captured, which are none if the student has no history
+     * @throws IOException Throws an IOException when the directory cannot be listed
+     */
+    public static List<File> findFrames(File directory, int display) throws IOException{
+        String suffix = "-d" + (display + 1) + frameExtension;
+
+        if(!directory.isDirectory()){
+            return new ArrayList<File>();
+        }
+
+        try(Stream<Path> paths = Files.walk(directory.toPath(), 2)){
+            // Days and times are named so that the order of their paths is the order they were captured
+            return paths.filter(path -> Files.isRegularFile(path) && path.getFileName().toString().endsWith(suffix)
+                && !path.getFileName().toString().startsWith(".")).sorted().map(Path::toFile).collect(Collectors.toList());
+        }
+
+    }
+
+    /**
+     * Reads the capture time of a recorded frame from its name and the name of its day's directory, as SessionHistory files them
+     * 
+     * @param frame The recorded frame
+     * @return Returns the capture time in milliseconds since the epoch, or 0 if the names are not those SessionHistory gives
+     */
+    public static long capturedAt(File frame){
+        String name = frame.getName();
+        String day = frame.getParentFile() == null ? "" : frame.getParentFile().getName();
+
+        try{
+            return new SimpleDateFormat("yyyy-MM-dd HH-mm-ss.SSS").parse(day + " " + name.substring(0, Math.min(name.length(), 12))).getTime();
+        } catch(ParseException pE){
+            return 0;
+        }
+
+    }
+
+    /**
+     * Writes frames to an AVI, each held until the next one was captured
+     * 
+     * @param frames The JPEG files, in the order they were captured
+     * @param output The AVI file to be written
+     * @return Returns the number of bytes written
+     * @throws IOException Throws an IOException when there are no frames, a frame cannot be read, or the AVI would be too large
+     */
+    public long export(List<File> frames, File output) throws IOException{
+
+        if(frames.isEmpty()){
+            throw new IOException("No frames to export");
+        }
+
+        // Empty frames before each recorded frame, and the size of each, are all that is kept per frame
+        int[] sizes = new int[frames.size()];
+        int[] holds = new int[frames.size()];
+        long tick = 1000 / frameRate;
+        long maxHold = Math.max(0, maxGap / tick - 1);
+        long moviSize = 4;
+        long entries = 0;
+        int largest = 0;
+        long previous = capturedAt(frames.get(0));
+
+        for(int i = 0; i < sizes.length; i++){
+            long length = frames.get(i).length();
+
+            if(length <= 0 || length > Integer.MAX_VALUE - 8){
+                throw new IOException("Cannot export " + frames.get(i));
+            }
+
+            long captured = capturedAt(frames.get(i));
+            sizes[i] = (int) length;
+            holds[i] = i == 0 ? 0 : (int) Math.min(maxHold, Math.max(0, Math.round((double) (captured - previous) / tick) - 1));
+            previous = captured;
+            moviSize += holds[i] * 8L + 8 + padded(sizes[i]);
+            entries += holds[i] + 1;
+            largest = Math.max(largest, sizes[i]);
+        }
+
+        long riffSize = 4 + 8 + headerListSize + 8 + moviSize + 8 + entries * indexEntrySize;
+
+        if(riffSize > maxRiffSize){
+            throw new IOException("Too many frames for one AVI, export fewer days");
+        }
+
+        int[] dimensions = readDimensions(frames.get(0));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        try(FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            writeHeaders(buffer, riffSize, moviSize, (int) entries, largest, dimensions[0], dimensions[1]);
+
+            for(int i = 0; i < sizes.length; i++){
+
+                for(int hold = 0; hold < holds[i]; hold++){
+                    ensure(channel, buffer, 8);
+                    fourCc(buffer, "00dc").putInt(0);
+                }
+
+                ensure(channel, buffer, 8);
+                fourCc(buffer, "00dc").putInt(sizes[i]);
+                copyFrame(channel, buffer, frames.get(i), sizes[i]);
+
+                if(sizes[i] % 2 == 1){
+                    ensure(channel, buffer, 1);
+                    buffer.put((byte) 0);
+                }
+
+            }
+
+            ensure(channel, buffer, 8);
+            fourCc(buffer, "idx1").putInt((int) (entries * indexEntrySize));
+            long offset = 4;
+
+            for(int i = 0; i < sizes.length; i++){
+
+                for(int hold = 0; hold < holds[i]; hold++){
+                    ensure(channel, buffer, indexEntrySize);
+                    fourCc(buffer, "00dc").putInt(0).putInt((int) offset).putInt(0);
+                    offset += 8;
+                }
+
+                ensure(channel, buffer, indexEntrySize);
+                fourCc(buffer, "00dc").putInt(keyframeFlag).putInt((int) offset).putInt(sizes[i]);
+                offset += 8 + padded(sizes[i]);
+            }
+
+            flush(channel, buffer);
+            return channel.size();
+        }
+
+    }
+
+    /**
+     * Writes the RIFF header, the header list describing one MJPEG video stream, and the start of the frame list
+     * 
+     * @param buffer The buffer being written to the file, which is empty
+     * @param riffSize The size of the RIFF chunk
+     * @param moviSize The size of the frame list
+     * @param entries The number of frames, counting empty ones
+     * @param largest The size of the largest frame
+     * @param width The width of the frames
+     * @param height The height of the frames
+     */
+    private void writeHeaders(ByteBuffer buffer, long riffSize, long moviSize, int entries, int largest, int width, int height){
+        fourCc(buffer, "RIFF").putInt((int) riffSize);
+        fourCc(buffer, "AVI ");
+        fourCc(buffer, "LIST").putInt(headerListSize);
+        fourCc(buffer, "hdrl");
+
+        fourCc(buffer, "avih").putInt(56);
+        buffer.putInt(1000000 / frameRate).putInt(largest * frameRate).putInt(0).putInt(hasIndexFlag);
+        buffer.putInt(entries).putInt(0).putInt(1).putInt(largest + 8).putInt(width).putInt(height);
+        buffer.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        fourCc(buffer, "LIST").putInt(4 + 8 + 56 + 8 + 40);
+        fourCc(buffer, "strl");
+        fourCc(buffer, "strh").putInt(56);
+        fourCc(buffer, "vids");
+        fourCc(buffer, "MJPG");
+        buffer.putInt(0).putShort((short) 0).putShort((short) 0).putInt(0).putInt(1).putInt(frameRate).putInt(0).putInt(entries);
+        buffer.putInt(largest + 8).putInt(-1).putInt(0);
+        buffer.putShort((short) 0).putShort((short) 0).putShort((short) width).putShort((short) height);
+
+        fourCc(buffer, "strf").putInt(40);
+        buffer.putInt(40).putInt(width).putInt(height).putShort((short) 1).putShort((short) 24);
+        fourCc(buffer, "MJPG");
+        buffer.putInt(width * height * 3).putInt(0).putInt(0).putInt(0).putInt(0);
+
+        fourCc(buffer, "LIST").putInt((int) moviSize);
+        fourCc(buffer, "movi");
+    }
+
+    /**
+     * Copies a frame file into the AVI through the buffer, or straight to the file if it is larger than the buffer
+     * 
+     * @param channel The AVI file
+     * @param buffer The buffer being written to the file
+     * @param frame The frame file
+     * @param size The size of the frame file when the sizes were worked out
+     * @throws IOException Throws an IOException when the frame cannot be read or has changed size
+     */
+    private static void copyFrame(FileChannel channel, ByteBuffer buffer, File frame, int size) throws IOException{
+
+        try(FileChannel input = FileChannel.open(frame.toPath(), StandardOpenOption.READ)){
+
+            if(input.size() != size){
+                throw new IOException(frame + " changed while exporting");
+            }
+
+            if(size > buffer.capacity()){
+                flush(channel, buffer);
+                long copied = 0;
+
+                while(copied < size){
+                    copied += input.transferTo(copied, size - copied, channel);
+                }
+
+                return;
+            }
+
+            ensure(channel, buffer, size);
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + size);
+
+            while(buffer.hasRemaining()){
+
+                if(input.read(buffer) < 0){
+                    throw new IOException(frame + " changed while exporting");
+                }
+
+            }
+
+            buffer.limit(limit);
+        }
+
+    }
+
+    /**
+     * Writes out the buffer if it does not have room for a number of bytes
+     * 
+     * @param channel The AVI file
+     * @param buffer The buffer being written to the file
+     * @param bytes The number of bytes about to be put in the buffer
+     * @throws IOException Throws an IOException when the file cannot be written
+     */
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException{
+
+        if(buffer.remaining() < bytes){
+            flush(channel, buffer);
+        }
+
+    }
+
+    /**
+     * Writes out the buffer and empties it
+     * 
+     * @param channel The AVI file
+     * @param buffer The buffer being written to the file
+     * @throws IOException Throws an IOException when the file cannot be written
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException{
+        buffer.flip();
+
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    /**
+     * @param buffer The buffer
+     * @param code The four character code
+     * @return Returns the buffer, with the code put in it
+     */
+    private static ByteBuffer fourCc(ByteBuffer buffer, String code){
+        return buffer.put(code.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param size The size of a chunk
+     * @return Returns the size rounded up to an even number, as chunks start on even offsets
+     */
+    private static long padded(int size){
+        return size + (size & 1);
+    }
+
+    /**
+     * Reads the size of a JPEG from its header without decoding it
+     * 
+     * @param frame The JPEG file
+     * @return Returns the width and height
+     * @throws IOException Throws an IOException when the file is not an image
+     */
+    private static int[] readDimensions(File frame) throws IOException{
+
+        try(ImageInputStream input = ImageIO.createImageInputStream(frame)){
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+
+            if(readers == null || !readers.hasNext()){
+                throw new IOException("Not an image: " + frame);
+            }
+
+            ImageReader reader = readers.next();
+
+            try{
+                reader.setInput(input, true, true);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally{
+                reader.dispose();
+            }
+
+        }
+
+    }
+
+    /**
+     * Exports a student's history from the command line
+     * 
+     * @param args The directory of a student's history or of one day of it, the AVI file to be written, and optionally the display
+     * starting from 1, the frame rate, and the longest gap in seconds, which are 1, 10, and 60 if not given
+     * @throws IOException Throws an IOException when the frames cannot be read or the AVI cannot be written
+     */
+    public static void main(String[] args) throws IOException{
+
+        if(args.length < 2){
+            System.out.println("Usage: AviExporter <history directory> <output.avi> [display] [frame rate] [longest gap in seconds]");
+            return;
+        }
+
+        int display = args.length > 2 ? Integer.parseInt(args[2]) - 1 : 0;
+        int frameRate = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        long maxGap = (args.length > 4 ? Long.parseLong(args[4]) : 60) * 1000;
+        long started = System.nanoTime();
+        List<File> frames = findFrames(new File(args[0]), display);
+        long bytes = new AviExporter(frameRate, maxGap).export(frames, new File(args[1]));
+        System.out.printf("Exported %d frames, %d MB, in %d ms%n", frames.size(), bytes / 1024 / 1024, (System.nanoTime() - started) / 1000000);
+    }
+
+}
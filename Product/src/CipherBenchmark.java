@@ -0,0 +1,210 @@
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the benchmark which measures what encrypting every connection with a MuxCipher costs compared with plaintext.
+ * A whole classroom of seats streams frames over loopback connections at once, each through its own MuxOutput and MuxInput as the
+ * Client and ClientHandler use them, and the frames received per second and CPU spent per frame are compared. It also times deriving
+ * the shared key, which happens once per process, and the handshake, which happens on every connection and every resumption
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class CipherBenchmark {
+    private static final int frameSize = 60 * 1024;
+    private static final int framesPerSecond = 10;
+    private static final int warmupMillis = 1000;
+    private static final int measuredMillis = 5000;
+    private static final int handshakes = 200;
+
+    /**
+     * Runs the benchmark and prints the key derivation and handshake times, and the throughput and CPU cost of both modes
+     * 
+     * @param args The number of seats, 100 if not given
+     * @throws Exception Throws an Exception when a loopback connection fails
+     */
+    public static void main(String[] args) throws Exception{
+        int seats = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long started = System.nanoTime();
+        byte[] key = MuxCipher.deriveKey("benchmark");
+        System.out.printf("Deriving the shared key: %.1f ms, once per process%n", (System.nanoTime() - started) / 1e6);
+
+        try(ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())){
+            measureConnect(serverSocket, null);
+            System.out.printf("Connect, plaintext: p50 %6.0f us%n", measureConnect(serverSocket, null));
+            measureConnect(serverSocket, key);
+            System.out.printf("Connect and handshake, encrypted: p50 %6.0f us%n", measureConnect(serverSocket, key));
+            double[] plaintext = measureStreaming(serverSocket, null, seats);
+            double[] encrypted = measureStreaming(serverSocket, key, seats);
+            report("plaintext", plaintext, seats);
+            report("encrypted", encrypted, seats);
+            System.out.printf("Encryption costs %.1f%% more CPU per frame and %.1f%% of plaintext throughput%n",
+                (encrypted[1] / plaintext[1] - 1) * 100, (1 - encrypted[0] / plaintext[0]) * 100);
+        }
+
+    }
+
+    /**
+     * Opens connections one after another, running the handshake on both ends when a key is given
+     * 
+     * @param serverSocket The listening ServerSocket
+     * @param key The shared key, or null for plaintext
+     * @return Returns the median microseconds from starting to connect until both ends are ready
+     * @throws Exception Throws an Exception when a loopback connection fails
+     */
+    private static double measureConnect(ServerSocket serverSocket, byte[] key) throws Exception{
+        double[] micros = new double[handshakes];
+
+        for(int i = 0; i < handshakes; i++){
+            long started = System.nanoTime();
+            Socket[] pair = connect(serverSocket, key, null);
+            micros[i] = (System.nanoTime() - started) / 1e3;
+            pair[0].close();
+            pair[1].close();
+        }
+
+        Arrays.sort(micros);
+        return micros[handshakes / 2];
+    }
+
+    /**
+     * Opens a loopback connection, running the handshake on both ends when a key is given
+     * 
+     * @param serverSocket The listening ServerSocket
+     * @param key The shared key, or null for plaintext
+     * @param ciphers Filled with the client's and the server's MuxCipher, or null
+     * @return Returns the client's and the server's Socket
+     * @throws Exception Throws an Exception when the connection fails
+     */
+    private static Socket[] connect(ServerSocket serverSocket, byte[] key, MuxCipher[] ciphers) throws Exception{
+        Socket client = new Socket();
+        client.setTcpNoDelay(true);
+        client.connect(serverSocket.getLocalSocketAddress());
+        Socket server = serverSocket.accept();
+        server.setTcpNoDelay(true);
+        MuxCipher[] negotiated = new MuxCipher[2];
+        Thread serverSide = new Thread(() -> {
+
+            try{
+                negotiated[1] = MuxCipher.negotiate(server, false, key);
+            } catch(IOException ioE){
+                System.out.println("Server handshake failed: " + ioE.getMessage());
+            }
+
+        });
+        serverSide.start();
+        negotiated[0] = MuxCipher.negotiate(client, true, key);
+        serverSide.join();
+
+        if(ciphers != null){
+            ciphers[0] = negotiated[0];
+            ciphers[1] = negotiated[1];
+        }
+
+        return new Socket[]{client, server};
+    }
+
+    /**
+     * Streams frames from every seat as fast as the connections take them and counts the frames received
+     * 
+     * @param serverSocket The listening ServerSocket
+     * @param key The shared key, or null for plaintext
+     * @param seats The number of seats
+     * @return Returns the frames received per second and the CPU nanoseconds spent per frame
+     * @throws Exception Throws an Exception when a loopback connection fails
+     */
+    private static double[] measureStreaming(ServerSocket serverSocket, byte[] key, int seats) throws Exception{
+        com.sun.management.OperatingSystemMXBean bean = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        AtomicLong received = new AtomicLong();
+        List<Socket> sockets = new ArrayList<Socket>();
+        List<MuxOutput> outputs = new ArrayList<MuxOutput>();
+        byte[] frame = new byte[frameSize];
+        new Random(7).nextBytes(frame);
+
+        for(int seat = 0; seat < seats; seat++){
+            MuxCipher[] ciphers = new MuxCipher[2];
+            Socket[] pair = connect(serverSocket, key, ciphers);
+            sockets.addAll(Arrays.asList(pair));
+            MuxOutput output = new MuxOutput(pair[0].getOutputStream(), Config.chunkSize.get(), ciphers[0]);
+            MuxInput input = new MuxInput(pair[1].getInputStream(), Config.maxMessageSize.get(), null, 0, ciphers[1]);
+            outputs.add(output);
+
+            Thread sendThread = new Thread(() -> {
+
+                try{
+
+                    while(true){
+                        output.send(MuxChannel.FRAME, frame);
+                    }
+
+                } catch(IOException ioE){
+                    // The benchmark closed the connection
+                }
+
+            });
+
+            Thread readThread = new Thread(() -> {
+
+                try{
+
+                    while(true){
+                        input.read();
+                        received.incrementAndGet();
+                    }
+
+                } catch(IOException ioE){
+                    // The benchmark closed the connection
+                }
+
+            });
+
+            sendThread.setDaemon(true);
+            readThread.setDaemon(true);
+            sendThread.start();
+            readThread.start();
+        }
+
+        Thread.sleep(warmupMillis);
+        long startFrames = received.get();
+        long startCpu = bean.getProcessCpuTime();
+        long started = System.nanoTime();
+        Thread.sleep(measuredMillis);
+        long frames = received.get() - startFrames;
+        long cpu = bean.getProcessCpuTime() - startCpu;
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        for(MuxOutput output : outputs){
+            output.close();
+        }
+
+        for(Socket socket : sockets){
+            socket.close();
+        }
+
+        return new double[]{frames / seconds, (double) cpu / Math.max(1, frames)};
+    }
+
+    /**
+     * Prints the throughput and CPU cost of a mode, and the share of a core the whole class streaming at framesPerSecond would take
+     * 
+     * @param name The name of the mode
+     * @param result The frames received per second and the CPU nanoseconds spent per frame
+     * @param seats The number of seats
+     */
+    private static void report(String name, double[] result, int seats){
+        System.out.printf("%-10s %8.0f frames/s %8.1f MB/s %8.1f us CPU per frame, %5.1f%% of a core for %d seats at %d fps%n", name, result[0],
+            result[0] * frameSize / 1e6, result[1] / 1e3, result[1] * seats * framesPerSecond / 1e7, seats, framesPerSecond);
+    }
+
+}
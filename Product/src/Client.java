@@ -1,4 +1,5 @@
 import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.DatagramPacket;
@@ -7,26 +8,26 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.InterfaceAddress;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import java.awt.Robot;
+import java.awt.HeadlessException;
+import java.awt.MouseInfo;
+import java.awt.Point;
+import java.awt.PointerInfo;
 import java.awt.Rectangle;
-import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
 import java.awt.AWTException;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriter;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.IIOImage;
-import javax.imageio.stream.ImageOutputStream;
-
 import javafx.application.Application;
 import javafx.application.Platform;
 
@@ -49,18 +50,38 @@ import javafx.util.Duration;
  */
 public class Client extends Application{
     private static Socket clientSocket;
-    private static OutputStream out = null;
-    private static InputStream in = null;
+    private static volatile MuxOutput muxOut = null;
+    private static volatile MuxInput muxIn = null;
+    private static volatile UdpFrameSender udpSender = null;
+    private static volatile DatagramSocket udpSocket = null;
     private static LinkedBlockingQueue<Runnable> connectionRequests = new LinkedBlockingQueue<Runnable>();
     private static LinkedBlockingQueue<Runnable> readRequests = new LinkedBlockingQueue<Runnable>();
-    private static volatile Boolean streaming = false;
+    private static LinkedBlockingQueue<Runnable> snapshotRequests = new LinkedBlockingQueue<Runnable>();
+    private static Set<Integer> pendingSnapshots = ConcurrentHashMap.newKeySet();
+    private static Set<Integer> streamingDisplays = ConcurrentHashMap.newKeySet();
     private static volatile Boolean connected = false;
     private static volatile InetAddress serverIp = null;
 
-    private static Rectangle screenRect = null;
-    private static Robot robot = null;
-    private static ImageWriter jpgWriter = null;
-    private static ImageWriteParam jpgWriteParam = null;
+    private static ScreenSource screenSource = null;
+    private static volatile String codecName = JpegCodec.name;
+    private static Map<Integer, FrameCodec> encoders = new ConcurrentHashMap<Integer, FrameCodec>();
+    private static Map<Float, JpegCodec> stillEncoders = new ConcurrentHashMap<Float, JpegCodec>();
+    private static volatile String sessionToken = "";
+    private static volatile Boolean connectionBroken = false;
+    private static volatile Boolean degraded = false;
+    private static volatile long droppedAt = 0;
+    private static volatile Set<Integer> droppedDisplays = Collections.emptySet();
+    private static int cursorDisplay = -1;
+    private static Point cursorLocation = null;
+    private static FileReceiver fileReceiver = null;
+    private static OfflineBuffer offlineBuffer = null;
+    private static Map<String, Long> uploading = new ConcurrentHashMap<String, Long>();
+    private static MuxOutput uploadOutput = null;
+    private static ClockOffsetEstimator clockOffset = new ClockOffsetEstimator(8);
+    private static AtomicInteger frameSequence = new AtomicInteger();
+    private static Map<Integer, long[]> lastSent = new ConcurrentHashMap<Integer, long[]>();
+    private static ActivityMeter activityMeter = new ActivityMeter();
+    private static ResourceGovernor resourceGovernor = new ResourceGovernor();
 
     private static DatagramSocket discoverySocket;
     private static byte[] discoverRecvBuf;
@@ -74,10 +95,25 @@ public class Client extends Application{
     private static final String startString = "LH_START";
     private static final String stopString = "LH_STOP";
     private static final String msgString = "LH_SENDMSG";
-    private static final int checkDelay = 500;
-    private static final int timeoutDelay = 10000;
-    private static final int port = 53;
-    private static final float compressionQuality = 0.8f;
+    private static final String codecString = "LH_CODEC";
+    private static final String tokenString = "LH_TOKEN";
+    private static final String resumeString = "LH_RESUME";
+    private static final String roomString = "LH_ROOM";
+    private static final String udpString = "LH_UDP";
+    private static final String keyframeString = "LH_KEYFRAME";
+    private static final String snapshotString = "LH_SNAPSHOT";
+    private static final String fileString = "LH_FILE";
+    private static final String historyAckString = "LH_HISTORYACK";
+    private static final String degradeString = "LH_DEGRADE";
+    private static final String activityString = "LH_ACTIVITY";
+    private static final String pingString = "LH_PING";
+    private static final String pongString = "LH_PONG";
+    private static final String throttleString = "LH_THROTTLE";
+    private static final String endString = "LH_END";
+    private static final int unstreamedActivityFactor = 10;
+    private static final int maxUploading = 4;
+    private static final int uploadAckTimeout = 30000;
+    private static final String transports = "tcp,udp";
 
     private static Alert alert = new Alert(AlertType.NONE, "", ButtonType.OK);
     private static String alertMessage;
@@ -101,7 +137,7 @@ public class Client extends Application{
         try{
             discoverySocket = new DatagramSocket();
             discoverySocket.setBroadcast(true);
-            discoverySocket.setSoTimeout(timeoutDelay);
+            discoverySocket.setSoTimeout(Config.timeoutDelay.get());
             discover();
         } catch(IOException ioE){
             System.out.println("Failed to create datagram socket");
@@ -127,6 +163,24 @@ public class Client extends Application{
 
     });
 
+    /**
+     * Constantly executes any runnables in the snapshotRequests queue, so at most one snapshot is captured at a time
+     */
+    private static Thread snapshotThread =
+    new Thread(() -> {
+
+        while(true){
+
+            try{
+                snapshotRequests.take().run();
+            } catch(InterruptedException iE){
+                return;
+            }
+
+        }
+
+    });
+
     /**
      * Constantly executes any runnables in the connectionRequests queue
      */
@@ -146,12 +200,138 @@ public class Client extends Application{
     });
 
     /**
-     * Sends packets to all open addresses on the device's network
+     * Samples the mouse pointer up to cursorRate times a second, independently of frame capture
+     */
+    private static Thread cursorThread =
+    new Thread(() -> {
+
+        while(true){
+
+            try{
+                int rate = Config.cursorRate.get();
+                Thread.sleep(rate > 0 ? Math.max(1, 1000 / rate) : 1000);
+
+                if(rate > 0){
+                    sendCursor();
+                }
+
+            } catch(InterruptedException iE){
+                return;
+            } catch(HeadlessException hE){
+                System.out.println("No mouse pointer to sample");
+                return;
+            } catch(IOException ioE){
+                // A broken connection is noticed and resumed by the capture loop
+            }
+
+        }
+
+    });
+
+    /**
+     * Sends an ActivitySample every activityInterval ms while online. Displays being streamed are measured from the frames they are captured
+     * for anyway, and only the others are captured here, far less often, so that the server knows how active the seat is even when nobody is watching it
+     */
+    private static Thread activityThread =
+    new Thread(() -> {
+
+        while(true){
+
+            try{
+                int interval = Config.activityInterval.get();
+                Thread.sleep(interval > 0 ? interval : 1000);
+
+                if(interval > 0 && isOnline()){
+                    sendActivity(interval);
+                }
+
+            } catch(InterruptedException iE){
+                return;
+            } catch(IOException ioE){
+                // A broken connection is noticed and resumed by the capture loop
+            }
+
+        }
+
+    });
+
+    /**
+     * Samples the CPU load every governorInterval ms, throttling capture to stay within cpuBudget, and tells the server whenever the throttle changes
+     */
+    private static Thread governorThread =
+    new Thread(() -> {
+
+        while(true){
+
+            try{
+                Thread.sleep(Math.max(100, Config.governorInterval.get()));
+
+                if(resourceGovernor.sample(Config.cpuBudget.get()) && isOnline()){
+                    sendThrottle();
+                }
+
+            } catch(InterruptedException iE){
+                return;
+            } catch(IOException ioE){
+                // A broken connection is noticed and resumed by the capture loop
+            }
+
+        }
+
+    });
+
+    /**
+     * Keeps a frame of each display that was being streamed every offlineInterval ms while a session has dropped, until the Client is back
+     * online, the teacher ends the session, or offlineWindow has passed
+     */
+    private static Thread offlineThread =
+    new Thread(() -> {
+
+        while(true){
+
+            try{
+                int interval = Config.offlineInterval.get();
+                Thread.sleep(interval > 0 ? interval : 1000);
+                long dropped = droppedAt;
+
+                // Only a session that may still resume is captured, never a student who has not met the server yet or whose class has ended
+                if(interval > 0 && sessionToken.length() > 0 && !isOnline() && dropped > 0 && System.currentTimeMillis() - dropped < Config.offlineWindow.get()){
+                    captureOffline(droppedDisplays);
+                }
+
+            } catch(InterruptedException iE){
+                return;
+            }
+
+        }
+
+    });
+
+    /**
+     * Uploads the frames kept while offline, oldest first, at no more than offlineUploadRate
+     */
+    private static Thread uploadThread =
+    new Thread(() -> {
+
+        while(true){
+
+            try{
+                Thread.sleep(uploadNext());
+            } catch(InterruptedException iE){
+                return;
+            }
+
+        }
+
+    });
+
+    /**
+     * Sends packets to all open addresses on the device's network, naming the room the client is looking for
      * 
      * @throws SocketException Throws a SocketException when a packet fails to send
      */
     private static void sendDiscoveryPackets() throws SocketException{
-        byte[] sendData = requestString.getBytes();
+        byte[] sendData = (requestString + Config.room.get()).getBytes();
         Enumeration interfaces = NetworkInterface.getNetworkInterfaces();
 
         while(interfaces.hasMoreElements()){
@@ -169,7 +349,7 @@ public class Client extends Application{
                 }
 
                 try{
-                    DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, broadcast, port);
+                    DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, broadcast, Config.port.get());
                     discoverySocket.send(sendPacket);
                     System.out.println("Sent packet to " + broadcast.getHostAddress() + "; Interface: " + networkInterface.getDisplayName());
                 } catch(Exception e){
@@ -188,7 +368,7 @@ public class Client extends Application{
      * @throws SocketException Throws a SocketException when the DatagramSocket fails
      */
     private static void receivePacket() throws SocketException{
-        discoverRecvBuf = new byte[15000];
+        discoverRecvBuf = new byte[Config.datagramBufferSize.get()];
         discoverReceivePacket = new DatagramPacket(discoverRecvBuf, discoverRecvBuf.length);
 
         try{
@@ -196,7 +376,7 @@ public class Client extends Application{
             System.out.println("Received response from server: " + discoverReceivePacket.getAddress().getHostAddress());
             discoverMessage = new String(discoverReceivePacket.getData()).trim();
 
-            if(discoverMessage.equals(responseString)){
+            if(discoverMessage.equals(responseString + Config.room.get())){
                 System.out.println("Found server!");
                 serverIp = discoverReceivePacket.getAddress();
                 connected = true;
@@ -227,11 +407,34 @@ public class Client extends Application{
                     attemptConnection();
                 });
 
+                // Single lost heartbeats are tolerated, the server is only considered gone after timeoutDelay without a reply
+                long lastReply = System.currentTimeMillis();
+                discoverySocket.setSoTimeout(Config.heartbeatTimeout.get());
+
                 while(connected){
-                    connected = checkConnection(discoverReceivePacket.getAddress());
-                    Thread.sleep(checkDelay);
+
+                    if(Config.liveness.get().equals("udp")){
+
+                        if(checkConnection(discoverReceivePacket.getAddress())){
+                            lastReply = System.currentTimeMillis();
+                        }
+
+                    } else{
+                        lastReply = Math.max(lastReply, keepSessionAlive());
+                    }
+
+                    // The capture loop first tries to resume the session on the same server, and only if that fails is the server rediscovered
+                    if(System.currentTimeMillis() - lastReply > Config.timeoutDelay.get()){
+                        System.out.println("No heartbeat reply for " + Config.timeoutDelay.get() + "ms, resuming session");
+                        connectionBroken = true;
+                        lastReply = System.currentTimeMillis();
+                    }
+
+                    Thread.sleep(Config.checkDelay.get());
                 }
 
+                discoverySocket.setSoTimeout(Config.timeoutDelay.get());
+
             }
 
             System.out.println("Restarting discovery");
@@ -246,7 +449,9 @@ public class Client extends Application{
     }
 
     /**
-     * Checks the connection by sending and then receiving a packet
+     * Checks the connection by sending and then receiving a packet.
+     * The packet carries the time it was sent and the server answers with it and the times it received and answered it,
+     * which feeds the estimate of the server's clock offset that frame traces are sent with
      * 
      * @param address The InetAddress to which the packet should be sent
      * @return Returns whether the correct response was received from the server in time
@@ -254,24 +459,38 @@ public class Client extends Application{
     private static Boolean checkConnection(InetAddress address){
 
         try{
-            byte[] sendMsg = checkString.getBytes();
-            DatagramPacket sendPacket = new DatagramPacket(sendMsg, sendMsg.length, address, port);
+            long sent = FrameTrace.now();
+            byte[] sendMsg = (checkString + sent).getBytes();
+            DatagramPacket sendPacket = new DatagramPacket(sendMsg, sendMsg.length, address, Config.port.get());
             discoverySocket.send(sendPacket);
 
-            byte[] recvBuf = new byte[15000];
+            byte[] recvBuf = new byte[Config.datagramBufferSize.get()];
             DatagramPacket receivePacket = new DatagramPacket(recvBuf, recvBuf.length);
             discoverySocket.receive(receivePacket);
             
-            String message = new String(receivePacket.getData()).trim();
+            long answered = FrameTrace.now();
+            String message = new String(receivePacket.getData(), 0, receivePacket.getLength()).trim();
 
-            if(message.equals(connectedString)){
-                return true;
-            } else{
+            if(!message.startsWith(connectedString)){
                 return false;
             }
+
+            String[] times = message.substring(connectedString.length()).split(",");
+
+            try{
+
+                if(times.length == 3 && times[0].equals(Long.toString(sent))){
+                    clockOffset.addSample(sent, Long.parseLong(times[1]), Long.parseLong(times[2]), answered);
+                }
+
+            } catch(NumberFormatException nfE){
+                System.out.println("Malformed heartbeat reply " + message);
+            }
+
+            return true;
         
         } catch(SocketTimeoutException e){
-            System.out.println("Reply not received, disconnected");
+            System.out.println("Heartbeat reply not received");
             return false;
         } catch(IOException e){
             e.printStackTrace();
@@ -281,61 +500,337 @@ public class Client extends Application{
     }
  
     /**
-     * Reads and parses the next message from the connected Socket's InputStream
+     * Sends a keepalive on the session if nothing has been sent, or nothing received, for keepaliveInterval. The server counts anything
+     * it receives as a heartbeat, so the keepalive is for an idle client. The reply is for the client, which counts only what it receives:
+     * a seat being watched sends frames but hears nothing back, so it still sends a keepalive every keepaliveInterval to learn the
+     * server is there, and each reply also gives the clock offset estimate a sample
+     * 
+     * @return Returns when anything was last received from the server, in milliseconds since the epoch
+     */
+    private static long keepSessionAlive(){
+        MuxOutput output = muxOut;
+        MuxInput input = muxIn;
+
+        if(output == null || input == null){
+            return System.currentTimeMillis();
+        }
+
+        long now = System.currentTimeMillis();
+        int interval = Config.keepaliveInterval.get();
+
+        if(now - output.getLastWritten() >= interval || now - input.getLastRead() >= interval){
+
+            try{
+                output.send(MuxChannel.CONTROL, pingString + FrameTrace.now());
+            } catch(IOException ioE){
+                // A broken connection is noticed and resumed by the capture loop
+            }
+
+        }
+
+        return input.getLastRead();
+    }
+
+    /**
+     * Adds the times echoed by a keepalive reply to the estimate of the server's clock offset
+     * 
+     * @param times The comma separated times the keepalive was sent, received, and answered
+     */
+    private static void handlePong(String times){
+        long answered = FrameTrace.now();
+        String[] fields = times.split(",");
+
+        try{
+
+            if(fields.length == 3){
+                clockOffset.addSample(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), answered);
+            }
+
+        } catch(NumberFormatException nfE){
+            System.out.println("Malformed keepalive reply " + times);
+        }
+
+    }
+
+    /**
+     * Reads and parses every message from the connected Socket until the connection ends
      */
     private static void readFromConnection(){
-        byte[] outputData;
-        String output;
 
         while(connected){
-
-            outputData = new byte[1024];
+            MuxInput input = muxIn;
 
             try{
-                in.read(outputData);
+                MuxInput.Message message = input.read();
+
+                if(message.getChannel() == MuxChannel.CONTROL && message.getText().startsWith(pongString)){
+                    handlePong(message.getText().substring(pongString.length()));
+                } else if(message.getChannel() == MuxChannel.CONTROL){
+                    System.out.println(message.getText());
+                    parseCommand(message.getText());
+                } else if(message.getChannel() == MuxChannel.FILE){
+                    receiveFileChunk(message.getData());
+                }
+
             } catch(IOException ioE){
                 System.out.println("Could not read from input");
+                connectionBroken = input == muxIn;
+
+                // Gives a session resumption time to replace the streams instead of spinning on the broken ones
+                try{
+                    Thread.sleep(Config.resumeRetryDelay.get());
+                } catch(InterruptedException iE){
+                    return;
+                }
+
             }
 
-            output = new String(outputData).trim();
+        }
 
-            if(output.length() > 0){
-                System.out.println(output);
+    }
 
-                if(output.equals(startString)){
-                    streaming = true;
-                } else if(output.equals(stopString)){
-                    streaming = false;
-                } else if(output.contains(msgString)){
-                    showAlert(output.substring(msgString.length(), output.length()));
-                }
+    /**
+     * Parses and executes a single command sent by the server
+     * 
+     * @param command The command to be executed
+     */
+    private static void parseCommand(String command){
+
+        if(command.startsWith(startString)){
+            int display = parseDisplay(command.substring(startString.length()));
+            // The server may have skipped this display's frames, so a fresh encoder starts it off with a full frame
+            encoders.remove(display);
+            streamingDisplays.add(display);
+        } else if(command.equals(stopString)){
+            streamingDisplays.clear();
+        } else if(command.startsWith(stopString)){
+            streamingDisplays.remove(parseDisplay(command.substring(stopString.length())));
+        } else if(command.startsWith(tokenString)){
+            sessionToken = command.substring(tokenString.length()).trim();
+        } else if(command.startsWith(udpString)){
+            startUdpTransport(command.substring(udpString.length()));
+        } else if(command.startsWith(snapshotString)){
+            int display = parseDisplay(command.substring(snapshotString.length()));
+
+            // A display already waiting for its snapshot is not queued again, so repeated requests cannot pile up captures
+            if(pendingSnapshots.add(display)){
+                snapshotRequests.add(() -> {
+                    pendingSnapshots.remove(display);
+                    sendSnapshot(display);
+                });
+            }
+
+        } else if(command.startsWith(keyframeString)){
+            encoders.remove(parseDisplay(command.substring(keyframeString.length())));
+        } else if(command.startsWith(codecString)){
+            setCodec(command.substring(codecString.length()));
+        } else if(command.startsWith(degradeString)){
+            degraded = command.substring(degradeString.length()).trim().equals("1");
+        } else if(command.startsWith(historyAckString)){
+            acknowledgeHistory(command.substring(historyAckString.length()));
+        } else if(command.startsWith(fileString)){
+            receiveFileOffer(command.substring(fileString.length()));
+        } else if(command.equals(endString)){
+            // The teacher ended the class, so the session is neither resumed nor captured while offline
+            sessionToken = "";
+            streamingDisplays.clear();
+            droppedAt = 0;
+        } else if(command.startsWith(msgString)){
+            showAlert(command.substring(msgString.length(), command.length()));
+        }
 
+    }
+
+    /**
+     * Drops an offline frame the server has filed
+     * 
+     * @param key The capture time and display of the frame, separated by a comma
+     */
+    private static void acknowledgeHistory(String key){
+
+        try{
+            String[] fields = key.split(",");
+            String name = OfflineBuffer.nameOf(Long.parseLong(fields[0]), Integer.parseInt(fields[1]));
+            uploading.remove(name);
+            offlineBuffer.remove(name);
+        } catch(RuntimeException rE){
+            System.out.println("Malformed history acknowledgement " + key);
+        }
+
+    }
+
+    /**
+     * Starts or resumes receiving a file pushed by the server
+     * 
+     * @param offer The id, size, checksum, and name of the file
+     */
+    private static void receiveFileOffer(String offer){
+
+        try{
+            fileReceiver.handleOffer(offer);
+        } catch(IOException | RuntimeException ex){
+            System.out.println("Could not receive file: " + ex.getMessage());
+        }
+
+    }
+
+    /**
+     * Writes a chunk of a file pushed by the server
+     * 
+     * @param message The bytes of the FileChunk
+     */
+    private static void receiveFileChunk(byte[] message){
+
+        try{
+            fileReceiver.handleChunk(message);
+        } catch(IOException ioE){
+            System.out.println("Could not write file: " + ioE.getMessage());
+        }
+
+    }
+
+    /**
+     * Sends a reply about a pushed file to the server
+     * 
+     * @param command The reply to be sent
+     * @throws IOException Throws an IOException when there is no connection or the reply cannot be sent
+     */
+    private static void sendFileReply(String command) throws IOException{
+        MuxOutput output = muxOut;
+
+        if(output == null){
+            throw new IOException("Not connected");
+        }
+
+        output.send(MuxChannel.CONTROL, command);
+    }
+
+    /**
+     * Switches the codec frames are encoded with. Each display gets its own encoder since some codecs encode against the previous frame
+     * 
+     * @param name The name of the codec chosen by the server
+     */
+    private static void setCodec(String name){
+
+        if(FrameCodecs.supported.contains(name.trim())){
+            codecName = name.trim();
+            encoders.clear();
+            System.out.println("Now encoding with " + codecName);
+        } else{
+            System.out.println("Server requested unknown codec " + name);
+        }
+
+    }
+
+    /**
+     * Switches frames over to the UDP transport.
+     * A resumed session is sent the same port again, and keeps its sender so that the server, which only delivers frames newer than the
+     * last one, does not drop every frame of a sequence started over
+     * 
+     * @param port The port the server receives the session's frames on
+     */
+    private static void startUdpTransport(String port){
+
+        try{
+            UdpFrameSender sender = udpSender;
+
+            if(sender != null && sender.sendsTo(clientSocket.getInetAddress(), Integer.parseInt(port.trim()))){
+                return;
             }
 
+            stopUdpTransport();
+            udpSocket = new DatagramSocket();
+            udpSender = new UdpFrameSender(udpSocket, clientSocket.getInetAddress(), Integer.parseInt(port.trim()), Config.udpPayloadSize.get(), Config.udpGroupSize.get(), LossModel.none);
+            System.out.println("Sending frames over UDP to port " + port);
+        } catch(IOException | NumberFormatException ex){
+            System.out.println("Could not start UDP transport, staying on TCP");
         }
 
     }
 
     /**
-     * Starts all threads, sets up screen streaming, and calls the application's launch method
+     * Switches frames back to the TCP connection and closes the UDP socket
      */
-    public static void main(String[] args) {
-        screenRect = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+    private static void stopUdpTransport(){
+        udpSender = null;
+
+        if(udpSocket != null){
+            udpSocket.close();
+            udpSocket = null;
+        }
+
+    }
+
+    /**
+     * Parses the display index following a start or stop command.
+     * Commands without an index refer to the primary display
+     * 
+     * @param index The text following the command
+     * @return Returns the display index, or 0 if none or an invalid one was given
+     */
+    private static int parseDisplay(String index){
 
         try{
-            robot = new Robot();
-        } catch(AWTException awtE){
-            throw new RuntimeException("Failed to create robot, likely insufficient permissions");
+            int display = Integer.parseInt(index.trim());
+
+            if(display >= 0 && display < screenSource.getDisplayCount()){
+                return display;
+            }
+
+        } catch(NumberFormatException nfeEx){
+            System.out.println("Invalid display " + index);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Starts all threads, sets up screen streaming, and calls the application's launch method.
+     * Setting synthetic to true captures generated frames instead of the real screens, which allows running headless
+     * 
+     * @param args Command line arguments of the form --name=value override the configuration
+     */
+    public static void main(String[] args) {
+        Config.load(args);
+        offlineBuffer = new OfflineBuffer(new File(Config.offlineDirectory.get()));
+        fileReceiver = new FileReceiver(new File(Config.fileDirectory.get()), Client::sendFileReply, file -> showAlert("Your teacher sent you " + file.getName() + ", saved in " + file.getParent()));
+
+        if(Config.synthetic.get()){
+            screenSource = new SyntheticScreenSource(new Rectangle(1920, 1080), new Rectangle(2560, 1440));
+        } else{
+
+            try{
+                screenSource = new RobotScreenSource();
+            } catch(AWTException awtE){
+                throw new RuntimeException("Failed to create robot, likely insufficient permissions");
+            }
+
         }
 
         discoveryThread.start();
         readThread.start();
         connectionThread.start();
+        cursorThread.setDaemon(true);
+        cursorThread.start();
+        activityThread.setDaemon(true);
+        activityThread.start();
+        offlineThread.setDaemon(true);
+        offlineThread.start();
+        governorThread.setDaemon(true);
+        governorThread.start();
+        uploadThread.setDaemon(true);
+        uploadThread.start();
+        snapshotThread.setDaemon(true);
+        snapshotThread.start();
 
         alertTimeline.setOnFinished(e -> {
             alertTimeline.stop();
         });
 
+        Config.addListener(() -> {
+            setCodec(codecName);
+        });
+
         alert.setTitle("Teacher Message");
         Platform.setImplicitExit(false);
         launch(args);
@@ -365,12 +860,16 @@ public class Client extends Application{
     private static void stopClient(){
 
         try{
-            streaming = false;
+            streamingDisplays.clear();
             connected = false;
             serverIp = null;
-            out.close();
-            in.close();
-            clientSocket.close();
+            stopUdpTransport();
+
+            if(muxOut != null){
+                muxOut.close();
+                clientSocket.close();
+            }
+
         } catch(SocketException sE){
             System.out.println("Pipeline broken");
         } catch(IOException ioE){
@@ -380,25 +879,69 @@ public class Client extends Application{
     }
 
     /**
-     * Writes the length of the message to the OutputStream
+     * Opens a Socket to the server, encrypted if sharedKey is set, and sends the handshake on the control channel: the room, the session token (empty for a new session), username, displays, supported codecs, and supported transports.
+     * If the server still holds the session named by the token it reattaches it, restoring its streaming state and codec
      * 
-     * @param output The OutputStream to be written to
-     * @param length The length of the message
-     * @throws IOException Throws an IOException when the OutputStream cannot be written to
+     * @param servIp The InetAddress of the server
+     * @throws IOException Throws an IOException when the server cannot be reached
      */
-    private static void writeLength(OutputStream output, int length) throws IOException{
-        byte[] sendBytes = new byte[32];
-        byte[] rawBytes = Integer.toString(length).getBytes();
+    private static void openConnection(InetAddress servIp) throws IOException{
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(servIp, Config.port.get()), Config.connectTimeout.get());
+        socket.setTcpNoDelay(true);
+        clientSocket = socket;
+        System.out.println("Connected to " + clientSocket.getInetAddress());
+        MuxCipher cipher = MuxCipher.negotiate(clientSocket, true);
+        muxOut = new MuxOutput(clientSocket.getOutputStream(), Config.chunkSize.get(), cipher);
+        muxIn = new MuxInput(clientSocket.getInputStream(), Config.maxMessageSize.get(), null, 0, cipher);
+        connectionBroken = false;
+        droppedAt = 0;
+
+        // Left out for the unnamed room so that servers without rooms still understand the handshake
+        if(!Config.room.get().isEmpty()){
+            muxOut.send(MuxChannel.CONTROL, roomString + Config.room.get());
+        }
+
+        muxOut.send(MuxChannel.CONTROL, resumeString + sessionToken);
+        muxOut.send(MuxChannel.CONTROL, System.getProperty("user.name"));
+        muxOut.send(MuxChannel.CONTROL, describeDisplays());
+        muxOut.send(MuxChannel.CONTROL, String.join(",", FrameCodecs.supported));
+        // Datagrams are not encrypted, so an encrypted session keeps its frames on the connection
+        muxOut.send(MuxChannel.CONTROL, cipher == null ? transports : "tcp");
+        muxOut.send(MuxChannel.CURSOR, new CursorMessage(0, -1, -1, CursorMessage.getDefaultShape()).toBytes());
+        cursorDisplay = -1;
+    }
+
+    /**
+     * Repeatedly tries to reopen the connection to the same server and resume the session, without rediscovering the server
+     * 
+     * @param servIp The InetAddress of the server
+     * @return Returns whether the session was resumed within resumeWindow
+     * @throws InterruptedException Throws an InterruptedException when the thread is interrupted while waiting to retry
+     */
+    private static Boolean resumeConnection(InetAddress servIp) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + Config.resumeWindow.get();
+
+        while(connected && sessionToken.length() > 0 && System.currentTimeMillis() < deadline){
+
+            try{
+                muxOut.close();
+                clientSocket.close();
+                openConnection(servIp);
+                System.out.println("Resumed session");
+                return true;
+            } catch(IOException ioE){
+                Thread.sleep(Config.resumeRetryDelay.get());
+            }
 
-        for(int i = 0; i < rawBytes.length; i++){
-            sendBytes[i] = rawBytes[i];
         }
 
-        out.write(sendBytes);
+        return false;
     }
 
     /**
-     * Starts connection with server by opening a Socket, creating all I/O streams, sending the username, and finally sending the screen
+     * Starts connection with server by opening a Socket, creating all I/O streams, sending the handshake, and finally sending the screen.
+     * When the connection breaks the session is resumed on a new Socket if possible
      * 
      * @param servIp The InetAddress of the server
      */
@@ -406,18 +949,14 @@ public class Client extends Application{
         
         try {
             System.out.println("Connecting...");
-            clientSocket = new Socket(servIp, port);
-            System.out.println("Connected to " + clientSocket.getInetAddress());
+            setCodec(JpegCodec.name);
+            degraded = false;
+            openConnection(servIp);
             connected = true;
-            out = clientSocket.getOutputStream();
-            in = clientSocket.getInputStream();
-            jpgWriter = ImageIO.getImageWritersByFormatName("jpg").next();
-            jpgWriteParam = jpgWriter.getDefaultWriteParam();
-            jpgWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            jpgWriteParam.setCompressionQuality(compressionQuality);
-            byte[] username = System.getProperty("user.name").getBytes();
-            writeLength(out, username.length);
-            out.write(username);
+
+            if(resourceGovernor.getThrottle().getStep() > 0){
+                sendThrottle();
+            }
 
             readRequests.add(() -> {
                 readFromConnection();
@@ -425,11 +964,27 @@ public class Client extends Application{
 
             while(connected){
 
-                if(streaming){
-                    sendScreen();
+                try{
+
+                    if(connectionBroken){
+                        throw new SocketException("Connection closed by server");
+                    }
+
+                    for(Integer display : streamingDisplays){
+                        sendScreen(display);
+                    }
+
+                } catch(IOException ioE){
+                    System.out.println("Connection lost, resuming session");
+                    markDropped();
+
+                    if(!resumeConnection(servIp)){
+                        throw ioE;
+                    }
+
                 }
 
-                Thread.sleep(100);
+                Thread.sleep(resourceGovernor.getThrottle().applyInterval(Config.captureInterval.get()));
             }
 
         } catch(SocketException sE){
@@ -439,7 +994,6 @@ public class Client extends Application{
         } catch(InterruptedException iE){
             System.out.println("Thread interrupted");
         } finally{
-            jpgWriter.dispose();
             stopClient();
             System.out.println("Stopped connection");
         }
@@ -447,22 +1001,273 @@ public class Client extends Application{
     }
 
     /**
-     * Sends the screen as a byte array to the server
+     * Describes every capturable display as a comma separated list of sizes, e.g. "1920x1080,2560x1440"
      * 
-     * @throws IOException Throws an IOEXception when it fails to write to the connected Socket's OutputStream
+     * @return Returns the description of the displays
      */
-    private static void sendScreen() throws IOException{
+    private static String describeDisplays(){
+        StringBuilder description = new StringBuilder();
+
+        for(int i = 0; i < screenSource.getDisplayCount(); i++){
+            Rectangle bounds = screenSource.getDisplayBounds(i);
+
+            if(i > 0){
+                description.append(',');
+            }
+
+            description.append(bounds.width).append('x').append(bounds.height);
+        }
+
+        return description.toString();
+    }
+
+    /**
+     * Sends a display as a byte array to the server.
+     * The capture is downsampled to at most maxCaptureWidth by maxCaptureHeight, less while throttled, before encoding with the session's codec
+     * 
+     * @param display The index of the display to be sent
+     * @throws IOException Throws an IOEXception when it fails to send on the connected Socket
+     */
+    private static void sendScreen(int display) throws IOException{
+        long captured = FrameTrace.now();
         BufferedImage capture;
-        capture = robot.createScreenCapture(screenRect);
-        ByteArrayOutputStream imgOutput = new ByteArrayOutputStream();
-        ImageOutputStream imgOutputStream = ImageIO.createImageOutputStream(imgOutput);
-        jpgWriter.setOutput(imgOutputStream);
-        jpgWriter.write(null, new IIOImage(capture, null, null), jpgWriteParam);
-        byte[] imgData = imgOutput.toByteArray();
-        imgOutput.close();
-        imgOutputStream.close();
-        writeLength(out, imgData.length);
-        out.write(imgData);
+        Throttle throttle = resourceGovernor.getThrottle();
+        capture = ImageScaler.fit(screenSource.capture(display), throttle.applyScale(Config.maxCaptureWidth.get()), throttle.applyScale(Config.maxCaptureHeight.get()));
+        FrameCodec frameCodec = encoders.computeIfAbsent(display, d -> FrameCodecs.create(codecName, Config.compressionQuality.get()));
+        byte[] imgData = frameCodec.encode(capture);
+        int interval = Config.activityInterval.get();
+        activityMeter.addEncoded(imgData.length);
+
+        if(interval > 0 && activityMeter.isDue(display, interval / 2)){
+            activityMeter.measure(display, capture);
+        }
+
+        int sequence = frameSequence.getAndIncrement();
+        long[] previous = lastSent.getOrDefault(display, new long[]{-1, 0});
+        FrameTrace trace = new FrameTrace(sequence, captured, FrameTrace.now(), (int) previous[0], previous[1], clockOffset.getOffset());
+        byte[] message = new FrameMessage(display, frameCodec.getName(), imgData, trace).toBytes();
+        UdpFrameSender sender = udpSender;
+
+        if(sender != null){
+            sender.send(message);
+            lastSent.put(display, new long[]{sequence, FrameTrace.now()});
+        } else{
+            muxOut.send(MuxChannel.FRAME, message, () -> lastSent.put(display, new long[]{sequence, FrameTrace.now()}));
+        }
+
+    }
+
+    /**
+     * Measures each display that is not being streamed once every unstreamedActivityFactor intervals, stretched like the capture interval
+     * while the ResourceGovernor throttles capture, and sends the combined ActivitySample. Streamed displays are measured by sendScreen,
+     * and a display's latest measurement stands in for it until it is measured again
+     * 
+     * @param interval The milliseconds between samples
+     * @throws IOException Throws an IOException when the sample cannot be sent
+     */
+    private static void sendActivity(int interval) throws IOException{
+        Throttle throttle = resourceGovernor.getThrottle();
+        int unstreamedInterval = throttle.applyInterval(interval * unstreamedActivityFactor);
+
+        for(int display = 0; display < screenSource.getDisplayCount(); display++){
+
+            if(!streamingDisplays.contains(display) && activityMeter.isDue(display, unstreamedInterval)){
+                activityMeter.measure(display, ImageScaler.fit(screenSource.capture(display), throttle.applyScale(Config.maxCaptureWidth.get()), throttle.applyScale(Config.maxCaptureHeight.get())));
+            }
+
+        }
+
+        muxOut.send(MuxChannel.CONTROL, activityString + activityMeter.collect().format());
+    }
+
+    /**
+     * Tells the server how much capture is currently throttled
+     * 
+     * @throws IOException Throws an IOException when the command cannot be sent
+     */
+    private static void sendThrottle() throws IOException{
+        muxOut.send(MuxChannel.CONTROL, throttleString + resourceGovernor.getThrottle().format());
+    }
+
+    /**
+     * Sends a single frame of a display for a snapshot of every seat.
+     * It is encoded as JPEG by its own encoder so that it neither depends on nor disturbs the state of the streaming encoders.
+     * While the server is short of memory the snapshot is sent at half the size and quality
+     * 
+     * @param display The index of the display to be sent
+     */
+    private static void sendSnapshot(int display){
+
+        try{
+            int scale = degraded ? 2 : 1;
+            BufferedImage capture = ImageScaler.fit(screenSource.capture(display), Config.maxCaptureWidth.get() / scale, Config.maxCaptureHeight.get() / scale);
+            byte[] imgData = getStillEncoder(Config.compressionQuality.get() / scale).encode(capture);
+            muxOut.send(MuxChannel.SNAPSHOT, new FrameMessage(display, JpegCodec.name, imgData).toBytes());
+        } catch(IOException ioE){
+            System.out.println("Could not send snapshot");
+        }
+
+    }
+
+    /**
+     * Gets the JPEG encoder shared by snapshots and offline frames of a quality, so each quality's ImageWriter is only created once
+     * 
+     * @param quality The JPEG compression quality, from 0 to 1
+     * @return Returns the encoder
+     */
+    private static JpegCodec getStillEncoder(float quality){
+        return stillEncoders.computeIfAbsent(quality, q -> new JpegCodec(q));
+    }
+
+    /**
+     * @return Returns whether a session's connection is open
+     */
+    private static Boolean isOnline(){
+        Socket socket = clientSocket;
+        return connected && !connectionBroken && socket != null && !socket.isClosed();
+    }
+
+    /**
+     * Remembers when the session dropped and which displays were being streamed, unless a drop is already remembered,
+     * as the displays are forgotten once the connection is given up
+     */
+    private static void markDropped(){
+
+        if(droppedAt == 0){
+            droppedDisplays = new HashSet<Integer>(streamingDisplays);
+            droppedAt = System.currentTimeMillis();
+        }
+
+    }
+
+    /**
+     * Captures displays into the offline buffer as JPEG, which each frame can be decoded from on its own
+     * 
+     * @param displays The indexes of the displays to be captured
+     */
+    private static void captureOffline(Set<Integer> displays){
+        long capturedAt = System.currentTimeMillis();
+
+        for(int display : displays){
+
+            if(display >= screenSource.getDisplayCount()){
+                continue;
+            }
+
+            try{
+                BufferedImage capture = ImageScaler.fit(screenSource.capture(display), Config.maxCaptureWidth.get(), Config.maxCaptureHeight.get());
+                offlineBuffer.add(capturedAt, display, getStillEncoder(Config.compressionQuality.get()).encode(capture), Config.offlineBufferSize.get());
+            } catch(IOException ioE){
+                System.out.println("Could not keep offline frame: " + ioE.getMessage());
+            }
+
+        }
+
+    }
+
+    /**
+     * Sends the oldest offline frame not already waiting for the server's acknowledgement on the HISTORY channel.
+     * Frames are only dropped once the server acknowledges them, so any sent over a connection that broke are sent again.
+     * Nothing is sent while the server is short of memory
+     * 
+     * @return Returns how many milliseconds to wait before the next frame so that uploads stay within offlineUploadRate
+     */
+    private static long uploadNext(){
+        MuxOutput output = muxOut;
+        int rate = Config.offlineUploadRate.get();
+
+        if(!isOnline() || degraded || output == null || rate <= 0 || offlineBuffer.size() == 0){
+            return 1000;
+        }
+
+        if(output != uploadOutput){
+            uploading.clear();
+            uploadOutput = output;
+        }
+
+        long now = System.currentTimeMillis();
+        uploading.values().removeIf(sentAt -> now - sentAt > uploadAckTimeout);
+
+        if(uploading.size() >= maxUploading){
+            return 100;
+        }
+
+        for(String name : offlineBuffer.oldest(maxUploading + 1)){
+
+            if(uploading.containsKey(name)){
+                continue;
+            }
+
+            byte[] jpeg = offlineBuffer.read(name);
+            long[] key = OfflineBuffer.parseKey(name);
+
+            if(jpeg == null){
+                return 0;
+            }
+
+            try{
+                uploading.put(name, now);
+                output.send(MuxChannel.HISTORY, new HistoryFrame(key[0], new FrameMessage((int) key[1], JpegCodec.name, jpeg)).toBytes());
+            } catch(IOException ioE){
+                uploading.remove(name);
+                return 1000;
+            }
+
+            return jpeg.length * 1000L / (rate * 1024L);
+        }
+
+        return 100;
+    }
+
+    /**
+     * Sends the pointer's position if it moved since the last sample, relative to the streamed display it is over.
+     * Positions are sent with sendLatest so they never queue up behind each other, the shape having been sent when the connection opened
+     * 
+     * @throws IOException Throws an IOException when it fails to send on the connected Socket
+     */
+    private static void sendCursor() throws IOException{
+        MuxOutput output = muxOut;
+
+        if(!connected || output == null || streamingDisplays.isEmpty()){
+            return;
+        }
+
+        PointerInfo pointer = MouseInfo.getPointerInfo();
+
+        if(pointer == null){
+            return;
+        }
+
+        Point location = pointer.getLocation();
+        int display = -1;
+        Rectangle bounds = null;
+
+        for(int streamed : streamingDisplays){
+
+            if(screenSource.getDisplayBounds(streamed).contains(location)){
+                display = streamed;
+                bounds = screenSource.getDisplayBounds(streamed);
+                break;
+            }
+
+        }
+
+        if(display == cursorDisplay && (display == -1 || location.equals(cursorLocation))){
+            return;
+        }
+
+        CursorMessage message;
+
+        if(display == -1){
+            // Hide the pointer on the display it just left
+            message = new CursorMessage(cursorDisplay, -1, -1, null);
+        } else{
+            message = new CursorMessage(display, (location.x - bounds.x) / (float) bounds.width, (location.y - bounds.y) / (float) bounds.height, null);
+        }
+
+        output.sendLatest(MuxChannel.CURSOR, message.toBytes());
+        cursorDisplay = display;
+        cursorLocation = location;
     }
 
     /**
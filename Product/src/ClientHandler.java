@@ -1,12 +1,22 @@
+import java.net.DatagramSocket;
 import java.net.Socket;
 import java.net.InetAddress;
 import java.net.SocketException;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
+import java.security.SecureRandom;
+
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javafx.beans.property.SimpleStringProperty;
 
@@ -17,21 +27,63 @@ import javafx.beans.property.SimpleStringProperty;
  * @version 1.0
  */
 public class ClientHandler extends Thread {
+    private long sessionId;
+    private String sessionToken;
     private InetAddress address;
     private Date date;
     private SimpleStringProperty username;
 
     private Socket clientSocket;
-	private OutputStream out;
-	private InputStream in;
+	private volatile MuxOutput muxOut;
+	private MuxInput muxIn;
+	private RoomHost host;
 	private Server server;
+	private String room = "";
 	private Boolean streaming = false;
 	private volatile Boolean connected = true;
+	private volatile Boolean closed = false;
+	private MuxCipher cipher = null;
+	private LinkedBlockingQueue<ResumedConnection> resumedSockets = new LinkedBlockingQueue<ResumedConnection>();
+	private volatile List<String> displays = Collections.singletonList("Display 1");
+	private volatile int viewedDisplay = 0;
+	private volatile String codec = JpegCodec.name;
+	private volatile List<String> codecs = Collections.singletonList(JpegCodec.name);
+	private Map<String, FrameCodec> decoders = new ConcurrentHashMap<String, FrameCodec>();
+	private volatile long lastKeyframeRequest = 0;
+	private byte[] cursorShape = null;
+	private volatile CompletableFuture<FrameMessage> snapshot = null;
+	private volatile List<String> transports = Collections.singletonList("tcp");
+	private DatagramSocket frameSocket = null;
+	private Map<String, FileSender> fileSenders = new ConcurrentHashMap<String, FileSender>();
+	private SessionHistory history = null;
+	private LatencyTracker latency = new LatencyTracker();
+	private volatile Boolean degraded = false;
+	private ActivityScore activity = new ActivityScore();
+	private volatile Throttle throttle = Throttle.none;
+	private SimpleStringProperty activityText = new SimpleStringProperty("");
+	private volatile CachedFrame latestFrame = null;
+	private long cachedFrames = 0;
 
 	private static final String startString = "LH_START";
 	private static final String stopString = "LH_STOP";
 	private static final String msgString = "LH_SENDMSG";
-	private static final int kickoutDelay = 10000;
+	private static final String codecString = "LH_CODEC";
+	private static final String tokenString = "LH_TOKEN";
+	private static final String resumeString = "LH_RESUME";
+	private static final String roomString = "LH_ROOM";
+	private static final String udpString = "LH_UDP";
+	private static final String keyframeString = "LH_KEYFRAME";
+	private static final String snapshotString = "LH_SNAPSHOT";
+	private static final String historyAckString = "LH_HISTORYACK";
+	private static final String degradeString = "LH_DEGRADE";
+	private static final String activityString = "LH_ACTIVITY";
+	private static final String throttleString = "LH_THROTTLE";
+	private static final String pingString = "LH_PING";
+	private static final String pongString = "LH_PONG";
+	private static final String endString = "LH_END";
+	private static final int keyframeRequestDelay = 1000;
+	private static final String udpTransport = "udp";
+	private static final SecureRandom tokenGenerator = new SecureRandom();
 
 	/**
 	 * Constantly checks the connection with the client
@@ -41,7 +93,7 @@ public class ClientHandler extends Thread {
 		try{
 			Thread.sleep(1000);
 
-			while(!clientSocket.isClosed()){
+			while(!closed){
 				checkConnection();
 				Thread.sleep(100);
 			}
@@ -53,29 +105,99 @@ public class ClientHandler extends Thread {
 	});
 
 	/**
-	 * Constructor for the ClientHandler object
+	 * This is the newest JPEG frame received from the client, kept so it can be served without decoding or encoding anything
+	 */
+	public static class CachedFrame {
+		private FrameMessage frame;
+		private String tag;
+
+		/**
+		 * Constructor for the CachedFrame class
+		 * 
+		 * @param frame The frame, which must be JPEG encoded
+		 * @param tag A tag no other frame of any session has
+		 */
+		public CachedFrame(FrameMessage frame, String tag){
+			this.frame = frame;
+			this.tag = tag;
+		}
+
+		/**
+		 * @return Returns the frame
+		 */
+		public FrameMessage getFrame(){return frame;}
+
+		/**
+		 * @return Returns a tag no other frame of any session has
+		 */
+		public String getTag(){return tag;}
+
+	}
+
+	/**
+	 * This is a Socket a reconnecting client resumed the session on, with the MuxCipher negotiated on it
+	 */
+	private static class ResumedConnection {
+		private Socket socket;
+		private MuxCipher cipher;
+
+		/**
+		 * Constructor for the ResumedConnection class
+		 * 
+		 * @param socket The new Socket connected to the client
+		 * @param cipher The MuxCipher of the Socket, or null if it is not encrypted
+		 */
+		public ResumedConnection(Socket socket, MuxCipher cipher){
+			this.socket = socket;
+			this.cipher = cipher;
+		}
+
+	}
+
+	/**
+	 * Constructor for the ClientHandler object.
+	 * The handler is started by the RoomHost as soon as the client connects, and joins the room the client names during the handshake
 	 * 
 	 * @param socket The Socket connected to the client
-	 * @param server The Server to which the client is connected
+	 * @param host The RoomHost hosting the room the client will join
+	 * @param sessionId The unique id of the session
 	 */
-	public ClientHandler(Socket socket, Server server){
-		this.server = server;
+	public ClientHandler(Socket socket, RoomHost host, long sessionId){
+		this.host = host;
+		this.sessionId = sessionId;
         clientSocket = socket;
         date = new Date();
         address = socket.getInetAddress();
         username = new SimpleStringProperty(address.toString());
-        this.start();
+        byte[] token = new byte[16];
+        tokenGenerator.nextBytes(token);
+        StringBuilder hex = new StringBuilder();
+
+        for(byte b : token){
+        	hex.append(String.format("%02x", b));
+        }
+
+        sessionToken = hex.toString();
 	}
 	
 	/**
 	 * Cleans up all Sockets, I/O streams, and Threads
 	 */
 	public void stopConnection(){
+		closed = true;
+		recordDisconnect("Stopped by server");
 
 		try{
             clientSocket.close();
-			in.close();
-			out.close();
+
+			if(muxOut != null){
+				muxOut.close();
+			}
+
+			if(frameSocket != null){
+				frameSocket.close();
+			}
+
 			checkThread.interrupt();
 			this.interrupt();
 		} catch(IOException ioE){
@@ -87,68 +209,257 @@ public class ClientHandler extends Thread {
 	}
 
 	/**
-	 * Checks the time between the previous heartbeat from the client and the moment the method is called
+	 * Tells the client the teacher has ended its session, so it neither resumes it nor keeps frames while offline
+	 * 
+	 * @return Returns a future completed once the notice has been written, or at once if it cannot be sent
+	 */
+	public CompletableFuture<Void> endSession(){
+		CompletableFuture<Void> written = new CompletableFuture<Void>();
+
+		try{
+
+			if(muxOut == null){
+				written.complete(null);
+			} else{
+				muxOut.send(MuxChannel.CONTROL, endString.getBytes(), () -> written.complete(null));
+			}
+
+		} catch(IOException ioE){
+			written.complete(null);
+		}
+
+		return written;
+	}
+
+	/**
+	 * Checks the time between the previous heartbeat from the client and the moment the method is called.
+	 * A silent client has its connection closed so the session waits up to resumeGrace for it to resume, and is only removed if it does not.
+	 * Nothing is checked while a resume is pending, as awaitResume already bounds that wait
 	 */
 	private void checkConnection(){
+
+		if(!connected){
+			return;
+		}
+
 		long delay = new Date().getTime() - date.getTime();
 
-		if(delay > kickoutDelay + 1000){
+		if(delay > Config.kickoutDelay.get() + 1000){
 			System.out.println("Client " + address + " has disconnected with delay of " + delay);
+			recordDisconnect("No heartbeat for " + delay + " ms");
 			System.out.println("Disconnecting with " + clientSocket.getRemoteSocketAddress().toString());
-		
+			connected = false;
+
 			try{
-				connected = false;
-			} catch(Exception E){
-				E.printStackTrace();
+				// Unblocks the session's thread, which then waits for the client to resume
+				clientSocket.close();
+			} catch(IOException ioE){
+				System.out.println("Could not close previous connection");
 			}
 
 			System.out.println("Disconnected");
+		}
 
-			if(streaming){
-				server.clearImage();
-			}
+	}
 
-			server.removeClient(this);
+	/**
+	 * Reads the name of the connected client
+	 * 
+	 * @throws IOException Throws an IOException whenver the connected Socket's InputStream cannot be read from
+	 */
+	private void readName() throws IOException{
+		username.set(readHandshakeString());
+		File historyDirectory = new File(Config.historyDirectory.get());
+		history = new SessionHistory(room.isEmpty() ? historyDirectory : new File(historyDirectory, room), username.get());
+	}
+
+	/**
+	 * Reads the sizes of the client's displays, sent as a comma separated list such as "1920x1080,2560x1440"
+	 * 
+	 * @throws IOException Throws an IOException whenver the connected Socket's InputStream cannot be read from
+	 */
+	private void readDisplays() throws IOException{
+		String[] sizes = readHandshakeString().split(",");
+
+		for(int i = 0; i < sizes.length; i++){
+			sizes[i] = "Display " + (i + 1) + " (" + sizes[i] + ")";
 		}
 
+		displays = Collections.unmodifiableList(Arrays.asList(sizes));
+	}
+
+	/**
+	 * Reads the codecs offered by the client and chooses the one the session will use
+	 * 
+	 * @throws IOException Throws an IOException whenver the connected Socket's InputStream cannot be read from
+	 */
+	private void negotiateCodec() throws IOException{
+		String offered = readHandshakeString();
+		codecs = Collections.unmodifiableList(Arrays.asList(offered.split(",")));
+		codec = FrameCodecs.negotiate(offered, server.getPreferredCodec());
+	}
+
+	/**
+	 * Reads the transports offered by the client
+	 * 
+	 * @throws IOException Throws an IOException whenver the connected Socket's InputStream cannot be read from
+	 */
+	private void readTransports() throws IOException{
+		transports = Collections.unmodifiableList(Arrays.asList(readHandshakeString().split(",")));
 	}
 
 	/**
-	 * Reads an exact number of bytes from a stream
+	 * Opens a DatagramSocket the client will send its frames to if the server prefers UDP and the client supports it.
+	 * Frames arriving on it wait for the room's Pacer before they are handled
 	 * 
-	 * @param input The InputStream to be read from
-	 * @param size The number of bytes to be read
-	 * @return Returns the bytes read
-	 * @throws IOException Throws an IOException whenever the InputStream cannot be read from
+	 * @throws IOException Throws an IOException when the DatagramSocket cannot be opened
 	 */
-	private byte[] readExactly(InputStream input, int size) throws IOException{
-		byte[] data = new byte[size];
-		int readSize = input.read(data, 0, size);
+	private void negotiateTransport() throws IOException{
+
+		if(Config.transport.get().equals(udpTransport) && transports.contains(udpTransport)){
+			frameSocket = new DatagramSocket();
+			frameSocket.setReceiveBufferSize(4 * 1024 * 1024);
+			new UdpFrameReceiver(frameSocket, address, LossModel.none, frame -> {
+
+				// Paced like frames read from the connection, so a UDP seat shares the room's bandwidth too
+				try{
+					server.getPacer().acquire(frame.length);
+				} catch(InterruptedException iE){
+					Thread.currentThread().interrupt();
+					return;
+				}
 
-		while(readSize < size && readSize != -1){
-			readSize += input.read(data, readSize, size - readSize);
+				handleFrame(frame, null);
+			}).start();
 		}
 
-		return data;
 	}
 
 	/**
-	 * Reads the name of the connected client
+	 * Reads the token of the session the client wants to resume, and before it the room the client is joining if it names one
 	 * 
+	 * @return Returns the token, or an empty String if the client is starting a new session
 	 * @throws IOException Throws an IOException whenver the connected Socket's InputStream cannot be read from
 	 */
-	private void readName() throws IOException{
-		byte[] recvBuf = new byte[32];
-		String parsed = new String();
-		
-		while(parsed.length() == 0 && clientSocket.isConnected() && !clientSocket.isClosed()){
-			in.read(recvBuf);
-			int length = Integer.parseInt(new String(recvBuf).trim());
-			recvBuf = readExactly(in, length);
-			parsed = new String(recvBuf).trim();
+	private String readResumeToken() throws IOException{
+		String resume = readHandshakeString();
+
+		if(resume.startsWith(roomString)){
+			room = resume.substring(roomString.length());
+			resume = readHandshakeString();
+		}
+
+		return resume.startsWith(resumeString) ? resume.substring(resumeString.length()) : "";
+	}
+
+	/**
+	 * Sends the session's codec, resumption token, and streaming state to the client
+	 * 
+	 * @throws IOException Throws an IOException whenever the connected Socket's OutputStream cannot be written to
+	 */
+	private void sendSessionState() throws IOException{
+		muxOut.send(MuxChannel.CONTROL, codecString + codec);
+		muxOut.send(MuxChannel.CONTROL, tokenString + sessionToken);
+
+		if(frameSocket != null){
+			muxOut.send(MuxChannel.CONTROL, udpString + frameSocket.getLocalPort());
+		}
+
+		if(streaming){
+			muxOut.send(MuxChannel.CONTROL, startString + viewedDisplay);
+		}
+
+		if(degraded){
+			muxOut.send(MuxChannel.CONTROL, degradeString + 1);
+		}
+
+	}
+
+	/**
+	 * Hands a new Socket from a reconnecting client to this session.
+	 * The current Socket is closed so the session's thread switches over immediately even if it has not noticed the old connection breaking
+	 * 
+	 * @param socket The new Socket connected to the client
+	 * @param cipher The MuxCipher negotiated on the Socket, or null if it is not encrypted
+	 * @return Returns whether the session accepted the Socket
+	 */
+	public Boolean resume(Socket socket, MuxCipher cipher){
+
+		if(closed){
+			return false;
+		}
+
+		resumedSockets.offer(new ResumedConnection(socket, cipher));
+
+		try{
+			clientSocket.close();
+		} catch(IOException ioE){
+			System.out.println("Could not close previous connection");
+		}
+
+		return true;
+	}
+
+	/**
+	 * Waits for the client to resume the session after its connection broke
+	 * 
+	 * @return Returns whether the session should keep running
+	 */
+	private Boolean awaitResume(){
+
+		try{
+			ResumedConnection resumed = resumedSockets.poll(Config.resumeGrace.get(), TimeUnit.MILLISECONDS);
+
+			if(resumed == null || closed){
+				System.out.println("Client " + address + " did not resume its session");
+
+				if(!closed){
+					recordDisconnect("Not resumed within " + Config.resumeGrace.get() + " ms");
+				}
+
+				return false;
+			}
+
+			muxOut.close();
+			clientSocket = resumed.socket;
+			cipher = resumed.cipher;
+			muxIn = new MuxInput(clientSocket.getInputStream(), Config.maxMessageSize.get(), MemoryGovernor.get(), Config.memoryWait.get(), cipher);
+			muxOut = new MuxOutput(clientSocket.getOutputStream(), Config.chunkSize.get(), cipher);
+			resetTimer();
+			connected = true;
+			sendSessionState();
+
+			for(FileSender sender : fileSenders.values()){
+				sender.offer();
+			}
+
+			System.out.println("Resumed session with " + clientSocket.getRemoteSocketAddress().toString());
+			recordConnect(true);
+		} catch(InterruptedException iE){
+			return false;
+		} catch(IOException ioE){
+			System.out.println("Could not restore session state");
+			recordDisconnect("Could not restore session state");
+			connected = false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads the next control channel message sent during the handshake, skipping anything sent on other channels
+	 * 
+	 * @return Returns the text of the message
+	 * @throws IOException Throws an IOException whenver the connected Socket's InputStream cannot be read from
+	 */
+	private String readHandshakeString() throws IOException{
+		MuxInput.Message message = muxIn.read();
+
+		while(message.getChannel() != MuxChannel.CONTROL){
+			message = muxIn.read();
 		}
 
-		username.set(parsed);
+		return message.getText();
 	}
 
 	/**
@@ -159,95 +470,592 @@ public class ClientHandler extends Thread {
 		System.out.println("Connected with " + clientSocket.getRemoteSocketAddress().toString());
 		
 		try{
-			out = clientSocket.getOutputStream();
-			in = clientSocket.getInputStream();
+			clientSocket.setTcpNoDelay(true);
+			cipher = MuxCipher.negotiate(clientSocket, false);
+			muxIn = new MuxInput(clientSocket.getInputStream(), Config.maxMessageSize.get(), MemoryGovernor.get(), Config.memoryWait.get(), cipher);
 		} catch(IOException ioE){
-			System.out.println("Could not initialize client I/O");
+			System.out.println("Could not initialize client I/O: " + ioE.getMessage());
+			stopConnection();
 			return;
 		}
 
 		System.out.println("Client now speaking");
-		checkThread.start();
+		String token;
 		
 		try{
+			token = readResumeToken();
+			server = host.getRoom(room);
+
+			if(server == null){
+				System.out.println("No room " + room + " for " + address);
+				stopConnection();
+				return;
+			}
+
 			readName();
+			readDisplays();
+			negotiateCodec();
+			readTransports();
 		} catch(IOException ioE){
 			System.out.println("Could not read name");
+			stopConnection();
+			return;
+		}
+
+		if(token.length() > 0 && server.resumeSession(token, clientSocket, cipher)){
+			System.out.println("Handed connection over to the resumed session");
 			return;
 		}
+
+		try{
+			negotiateTransport();
+			muxOut = new MuxOutput(clientSocket.getOutputStream(), Config.chunkSize.get(), cipher);
+			sendSessionState();
+		} catch(IOException ioE){
+			System.out.println("Could not send session state");
+			stopConnection();
+			return;
+		}
+
+		if(!server.tryRegister(this)){
+			System.out.println("Server full or out of memory, rejected " + address);
+			stopConnection();
+			return;
+		}
+
+		recordConnect(false);
+		checkThread.start();
 		
-		while(connected){
-			readInputStream();
+		do{
+
+			while(connected){
+				readInputStream();
+			}
+
+		} while(!closed && awaitResume());
+
+		for(FileSender sender : fileSenders.values()){
+			sender.cancel();
 		}
 
-    }
+		fileSenders.clear();
 
-	/**
-	 * Reads the length of the subsequent message.
-	 * Length is assumed to be readable with a 32 byte array
-	 * 
-	 * @return Returns the length of the message
-	 * @throws IOException Throws an IOException whenever the connected Socket's InputStream cannot be read from
-	 */
-    private int readMessageLength() throws IOException{
-        byte[] recvBuf = new byte[32];
-        in.read(recvBuf);
-        String parsed = new String(recvBuf).trim();
-        int length = -1;
+		if(!closed){
 
-        try{
+			if(streaming){
+				server.clearImage();
+			}
 
-            if(parsed.length() > 0){
-                length = Integer.parseInt(parsed);
-            }
+			server.removeClient(this);
+		}
 
-        } catch(NumberFormatException nfeEx){
-            length = -1;
-        }
-        
-        return length;
     }
-	
+
 	/**
-	 * Attempts to read from the input stream
+	 * Attempts to read the next message from the client, then waits until the room's bandwidth has room for it
 	 */
     private void readInputStream(){
 
         try{
-			int imgSize = readMessageLength();
-			byte[] imgData = readExactly(in, imgSize);
+			MuxInput.Message message = muxIn.read();
+			// Everything the client sends shows it is alive, not just its keepalives
+			resetTimer();
+
+			try{
+
+				if(message.getChannel() == MuxChannel.FRAME){
+					handleFrame(message.getData(), message.getReceivedEvent());
+				} else if(message.getChannel() == MuxChannel.CURSOR){
+					handleCursor(message.getData());
+				} else if(message.getChannel() == MuxChannel.SNAPSHOT){
+					handleSnapshot(message.getData());
+				} else if(message.getChannel() == MuxChannel.HISTORY){
+					handleHistory(message.getData());
+				} else if(message.getChannel() == MuxChannel.CONTROL){
+					handleCommand(message.getText());
+				}
+
+			} finally{
+				message.release();
+			}
 
-            if(imgSize != -1 && streaming){
-                server.setImage(imgData);
-            }
+			server.getPacer().acquire(message.getData().length);
 
         } catch(SocketException sE){
             System.out.println("Pipeline broken");
+
+			// Already recorded when the connection was closed for missing heartbeats
+			if(connected){
+				recordDisconnect("Pipeline broken: " + sE.getMessage());
+			}
+
             connected = false;
         } catch(Exception ex){
             ex.printStackTrace();
+			recordDisconnect(ex.toString());
             connected = false;
         }
 
     }
 
 	/**
-	 * Sends streaming request to the client to start (true) or stop (false)
+	 * Records a SessionConnect event
+	 * 
+	 * @param resumed Whether the session was resumed on a new connection
+	 */
+	private void recordConnect(Boolean resumed){
+		StreamerEvents.SessionConnect event = new StreamerEvents.SessionConnect();
+
+		if(event.isEnabled()){
+			event.session = sessionId;
+			event.user = username.get();
+			event.room = room;
+			event.address = String.valueOf(clientSocket.getRemoteSocketAddress());
+			event.resumed = resumed;
+			event.commit();
+		}
+
+	}
+
+	/**
+	 * Records a SessionDisconnect event
+	 * 
+	 * @param reason Why the connection broke or the session ended
+	 */
+	private void recordDisconnect(String reason){
+		StreamerEvents.SessionDisconnect event = new StreamerEvents.SessionDisconnect();
+
+		if(event.isEnabled()){
+			event.session = sessionId;
+			event.user = username.get();
+			event.reason = reason;
+			event.commit();
+		}
+
+	}
+
+	/**
+	 * Shows a frame received over either transport if it belongs to the viewed display
+	 * 
+	 * @param message The bytes of the FrameMessage
+	 * @param readEvent The FrameReceived event timing the read of the frame, or null if it arrived over UDP
+	 */
+	private void handleFrame(byte[] message, StreamerEvents.FrameReceived readEvent){
+		long received = FrameTrace.now();
+		MemoryGovernor governor = MemoryGovernor.get();
+
+		// Parsing copies the frame out of the message, so the copy is reserved like the message was
+		if(!governor.tryReserve(message.length)){
+			System.out.println("Memory budget full, dropped frame from " + address);
+			return;
+		}
+
+		try{
+			FrameMessage frame = FrameMessage.parse(message);
+
+			if(!FrameCodecs.supported.contains(frame.getCodec())){
+				System.out.println("Dropped frame from " + address + " in unknown codec " + frame.getCodec());
+				return;
+			}
+
+			FrameTrace trace = frame.getTrace();
+			StreamerEvents.FrameReceived receivedEvent = readEvent == null ? new StreamerEvents.FrameReceived() : readEvent;
+
+			if(receivedEvent.shouldCommit()){
+				receivedEvent.session = sessionId;
+				receivedEvent.display = frame.getDisplay();
+				receivedEvent.codec = frame.getCodec();
+				receivedEvent.size = message.length;
+				receivedEvent.transport = readEvent == null ? udpTransport : "tcp";
+				receivedEvent.commit();
+			}
+
+			if(trace != null){
+				latency.received(trace, received);
+			}
+
+			if(frame.getCodec().equals(JpegCodec.name)){
+				cacheFrame(frame);
+			}
+
+			if(streaming && frame.getDisplay() == viewedDisplay){
+				StreamerEvents.FrameDecoded decodedEvent = new StreamerEvents.FrameDecoded();
+				decodedEvent.begin();
+
+				try{
+					server.setImage(frame.getData(), getDecoder(frame.getDisplay(), frame.getCodec()));
+					decodedEvent.succeeded = true;
+
+					if(trace != null){
+						latency.decoded(trace.getSequence(), FrameTrace.now());
+						server.whenShown(() -> latency.displayed(trace.getSequence(), FrameTrace.now()));
+					}
+
+				} catch(IOException ioE){
+					System.out.println("Could not decode frame from " + address + ": " + ioE.getMessage());
+					requestKeyframe(frame.getDisplay());
+				}
+
+				decodedEvent.end();
+
+				if(decodedEvent.shouldCommit()){
+					decodedEvent.session = sessionId;
+					decodedEvent.codec = frame.getCodec();
+					decodedEvent.size = frame.getData().length;
+					decodedEvent.commit();
+				}
+
+			}
+
+		} catch(IOException ioE){
+			System.out.println("Could not read frame from " + address);
+		} finally{
+			governor.release(message.length);
+		}
+
+	}
+
+	/**
+	 * Keeps a frame as the newest JPEG frame of the session
+	 * 
+	 * @param frame The frame, which must be JPEG encoded
+	 */
+	private synchronized void cacheFrame(FrameMessage frame){
+		latestFrame = new CachedFrame(frame, sessionId + "-" + ++cachedFrames);
+	}
+
+	/**
+	 * Asks the client for a single frame of the viewed display, whether or not it is streaming
+	 * 
+	 * @return Returns a future completed with the frame when it arrives, or exceptionally if the request cannot be sent
+	 */
+	public CompletableFuture<FrameMessage> requestSnapshot(){
+		CompletableFuture<FrameMessage> request = new CompletableFuture<FrameMessage>();
+		snapshot = request;
+
+		try{
+
+			if(!connected){
+				throw new IOException("Not connected");
+			}
+
+			sendCommand(snapshotString + viewedDisplay);
+		} catch(IOException ioE){
+			request.completeExceptionally(ioE);
+		}
+
+		return request;
+	}
+
+	/**
+	 * Completes the pending snapshot request with the frame the client sent. Frames nobody is waiting for any more are dropped
+	 * 
+	 * @param message The bytes of the FrameMessage
+	 */
+	private void handleSnapshot(byte[] message){
+		CompletableFuture<FrameMessage> request = snapshot;
+		snapshot = null;
+
+		if(request == null){
+			return;
+		}
+
+		try{
+			FrameMessage frame = FrameMessage.parse(message);
+			cacheFrame(frame);
+			request.complete(frame);
+		} catch(IOException ioE){
+			request.completeExceptionally(ioE);
+		}
+
+	}
+
+	/**
+	 * Files a frame the client captured while it was offline into the student's history, queues it for the FrameIndexer, and tells the client it can be dropped
+	 * 
+	 * @param message The bytes of the HistoryFrame
+	 */
+	private void handleHistory(byte[] message){
+
+		try{
+			HistoryFrame frame = HistoryFrame.parse(message);
+			FrameIndexer.get().offer(history.add(frame));
+			sendCommand(historyAckString + frame.getCapturedAt() + "," + frame.getFrame().getDisplay());
+		} catch(IOException ioE){
+			System.out.println("Could not file offline frame from " + address + ": " + ioE.getMessage());
+		}
+
+	}
+
+	/**
+	 * Handles a command sent by the client after the handshake, which are keepalives, activity samples, throttle changes, and the replies to pushed files
+	 * 
+	 * @param command The text of the command
+	 */
+	private void handleCommand(String command){
+
+		if(command.startsWith(pingString)){
+			// Echoes the client's send time with the receive and reply times for its clock offset estimate, as heartbeat datagrams do
+			long received = FrameTrace.now();
+
+			try{
+				muxOut.send(MuxChannel.CONTROL, pongString + command.substring(pingString.length()) + "," + received + "," + FrameTrace.now());
+			} catch(IOException ioE){
+				System.out.println("Could not answer keepalive from " + address);
+			}
+
+			return;
+		}
+
+		if(command.startsWith(activityString)){
+
+			try{
+				activity.add(ActivitySample.parse(command.substring(activityString.length())), System.currentTimeMillis());
+			} catch(IOException ioE){
+				System.out.println(ioE.getMessage() + " from " + address);
+			}
+
+			return;
+		}
+
+		if(command.startsWith(throttleString)){
+
+			try{
+				throttle = Throttle.parse(command.substring(throttleString.length()));
+				System.out.println("Client " + address + " throttled to step " + throttle.getStep());
+			} catch(IOException ioE){
+				System.out.println(ioE.getMessage() + " from " + address);
+			}
+
+			return;
+		}
+
+		String prefix = command.startsWith(FileReceiver.resumeString) ? FileReceiver.resumeString
+			: command.startsWith(FileReceiver.ackString) ? FileReceiver.ackString
+			: command.startsWith(FileReceiver.doneString) ? FileReceiver.doneString
+			: command.startsWith(FileReceiver.failString) ? FileReceiver.failString : null;
+
+		if(prefix == null){
+			System.out.println("Unknown command " + command + " from " + address);
+			return;
+		}
+
+		String[] fields = command.substring(prefix.length()).split(",", 2);
+		FileSender sender = fileSenders.get(fields[0]);
+
+		if(sender == null){
+			return;
+		}
+
+		try{
+
+			if(prefix.equals(FileReceiver.resumeString)){
+				sender.resumeFrom(Long.parseLong(fields[1]));
+			} else if(prefix.equals(FileReceiver.ackString)){
+				sender.acknowledge(Long.parseLong(fields[1]));
+			} else{
+				Boolean success = prefix.equals(FileReceiver.doneString);
+
+				if(!success){
+					System.out.println("Client " + address + " could not receive file: " + (fields.length > 1 ? fields[1] : "unknown reason"));
+				}
+
+				fileSenders.remove(fields[0]);
+				sender.finish(success);
+			}
+
+		} catch(RuntimeException rE){
+			System.out.println("Malformed command " + command + " from " + address);
+		}
+
+	}
+
+	/**
+	 * Pushes a file to the client on the FILE channel, replacing any unfinished push of the same file
+	 * 
+	 * @param source The file to be pushed
+	 * @return Returns a future completed with whether the client received the file
+	 */
+	public CompletableFuture<Boolean> pushFile(FileSource source){
+		FileSender sender = new FileSender(source, new FileSender.Link(){
+
+			@Override
+			public void sendCommand(String command) throws IOException{
+				ClientHandler.this.sendCommand(command);
+			}
+
+			@Override
+			public void sendChunk(byte[] chunk) throws IOException{
+
+				if(!connected){
+					throw new IOException("Not connected");
+				}
+
+				muxOut.send(MuxChannel.FILE, chunk);
+			}
+
+		}, Config.fileWindow.get(), Config.fileDelay.get());
+		FileSender previous = fileSenders.put(source.getId(), sender);
+
+		if(previous != null){
+			previous.cancel();
+		}
+
+		if(closed){
+			sender.cancel();
+		} else{
+			sender.start();
+		}
+
+		return sender.getResult();
+	}
+
+	/**
+	 * Moves the pointer overlay if the update belongs to the viewed display and hides it otherwise, remembering the pointer's shape whenever one is sent
+	 * 
+	 * @param message The bytes of the CursorMessage
+	 */
+	private void handleCursor(byte[] message){
+
+		try{
+			CursorMessage cursor = CursorMessage.parse(message);
+
+			if(cursor.getShape() != null){
+				cursorShape = cursor.getShape();
+			}
+
+			if(streaming && cursor.getDisplay() == viewedDisplay){
+				server.setCursor(cursor.getX(), cursor.getY(), cursorShape);
+			} else if(streaming){
+				server.setCursor(-1, -1, cursorShape);
+			}
+
+		} catch(IOException ioE){
+			System.out.println("Could not read pointer from " + address);
+		}
+
+	}
+
+	/**
+	 * Gets the decoder for a codec and display, creating it the first time the pair is seen.
+	 * Decoders are kept per display because some codecs decode against the display's previous frame
+	 * 
+	 * @param display The index of the display
+	 * @param name The name of the codec
+	 * @return Returns the decoder
+	 * @throws IOException Throws an IOException when there is no codec with the name
+	 */
+	private FrameCodec getDecoder(int display, String name) throws IOException{
+
+		try{
+			return decoders.computeIfAbsent(display + ":" + name, n -> FrameCodecs.create(name, 1));
+		} catch(IllegalArgumentException iaE){
+			throw new IOException(iaE.getMessage());
+		}
+
+	}
+
+	/**
+	 * Asks the client to start a display over with a full frame after one could not be decoded, at most once every keyframeRequestDelay
+	 * 
+	 * @param display The index of the display
+	 * @throws IOException Throws an IOException when the command cannot be sent over the connected Socket's OutputStream
+	 */
+	private void requestKeyframe(int display) throws IOException{
+		long now = System.currentTimeMillis();
+
+		if(now - lastKeyframeRequest >= keyframeRequestDelay){
+			lastKeyframeRequest = now;
+			sendCommand(keyframeString + display);
+		}
+
+	}
+
+	/**
+	 * Asks the client to switch codecs. Frames are tagged with their codec, so frames already in flight still decode
+	 * 
+	 * @param name The name of the codec to be used
+	 * @throws IOException Throws an IOException when the command cannot be sent over the connected Socket's OutputStream
+	 */
+	public void setCodec(String name) throws IOException{
+
+		if(!name.equals(codec) && codecs.contains(name)){
+			sendCommand(codecString + name);
+			codec = name;
+		}
+
+	}
+
+	/**
+	 * Sends streaming request to the client to start (true) or stop (false) streaming the viewed display
 	 * 
 	 * @param b Indicates whether the client should stream or not
 	 * @throws IOException Throws an IOException when the command cannot be sent over the connected Socket's OutputStream
 	 */
     private void requestStreaming(Boolean b) throws IOException{
 
-		if(!streaming){
-			out.write(startString.getBytes());
+		if(b){
+			sendCommand(startString + viewedDisplay);
 		} else{
-			out.write(stopString.getBytes());
+			sendCommand(stopString);
 		}
 
 		streaming = b;
 	}
 
+	/**
+	 * Sends a command to the client if it is connected.
+	 * Commands to a session waiting to be resumed are dropped since the session state is resent when it resumes
+	 * 
+	 * @param command The command to be sent
+	 * @throws IOException Throws an IOException when the command cannot be sent over the connected Socket's OutputStream
+	 */
+	private void sendCommand(String command) throws IOException{
+
+		if(connected){
+			muxOut.send(MuxChannel.CONTROL, command);
+		}
+
+	}
+
+	/**
+	 * Changes which of the client's displays is viewed, moving the subscription over if the client is streaming
+	 * 
+	 * @param display The index of the display to be viewed
+	 * @throws IOException Throws an IOException when the command cannot be sent over the connected Socket's OutputStream
+	 */
+	public void viewDisplay(int display) throws IOException{
+
+		if(display == viewedDisplay || display < 0 || display >= displays.size()){
+			return;
+		}
+
+		if(streaming){
+			sendCommand(stopString + viewedDisplay);
+			viewedDisplay = display;
+			sendCommand(startString + viewedDisplay);
+		} else{
+			viewedDisplay = display;
+		}
+
+	}
+
+	/**
+	 * Asks the client to send less while memory is tight, or as usual again.
+	 * A degraded client pauses its offline uploads and sends smaller, lower quality snapshots
+	 * 
+	 * @param degraded Whether the client should send less
+	 * @throws IOException Throws an IOException when the command cannot be sent over the connected Socket's OutputStream
+	 */
+	public void setDegraded(Boolean degraded) throws IOException{
+
+		if(!degraded.equals(this.degraded)){
+			this.degraded = degraded;
+			sendCommand(degradeString + (degraded ? 1 : 0));
+		}
+
+	}
+
 	/**
 	 * Sends a message to be displayed on the client's screen
 	 * 
@@ -255,7 +1063,7 @@ public class ClientHandler extends Thread {
 	 * @throws IOException Throws an IOException if the message cannot be send over the connected Socket's OutputStream
 	 */
 	public void sendAlert(String message) throws IOException{
-		out.write((msgString + message).getBytes());
+		muxOut.send(MuxChannel.CONTROL, msgString + message);
     }
 	
 	/**
@@ -265,16 +1073,102 @@ public class ClientHandler extends Thread {
         date = new Date();
     }
 
+	/**
+	 * @return Returns when the previous heartbeat from the client arrived, in milliseconds since the epoch
+	 */
+    public long getLastHeartbeat(){return date.getTime();}
+
 	/**
 	 * @return Returns the username SimpleStringProperty
 	 */
     public SimpleStringProperty usernameProperty(){return username;}
 
+	/**
+	 * @return Returns the SimpleStringProperty describing how active the seat is
+	 */
+    public SimpleStringProperty activityProperty(){return activityText;}
+
+	/**
+	 * Brings the description of how active the seat is up to date, which also notices a seat that stopped sending samples.
+	 * Must be called on the JavaFX application thread
+	 */
+	public void updateActivity(){
+		String throttled = throttle.describe();
+		activityText.set(throttled.isEmpty() ? getActivity() : getActivity() + ", " + throttled);
+	}
+
+	/**
+	 * @return Returns a description of how active the seat is, such as "Active 12%", "Idle 4 min", or "Frozen"
+	 */
+	public String getActivity(){
+		return activity.describe(System.currentTimeMillis(), Config.activityInterval.get(), Config.idleDelay.get());
+	}
+
+	/**
+	 * @return Returns how much the client has throttled its capture to stay within its CPU budget
+	 */
+    public Throttle getThrottle(){return throttle;}
+
+	/**
+	 * @return Returns the newest JPEG frame received, streamed or snapshot, or null if there has been none
+	 */
+    public CachedFrame getLatestFrame(){return latestFrame;}
+
+	/**
+	 * @return Returns where the frames the client captured while offline are filed, or null before the client has logged in
+	 */
+    public SessionHistory getHistory(){return history;}
+
+	/**
+	 * @return Returns the id of the room the session is in
+	 */
+    public String getRoom(){return room;}
+
+	/**
+	 * @return Returns whether the session's client is streaming to the Server
+	 */
+    public Boolean isStreaming(){return streaming;}
+
+	/**
+	 * @return Returns the unique id of the session
+	 */
+    public long getSessionId(){return sessionId;}
+
+	/**
+	 * @return Returns the breakdown of the session's frame latency
+	 */
+    public LatencyTracker getLatency(){return latency;}
+
+	/**
+	 * @return Returns the token a reconnecting client presents to resume the session
+	 */
+    public String getSessionToken(){return sessionToken;}
+
 	/**
 	 * @return Returns the client's InetAddress
 	 */
     public InetAddress getAddress(){return address;}
 
+	/**
+	 * @return Returns the descriptions of the client's displays
+	 */
+    public List<String> getDisplays(){return displays;}
+
+	/**
+	 * @return Returns the index of the display being viewed
+	 */
+    public int getViewedDisplay(){return viewedDisplay;}
+
+	/**
+	 * @return Returns the names of the codecs the client supports
+	 */
+    public List<String> getCodecs(){return codecs;}
+
+	/**
+	 * @return Returns the name of the codec the session uses
+	 */
+    public String getCodec(){return codec;}
+
 	/**
 	 * @return Returns if the socket is connected or not
 	 */
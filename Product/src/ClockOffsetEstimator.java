@@ -0,0 +1,64 @@
+/**
+ * This is the NTP-style estimate of how far the Server's clock is ahead of the Client's, fed by the timestamps on heartbeats.
+ * A heartbeat sent at t1 and received at t2 by the Server, answered at t3 and received back at t4, gives an offset of
+ * ((t2 - t1) + (t3 - t4)) / 2 that is off by at most half the round trip spent on the network. Of the recent samples the one with the
+ * shortest round trip is used, since queueing delays it and makes it asymmetric
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ClockOffsetEstimator {
+    private long[] offsets;
+    private long[] delays;
+    private int count = 0;
+    private int next = 0;
+
+    /**
+     * Constructor for the ClockOffsetEstimator class
+     * 
+     * @param window The number of recent samples the best is picked from
+     */
+    public ClockOffsetEstimator(int window){
+        offsets = new long[window];
+        delays = new long[window];
+    }
+
+    /**
+     * Adds the timestamps of one heartbeat
+     * 
+     * @param sent When the Client sent the heartbeat, on the Client's clock
+     * @param received When the Server received it, on the Server's clock
+     * @param replied When the Server answered, on the Server's clock
+     * @param answered When the Client received the answer, on the Client's clock
+     */
+    public synchronized void addSample(long sent, long received, long replied, long answered){
+        long delay = (answered - sent) - (replied - received);
+
+        if(delay < 0){
+            return;
+        }
+
+        offsets[next] = ((received - sent) + (replied - answered)) / 2;
+        delays[next] = delay;
+        next = (next + 1) % offsets.length;
+        count = Math.min(count + 1, offsets.length);
+    }
+
+    /**
+     * @return Returns how many microseconds the Server's clock is ahead of the Client's, or 0 before any heartbeat was answered
+     */
+    public synchronized long getOffset(){
+        int best = -1;
+
+        for(int i = 0; i < count; i++){
+
+            if(best == -1 || delays[i] < delays[best]){
+                best = i;
+            }
+
+        }
+
+        return best == -1 ? 0 : offsets[best];
+    }
+
+}
@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This is the benchmark which compares every FrameCodec on a corpus of screen captures.
+ * Run with a directory of PNG/JPEG screenshots as the argument to use real captures, otherwise a generated corpus is used
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class CodecBenchmark {
+    private static final int width = 1280;
+    private static final int height = 800;
+    private static final int warmupRuns = 5;
+    private static final int measuredRuns = 20;
+
+    /**
+     * Runs the benchmark and prints bytes per frame and encode/decode milliseconds for each codec and capture
+     * 
+     * @param args An optional directory of screenshots to be used as the corpus
+     * @throws IOException Throws an IOException when a screenshot cannot be read
+     */
+    public static void main(String[] args) throws IOException{
+        List<String> names = new ArrayList<String>();
+        List<BufferedImage> corpus = new ArrayList<BufferedImage>();
+
+        if(args.length > 0){
+
+            for(File file : new File(args[0]).listFiles()){
+                BufferedImage image = ImageIO.read(file);
+
+                if(image != null){
+                    names.add(file.getName());
+                    corpus.add(ImageScaler.fit(image, width, height));
+                }
+
+            }
+
+        } else{
+            names.add("code-editor");
+            corpus.add(SyntheticScreenSource.render(width, height, 0));
+            names.add("document");
+            corpus.add(drawDocument());
+            names.add("dialog");
+            corpus.add(drawDialog());
+            names.add("photo");
+            corpus.add(drawPhoto());
+        }
+
+        System.out.printf("%-16s %-8s %12s %10s %10s%n", "capture", "codec", "bytes/frame", "encode ms", "decode ms");
+
+        for(int i = 0; i < corpus.size(); i++){
+
+            for(String codecName : FrameCodecs.supported){
+                measure(names.get(i), corpus.get(i), FrameCodecs.create(codecName, 0.8f));
+            }
+
+        }
+
+    }
+
+    /**
+     * Measures a single codec on a single capture
+     * 
+     * @param name The name of the capture
+     * @param image The capture
+     * @param codec The codec to be measured
+     * @throws IOException Throws an IOException when the codec fails
+     */
+    private static void measure(String name, BufferedImage image, FrameCodec codec) throws IOException{
+        byte[] data = null;
+
+        for(int i = 0; i < warmupRuns; i++){
+            codec.decode(codec.encode(image));
+        }
+
+        long encodeTime = 0;
+        long decodeTime = 0;
+
+        for(int i = 0; i < measuredRuns; i++){
+            long start = System.nanoTime();
+            data = codec.encode(image);
+            long encoded = System.nanoTime();
+            codec.decode(data);
+            decodeTime += System.nanoTime() - encoded;
+            encodeTime += encoded - start;
+        }
+
+        System.out.printf("%-16s %-8s %12d %10.2f %10.2f%n", name, codec.getName(), data.length, encodeTime / 1e6 / measuredRuns, decodeTime / 1e6 / measuredRuns);
+    }
+
+    /**
+     * @return Returns a page of dense black text on white
+     */
+    private static BufferedImage drawDocument(){
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SERIF, Font.PLAIN, 13));
+
+        for(int y = 40; y < height - 40; y += 16){
+            g.drawString("The quick brown fox jumps over the lazy dog while the students finish their exercises " + y, 80, y);
+        }
+
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @return Returns a flat user interface with a few buttons and panels
+     */
+    private static BufferedImage drawDialog(){
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0x3A6EA5));
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(0xF0F0F0));
+        g.fillRect(width / 4, height / 4, width / 2, height / 2);
+        g.setColor(new Color(0xDDDDDD));
+
+        for(int i = 0; i < 3; i++){
+            g.fillRect(width / 4 + 40 + i * 140, height * 3 / 4 - 60, 120, 32);
+        }
+
+        g.setColor(Color.BLACK);
+        g.drawString("Are you sure you want to submit your answers?", width / 4 + 40, height / 4 + 60);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @return Returns a noisy gradient resembling a photograph or video
+     */
+    private static BufferedImage drawPhoto(){
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+
+        for(int y = 0; y < height; y++){
+
+            for(int x = 0; x < width; x++){
+                int r = Math.min(255, x * 255 / width + random.nextInt(24));
+                int g = Math.min(255, y * 255 / height + random.nextInt(24));
+                int b = Math.min(255, 128 + random.nextInt(24));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+
+        }
+
+        return image;
+    }
+
+}
@@ -0,0 +1,253 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * This is the class that holds every tunable network and capture parameter.
+ * Values are taken from, in increasing order of priority: the defaults below, the properties file, system properties prefixed with "streamer.",
+ * and command line arguments of the form --name=value. The properties file (streamer.properties, or --config=path) is watched and reloaded
+ * while running; settings marked as reloadable take effect on their next use, the others keep the value they had when first read
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class Config {
+    private static volatile Map<String, String> values = new HashMap<String, String>();
+    private static Map<String, String> arguments = new HashMap<String, String>();
+    private static File file = new File("streamer.properties");
+    private static long fileModified = 0;
+    private static List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+    private static final String propertyPrefix = "streamer.";
+    private static final String argumentPrefix = "--";
+    private static final String configArgument = "config";
+
+    public static final Setting<Integer> port = new Setting<Integer>("port", 53, false, Integer::valueOf);
+    public static final Setting<Integer> datagramBufferSize = new Setting<Integer>("datagramBufferSize", 1500, false, Integer::valueOf);
+    public static final Setting<Integer> chunkSize = new Setting<Integer>("chunkSize", 16384, false, Integer::valueOf);
+    public static final Setting<Integer> maxMessageSize = new Setting<Integer>("maxMessageSize", 16 * 1024 * 1024, false, Integer::valueOf);
+    public static final Setting<String> transport = new Setting<String>("transport", "tcp", true, String::trim);
+    public static final Setting<Integer> udpPayloadSize = new Setting<Integer>("udpPayloadSize", 1200, false, Integer::valueOf);
+    public static final Setting<Integer> udpGroupSize = new Setting<Integer>("udpGroupSize", 8, false, Integer::valueOf);
+    public static final Setting<Boolean> vectorKernels = new Setting<Boolean>("vectorKernels", true, false, Boolean::valueOf);
+    public static final Setting<Integer> activityInterval = new Setting<Integer>("activityInterval", 1000, true, Integer::valueOf);
+    public static final Setting<Integer> configReloadDelay = new Setting<Integer>("configReloadDelay", 2000, false, Integer::valueOf);
+    public static final Setting<String> sharedKey = new Setting<String>("sharedKey", "", true, String::trim);
+
+    public static final Setting<Integer> maxClients = new Setting<Integer>("maxClients", 100, true, Integer::valueOf);
+    public static final Setting<Integer> kickoutDelay = new Setting<Integer>("kickoutDelay", 10000, true, Integer::valueOf);
+    public static final Setting<Integer> resumeGrace = new Setting<Integer>("resumeGrace", 30000, true, Integer::valueOf);
+    public static final Setting<Integer> listRefreshDelay = new Setting<Integer>("listRefreshDelay", 250, false, Integer::valueOf);
+    public static final Setting<String> codec = new Setting<String>("codec", JpegCodec.name, true, String::trim);
+    public static final Setting<Integer> snapshotDeadline = new Setting<Integer>("snapshotDeadline", 3000, true, Integer::valueOf);
+    public static final Setting<Integer> snapshotTileWidth = new Setting<Integer>("snapshotTileWidth", 320, true, Integer::valueOf);
+    public static final Setting<String> snapshotDirectory = new Setting<String>("snapshotDirectory", "snapshots", true, String::trim);
+    public static final Setting<Integer> fileWindow = new Setting<Integer>("fileWindow", 4 * 1024 * 1024, true, Integer::valueOf);
+    public static final Setting<Integer> fileDelay = new Setting<Integer>("fileDelay", 100, true, Integer::valueOf);
+    public static final Setting<String> historyDirectory = new Setting<String>("historyDirectory", "history", true, String::trim);
+    public static final Setting<String> frameIndexFile = new Setting<String>("frameIndexFile", "frame-index.dat", false, String::trim);
+    public static final Setting<Integer> similarDistance = new Setting<Integer>("similarDistance", 10, true, Integer::valueOf);
+    public static final Setting<Integer> exportFrameRate = new Setting<Integer>("exportFrameRate", 10, true, Integer::valueOf);
+    public static final Setting<Integer> exportMaxGap = new Setting<Integer>("exportMaxGap", 60000, true, Integer::valueOf);
+    public static final Setting<Integer> idleDelay = new Setting<Integer>("idleDelay", 60000, true, Integer::valueOf);
+    public static final Setting<Integer> maxFramePixels = new Setting<Integer>("maxFramePixels", 7680 * 4320, true, Integer::valueOf);
+    public static final Setting<Integer> memoryBudget = new Setting<Integer>("memoryBudget", 0, false, Integer::valueOf);
+    public static final Setting<String> rooms = new Setting<String>("rooms", "", false, String::trim);
+    public static final Setting<Integer> roomBandwidth = new Setting<Integer>("roomBandwidth", 0, true, Integer::valueOf);
+    public static final Setting<Integer> memoryWait = new Setting<Integer>("memoryWait", 2000, true, Integer::valueOf);
+    public static final Setting<Integer> apiPort = new Setting<Integer>("apiPort", 8053, false, Integer::valueOf);
+    public static final Setting<String> apiAddress = new Setting<String>("apiAddress", "127.0.0.1", false, String::trim);
+
+    public static final Setting<String> room = new Setting<String>("room", "", false, String::trim);
+    public static final Setting<String> liveness = new Setting<String>("liveness", "tcp", true, String::trim);
+    public static final Setting<Integer> keepaliveInterval = new Setting<Integer>("keepaliveInterval", 2000, true, Integer::valueOf);
+    public static final Setting<Integer> checkDelay = new Setting<Integer>("checkDelay", 500, true, Integer::valueOf);
+    public static final Setting<Integer> heartbeatTimeout = new Setting<Integer>("heartbeatTimeout", 1000, true, Integer::valueOf);
+    public static final Setting<Integer> timeoutDelay = new Setting<Integer>("timeoutDelay", 10000, true, Integer::valueOf);
+    public static final Setting<Integer> connectTimeout = new Setting<Integer>("connectTimeout", 500, true, Integer::valueOf);
+    public static final Setting<Integer> resumeWindow = new Setting<Integer>("resumeWindow", 5000, true, Integer::valueOf);
+    public static final Setting<Integer> resumeRetryDelay = new Setting<Integer>("resumeRetryDelay", 100, true, Integer::valueOf);
+    public static final Setting<Integer> captureInterval = new Setting<Integer>("captureInterval", 100, true, Integer::valueOf);
+    public static final Setting<Float> compressionQuality = new Setting<Float>("compressionQuality", 0.8f, true, Float::valueOf);
+    public static final Setting<Integer> maxCaptureWidth = new Setting<Integer>("maxCaptureWidth", 1280, true, Integer::valueOf);
+    public static final Setting<Integer> maxCaptureHeight = new Setting<Integer>("maxCaptureHeight", 800, true, Integer::valueOf);
+    public static final Setting<Integer> cursorRate = new Setting<Integer>("cursorRate", 60, true, Integer::valueOf);
+    public static final Setting<Integer> cpuBudget = new Setting<Integer>("cpuBudget", 25, true, Integer::valueOf);
+    public static final Setting<Integer> governorInterval = new Setting<Integer>("governorInterval", 2000, true, Integer::valueOf);
+    public static final Setting<Boolean> synthetic = new Setting<Boolean>("synthetic", false, false, Boolean::valueOf);
+    public static final Setting<String> fileDirectory = new Setting<String>("fileDirectory", "received", false, String::trim);
+    public static final Setting<Integer> offlineInterval = new Setting<Integer>("offlineInterval", 10000, true, Integer::valueOf);
+    public static final Setting<Integer> offlineWindow = new Setting<Integer>("offlineWindow", 15 * 60 * 1000, true, Integer::valueOf);
+    public static final Setting<Integer> offlineBufferSize = new Setting<Integer>("offlineBufferSize", 64 * 1024 * 1024, true, Integer::valueOf);
+    public static final Setting<Integer> offlineUploadRate = new Setting<Integer>("offlineUploadRate", 256, true, Integer::valueOf);
+    public static final Setting<String> offlineDirectory = new Setting<String>("offlineDirectory", "offline", false, String::trim);
+
+    /**
+     * This is a single typed configuration value
+     * 
+     * @param <T> The type of the value
+     */
+    public static class Setting<T> {
+        private String name;
+        private T defaultValue;
+        private Boolean reloadable;
+        private Function<String, T> parser;
+        private volatile T fixedValue = null;
+
+        /**
+         * Constructor for the Setting class
+         * 
+         * @param name The name used in the properties file, system properties, and command line
+         * @param defaultValue The value used when none is configured
+         * @param reloadable Whether changes to the properties file apply while running
+         * @param parser Converts the configured text to the value
+         */
+        public Setting(String name, T defaultValue, Boolean reloadable, Function<String, T> parser){
+            this.name = name;
+            this.defaultValue = defaultValue;
+            this.reloadable = reloadable;
+            this.parser = parser;
+        }
+
+        /**
+         * @return Returns the current value of the setting
+         */
+        public T get(){
+
+            if(!reloadable && fixedValue != null){
+                return fixedValue;
+            }
+
+            T value = defaultValue;
+            String text = values.get(name);
+
+            if(text != null){
+
+                try{
+                    value = parser.apply(text.trim());
+                } catch(RuntimeException rEx){
+                    System.out.println("Invalid value " + text + " for " + name + ", using " + defaultValue);
+                }
+
+            }
+
+            if(!reloadable){
+                fixedValue = value;
+            }
+
+            return value;
+        }
+
+        /**
+         * @return Returns the name of the setting
+         */
+        public String getName(){return name;}
+
+    }
+
+    /**
+     * Loads the configuration and starts watching the properties file for changes
+     * 
+     * @param args The command line arguments, of which those of the form --name=value are used
+     */
+    public static synchronized void load(String[] args){
+
+        for(String arg : args){
+
+            if(arg.startsWith(argumentPrefix) && arg.indexOf('=') > argumentPrefix.length()){
+                int split = arg.indexOf('=');
+                arguments.put(arg.substring(argumentPrefix.length(), split), arg.substring(split + 1));
+            }
+
+        }
+
+        if(arguments.containsKey(configArgument)){
+            file = new File(arguments.get(configArgument));
+        } else if(System.getProperty(propertyPrefix + configArgument) != null){
+            file = new File(System.getProperty(propertyPrefix + configArgument));
+        }
+
+        reload();
+
+        Thread watchThread = new Thread(() -> {
+
+            try{
+
+                while(true){
+                    Thread.sleep(configReloadDelay.get());
+
+                    if(file.lastModified() != fileModified){
+                        reload();
+                        System.out.println("Reloaded configuration from " + file);
+
+                        for(Runnable listener : listeners){
+                            listener.run();
+                        }
+
+                    }
+
+                }
+
+            } catch(InterruptedException iE){
+                System.out.println("Configuration watcher interrupted");
+            }
+
+        });
+
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Rereads the properties file and merges it with the system properties and command line arguments
+     */
+    private static synchronized void reload(){
+        Map<String, String> merged = new HashMap<String, String>();
+        fileModified = file.lastModified();
+
+        if(file.isFile()){
+
+            try(InputStream input = new FileInputStream(file)){
+                Properties properties = new Properties();
+                properties.load(input);
+
+                for(String name : properties.stringPropertyNames()){
+                    merged.put(name, properties.getProperty(name));
+                }
+
+            } catch(IOException ioE){
+                System.out.println("Could not read configuration file " + file);
+            }
+
+        }
+
+        for(String name : System.getProperties().stringPropertyNames()){
+
+            if(name.startsWith(propertyPrefix)){
+                merged.put(name.substring(propertyPrefix.length()), System.getProperty(name));
+            }
+
+        }
+
+        merged.putAll(arguments);
+        values = merged;
+    }
+
+    /**
+     * Adds a listener which is run on the watcher thread after the configuration is reloaded
+     * 
+     * @param listener The Runnable to be run
+     */
+    public static void addListener(Runnable listener){
+        listeners.add(listener);
+    }
+
+}
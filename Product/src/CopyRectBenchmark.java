@@ -0,0 +1,168 @@
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * This is the benchmark which measures bytes per frame on synthetic sequences of scrolling and moving windows,
+ * comparing the whole-frame codecs with the CopyRectCodec, and checking that the CopyRectCodec reproduces every frame exactly
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class CopyRectBenchmark {
+    private static final int width = 1280;
+    private static final int height = 800;
+    private static final int frameCount = 40;
+
+    /**
+     * Runs every sequence through every codec and prints bytes per frame and encode milliseconds per frame
+     * 
+     * @param args Unused
+     * @throws IOException Throws an IOException when a frame cannot be encoded
+     */
+    public static void main(String[] args) throws IOException{
+        String[] names = {"line-scroll", "smooth-scroll", "sideways-scroll", "window-move", "typing"};
+
+        for(String name : names){
+            List<BufferedImage> frames = sequence(name);
+            System.out.println(name);
+
+            for(String codecName : Arrays.asList(JpegCodec.name, DeflateCodec.name, CopyRectCodec.name)){
+                // Warm up with a throwaway instance so the stateful codec starts the measured run with a full frame
+                run(FrameCodecs.create(codecName, Config.compressionQuality.get()), frames, false);
+                run(FrameCodecs.create(codecName, Config.compressionQuality.get()), frames, true);
+            }
+
+        }
+
+    }
+
+    /**
+     * Encodes a sequence, skipping the first (full) frame in the averages, and checks that lossless codecs decode it exactly
+     * 
+     * @param codec The codec to be measured
+     * @param frames The sequence
+     * @param print Whether to print the results
+     * @throws IOException Throws an IOException when a frame cannot be encoded or decoded
+     */
+    private static void run(FrameCodec codec, List<BufferedImage> frames, boolean print) throws IOException{
+        FrameCodec decoder = FrameCodecs.create(codec.getName(), 1);
+        long bytes = 0;
+        long nanos = 0;
+        boolean exact = true;
+
+        for(int i = 0; i < frames.size(); i++){
+            long start = System.nanoTime();
+            byte[] data = codec.encode(frames.get(i));
+            long elapsed = System.nanoTime() - start;
+
+            if(i > 0){
+                bytes += data.length;
+                nanos += elapsed;
+            }
+
+            if(!codec.getName().equals(JpegCodec.name)){
+                exact &= samePixels(frames.get(i), decoder.decode(data));
+            }
+
+        }
+
+        if(print){
+            System.out.printf("  %-10s %9d bytes/frame %8.2f ms/frame%s%n", codec.getName(), bytes / (frames.size() - 1), nanos / 1e6 / (frames.size() - 1), exact ? "" : "   MISMATCH");
+        }
+
+    }
+
+    /**
+     * Builds a synthetic sequence
+     * 
+     * @param name The name of the sequence
+     * @return Returns the frames of the sequence
+     */
+    private static List<BufferedImage> sequence(String name){
+        List<BufferedImage> frames = new ArrayList<BufferedImage>();
+        BufferedImage document = SyntheticScreenSource.render(width * 2, height * 4, 0);
+
+        for(int i = 0; i < frameCount; i++){
+
+            switch(name){
+                case "line-scroll":
+                    frames.add(SyntheticScreenSource.render(width, height, i));
+                    break;
+                case "smooth-scroll":
+                    frames.add(crop(document, 0, i * 37));
+                    break;
+                case "sideways-scroll":
+                    frames.add(crop(document, i * 23, height));
+                    break;
+                case "window-move":
+                    frames.add(drawWindow(SyntheticScreenSource.render(width, height, 0), 100 + i * 13, 120 + i * 7, null));
+                    break;
+                default:
+                    frames.add(drawWindow(SyntheticScreenSource.render(width, height, 0), 300, 200, "Dear diary, today I typed".substring(0, Math.min(25, i))));
+                    break;
+            }
+
+        }
+
+        return frames;
+    }
+
+    /**
+     * @param source The image to crop
+     * @param x The left of the crop
+     * @param y The top of the crop
+     * @return Returns a copy of a screen-sized area of an image
+     */
+    private static BufferedImage crop(BufferedImage source, int x, int y){
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(source, -x, -y, null);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Draws a dialog window over a frame
+     * 
+     * @param image The frame
+     * @param x The left of the window
+     * @param y The top of the window
+     * @param text The text typed into the window, or null for its usual contents
+     * @return Returns the frame
+     */
+    private static BufferedImage drawWindow(BufferedImage image, int x, int y, String text){
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0x606060));
+        g.fillRect(x + 4, y + 4, 480, 300);
+        g.setColor(Color.WHITE);
+        g.fillRect(x, y, 480, 300);
+        g.setColor(new Color(0x2B579A));
+        g.fillRect(x, y, 480, 28);
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 15));
+        g.drawString(text != null ? text : "Are you sure you want to close without saving?", x + 20, y + 80);
+        g.drawString("Unsaved changes to Main.java will be lost.", x + 20, y + 110);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @param expected The original frame
+     * @param actual The decoded frame
+     * @return Returns whether the frames have the same RGB values everywhere
+     */
+    private static boolean samePixels(BufferedImage expected, BufferedImage actual){
+        int[] a = expected.getRGB(0, 0, width, height, null, 0, width);
+        int[] b = actual.getRGB(0, 0, width, height, null, 0, width);
+        return Arrays.equals(a, b);
+    }
+
+}
@@ -0,0 +1,707 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * This is the lossless FrameCodec that sends frames as changes to the previous frame, so scrolling a document or moving a window
+ * costs a few copy instructions and the newly exposed strip instead of a whole frame.
+ * Motion is found by hashing short runs of pixels of the new frame and voting on where the same runs sit in the previous frame.
+ * Copies are applied from the previous frame, then every 16 pixel tile that still differs is sent as deflated, vertically differenced RGB.
+ *
+ * The codec keeps the previous frame, so each display needs its own instance on both sides. Every frame names the frame it was
+ * encoded against, and decoding throws an IOException when that is not the frame the decoder holds, after which the encoder must
+ * be replaced so that it starts again with a full frame
+ *
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class CopyRectCodec implements FrameCodec {
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private Inflater inflater = new Inflater();
+    private byte[] buffer = new byte[65536];
+    private int[] previous = null;
+    private int previousWidth = 0;
+    private int previousHeight = 0;
+    private int frameId = -1;
+
+    public static final String name = "copyrect";
+    private static final int tileSize = 16;
+    private static final int segmentLength = 32;
+    private static final int sampleRowStep = 4;
+    private static final int minVotes = 8;
+    private static final int maxMotions = 2;
+    private static final int hashBase = 0x01000193;
+    private static final int noReference = -1;
+    private static final int ambiguous = -1;
+
+    /**
+     * @return Returns the name of the codec
+     */
+    @Override
+    public String getName(){return name;}
+
+    /**
+     * Encodes a frame as a header (width, height, frame id, reference frame id), the copy instructions (source x and y,
+     * destination x and y, width and height), the rectangles that are sent as pixels, and finally the deflated pixels of those rectangles.
+     * The first frame, and any frame whose size changed, is a single rectangle covering the whole frame
+     *
+     * @param image The frame to be encoded
+     * @return Returns the encoded bytes
+     * @throws IOException Never thrown, declared by FrameCodec
+     */
+    @Override
+    public synchronized byte[] encode(BufferedImage image) throws IOException{
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = FramePixels.read(image);
+        List<int[]> copies = new ArrayList<int[]>();
+        List<int[]> rects = new ArrayList<int[]>();
+        int reference = noReference;
+
+        if(previous == null || width != previousWidth || height != previousHeight){
+            rects.add(new int[] {0, 0, width, height});
+        } else{
+            reference = frameId;
+            Rectangle changed = findChanged(previous, pixels, width, height);
+
+            if(changed != null){
+                int[] predicted = previous.clone();
+                int tilesX = (changed.x + changed.width - 1) / tileSize - changed.x / tileSize + 1;
+                int tilesY = (changed.y + changed.height - 1) / tileSize - changed.y / tileSize + 1;
+                boolean[] claimed = new boolean[tilesX * tilesY];
+
+                for(Point motion : findMotions(previous, pixels, width, changed)){
+                    boolean[] mask = matchTiles(previous, pixels, width, height, changed, motion, claimed);
+
+                    for(int[] rect : toRects(mask, tilesX, tilesY, changed)){
+                        copies.add(new int[] {rect[0] - motion.x, rect[1] - motion.y, rect[0], rect[1], rect[2], rect[3]});
+                        copy(previous, predicted, width, rect[0] - motion.x, rect[1] - motion.y, rect[0], rect[1], rect[2], rect[3]);
+                    }
+
+                }
+
+                rects = toRects(dirtyTiles(predicted, pixels, width, changed), tilesX, tilesY, changed);
+            }
+
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(width);
+        output.writeInt(height);
+        output.writeInt(frameId + 1);
+        output.writeInt(reference);
+        output.writeShort(copies.size());
+
+        for(int[] copy : copies){
+
+            for(int value : copy){
+                output.writeShort(value);
+            }
+
+        }
+
+        output.writeShort(rects.size());
+        int residualSize = 0;
+
+        for(int[] rect : rects){
+
+            for(int value : rect){
+                output.writeShort(value);
+            }
+
+            residualSize += rect[2] * rect[3] * 3;
+        }
+
+        byte[] residual = new byte[residualSize];
+        int offset = 0;
+
+        for(int[] rect : rects){
+            offset = filter(pixels, width, rect, residual, offset);
+        }
+
+        deflater.reset();
+        deflater.setInput(residual);
+        deflater.finish();
+
+        while(!deflater.finished()){
+            int size = deflater.deflate(buffer);
+            output.write(buffer, 0, size);
+        }
+
+        output.flush();
+        previous = Arrays.copyOf(pixels, pixels.length);
+        previousWidth = width;
+        previousHeight = height;
+        frameId++;
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a frame encoded by this codec on top of the previous decoded frame
+     *
+     * @param data The encoded bytes
+     * @return Returns the decoded frame
+     * @throws IOException Throws an IOException when the bytes are corrupt or were encoded against a frame this decoder does not hold
+     */
+    @Override
+    public synchronized BufferedImage decode(byte[] data) throws IOException{
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        int width = input.readInt();
+        int height = input.readInt();
+        int id = input.readInt();
+        int reference = input.readInt();
+
+        // The pixels and at most twice the frame's bytes of residual
+        long reserved = FrameCodecs.reserveDecode(width, height, 4 + 3 * 2);
+
+        try{
+            return decode(input, data, width, height, id, reference);
+        } finally{
+            MemoryGovernor.get().release(reserved);
+        }
+
+    }
+
+    /**
+     * Decodes a frame encoded by this codec once its header has been read and its size checked and reserved
+     *
+     * @param input The stream over the encoded bytes, positioned after the header
+     * @param data The encoded bytes
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param id The id of the frame
+     * @param reference The id of the frame it was encoded against, or noReference
+     * @return Returns the decoded frame
+     * @throws IOException Throws an IOException when the bytes are corrupt or were encoded against a frame this decoder does not hold
+     */
+    private BufferedImage decode(DataInputStream input, byte[] data, int width, int height, int id, int reference) throws IOException{
+        int[] pixels;
+
+        if(reference == noReference){
+            pixels = new int[width * height];
+        } else if(previous == null || reference != frameId || width != previousWidth || height != previousHeight){
+            throw new IOException("Missing reference frame " + reference);
+        } else{
+            pixels = previous.clone();
+        }
+
+        int copyCount = input.readUnsignedShort();
+
+        if(reference == noReference && copyCount > 0){
+            throw new IOException("Copies in a full frame");
+        }
+
+        for(int i = 0; i < copyCount; i++){
+            int[] copy = readShorts(input, 6);
+            checkBounds(copy[0], copy[1], copy[4], copy[5], width, height);
+            checkBounds(copy[2], copy[3], copy[4], copy[5], width, height);
+            copy(previous, pixels, width, copy[0], copy[1], copy[2], copy[3], copy[4], copy[5]);
+        }
+
+        int rectCount = input.readUnsignedShort();
+        int[][] rects = new int[rectCount][];
+        long residualSize = 0;
+
+        for(int i = 0; i < rectCount; i++){
+            rects[i] = readShorts(input, 4);
+            checkBounds(rects[i][0], rects[i][1], rects[i][2], rects[i][3], width, height);
+            residualSize += (long) rects[i][2] * rects[i][3] * 3;
+        }
+
+        if(residualSize > (long) width * height * 3 * 2){
+            throw new IOException("Too many rectangles");
+        }
+
+        byte[] residual = new byte[(int) residualSize];
+        int headerSize = data.length - input.available();
+        inflater.reset();
+        inflater.setInput(data, headerSize, data.length - headerSize);
+
+        try{
+            int offset = 0;
+
+            while(offset < residual.length){
+                int size = inflater.inflate(residual, offset, residual.length - offset);
+
+                if(size == 0 && (inflater.finished() || inflater.needsInput())){
+                    throw new IOException("Frame truncated");
+                }
+
+                offset += size;
+            }
+
+        } catch(DataFormatException dfEx){
+            throw new IOException("Corrupt frame", dfEx);
+        }
+
+        int offset = 0;
+
+        for(int[] rect : rects){
+            offset = unfilter(residual, offset, pixels, width, rect);
+        }
+
+        previous = pixels;
+        previousWidth = width;
+        previousHeight = height;
+        frameId = id;
+        // Every decode starts from a fresh array, so the retained frame can be handed out as long as it is only read
+        return FramePixels.wrap(pixels, width, height);
+    }
+
+    /**
+     * Finds the smallest rectangle containing every pixel that changed between two frames
+     *
+     * @param before The previous frame
+     * @param after The new frame
+     * @param width The width of the frames
+     * @param height The height of the frames
+     * @return Returns the changed rectangle, or null when the frames are identical
+     */
+    private static Rectangle findChanged(int[] before, int[] after, int width, int height){
+        int top = -1;
+        int bottom = -1;
+        int left = width;
+        int right = -1;
+
+        for(int y = 0; y < height; y++){
+            int row = y * width;
+            int first = Arrays.mismatch(before, row, row + width, after, row, row + width);
+
+            if(first < 0){
+                continue;
+            }
+
+            int last = width - 1;
+
+            while(before[row + last] == after[row + last]){
+                last--;
+            }
+
+            if(top < 0){
+                top = y;
+            }
+
+            bottom = y;
+            left = Math.min(left, first);
+            right = Math.max(right, last);
+        }
+
+        return top < 0 ? null : new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    /**
+     * Finds the likeliest ways content moved within the changed rectangle.
+     * Runs of pixels are sampled from the new frame and looked up in every position of the previous frame, and each match votes for
+     * the offset between the two positions. Flat runs and runs that did not change are skipped since they say nothing about motion
+     *
+     * @param before The previous frame
+     * @param after The new frame
+     * @param width The width of the frames
+     * @param changed The changed rectangle
+     * @return Returns the offsets (new position minus old position) with enough votes, most votes first
+     */
+    private static List<Point> findMotions(int[] before, int[] after, int width, Rectangle changed){
+        List<Point> motions = new ArrayList<Point>();
+
+        if(changed.width < segmentLength){
+            return motions;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(16, (changed.height / sampleRowStep + 1) * (changed.width / segmentLength + 1) * 2)) * 2;
+        int[] sampleHashes = new int[capacity];
+        int[] samplePositions = new int[capacity];
+        boolean[] used = new boolean[capacity];
+        int samples = 0;
+
+        for(int y = changed.y; y < changed.y + changed.height; y += sampleRowStep){
+
+            for(int x = changed.x; x + segmentLength <= changed.x + changed.width; x += segmentLength){
+                int start = y * width + x;
+
+                if(isFlat(after, start) || Arrays.equals(before, start, start + segmentLength, after, start, start + segmentLength)){
+                    continue;
+                }
+
+                int hash = hash(after, start);
+                int slot = hash & (capacity - 1);
+
+                while(used[slot] && sampleHashes[slot] != hash){
+                    slot = (slot + 1) & (capacity - 1);
+                }
+
+                // Runs that appear more than once in the new frame cannot say where they came from
+                samplePositions[slot] = used[slot] ? ambiguous : start;
+                sampleHashes[slot] = hash;
+                used[slot] = true;
+                samples++;
+            }
+
+        }
+
+        if(samples < minVotes){
+            return motions;
+        }
+
+        int power = 1;
+
+        for(int i = 1; i < segmentLength; i++){
+            power *= hashBase;
+        }
+
+        Map<Long, Integer> votes = new HashMap<Long, Integer>();
+
+        for(int y = changed.y; y < changed.y + changed.height; y++){
+            int row = y * width;
+            int end = changed.x + changed.width;
+            int hash = hash(before, row + changed.x);
+
+            for(int x = changed.x; x + segmentLength <= end; x++){
+
+                if(x > changed.x){
+                    hash = (hash - before[row + x - 1] * power) * hashBase + before[row + x + segmentLength - 1];
+                }
+
+                int slot = hash & (capacity - 1);
+
+                while(used[slot] && sampleHashes[slot] != hash){
+                    slot = (slot + 1) & (capacity - 1);
+                }
+
+                if(!used[slot] || samplePositions[slot] == ambiguous){
+                    continue;
+                }
+
+                int dx = samplePositions[slot] % width - x;
+                int dy = samplePositions[slot] / width - y;
+
+                if(dx != 0 || dy != 0){
+                    votes.merge(((long) dx << 32) | (dy & 0xFFFFFFFFL), 1, Integer::sum);
+                }
+
+            }
+
+        }
+
+        votes.entrySet().stream()
+            .filter(vote -> vote.getValue() >= minVotes)
+            .sorted((a, b) -> b.getValue() - a.getValue())
+            .limit(maxMotions)
+            .forEach(vote -> motions.add(new Point((int) (vote.getKey() >> 32), (int) (long) vote.getKey())));
+        return motions;
+    }
+
+    /**
+     * Marks the tiles of the changed rectangle which the previous frame, shifted by an offset, reproduces exactly
+     *
+     * @param before The previous frame
+     * @param after The new frame
+     * @param width The width of the frames
+     * @param height The height of the frames
+     * @param changed The changed rectangle
+     * @param motion The offset content moved by
+     * @param claimed The tiles already reproduced by an earlier offset, which are updated with the tiles this offset reproduces
+     * @return Returns one flag per tile of the changed rectangle
+     */
+    private static boolean[] matchTiles(int[] before, int[] after, int width, int height, Rectangle changed, Point motion, boolean[] claimed){
+        int firstTileX = changed.x / tileSize;
+        int firstTileY = changed.y / tileSize;
+        int tilesX = (changed.x + changed.width - 1) / tileSize - firstTileX + 1;
+        boolean[] mask = new boolean[claimed.length];
+
+        for(int i = 0; i < mask.length; i++){
+
+            if(claimed[i]){
+                continue;
+            }
+
+            Rectangle tile = tile(i, tilesX, firstTileX, firstTileY, changed);
+
+            if(tile.x - motion.x < 0 || tile.y - motion.y < 0 || tile.x + tile.width - motion.x > width || tile.y + tile.height - motion.y > height){
+                continue;
+            }
+
+            boolean matches = true;
+            boolean unchanged = true;
+
+            for(int y = tile.y; y < tile.y + tile.height && matches; y++){
+                int start = y * width + tile.x;
+                int source = (y - motion.y) * width + tile.x - motion.x;
+                matches = Arrays.equals(before, source, source + tile.width, after, start, start + tile.width);
+                unchanged &= Arrays.equals(before, start, start + tile.width, after, start, start + tile.width);
+            }
+
+            // A tile that did not change needs no copy, and sending one would only cost bytes
+            mask[i] = matches && !unchanged;
+            claimed[i] |= mask[i];
+        }
+
+        return mask;
+    }
+
+    /**
+     * Marks the tiles of the changed rectangle which still differ from the new frame after the copies
+     *
+     * @param predicted The previous frame with the copies applied
+     * @param after The new frame
+     * @param width The width of the frames
+     * @param changed The changed rectangle
+     * @return Returns one flag per tile of the changed rectangle
+     */
+    private static boolean[] dirtyTiles(int[] predicted, int[] after, int width, Rectangle changed){
+        int firstTileX = changed.x / tileSize;
+        int firstTileY = changed.y / tileSize;
+        int tilesX = (changed.x + changed.width - 1) / tileSize - firstTileX + 1;
+        int tilesY = (changed.y + changed.height - 1) / tileSize - firstTileY + 1;
+        boolean[] mask = new boolean[tilesX * tilesY];
+
+        for(int i = 0; i < mask.length; i++){
+            Rectangle tile = tile(i, tilesX, firstTileX, firstTileY, changed);
+
+            for(int y = tile.y; y < tile.y + tile.height && !mask[i]; y++){
+                int start = y * width + tile.x;
+                mask[i] = !Arrays.equals(predicted, start, start + tile.width, after, start, start + tile.width);
+            }
+
+        }
+
+        return mask;
+    }
+
+    /**
+     * Merges marked tiles into rectangles, first along each row of tiles and then down rows whose runs line up
+     *
+     * @param mask One flag per tile of the changed rectangle
+     * @param tilesX The number of tiles across the changed rectangle
+     * @param tilesY The number of tiles down the changed rectangle
+     * @param changed The changed rectangle
+     * @return Returns the rectangles as x, y, width, and height
+     */
+    private static List<int[]> toRects(boolean[] mask, int tilesX, int tilesY, Rectangle changed){
+        int firstTileX = changed.x / tileSize;
+        int firstTileY = changed.y / tileSize;
+        List<int[]> rects = new ArrayList<int[]>();
+        List<int[]> open = new ArrayList<int[]>();
+
+        for(int ty = 0; ty < tilesY; ty++){
+            List<int[]> next = new ArrayList<int[]>();
+            int tx = 0;
+
+            while(tx < tilesX){
+
+                if(!mask[ty * tilesX + tx]){
+                    tx++;
+                    continue;
+                }
+
+                int start = tx;
+
+                while(tx < tilesX && mask[ty * tilesX + tx]){
+                    tx++;
+                }
+
+                Rectangle first = tile(ty * tilesX + start, tilesX, firstTileX, firstTileY, changed);
+                Rectangle last = tile(ty * tilesX + tx - 1, tilesX, firstTileX, firstTileY, changed);
+                int[] rect = null;
+
+                for(int[] candidate : open){
+
+                    if(candidate[0] == first.x && candidate[2] == last.x + last.width - first.x){
+                        rect = candidate;
+                        rect[3] += first.height;
+                        break;
+                    }
+
+                }
+
+                if(rect == null){
+                    rect = new int[] {first.x, first.y, last.x + last.width - first.x, first.height};
+                    rects.add(rect);
+                }
+
+                next.add(rect);
+            }
+
+            open = next;
+        }
+
+        return rects;
+    }
+
+    /**
+     * Gets the area of a tile clipped to the changed rectangle
+     *
+     * @param index The index of the tile within the changed rectangle
+     * @param tilesX The number of tiles across the changed rectangle
+     * @param firstTileX The column of the first tile in the frame's tile grid
+     * @param firstTileY The row of the first tile in the frame's tile grid
+     * @param changed The changed rectangle
+     * @return Returns the area of the tile
+     */
+    private static Rectangle tile(int index, int tilesX, int firstTileX, int firstTileY, Rectangle changed){
+        int x = (firstTileX + index % tilesX) * tileSize;
+        int y = (firstTileY + index / tilesX) * tileSize;
+        return new Rectangle(x, y, tileSize, tileSize).intersection(changed);
+    }
+
+    /**
+     * Copies a rectangle of pixels from one frame to another
+     *
+     * @param source The frame copied from
+     * @param target The frame copied to
+     * @param width The width of the frames
+     * @param sx The left of the source rectangle
+     * @param sy The top of the source rectangle
+     * @param dx The left of the target rectangle
+     * @param dy The top of the target rectangle
+     * @param w The width of the rectangle
+     * @param h The height of the rectangle
+     */
+    private static void copy(int[] source, int[] target, int width, int sx, int sy, int dx, int dy, int w, int h){
+
+        for(int row = 0; row < h; row++){
+            System.arraycopy(source, (sy + row) * width + sx, target, (dy + row) * width + dx, w);
+        }
+
+    }
+
+    /**
+     * Writes the RGB bytes of a rectangle, each pixel stored as its difference from the pixel above it within the rectangle
+     *
+     * @param pixels The frame
+     * @param width The width of the frame
+     * @param rect The rectangle as x, y, width, and height
+     * @param residual The bytes being written
+     * @param offset The position in the bytes to start at
+     * @return Returns the position after the rectangle
+     */
+    private static int filter(int[] pixels, int width, int[] rect, byte[] residual, int offset){
+
+        for(int y = rect[1]; y < rect[1] + rect[3]; y++){
+
+            for(int x = rect[0]; x < rect[0] + rect[2]; x++, offset += 3){
+                int pixel = pixels[y * width + x];
+                int above = y > rect[1] ? pixels[(y - 1) * width + x] : 0;
+                residual[offset] = (byte) ((pixel >> 16) - (above >> 16));
+                residual[offset + 1] = (byte) ((pixel >> 8) - (above >> 8));
+                residual[offset + 2] = (byte) (pixel - above);
+            }
+
+        }
+
+        return offset;
+    }
+
+    /**
+     * Reverses filter, writing the pixels of a rectangle into a frame
+     *
+     * @param residual The bytes being read
+     * @param offset The position in the bytes to start at
+     * @param pixels The frame
+     * @param width The width of the frame
+     * @param rect The rectangle as x, y, width, and height
+     * @return Returns the position after the rectangle
+     */
+    private static int unfilter(byte[] residual, int offset, int[] pixels, int width, int[] rect){
+
+        for(int y = rect[1]; y < rect[1] + rect[3]; y++){
+
+            for(int x = rect[0]; x < rect[0] + rect[2]; x++, offset += 3){
+                int above = y > rect[1] ? pixels[(y - 1) * width + x] : 0;
+                int r = (residual[offset] + (above >> 16)) & 0xFF;
+                int g = (residual[offset + 1] + (above >> 8)) & 0xFF;
+                int b = (residual[offset + 2] + above) & 0xFF;
+                pixels[y * width + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+
+        }
+
+        return offset;
+    }
+
+    /**
+     * @param pixels The frame
+     * @param start The index of the first pixel of the run
+     * @return Returns whether every pixel of a run is the same colour
+     */
+    private static boolean isFlat(int[] pixels, int start){
+
+        for(int i = start + 1; i < start + segmentLength; i++){
+
+            if(pixels[i] != pixels[start]){
+                return false;
+            }
+
+        }
+
+        return true;
+    }
+
+    /**
+     * @param pixels The frame
+     * @param start The index of the first pixel of the run
+     * @return Returns the polynomial hash of a run, which can be rolled along a row one pixel at a time
+     */
+    private static int hash(int[] pixels, int start){
+        int hash = 0;
+
+        for(int i = start; i < start + segmentLength; i++){
+            hash = hash * hashBase + pixels[i];
+        }
+
+        return hash;
+    }
+
+    /**
+     * Reads unsigned shorts
+     *
+     * @param input The stream being read
+     * @param count The number of shorts
+     * @return Returns the values
+     * @throws IOException Throws an IOException when the stream ends early
+     */
+    private static int[] readShorts(DataInputStream input, int count) throws IOException{
+        int[] values = new int[count];
+
+        for(int i = 0; i < count; i++){
+            values[i] = input.readUnsignedShort();
+        }
+
+        return values;
+    }
+
+    /**
+     * Checks that a rectangle lies within the frame
+     *
+     * @param x The left of the rectangle
+     * @param y The top of the rectangle
+     * @param w The width of the rectangle
+     * @param h The height of the rectangle
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @throws IOException Throws an IOException when the rectangle reaches outside the frame
+     */
+    private static void checkBounds(int x, int y, int w, int h, int width, int height) throws IOException{
+
+        if(x + w > width || y + h > height){
+            throw new IOException("Rectangle outside frame");
+        }
+
+    }
+
+}
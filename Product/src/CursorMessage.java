@@ -0,0 +1,148 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This is a single mouse pointer update sent on the CURSOR channel.
+ * The position is a fraction of the display's width and height so that it lines up with the frame however it was scaled,
+ * and a position outside 0 to 1 means the pointer has left the display. The pointer's shape, a PNG whose hotspot is its top left corner,
+ * is only included when it changes, which is once per connection since Java cannot read the system pointer's shape and clients only
+ * ever send the default arrow
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class CursorMessage {
+    private int display;
+    private float x;
+    private float y;
+    private byte[] shape;
+
+    private static byte[] defaultShape = null;
+
+    /**
+     * Constructor for the CursorMessage class
+     * 
+     * @param display The index of the display the pointer is over
+     * @param x The horizontal position as a fraction of the display's width
+     * @param y The vertical position as a fraction of the display's height
+     * @param shape The PNG of the pointer's shape, or null if it has not changed
+     */
+    public CursorMessage(int display, float x, float y, byte[] shape){
+        this.display = display;
+        this.x = x;
+        this.y = y;
+        this.shape = shape;
+    }
+
+    /**
+     * Parses a CursorMessage from the bytes of a CURSOR channel message
+     * 
+     * @param message The bytes of the message
+     * @return Returns the parsed CursorMessage
+     * @throws IOException Throws an IOException when the message is malformed
+     */
+    public static CursorMessage parse(byte[] message) throws IOException{
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(message));
+        int display = input.readUnsignedByte();
+        float x = input.readFloat();
+        float y = input.readFloat();
+        int shapeLength = input.readInt();
+
+        if(shapeLength < 0 || shapeLength > input.available()){
+            throw new IOException("Invalid shape length " + shapeLength);
+        }
+
+        byte[] shape = null;
+
+        if(shapeLength > 0){
+            shape = new byte[shapeLength];
+            input.readFully(shape);
+        }
+
+        return new CursorMessage(display, x, y, shape);
+    }
+
+    /**
+     * @return Returns the bytes of the CURSOR channel message
+     * @throws IOException Never thrown as the message is written to memory
+     */
+    public byte[] toBytes() throws IOException{
+        ByteArrayOutputStream output = new ByteArrayOutputStream(16 + (shape != null ? shape.length : 0));
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        dataOutput.writeByte(display);
+        dataOutput.writeFloat(x);
+        dataOutput.writeFloat(y);
+        dataOutput.writeInt(shape != null ? shape.length : 0);
+
+        if(shape != null){
+            dataOutput.write(shape);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Draws the default arrow pointer the first time it is needed
+     * 
+     * @return Returns the PNG of the default pointer
+     * @throws IOException Never thrown as the PNG is written to memory
+     */
+    public static synchronized byte[] getDefaultShape() throws IOException{
+
+        if(defaultShape == null){
+            BufferedImage image = new BufferedImage(14, 22, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            Polygon arrow = new Polygon(new int[] {1, 1, 5, 8, 10, 7, 12}, new int[] {1, 17, 13, 20, 19, 12, 12}, 7);
+            g.setColor(Color.BLACK);
+            g.fill(arrow);
+            g.setColor(Color.WHITE);
+            g.setStroke(new BasicStroke(1.2f));
+            g.draw(arrow);
+            g.dispose();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", output);
+            defaultShape = output.toByteArray();
+        }
+
+        return defaultShape;
+    }
+
+    /**
+     * @return Returns whether the pointer is over the display
+     */
+    public Boolean isVisible(){return x >= 0 && x <= 1 && y >= 0 && y <= 1;}
+
+    /**
+     * @return Returns the index of the display the pointer is over
+     */
+    public int getDisplay(){return display;}
+
+    /**
+     * @return Returns the horizontal position as a fraction of the display's width
+     */
+    public float getX(){return x;}
+
+    /**
+     * @return Returns the vertical position as a fraction of the display's height
+     */
+    public float getY(){return y;}
+
+    /**
+     * @return Returns the PNG of the pointer's shape, or null if it has not changed
+     */
+    public byte[] getShape(){return shape;}
+
+}
@@ -0,0 +1,143 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * This is the fast lossless FrameCodec tuned for screen content.
+ * Every pixel is stored as its difference from the pixel above it, which turns flat backgrounds and repeated rows into runs of zeroes,
+ * and the result is compressed with deflate at its fastest level
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class DeflateCodec implements FrameCodec {
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private Inflater inflater = new Inflater();
+    private byte[] buffer = new byte[65536];
+
+    public static final String name = "deflate";
+    private static final int headerSize = 8;
+
+    /**
+     * @return Returns the name of the codec
+     */
+    @Override
+    public String getName(){return name;}
+
+    /**
+     * Encodes a frame as an 8 byte width and height header followed by the deflated, vertically differenced RGB bytes
+     * 
+     * @param image The frame to be encoded
+     * @return Returns the encoded bytes
+     * @throws IOException Never thrown, declared by FrameCodec
+     */
+    @Override
+    public synchronized byte[] encode(BufferedImage image) throws IOException{
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = FramePixels.read(image);
+        byte[] filtered = new byte[width * height * 3];
+
+        for(int i = 0, j = 0; i < pixels.length; i++, j += 3){
+            int pixel = pixels[i];
+            int above = i >= width ? pixels[i - width] : 0;
+            filtered[j] = (byte) ((pixel >> 16) - (above >> 16));
+            filtered[j + 1] = (byte) ((pixel >> 8) - (above >> 8));
+            filtered[j + 2] = (byte) (pixel - above);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(filtered.length / 8 + headerSize);
+        output.write(ByteBuffer.allocate(headerSize).putInt(width).putInt(height).array());
+        deflater.reset();
+        deflater.setInput(filtered);
+        deflater.finish();
+
+        while(!deflater.finished()){
+            int size = deflater.deflate(buffer);
+            output.write(buffer, 0, size);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Decodes a frame encoded by this codec
+     * 
+     * @param data The encoded bytes
+     * @return Returns the decoded frame
+     * @throws IOException Throws an IOException when the bytes are truncated or corrupt
+     */
+    @Override
+    public synchronized BufferedImage decode(byte[] data) throws IOException{
+
+        if(data.length < headerSize){
+            throw new IOException("Frame too short");
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(data, 0, headerSize);
+        int width = header.getInt();
+        int height = header.getInt();
+
+        // The filtered bytes and the pixels
+        long reserved = FrameCodecs.reserveDecode(width, height, 3 + 4);
+
+        try{
+            return decode(data, width, height);
+        } finally{
+            MemoryGovernor.get().release(reserved);
+        }
+
+    }
+
+    /**
+     * Decodes a frame encoded by this codec once its size has been checked and reserved
+     * 
+     * @param data The encoded bytes
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @return Returns the decoded frame
+     * @throws IOException Throws an IOException when the bytes are truncated or corrupt
+     */
+    private BufferedImage decode(byte[] data, int width, int height) throws IOException{
+        byte[] filtered = new byte[width * height * 3];
+        inflater.reset();
+        inflater.setInput(data, headerSize, data.length - headerSize);
+
+        try{
+            int offset = 0;
+
+            while(offset < filtered.length){
+                int size = inflater.inflate(filtered, offset, filtered.length - offset);
+
+                if(size == 0 && (inflater.finished() || inflater.needsInput())){
+                    throw new IOException("Frame truncated");
+                }
+
+                offset += size;
+            }
+
+        } catch(DataFormatException dfEx){
+            throw new IOException("Corrupt frame", dfEx);
+        }
+
+        int[] pixels = new int[width * height];
+
+        for(int i = 0, j = 0; i < pixels.length; i++, j += 3){
+            int above = i >= width ? pixels[i - width] : 0;
+            int r = (filtered[j] + (above >> 16)) & 0xFF;
+            int g = (filtered[j + 1] + (above >> 8)) & 0xFF;
+            int b = (filtered[j + 2] + above) & 0xFF;
+            pixels[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+
+        return FramePixels.wrap(pixels, width, height);
+    }
+
+}
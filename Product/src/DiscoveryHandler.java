@@ -4,10 +4,12 @@ import java.net.InetAddress;
 
 import java.io.IOException;
 
-import javafx.collections.ObservableList;
+import java.util.Set;
 
 /**
- * This is the class that handles the DatagramSocket for server discovery and client connection validation (heartbeat)
+ * This is the class that handles the DatagramSocket for server discovery and client connection validation (heartbeat) of clients using
+ * udp liveness. Clients using tcp liveness only send discovery requests, as everything they send on their session counts as a heartbeat.
+ * A discovery request names the room the client is looking for after the request string, and is answered with the same room
  * 
  * @author Jonathan Zhao
  * @version 1.0
@@ -15,29 +17,22 @@ import javafx.collections.ObservableList;
 public class DiscoveryHandler extends Thread {
     private DatagramSocket socket;
     private int port;
+    private RoomHost host;
 
-    private static ObservableList<ClientHandler> clientList;
     private static final String requestString = "LH_DISCOVER_REQUEST";
     private static final String responseString = "LH_DISCOVER_RESPONSE";
     private static final String checkString = "LH_CHECK_CONNECTION";
     private static final String connectedString = "LH_CONNECTED";
 
-    /**
-     * Sets the client list
-     * 
-     * @param clientList The ObservableList of ClientHandlers to be set as the client list
-     */
-    public static void setClientList(ObservableList<ClientHandler> clientList){
-        DiscoveryHandler.clientList = clientList;
-    }
-
     /**
      * Constructor for the DiscoveryHandler class
      * 
      * @param port The port the Server is using
+     * @param host The RoomHost whose rooms are offered and whose sessions heartbeats are matched against
      */
-    public DiscoveryHandler(int port){
+    public DiscoveryHandler(int port, RoomHost host){
         this.port = port;
+        this.host = host;
     }
 
     /**
@@ -51,19 +46,38 @@ public class DiscoveryHandler extends Thread {
             socket.setBroadcast(true);
 
             while(true){
-                byte[] recvBuf = new byte[800];
+                byte[] recvBuf = new byte[Config.datagramBufferSize.get()];
+                StreamerEvents.allocated("DiscoveryHandler datagram", recvBuf.length);
                 DatagramPacket packet = new DatagramPacket(recvBuf, recvBuf.length);
                 socket.receive(packet);
-                String message = new String(packet.getData()).trim();
+                long received = FrameTrace.now();
+                String message = new String(packet.getData(), 0, packet.getLength()).trim();
 
-                if(message.equals(requestString)){
+                if(message.startsWith(requestString)){
                     System.out.println("Packet data: " + message);
-                    byte[] sendData = responseString.getBytes();
+                    // Only the server hosting the requested room answers, so several servers can share a network
+                    String room = message.substring(requestString.length());
+
+                    if(host.getRoom(room) == null){
+                        continue;
+                    }
+
+                    StreamerEvents.DiscoveryRequest event = new StreamerEvents.DiscoveryRequest();
+
+                    if(event.isEnabled()){
+                        event.address = String.valueOf(packet.getSocketAddress());
+                        event.room = room;
+                        event.commit();
+                    }
+
+                    byte[] sendData = (responseString + room).getBytes();
                     DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, packet.getAddress(), packet.getPort());
                     socket.send(sendPacket);
                     System.out.println("Discovery sent packet " + new String(sendPacket.getData()) + " to " + packet.getSocketAddress());
-                } else if(message.equals(checkString)){
-                    byte[] sendData = connectedString.getBytes();
+                } else if(message.startsWith(checkString)){
+                    // Echoes the client's send time with the receive and reply times for its clock offset estimate
+                    String sent = message.substring(checkString.length());
+                    byte[] sendData = (sent.isEmpty() ? connectedString : connectedString + sent + "," + received + "," + FrameTrace.now()).getBytes();
                     DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, packet.getAddress(), packet.getPort());
                     socket.send(sendPacket);
                     validateConnection(packet.getAddress());
@@ -80,21 +94,23 @@ public class DiscoveryHandler extends Thread {
     }
 
     /**
-     * Resets the timer of a certain client
+     * Resets the timer of every client connected from an address
      * 
      * @param address The InetAddress of the client who sent a heartbeat packet
      */
     private void validateConnection(InetAddress address){
-        ClientHandler currentClient;
-
-        for(int i = clientList.size() - 1; i >= 0; i--){
-            currentClient = clientList.get(i);
-
-            if(currentClient != null && currentClient.getAddress().equals(address)){
-                currentClient.resetTimer();
-                return;
-            }
+        Set<ClientHandler> clients = host.findByAddress(address);
+        StreamerEvents.HeartbeatReceived event = new StreamerEvents.HeartbeatReceived();
+
+        if(event.isEnabled()){
+            event.address = address.getHostAddress();
+            event.sessions = clients.size();
+            event.sincePrevious = clients.stream().findFirst().map(client -> System.currentTimeMillis() - client.getLastHeartbeat()).orElse(0L);
+            event.commit();
+        }
 
+        for(ClientHandler client : clients){
+            client.resetTimer();
         }
 
     }
@@ -0,0 +1,76 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.Arrays;
+
+/**
+ * This is a piece of a pushed file sent on the FILE channel, together with the transfer it belongs to and where it goes in the file
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FileChunk {
+    private String id;
+    private long offset;
+    private byte[] data;
+
+    /**
+     * Constructor for the FileChunk class
+     * 
+     * @param id The id of the transfer
+     * @param offset The position of the chunk in the file
+     * @param data The bytes of the chunk
+     */
+    public FileChunk(String id, long offset, byte[] data){
+        this.id = id;
+        this.offset = offset;
+        this.data = data;
+    }
+
+    /**
+     * Parses a FileChunk from the bytes of a FILE channel message
+     * 
+     * @param message The bytes of the message
+     * @return Returns the parsed FileChunk
+     * @throws IOException Throws an IOException when the message is malformed
+     */
+    public static FileChunk parse(byte[] message) throws IOException{
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(message));
+        String id = input.readUTF();
+        long offset = input.readLong();
+        int headerSize = message.length - input.available();
+        return new FileChunk(id, offset, Arrays.copyOfRange(message, headerSize, message.length));
+    }
+
+    /**
+     * @return Returns the bytes of the FILE channel message
+     * @throws IOException Never thrown as the message is written to memory
+     */
+    public byte[] toBytes() throws IOException{
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length + 32);
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        dataOutput.writeUTF(id);
+        dataOutput.writeLong(offset);
+        dataOutput.write(data);
+        return output.toByteArray();
+    }
+
+    /**
+     * @return Returns the id of the transfer
+     */
+    public String getId(){return id;}
+
+    /**
+     * @return Returns the position of the chunk in the file
+     */
+    public long getOffset(){return offset;}
+
+    /**
+     * @return Returns the bytes of the chunk
+     */
+    public byte[] getData(){return data;}
+
+}
@@ -0,0 +1,392 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This is the benchmark which pushes one file to a class of seats through an ImpairmentProxy standing in for the classroom network,
+ * each seat with the same channels, window, and replies as a real session while it also streams frames. It reports the throughput of the
+ * whole push, how long commands and frames took while it ran, and whether a seat whose connection is dropped halfway resumes instead of
+ * starting again, then checks every received copy
+ * 
+ * Usage: java FilePushBenchmark [seats] [megabytes] [link Mbit/s] [--name=value ...]
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FilePushBenchmark {
+    private static ServerSocket listener;
+    private static ImpairmentProxy proxy;
+    private static List<Long> commandDelays = new CopyOnWriteArrayList<Long>();
+    private static List<Long> frameDelays = new CopyOnWriteArrayList<Long>();
+    private static volatile Boolean pushing = true;
+
+    private static final String pingString = "LH_PING";
+    private static final int pingInterval = 20;
+    private static final int frameInterval = 100;
+    private static final int frameSize = 20 * 1024;
+    private static final int linkLatency = 2;
+
+    /**
+     * This is one seat, holding both ends of its connection
+     */
+    private static class Seat {
+        private int index;
+        private FileSender sender;
+        private FileReceiver receiver;
+        private File directory;
+        private volatile Socket serverSocket;
+        private volatile Socket clientSocket;
+        private volatile MuxOutput serverOut;
+        private volatile MuxOutput clientOut;
+        private long resumedFrom = -1;
+
+        /**
+         * Constructor for the Seat class
+         * 
+         * @param index The number of the seat
+         * @param source The file to be pushed
+         * @param root The directory seats save their copies under
+         */
+        private Seat(int index, FileSource source, File root){
+            this.index = index;
+            directory = new File(root, "seat" + index);
+            receiver = new FileReceiver(directory, command -> clientOut.send(MuxChannel.CONTROL, command), file -> {});
+            sender = new FileSender(source, new FileSender.Link(){
+
+                @Override
+                public void sendCommand(String command) throws IOException{
+                    serverOut.send(MuxChannel.CONTROL, command);
+                }
+
+                @Override
+                public void sendChunk(byte[] chunk) throws IOException{
+                    serverOut.send(MuxChannel.FILE, chunk);
+                }
+
+            }, Config.fileWindow.get(), Config.fileDelay.get());
+        }
+
+        /**
+         * Opens a new loopback connection for the seat and starts reading both ends of it
+         * 
+         * @throws IOException Throws an IOException when the connection cannot be made
+         */
+        private void connect() throws IOException{
+            clientSocket = new Socket(InetAddress.getLoopbackAddress(), proxy.getListenPort());
+            serverSocket = listener.accept();
+            clientSocket.setTcpNoDelay(true);
+            serverSocket.setTcpNoDelay(true);
+            serverOut = new MuxOutput(serverSocket.getOutputStream(), Config.chunkSize.get());
+            clientOut = new MuxOutput(clientSocket.getOutputStream(), Config.chunkSize.get());
+            MuxInput serverIn = new MuxInput(serverSocket.getInputStream(), Config.maxMessageSize.get());
+            MuxInput clientIn = new MuxInput(clientSocket.getInputStream(), Config.maxMessageSize.get());
+            startDaemon(() -> readServerSide(serverIn));
+            startDaemon(() -> readClientSide(clientIn));
+        }
+
+        /**
+         * @return Returns how many bytes of the file the seat has written
+         */
+        private long receiverProgress(){
+            return new File(directory, "." + sender.getTransferId() + ".part").length();
+        }
+
+        /**
+         * Drops the seat's connection
+         * 
+         * @throws IOException Throws an IOException when the Sockets cannot be closed
+         */
+        private void disconnect() throws IOException{
+            serverOut.close();
+            clientOut.close();
+            serverSocket.close();
+            clientSocket.close();
+        }
+
+        /**
+         * Hands the client's replies to the FileSender the way a ClientHandler does
+         * 
+         * @param input The server end of the connection
+         */
+        private void readServerSide(MuxInput input){
+
+            try{
+
+                while(true){
+                    MuxInput.Message message = input.read();
+
+                    if(message.getChannel() == MuxChannel.FRAME){
+                        frameDelays.add(System.nanoTime() - ByteBuffer.wrap(message.getData()).getLong());
+                        continue;
+                    }
+
+                    String command = message.getText();
+                    String id = sender.getTransferId();
+
+                    if(command.startsWith(FileReceiver.resumeString + id + ",")){
+                        long offset = Long.parseLong(command.substring(FileReceiver.resumeString.length() + id.length() + 1));
+
+                        if(resumedFrom < 0 && offset > 0){
+                            resumedFrom = offset;
+                        }
+
+                        sender.resumeFrom(offset);
+                    } else if(command.startsWith(FileReceiver.ackString + id + ",")){
+                        sender.acknowledge(Long.parseLong(command.substring(FileReceiver.ackString.length() + id.length() + 1)));
+                    } else if(command.startsWith(FileReceiver.doneString)){
+                        sender.finish(true);
+                    } else if(command.startsWith(FileReceiver.failString)){
+                        System.out.println("Seat " + index + " failed: " + command);
+                        sender.finish(false);
+                    }
+
+                }
+
+            } catch(IOException ioE){
+                return;
+            }
+
+        }
+
+        /**
+         * Handles offers, pings, and chunks the way the Client does
+         * 
+         * @param input The client end of the connection
+         */
+        private void readClientSide(MuxInput input){
+
+            try{
+
+                while(true){
+                    MuxInput.Message message = input.read();
+
+                    if(message.getChannel() == MuxChannel.FILE){
+                        receiver.handleChunk(message.getData());
+                    } else if(message.getText().startsWith(pingString)){
+                        commandDelays.add(System.nanoTime() - Long.parseLong(message.getText().substring(pingString.length())));
+                    } else if(message.getText().startsWith(FileSender.offerString)){
+                        receiver.handleOffer(message.getText().substring(FileSender.offerString.length()));
+                    }
+
+                }
+
+            } catch(IOException ioE){
+                return;
+            }
+
+        }
+
+    }
+
+    /**
+     * Pushes a random file to every seat, dropping the first seat's connection halfway, and prints the results
+     * 
+     * @param args The number of seats, the size of the file in megabytes, and the bandwidth of the link, followed by any configuration overrides
+     * @throws Exception Throws an Exception when the benchmark cannot be set up
+     */
+    public static void main(String[] args) throws Exception{
+        Config.load(args);
+        String[] counts = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).toArray(String[]::new);
+        int seatCount = counts.length > 0 ? Integer.parseInt(counts[0]) : 30;
+        int megabytes = counts.length > 1 ? Integer.parseInt(counts[1]) : 16;
+        int megabits = counts.length > 2 ? Integer.parseInt(counts[2]) : 400;
+        File root = Files.createTempDirectory("filepush").toFile();
+        File file = new File(root, "handout.bin");
+        writeRandomFile(file, megabytes * 1024L * 1024L);
+
+        long start = System.nanoTime();
+        FileSource source = new FileSource(file);
+        System.out.printf("Mapped and hashed %d MB in %d ms%n", megabytes, (System.nanoTime() - start) / 1000000);
+
+        listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        proxy = new ImpairmentProxy(0, InetAddress.getLoopbackAddress(), listener.getLocalPort(), linkLatency, 0, megabits * 1000000L / 8, 0);
+        proxy.start();
+        List<Seat> seats = new ArrayList<Seat>();
+
+        for(int i = 0; i < seatCount; i++){
+            Seat seat = new Seat(i, source, root);
+            seat.connect();
+            seats.add(seat);
+        }
+
+        startDaemon(() -> ping(seats));
+        startDaemon(() -> streamFrames(seats));
+        start = System.nanoTime();
+
+        for(Seat seat : seats){
+            seat.sender.start();
+        }
+
+        Seat dropped = seats.get(0);
+
+        while(!dropped.sender.getResult().isDone() && dropped.receiverProgress() < source.getSize() / 2){
+            Thread.sleep(5);
+        }
+
+        dropped.disconnect();
+        Thread.sleep(200);
+        dropped.connect();
+        dropped.sender.offer();
+
+        for(Seat seat : seats){
+            seat.sender.getResult().join();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pushing = false;
+        long received = 0;
+        int intact = 0;
+
+        for(Seat seat : seats){
+            File copy = new File(seat.directory, file.getName());
+
+            if(seat.sender.getResult().join() && new FileSource(copy).getChecksum().equals(source.getChecksum())){
+                intact++;
+            }
+
+            received += copy.length();
+        }
+
+        long[] delays = commandDelays.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("Pushed %d MB to %d seats in %.1f s: %.0f MB/s total, %.1f MB/s per seat%n", megabytes, seatCount, seconds, received / 1048576.0 / seconds, received / 1048576.0 / seconds / seatCount);
+        System.out.printf("Intact copies: %d of %d%n", intact, seatCount);
+        long[] frames = frameDelays.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("Command delay during push: p50 %.2f ms, p99 %.2f ms, max %.2f ms over %d commands%n", percentile(delays, 0.5), percentile(delays, 0.99), percentile(delays, 1), delays.length);
+        System.out.printf("Frame delay during push: p50 %.2f ms, p99 %.2f ms, max %.2f ms over %d frames%n", percentile(frames, 0.5), percentile(frames, 0.99), percentile(frames, 1), frames.length);
+        System.out.printf("Dropped seat resumed from %.1f MB instead of 0%n", dropped.resumedFrom / 1048576.0);
+        deleteAll(root);
+    }
+
+    /**
+     * Sends a timestamped frame from every seat every few milliseconds while the push runs
+     * 
+     * @param seats The seats
+     */
+    private static void streamFrames(List<Seat> seats){
+        byte[] frame = new byte[frameSize];
+        new Random(35).nextBytes(frame);
+
+        while(pushing){
+
+            for(Seat seat : seats){
+                byte[] message = frame.clone();
+                ByteBuffer.wrap(message).putLong(System.nanoTime());
+
+                try{
+                    seat.clientOut.send(MuxChannel.FRAME, message);
+                } catch(IOException ioE){
+                    continue;
+                }
+
+            }
+
+            try{
+                Thread.sleep(frameInterval);
+            } catch(InterruptedException iE){
+                return;
+            }
+
+        }
+
+    }
+
+    /**
+     * Sends a timestamped command to every seat every few milliseconds while the push runs
+     * 
+     * @param seats The seats
+     */
+    private static void ping(List<Seat> seats){
+
+        while(pushing){
+
+            for(Seat seat : seats){
+
+                try{
+                    seat.serverOut.send(MuxChannel.CONTROL, pingString + System.nanoTime());
+                } catch(IOException ioE){
+                    continue;
+                }
+
+            }
+
+            try{
+                Thread.sleep(pingInterval);
+            } catch(InterruptedException iE){
+                return;
+            }
+
+        }
+
+    }
+
+    /**
+     * Writes a file of random bytes, which do not compress and cannot be mistaken for each other
+     * 
+     * @param file The file to be written
+     * @param size The size in bytes
+     * @throws IOException Throws an IOException when the file cannot be written
+     */
+    private static void writeRandomFile(File file, long size) throws IOException{
+        Random random = new Random(38);
+        byte[] block = new byte[1024 * 1024];
+
+        try(RandomAccessFile output = new RandomAccessFile(file, "rw")){
+
+            for(long written = 0; written < size; written += block.length){
+                random.nextBytes(block);
+                output.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+
+        }
+
+    }
+
+    /**
+     * @param sorted The sorted nanosecond values
+     * @param fraction The percentile as a fraction
+     * @return Returns the percentile in milliseconds
+     */
+    private static double percentile(long[] sorted, double fraction){
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)))] / 1e6;
+    }
+
+    /**
+     * Starts a daemon thread
+     * 
+     * @param task What the thread runs
+     */
+    private static void startDaemon(Runnable task){
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Deletes a directory and everything in it
+     * 
+     * @param file The directory
+     */
+    private static void deleteAll(File file){
+        File[] children = file.listFiles();
+
+        if(children != null){
+            Arrays.stream(children).forEach(FilePushBenchmark::deleteAll);
+        }
+
+        file.delete();
+    }
+
+}
@@ -0,0 +1,313 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * This is the class that writes files pushed by the Server.
+ * Each transfer is written to a hidden part file named after its id, so when the same file is offered again after a dropped connection
+ * only the missing end is asked for. The checksum is computed as the chunks arrive and the finished file is moved into place in one step,
+ * so a student never sees a partly written or corrupt file
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FileReceiver {
+    private File directory;
+    private Replies replies;
+    private Consumer<File> onReceived;
+    private Map<String, Transfer> transfers = new ConcurrentHashMap<String, Transfer>();
+
+    public static final String resumeString = "LH_FILERESUME";
+    public static final String ackString = "LH_FILEACK";
+    public static final String doneString = "LH_FILEDONE";
+    public static final String failString = "LH_FILEFAIL";
+    public static final int ackInterval = 128 * 1024;
+
+    /**
+     * This is how a FileReceiver answers the Server
+     */
+    public interface Replies {
+
+        /**
+         * Sends a command on the control channel
+         * 
+         * @param command The command to be sent
+         * @throws IOException Throws an IOException when the command cannot be sent
+         */
+        public void send(String command) throws IOException;
+
+    }
+
+    /**
+     * This is a transfer being written
+     */
+    private static class Transfer {
+        private String id;
+        private String name;
+        private String checksum;
+        private long size;
+        private File part;
+        private FileChannel channel;
+        private MessageDigest digest;
+        private long received = 0;
+        private long lastAck = 0;
+        private long requested = -1;
+    }
+
+    /**
+     * Constructor for the FileReceiver class
+     * 
+     * @param directory The directory received files are saved in
+     * @param replies How the Server is answered
+     * @param onReceived Called with each file once it is saved
+     */
+    public FileReceiver(File directory, Replies replies, Consumer<File> onReceived){
+        this.directory = directory;
+        this.replies = replies;
+        this.onReceived = onReceived;
+    }
+
+    /**
+     * Handles an offer of a file, given as its id, size, checksum, and name, by asking for everything past what has already been written
+     * 
+     * @param offer The offer without its command prefix
+     * @throws IOException Throws an IOException when the offer is malformed, its id is not 16 lowercase hex digits, its size is not positive,
+     * the part file cannot be opened, or the reply cannot be sent
+     */
+    public void handleOffer(String offer) throws IOException{
+        String[] fields = offer.split(",", 4);
+
+        if(fields.length < 4){
+            throw new IOException("Malformed file offer " + offer);
+        }
+
+        String id = fields[0];
+
+        // The id names the part file, so anything but the hex an id is made of could write outside the directory
+        if(!id.matches("[0-9a-f]{16}")){
+            throw new IOException("Invalid file id " + id);
+        }
+
+        long size;
+
+        try{
+            size = Long.parseLong(fields[1]);
+        } catch(NumberFormatException nfE){
+            throw new IOException("Invalid file size " + fields[1]);
+        }
+
+        if(size <= 0){
+            throw new IOException("Invalid file size " + size);
+        }
+
+        Transfer transfer = transfers.get(id);
+
+        if(transfer == null){
+            transfer = open(id, size, fields[2], fields[3]);
+            transfers.put(id, transfer);
+        }
+
+        synchronized(transfer){
+            transfer.requested = transfer.received;
+            transfer.lastAck = transfer.received;
+            replies.send(resumeString + id + "," + transfer.received);
+
+            if(transfer.received == transfer.size){
+                complete(transfer);
+            }
+
+        }
+
+    }
+
+    /**
+     * Writes a chunk of a transfer. A chunk that does not continue the file is dropped and the missing position asked for once
+     * 
+     * @param message The bytes of the FILE channel message
+     * @throws IOException Throws an IOException when the chunk cannot be written or a reply cannot be sent
+     */
+    public void handleChunk(byte[] message) throws IOException{
+        FileChunk chunk = FileChunk.parse(message);
+        Transfer transfer = transfers.get(chunk.getId());
+
+        if(transfer == null){
+            return;
+        }
+
+        synchronized(transfer){
+
+            if(!transfers.containsKey(chunk.getId())){
+                return;
+            }
+
+            if(chunk.getOffset() != transfer.received){
+
+                if(chunk.getOffset() > transfer.received && transfer.requested != transfer.received){
+                    transfer.requested = transfer.received;
+                    replies.send(resumeString + transfer.id + "," + transfer.received);
+                }
+
+                return;
+            }
+
+            byte[] data = chunk.getData();
+
+            if(transfer.received + data.length > transfer.size){
+                fail(transfer, "File larger than offered");
+                return;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+
+            while(buffer.hasRemaining()){
+                transfer.channel.write(buffer, transfer.received + buffer.position());
+            }
+
+            transfer.digest.update(data);
+            transfer.received += data.length;
+
+            if(transfer.received == transfer.size){
+                complete(transfer);
+            } else if(transfer.received - transfer.lastAck >= ackInterval){
+                transfer.lastAck = transfer.received;
+                replies.send(ackString + transfer.id + "," + transfer.received);
+            }
+
+        }
+
+    }
+
+    /**
+     * Opens the part file of a transfer, hashing whatever an earlier connection already wrote to it
+     * 
+     * @param id The id of the transfer
+     * @param size The size of the file
+     * @param checksum The SHA-256 of the file
+     * @param name The name of the file
+     * @return Returns the opened transfer
+     * @throws IOException Throws an IOException when the part file cannot be opened or read
+     */
+    private Transfer open(String id, long size, String checksum, String name) throws IOException{
+        directory.mkdirs();
+        Transfer transfer = new Transfer();
+        transfer.id = id;
+        transfer.size = size;
+        transfer.checksum = checksum;
+        transfer.name = name;
+        transfer.part = new File(directory, "." + id + ".part");
+        transfer.channel = FileChannel.open(transfer.part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try{
+            transfer.digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException nsaEx){
+            transfer.channel.close();
+            throw new IOException("SHA-256 unavailable", nsaEx);
+        }
+
+        long existing = Math.min(transfer.channel.size(), size);
+        transfer.channel.truncate(existing);
+        ByteBuffer buffer = ByteBuffer.allocate(ackInterval);
+
+        while(transfer.received < existing){
+            buffer.clear();
+            int read = transfer.channel.read(buffer, transfer.received);
+
+            if(read < 0){
+                break;
+            }
+
+            buffer.flip();
+            transfer.digest.update(buffer);
+            transfer.received += read;
+        }
+
+        if(existing > 0){
+            System.out.println("Resuming " + name + " from " + existing + " bytes");
+        }
+
+        return transfer;
+    }
+
+    /**
+     * Checks a fully written transfer and moves it into place, or deletes it if its checksum does not match
+     * 
+     * @param transfer The transfer
+     * @throws IOException Throws an IOException when the file cannot be moved or the reply cannot be sent
+     */
+    private void complete(Transfer transfer) throws IOException{
+        transfer.channel.force(false);
+        transfer.channel.close();
+        transfers.remove(transfer.id);
+
+        if(!FileSource.toHex(transfer.digest.digest()).equals(transfer.checksum)){
+            transfer.part.delete();
+            replies.send(failString + transfer.id + ",Checksum mismatch");
+            return;
+        }
+
+        File target = uniqueFile(transfer.name);
+
+        try{
+            Files.move(transfer.part.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException amnsEx){
+            Files.move(transfer.part.toPath(), target.toPath());
+        }
+
+        replies.send(doneString + transfer.id);
+        System.out.println("Received " + target);
+        onReceived.accept(target);
+    }
+
+    /**
+     * Abandons a transfer and tells the Server why
+     * 
+     * @param transfer The transfer
+     * @param reason Why the transfer failed
+     * @throws IOException Throws an IOException when the reply cannot be sent
+     */
+    private void fail(Transfer transfer, String reason) throws IOException{
+        transfer.channel.close();
+        transfers.remove(transfer.id);
+        transfer.part.delete();
+        replies.send(failString + transfer.id + "," + reason);
+    }
+
+    /**
+     * Finds a name in the directory that is not taken, adding a number before the extension if needed
+     * 
+     * @param name The name of the file as sent
+     * @return Returns a File that does not exist yet
+     */
+    private File uniqueFile(String name){
+        name = new File(name).getName().replaceAll("[\\\\/:*?\"<>|]", "_");
+
+        if(name.isEmpty() || name.startsWith(".")){
+            name = "file" + name;
+        }
+
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        File file = new File(directory, name);
+
+        for(int i = 1; file.exists(); i++){
+            file = new File(directory, base + " (" + i + ")" + extension);
+        }
+
+        return file;
+    }
+
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This is the thread that pushes one FileSource to one seat.
+ * The file is offered on the control channel and the client answers with how much of it it already has, so a transfer picks up where
+ * it stopped after a dropped connection. Chunks are then sent on the FILE channel, the lowest priority channel. Bytes already on the network
+ * cannot be overtaken by commands, so the bytes sent beyond what the client has acknowledged are limited to what the seat's measured
+ * rate drains in the target delay, up to the window. A slow seat only holds back its own transfer, and commands to a busy seat wait at most
+ * about the target delay
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FileSender extends Thread {
+    private FileSource source;
+    private Link link;
+    private int window;
+    private int targetDelay;
+    private long next = 0;
+    private long acked = 0;
+    private double rate = 0;
+    private long sampleTime = 0;
+    private long sampleAcked = 0;
+    private Boolean ready = false;
+    private Boolean finished = false;
+    private CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+    public static final String offerString = "LH_FILE";
+    public static final int chunkSize = 64 * 1024;
+    public static final int minimumWindow = 2 * FileReceiver.ackInterval;
+
+    /**
+     * This is how a FileSender reaches its seat
+     */
+    public interface Link {
+
+        /**
+         * Sends a command on the control channel, or drops it if the seat is not connected
+         * 
+         * @param command The command to be sent
+         * @throws IOException Throws an IOException when the command cannot be sent
+         */
+        public void sendCommand(String command) throws IOException;
+
+        /**
+         * Sends a chunk on the FILE channel, blocking while the channel is full
+         * 
+         * @param chunk The bytes of the FileChunk
+         * @throws IOException Throws an IOException when the seat is not connected or the chunk cannot be sent
+         */
+        public void sendChunk(byte[] chunk) throws IOException;
+
+    }
+
+    /**
+     * Constructor for the FileSender class
+     * 
+     * @param source The file to be pushed
+     * @param link How the seat is reached
+     * @param window The most bytes sent beyond what the seat has acknowledged
+     * @param targetDelay The longest a command should wait behind chunks already sent, in milliseconds
+     */
+    public FileSender(FileSource source, Link link, int window, int targetDelay){
+        this.source = source;
+        this.link = link;
+        this.window = Math.max(window, minimumWindow);
+        this.targetDelay = targetDelay;
+        setDaemon(true);
+    }
+
+    /**
+     * Offers the file and then sends chunks whenever the seat is ready and the window allows, until the seat reports the result
+     */
+    @Override
+    public void run(){
+        offer();
+
+        try{
+
+            while(true){
+                long offset;
+                int length;
+
+                synchronized(this){
+
+                    while(!finished && (!ready || next >= source.getSize() || next - acked >= getWindow())){
+                        wait();
+                    }
+
+                    if(finished){
+                        return;
+                    }
+
+                    offset = next;
+                    length = (int) Math.min(chunkSize, source.getSize() - next);
+                    next += length;
+                }
+
+                try{
+                    link.sendChunk(new FileChunk(source.getId(), offset, source.read(offset, length)).toBytes());
+                } catch(IOException ioE){
+
+                    // Waits for the session to resume, which offers the file again
+                    synchronized(this){
+                        ready = false;
+                    }
+
+                }
+
+            }
+
+        } catch(InterruptedException iE){
+            cancel();
+        }
+
+    }
+
+    /**
+     * Offers the file to the seat as its id, size, checksum, and name. Called again when the seat's session resumes
+     */
+    public synchronized void offer(){
+        ready = false;
+
+        try{
+            link.sendCommand(offerString + source.getId() + "," + source.getSize() + "," + source.getChecksum() + "," + source.getName());
+        } catch(IOException ioE){
+            System.out.println("Could not offer " + source.getName());
+        }
+
+    }
+
+    /**
+     * Starts or restarts sending from the position the seat already has
+     * 
+     * @param offset The number of bytes the seat already has
+     */
+    public synchronized void resumeFrom(long offset){
+
+        if(offset < 0 || offset > source.getSize()){
+            return;
+        }
+
+        next = offset;
+        acked = offset;
+        sampleTime = System.nanoTime();
+        sampleAcked = offset;
+        ready = true;
+        notifyAll();
+    }
+
+    /**
+     * Records how much of the file the seat has written, opening the window
+     * 
+     * @param offset The number of bytes the seat has written
+     */
+    public synchronized void acknowledge(long offset){
+        acked = Math.max(acked, Math.min(offset, next));
+        long now = System.nanoTime();
+
+        // Acknowledgements arrive in bursts, so the rate is only sampled over periods of half the target delay
+        if((now - sampleTime) / 1000000 >= Math.max(targetDelay / 2, 10)){
+            double sample = (acked - sampleAcked) * 1e9 / (now - sampleTime);
+            rate = rate == 0 ? sample : 0.75 * rate + 0.25 * sample;
+            sampleTime = now;
+            sampleAcked = acked;
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Gets how many bytes may be sent beyond what the seat has acknowledged.
+     * Until the seat's rate is measured the smallest window is used, so a push to a whole class does not start by flooding the network
+     * 
+     * @return Returns the current window in bytes
+     */
+    private long getWindow(){
+        return Math.max(minimumWindow, Math.min(window, (long) (rate * targetDelay / 1000)));
+    }
+
+    /**
+     * Ends the transfer with the seat's result
+     * 
+     * @param success Whether the seat received the file and its checksum matched
+     */
+    public synchronized void finish(Boolean success){
+        finished = true;
+        result.complete(success);
+        notifyAll();
+    }
+
+    /**
+     * Ends the transfer unsuccessfully, such as when the seat's session ends
+     */
+    public void cancel(){
+        finish(false);
+    }
+
+    /**
+     * @return Returns a future completed with whether the seat received the file
+     */
+    public CompletableFuture<Boolean> getResult(){return result;}
+
+    /**
+     * @return Returns the id of the transfer
+     */
+    public String getTransferId(){return source.getId();}
+
+}
@@ -0,0 +1,117 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This is a file being pushed to clients. It is memory-mapped once and read by every seat's FileSender,
+ * so pushing it to a whole class reads it from disk once however many seats there are.
+ * Its id comes from its SHA-256, so a transfer can be resumed even after the Server restarts
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FileSource {
+    private String name;
+    private MappedByteBuffer buffer;
+    private long size;
+    private String checksum;
+
+    /**
+     * Constructor for the FileSource class, which maps the file and computes its checksum
+     * 
+     * @param file The file to be pushed
+     * @throws IOException Throws an IOException when the file cannot be read, is empty, or is too large to map
+     */
+    public FileSource(File file) throws IOException{
+        name = file.getName();
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            size = channel.size();
+
+            if(size > Integer.MAX_VALUE){
+                throw new IOException("Files over 2 GB cannot be pushed");
+            } else if(size == 0){
+                throw new IOException("Empty files cannot be pushed");
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        checksum = sha256(buffer.duplicate());
+    }
+
+    /**
+     * Copies part of the file
+     * 
+     * @param offset The position of the first byte
+     * @param length The number of bytes
+     * @return Returns the bytes
+     */
+    public byte[] read(long offset, int length){
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Computes the SHA-256 of some bytes as lowercase hex
+     * 
+     * @param bytes The bytes
+     * @return Returns the checksum
+     */
+    private static String sha256(ByteBuffer bytes){
+
+        try{
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes);
+            return toHex(digest.digest());
+        } catch(NoSuchAlgorithmException nsaEx){
+            throw new IllegalStateException("SHA-256 unavailable", nsaEx);
+        }
+
+    }
+
+    /**
+     * @param bytes The bytes
+     * @return Returns the bytes as lowercase hex
+     */
+    public static String toHex(byte[] bytes){
+        StringBuilder hex = new StringBuilder();
+
+        for(byte b : bytes){
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * @return Returns the name of the file
+     */
+    public String getName(){return name;}
+
+    /**
+     * @return Returns the size of the file in bytes
+     */
+    public long getSize(){return size;}
+
+    /**
+     * @return Returns the SHA-256 of the file as lowercase hex
+     */
+    public String getChecksum(){return checksum;}
+
+    /**
+     * @return Returns the id transfers of the file are known by
+     */
+    public String getId(){return checksum.substring(0, 16);}
+
+}
@@ -0,0 +1,36 @@
+import java.io.IOException;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * This is the interface for the codecs that turn captured frames into bytes on the Client and back into images on the Server
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public interface FrameCodec {
+
+    /**
+     * @return Returns the name the codec is negotiated and tagged with on the wire
+     */
+    public String getName();
+
+    /**
+     * Encodes a frame
+     * 
+     * @param image The frame to be encoded
+     * @return Returns the encoded bytes
+     * @throws IOException Throws an IOException when the frame cannot be encoded
+     */
+    public byte[] encode(BufferedImage image) throws IOException;
+
+    /**
+     * Decodes a frame
+     * 
+     * @param data The encoded bytes
+     * @return Returns the decoded frame
+     * @throws IOException Throws an IOException when the bytes are not a valid frame
+     */
+    public BufferedImage decode(byte[] data) throws IOException;
+
+}
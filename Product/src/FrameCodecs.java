@@ -0,0 +1,174 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.awt.image.BufferedImage;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * This is the class that creates FrameCodecs by name and negotiates which one a session uses
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FrameCodecs {
+
+    /**
+     * Every codec name this build can encode and decode, most preferred first
+     */
+    public static final List<String> supported = Arrays.asList(JpegCodec.name, DeflateCodec.name, PngCodec.name, CopyRectCodec.name);
+
+    /**
+     * Creates a new codec
+     * 
+     * @param name The name of the codec
+     * @param quality The compression quality used by lossy codecs, from 0 to 1
+     * @return Returns the codec
+     * @throws IllegalArgumentException Throws an IllegalArgumentException when no codec has the given name
+     */
+    public static FrameCodec create(String name, float quality){
+
+        if(name.equals(JpegCodec.name)){
+            return new JpegCodec(quality);
+        } else if(name.equals(DeflateCodec.name)){
+            return new DeflateCodec();
+        } else if(name.equals(PngCodec.name)){
+            return new PngCodec();
+        } else if(name.equals(CopyRectCodec.name)){
+            return new CopyRectCodec();
+        }
+
+        throw new IllegalArgumentException("Unknown codec " + name);
+    }
+
+    /**
+     * Chooses the codec for a session
+     * 
+     * @param offered The comma separated codec names the client offered
+     * @param preferred The codec the server would like to use
+     * @return Returns the preferred codec if both sides support it, otherwise the first codec both sides support, otherwise JPEG
+     */
+    public static String negotiate(String offered, String preferred){
+        List<String> offers = Arrays.asList(offered.split(","));
+
+        if(offers.contains(preferred) && supported.contains(preferred)){
+            return preferred;
+        }
+
+        for(String name : supported){
+
+            if(offers.contains(name)){
+                return name;
+            }
+
+        }
+
+        return JpegCodec.name;
+    }
+
+    /**
+     * Checks the size a frame claims before it is decoded and reserves the memory decoding it takes from the MemoryGovernor,
+     * so a client cannot make the server allocate gigabytes with an 8 byte header. The reservation must be released once decoded
+     * 
+     * @param width The width the frame claims
+     * @param height The height the frame claims
+     * @param bytesPerPixel The bytes the decoder allocates for every pixel
+     * @return Returns the number of bytes reserved
+     * @throws IOException Throws an IOException when the size is invalid, larger than maxFramePixels, or the budget has no room
+     */
+    public static long reserveDecode(int width, int height, int bytesPerPixel) throws IOException{
+
+        if(width <= 0 || height <= 0 || (long) width * height > Config.maxFramePixels.get() || (long) width * height * bytesPerPixel > Integer.MAX_VALUE){
+            throw new IOException("Invalid frame size " + width + "x" + height);
+        }
+
+        long bytes = (long) width * height * bytesPerPixel;
+
+        if(!MemoryGovernor.get().tryReserve(bytes)){
+            throw new IOException("Memory budget full, cannot decode " + width + "x" + height + " frame");
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Decodes a PNG or JPEG image with ImageIO, checking the size in its header and reserving the memory decoding it takes first,
+     * as an image of a few bytes can declare any size
+     * 
+     * @param data The encoded bytes
+     * @param format The name of the format, used in the error when the bytes are not an image
+     * @return Returns the decoded image
+     * @throws IOException Throws an IOException when the bytes are not a readable image, its size is invalid, or the budget has no room
+     */
+    public static BufferedImage readImage(byte[] data, String format) throws IOException{
+
+        try(ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))){
+            ImageReader reader = openReader(input, format);
+
+            try{
+                long reserved = reserveDecode(reader.getWidth(0), reader.getHeight(0), 4);
+
+                try{
+                    return reader.read(0);
+                } finally{
+                    MemoryGovernor.get().release(reserved);
+                }
+
+            } finally{
+                reader.dispose();
+            }
+
+        }
+
+    }
+
+    /**
+     * Checks the size in the header of an image decoded by some other decoder, such as JavaFX's, and reserves the memory decoding it takes.
+     * The reservation must be released once decoded
+     * 
+     * @param data The encoded bytes
+     * @param format The name of the format, used in the error when the bytes are not an image
+     * @return Returns the number of bytes reserved
+     * @throws IOException Throws an IOException when the bytes are not a readable image, its size is invalid, or the budget has no room
+     */
+    public static long reserveImage(byte[] data, String format) throws IOException{
+
+        try(ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))){
+            ImageReader reader = openReader(input, format);
+
+            try{
+                return reserveDecode(reader.getWidth(0), reader.getHeight(0), 4);
+            } finally{
+                reader.dispose();
+            }
+
+        }
+
+    }
+
+    /**
+     * @param input The stream of an image
+     * @param format The name of the format, used in the error when the stream is not an image
+     * @return Returns a reader positioned on the image, which must be disposed
+     * @throws IOException Throws an IOException when no reader can read the stream
+     */
+    private static ImageReader openReader(ImageInputStream input, String format) throws IOException{
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+        if(!readers.hasNext()){
+            throw new IOException("Not a " + format + " image");
+        }
+
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+}
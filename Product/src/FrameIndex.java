@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is the class that finds recorded frames whose perceptual hashes are within a Hamming distance of a query.
+ * It is a BK-tree: every child of a node sits at a fixed distance from it, so by the triangle inequality a search only descends into children
+ * whose distance is within the query's radius of the node's. Frames with identical hashes share a node, which keeps the tree small for
+ * classrooms whose screens rarely change. Nodes and frames are kept in parallel arrays rather than objects to stay compact at hundreds of
+ * thousands of frames
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FrameIndex {
+    private long[] hashes = new long[1024];
+    private int[] firstChild = new int[1024];
+    private int[] nextSibling = new int[1024];
+    private byte[] parentDistance = new byte[1024];
+    private int[] firstFrame = new int[1024];
+    private int nodes = 0;
+    private List<String> frames = new ArrayList<String>();
+    private int[] nextFrame = new int[1024];
+
+    /**
+     * This is a frame found by a search
+     */
+    public static class Match {
+        private String frame;
+        private int distance;
+
+        /**
+         * Constructor for the Match class
+         * 
+         * @param frame The frame, as it was added
+         * @param distance The number of bits its hash differs from the query in
+         */
+        public Match(String frame, int distance){
+            this.frame = frame;
+            this.distance = distance;
+        }
+
+        /**
+         * @return Returns the frame, as it was added
+         */
+        public String getFrame(){return frame;}
+
+        /**
+         * @return Returns the number of bits its hash differs from the query in
+         */
+        public int getDistance(){return distance;}
+
+    }
+
+    /**
+     * Adds a frame
+     * 
+     * @param hash The perceptual hash of the frame
+     * @param frame The name the frame is returned by in matches
+     */
+    public synchronized void add(long hash, String frame){
+        int id = frames.size();
+        frames.add(frame);
+
+        if(id == nextFrame.length){
+            nextFrame = Arrays.copyOf(nextFrame, id * 2);
+        }
+
+        if(nodes == 0){
+            firstFrame[newNode(hash, 0)] = id;
+            nextFrame[id] = -1;
+            return;
+        }
+
+        int node = 0;
+
+        while(true){
+            int distance = PerceptualHash.distance(hash, hashes[node]);
+
+            if(distance == 0){
+                nextFrame[id] = firstFrame[node];
+                firstFrame[node] = id;
+                return;
+            }
+
+            int child = firstChild[node];
+
+            while(child != -1 && parentDistance[child] != distance){
+                child = nextSibling[child];
+            }
+
+            if(child == -1){
+                child = newNode(hash, distance);
+                nextSibling[child] = firstChild[node];
+                firstChild[node] = child;
+                firstFrame[child] = id;
+                nextFrame[id] = -1;
+                return;
+            }
+
+            node = child;
+        }
+
+    }
+
+    /**
+     * Creates a node without children or frames
+     * 
+     * @param hash The hash of the node
+     * @param distance The distance from its parent
+     * @return Returns the index of the node
+     */
+    private int newNode(long hash, int distance){
+
+        if(nodes == hashes.length){
+            int capacity = nodes * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            parentDistance = Arrays.copyOf(parentDistance, capacity);
+            firstFrame = Arrays.copyOf(firstFrame, capacity);
+        }
+
+        hashes[nodes] = hash;
+        firstChild[nodes] = -1;
+        nextSibling[nodes] = -1;
+        parentDistance[nodes] = (byte) distance;
+        return nodes++;
+    }
+
+    /**
+     * Finds the frames whose hashes are within a distance of a hash
+     * 
+     * @param hash The perceptual hash to search for
+     * @param maxDistance The most bits a match may differ in
+     * @param limit The most matches returned
+     * @return Returns the closest matches, closest first
+     */
+    public synchronized List<Match> search(long hash, int maxDistance, int limit){
+        List<Match> matches = new ArrayList<Match>();
+
+        if(nodes == 0){
+            return matches;
+        }
+
+        int[] stack = new int[64];
+        int depth = 0;
+        stack[depth++] = 0;
+
+        while(depth > 0){
+            int node = stack[--depth];
+            int distance = PerceptualHash.distance(hash, hashes[node]);
+
+            if(distance <= maxDistance){
+
+                for(int frame = firstFrame[node]; frame != -1; frame = nextFrame[frame]){
+                    matches.add(new Match(frames.get(frame), distance));
+                }
+
+            }
+
+            for(int child = firstChild[node]; child != -1; child = nextSibling[child]){
+
+                if(Math.abs(parentDistance[child] - distance) <= maxDistance){
+
+                    if(depth == stack.length){
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+
+                    stack[depth++] = child;
+                }
+
+            }
+
+        }
+
+        matches.sort((a, b) -> Integer.compare(a.getDistance(), b.getDistance()));
+        return matches.size() > limit ? new ArrayList<Match>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * @return Returns the number of frames
+     */
+    public synchronized int size(){return frames.size();}
+
+    /**
+     * @return Returns the number of distinct hashes
+     */
+    public synchronized int getNodes(){return nodes;}
+
+}
@@ -0,0 +1,122 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * This is the benchmark which checks that a FrameIndex answers "find similar screen" queries over a full day of recordings in milliseconds.
+ * Every seat records a frame every 10 seconds, cycling through screens of its own and exercise screens the whole class has open, each
+ * recorded with a few bits of noise as recompression would add. It also measures how far recompression and scaling move a real hash
+ *
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FrameIndexBenchmark {
+    private static final int framesPerHour = 360;
+    private static final int privateScreens = 20;
+    private static final int sharedScreens = 10;
+    private static final int maxNoiseBits = 3;
+    private static final int queries = 1000;
+    private static final int width = 1280;
+    private static final int height = 800;
+
+    /**
+     * Runs the benchmark and prints hashing cost, hash stability, and query latencies at several distances
+     *
+     * @param args The number of seats and the hours recorded, 100 and 8 if not given
+     * @throws IOException Throws an IOException when the temporary frame cannot be written
+     */
+    public static void main(String[] args) throws IOException{
+        int seats = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int hours = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        measureHashing();
+
+        Random random = new Random(7);
+        long[] shared = new long[sharedScreens];
+
+        for(int i = 0; i < shared.length; i++){
+            shared[i] = random.nextLong();
+        }
+
+        FrameIndex index = new FrameIndex();
+        int frames = seats * hours * framesPerHour;
+        long started = System.nanoTime();
+
+        for(int seat = 0; seat < seats; seat++){
+            long[] own = new long[privateScreens];
+
+            for(int i = 0; i < own.length; i++){
+                own[i] = random.nextLong();
+            }
+
+            for(int frame = 0; frame < hours * framesPerHour; frame++){
+                // Screens stay up for a few minutes at a time and a third of them are the class's exercise
+                int screen = frame / 20;
+                long hash = screen % 3 == 0 ? shared[screen / 3 % shared.length] : own[screen % own.length];
+
+                for(int bit = random.nextInt(maxNoiseBits + 1); bit > 0; bit--){
+                    hash ^= 1L << random.nextInt(64);
+                }
+
+                index.add(hash, "seat" + seat + "/" + frame + ".jpg");
+            }
+
+        }
+
+        System.out.printf("Indexed %d frames (%d distinct hashes) in %d ms%n", frames, index.getNodes(), (System.nanoTime() - started) / 1000000);
+
+        for(int maxDistance : new int[]{4, 8, 10, 12}){
+            long[] micros = new long[queries];
+            long found = 0;
+
+            for(int q = 0; q < queries; q++){
+                long query = q % 2 == 0 ? shared[random.nextInt(shared.length)] ^ 1L << random.nextInt(64) : random.nextLong();
+                long start = System.nanoTime();
+                found += index.search(query, maxDistance, Integer.MAX_VALUE).size();
+                micros[q] = (System.nanoTime() - start) / 1000;
+            }
+
+            Arrays.sort(micros);
+            System.out.printf("Distance %2d: p50 %6d us, p99 %6d us, max %6d us, %d matches per query%n", maxDistance, micros[queries / 2], micros[queries * 99 / 100], micros[queries - 1], found / queries);
+        }
+
+    }
+
+    /**
+     * Prints how long hashing a frame takes, from memory and from a JPEG file, and how many bits recompression and scaling change
+     *
+     * @throws IOException Throws an IOException when the temporary frame cannot be written
+     */
+    private static void measureHashing() throws IOException{
+        BufferedImage frame = SyntheticScreenSource.render(width, height, 0);
+        long hash = PerceptualHash.hash(frame);
+        long started = System.nanoTime();
+
+        for(int i = 0; i < 20; i++){
+            PerceptualHash.hash(frame);
+        }
+
+        System.out.printf("Hashing a %dx%d frame: %.2f ms%n", width, height, (System.nanoTime() - started) / 20 / 1e6);
+        byte[] jpeg = new JpegCodec(0.3f).encode(frame);
+        File file = File.createTempFile("frame", ".jpg");
+        file.deleteOnExit();
+        Files.write(file.toPath(), jpeg);
+        started = System.nanoTime();
+        long fileHash = 0;
+
+        for(int i = 0; i < 20; i++){
+            fileHash = PerceptualHash.hash(file);
+        }
+
+        System.out.printf("Hashing a %d KB JPEG file: %.2f ms%n", jpeg.length / 1024, (System.nanoTime() - started) / 20 / 1e6);
+        System.out.println("Bits changed by JPEG at quality 0.3 and reading at a quarter size: " + PerceptualHash.distance(hash, fileHash));
+        System.out.println("Bits changed by scaling to half size: " + PerceptualHash.distance(hash, PerceptualHash.hash(ImageScaler.fit(frame, width / 2, height / 2))));
+        System.out.println("Bits changed by a later frame of the same screen: " + PerceptualHash.distance(hash, PerceptualHash.hash(SyntheticScreenSource.render(width, height, 30))));
+    }
+
+}
@@ -0,0 +1,243 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This is the thread that keeps the FrameIndex of every recorded frame, which are the offline history and the seats' snapshot frames.
+ * Hashes are appended to the index file as frames are indexed, so a restarted Server reloads them instead of reading every frame again.
+ * On start it indexes whatever recorded frames the file does not cover, then each new frame as it is offered, all at the lowest priority
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FrameIndexer extends Thread {
+    private FrameIndex index = new FrameIndex();
+    private List<File> roots;
+    private File indexFile;
+    private Set<String> indexed = new HashSet<String>();
+    private LinkedBlockingQueue<File> offered = new LinkedBlockingQueue<File>();
+    private DataOutputStream output = null;
+
+    private static FrameIndexer instance = null;
+    private static final String frameExtension = ".jpg";
+    private static final int flushInterval = 1000;
+
+    /**
+     * Gets the indexer shared by the whole process, which indexes historyDirectory and snapshotDirectory into frameIndexFile
+     * 
+     * @return Returns the FrameIndexer, started on first use
+     */
+    public static synchronized FrameIndexer get(){
+
+        if(instance == null){
+            instance = new FrameIndexer(Arrays.asList(new File(Config.historyDirectory.get()), new File(Config.snapshotDirectory.get())), new File(Config.frameIndexFile.get()));
+            instance.start();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Constructor for the FrameIndexer class
+     * 
+     * @param roots The directories whose frames are indexed
+     * @param indexFile The file hashes are kept in
+     */
+    public FrameIndexer(List<File> roots, File indexFile){
+        this.roots = roots;
+        this.indexFile = indexFile;
+        setDaemon(true);
+        setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Loads the index file, indexes the frames it is missing, then indexes offered frames until interrupted
+     */
+    @Override
+    public void run(){
+
+        try{
+            load();
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+            int added = 0;
+
+            for(File frame : findFrames()){
+
+                if(add(frame) && ++added % flushInterval == 0){
+                    output.flush();
+                }
+
+            }
+
+            output.flush();
+            System.out.println("Frame index holds " + index.size() + " frames, " + added + " newly indexed");
+
+            while(true){
+                add(offered.take());
+
+                if(offered.isEmpty()){
+                    output.flush();
+                }
+
+            }
+
+        } catch(InterruptedException iE){
+            System.out.println("Frame indexer interrupted");
+        } catch(IOException ioE){
+            System.out.println("Could not write frame index " + indexFile + ": " + ioE.getMessage());
+        }
+
+    }
+
+    /**
+     * Reads the hashes kept in the index file, skipping frames that no longer exist.
+     * A record cut short when the Server stopped is removed so that new records follow the last whole one
+     * 
+     * @throws IOException Throws an IOException when the index file cannot be shortened
+     */
+    private void load() throws IOException{
+
+        if(!indexFile.isFile()){
+            return;
+        }
+
+        long valid = 0;
+
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))){
+
+            while(true){
+                long hash = input.readLong();
+                String frame = input.readUTF();
+                valid += 8 + 2 + frame.getBytes(StandardCharsets.UTF_8).length;
+
+                if(indexed.add(frame) && new File(frame).isFile()){
+                    index.add(hash, frame);
+                }
+
+            }
+
+        } catch(EOFException eofE){
+
+            if(valid < indexFile.length()){
+
+                try(RandomAccessFile file = new RandomAccessFile(indexFile, "rw")){
+                    file.setLength(valid);
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * @return Returns every recorded frame under the roots that is not yet indexed
+     * @throws IOException Throws an IOException when a root cannot be listed
+     */
+    private List<File> findFrames() throws IOException{
+        List<File> frames = new ArrayList<File>();
+
+        for(File root : roots){
+
+            if(!root.isDirectory()){
+                continue;
+            }
+
+            try(Stream<Path> paths = Files.walk(root.toPath())){
+                frames.addAll(paths.map(Path::toFile).filter(this::isFrame).filter(file -> !indexed.contains(file.getPath())).collect(Collectors.toList()));
+            }
+
+        }
+
+        return frames;
+    }
+
+    /**
+     * @param file The file
+     * @return Returns whether the file is a finished recorded frame, leaving out the hidden files frames are written to first
+     */
+    private Boolean isFrame(File file){
+        return file.isFile() && file.getName().endsWith(frameExtension) && !file.getName().startsWith(".");
+    }
+
+    /**
+     * Hashes a frame and adds it to the index and the index file
+     * 
+     * @param frame The frame
+     * @return Returns whether the frame was added, which it is not if it was already indexed or is not a readable image
+     * @throws IOException Throws an IOException when the index file cannot be written
+     */
+    private Boolean add(File frame) throws IOException{
+
+        if(indexed.contains(frame.getPath())){
+            return false;
+        }
+
+        long hash;
+
+        try{
+            hash = PerceptualHash.hash(frame);
+        } catch(IOException ioE){
+            System.out.println("Could not index " + frame + ": " + ioE.getMessage());
+            return false;
+        }
+
+        indexed.add(frame.getPath());
+        index.add(hash, frame.getPath());
+        output.writeLong(hash);
+        output.writeUTF(frame.getPath());
+        return true;
+    }
+
+    /**
+     * Queues a newly recorded frame to be indexed
+     * 
+     * @param frame The frame
+     */
+    public void offer(File frame){
+        offered.add(frame);
+    }
+
+    /**
+     * Finds the recorded frames most like an image
+     * 
+     * @param hash The perceptual hash of the image
+     * @param maxDistance The most bits a match may differ in
+     * @param limit The most matches returned
+     * @return Returns the closest matches, closest first
+     */
+    public List<FrameIndex.Match> search(long hash, int maxDistance, int limit){
+        return index.search(hash, maxDistance, limit);
+    }
+
+    /**
+     * @return Returns the number of frames indexed
+     */
+    public int size(){return index.size();}
+
+    /**
+     * @return Returns the number of offered frames waiting to be indexed
+     */
+    public int getPending(){return offered.size();}
+
+}
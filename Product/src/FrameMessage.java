@@ -0,0 +1,103 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ByteArrayInputStream;
+
+import java.util.Arrays;
+
+/**
+ * This is a single encoded frame sent on the FRAME channel, together with the display it shows, the codec it was encoded with,
+ * and for streamed frames the FrameTrace of its timing
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FrameMessage {
+    private int display;
+    private String codec;
+    private byte[] data;
+    private FrameTrace trace;
+
+    /**
+     * Constructor for the FrameMessage class
+     * 
+     * @param display The index of the display the frame was captured from
+     * @param codec The name of the codec the frame was encoded with
+     * @param data The encoded frame
+     */
+    public FrameMessage(int display, String codec, byte[] data){
+        this(display, codec, data, null);
+    }
+
+    /**
+     * Constructor for the FrameMessage class
+     * 
+     * @param display The index of the display the frame was captured from
+     * @param codec The name of the codec the frame was encoded with
+     * @param data The encoded frame
+     * @param trace The timing of the frame, or null if it is not traced
+     */
+    public FrameMessage(int display, String codec, byte[] data, FrameTrace trace){
+        this.display = display;
+        this.codec = codec;
+        this.data = data;
+        this.trace = trace;
+    }
+
+    /**
+     * Parses a FrameMessage from the bytes of a FRAME channel message
+     * 
+     * @param message The bytes of the message
+     * @return Returns the parsed FrameMessage
+     * @throws IOException Throws an IOException when the message is malformed
+     */
+    public static FrameMessage parse(byte[] message) throws IOException{
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(message));
+        int display = input.readUnsignedByte();
+        String codec = input.readUTF();
+        FrameTrace trace = input.readBoolean() ? FrameTrace.read(input) : null;
+        int headerSize = message.length - input.available();
+        return new FrameMessage(display, codec, Arrays.copyOfRange(message, headerSize, message.length), trace);
+    }
+
+    /**
+     * @return Returns the bytes of the FRAME channel message
+     * @throws IOException Never thrown as the message is written to memory
+     */
+    public byte[] toBytes() throws IOException{
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length + 64);
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        dataOutput.writeByte(display);
+        dataOutput.writeUTF(codec);
+        dataOutput.writeBoolean(trace != null);
+
+        if(trace != null){
+            trace.write(dataOutput);
+        }
+
+        dataOutput.write(data);
+        return output.toByteArray();
+    }
+
+    /**
+     * @return Returns the index of the display the frame was captured from
+     */
+    public int getDisplay(){return display;}
+
+    /**
+     * @return Returns the name of the codec the frame was encoded with
+     */
+    public String getCodec(){return codec;}
+
+    /**
+     * @return Returns the encoded frame
+     */
+    public byte[] getData(){return data;}
+
+    /**
+     * @return Returns the timing of the frame, or null if it is not traced
+     */
+    public FrameTrace getTrace(){return trace;}
+
+}
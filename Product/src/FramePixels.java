@@ -0,0 +1,51 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * This is the class that moves pixels in and out of BufferedImages as packed int arrays
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FramePixels {
+
+    /**
+     * Reads the pixels of an image as packed RGB ints, one per pixel in row order.
+     * Images already backed by an int array return that array directly, so the result must not be modified
+     * 
+     * @param image The image to be read
+     * @return Returns the pixels of the image
+     */
+    public static int[] read(BufferedImage image){
+        int type = image.getType();
+
+        if((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) && image.getRaster().getDataBuffer() instanceof DataBufferInt){
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+            if(data.length == image.getWidth() * image.getHeight()){
+                return data;
+            }
+
+        }
+
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Wraps packed opaque ARGB pixels in an image without copying them
+     * 
+     * @param pixels The pixels, one per int in row order, with the alpha bits set
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return Returns the image backed by the pixels
+     */
+    public static BufferedImage wrap(int[] pixels, int width, int height){
+        int[] masks = {0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000};
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width * height), width, height, width, masks, null);
+        return new BufferedImage(ColorModel.getRGBdefault(), raster, false, null);
+    }
+
+}
@@ -0,0 +1,110 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is the timing a Client attaches to each streamed frame so the Server can split its latency into stages.
+ * Times are microseconds on the Client's clock, together with the Client's estimate of how far the Server's clock is ahead of its own.
+ * When a frame has been written to the network is only known after it was sent, so each frame also carries that time for the frame
+ * before it on the same display
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class FrameTrace {
+    private int sequence;
+    private long captured;
+    private long encoded;
+    private int previousSequence;
+    private long previousSent;
+    private long clockOffset;
+
+    private static final long epochAnchor = System.currentTimeMillis() * 1000;
+    private static final long nanoAnchor = System.nanoTime();
+
+    /**
+     * Constructor for the FrameTrace class
+     * 
+     * @param sequence The number of the frame
+     * @param captured When capture started
+     * @param encoded When encoding finished
+     * @param previousSequence The number of the previous frame of the display, or -1 if there is none
+     * @param previousSent When the previous frame was written to the network, or 0 if it is not known
+     * @param clockOffset How many microseconds the Server's clock is ahead of the Client's
+     */
+    public FrameTrace(int sequence, long captured, long encoded, int previousSequence, long previousSent, long clockOffset){
+        this.sequence = sequence;
+        this.captured = captured;
+        this.encoded = encoded;
+        this.previousSequence = previousSequence;
+        this.previousSent = previousSent;
+        this.clockOffset = clockOffset;
+    }
+
+    /**
+     * Gets the current time. It is taken from a monotonic clock anchored to the wall clock when the class loads,
+     * so it is cheap, never jumps backwards, and is comparable across machines once their offset is known
+     * 
+     * @return Returns the current time in microseconds since the epoch
+     */
+    public static long now(){
+        return epochAnchor + (System.nanoTime() - nanoAnchor) / 1000;
+    }
+
+    /**
+     * Reads a FrameTrace
+     * 
+     * @param input The stream the trace is read from
+     * @return Returns the FrameTrace
+     * @throws IOException Throws an IOException when the trace is truncated
+     */
+    public static FrameTrace read(DataInputStream input) throws IOException{
+        return new FrameTrace(input.readInt(), input.readLong(), input.readLong(), input.readInt(), input.readLong(), input.readLong());
+    }
+
+    /**
+     * Writes the FrameTrace
+     * 
+     * @param output The stream the trace is written to
+     * @throws IOException Throws an IOException when the stream cannot be written to
+     */
+    public void write(DataOutputStream output) throws IOException{
+        output.writeInt(sequence);
+        output.writeLong(captured);
+        output.writeLong(encoded);
+        output.writeInt(previousSequence);
+        output.writeLong(previousSent);
+        output.writeLong(clockOffset);
+    }
+
+    /**
+     * @return Returns the number of the frame
+     */
+    public int getSequence(){return sequence;}
+
+    /**
+     * @return Returns when capture started, on the Client's clock
+     */
+    public long getCaptured(){return captured;}
+
+    /**
+     * @return Returns when encoding finished, on the Client's clock
+     */
+    public long getEncoded(){return encoded;}
+
+    /**
+     * @return Returns the number of the previous frame of the display, or -1 if there is none
+     */
+    public int getPreviousSequence(){return previousSequence;}
+
+    /**
+     * @return Returns when the previous frame was written to the network on the Client's clock, or 0 if it is not known
+     */
+    public long getPreviousSent(){return previousSent;}
+
+    /**
+     * @return Returns how many microseconds the Server's clock is ahead of the Client's
+     */
+    public long getClockOffset(){return clockOffset;}
+
+}
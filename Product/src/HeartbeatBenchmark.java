@@ -0,0 +1,226 @@
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the benchmark which compares the packets and server CPU that keeping a classroom of idle seats alive costs with each liveness mode.
+ * With udp liveness every seat sends a heartbeat datagram every checkDelay ms to a DiscoveryHandler, which answers each one. With tcp liveness
+ * every seat sends a keepalive on its session every keepaliveInterval ms, which the session answers. That is what every seat costs unless
+ * the server is also sending to it, as a seat sends a keepalive whenever it has sent nothing or heard nothing for keepaliveInterval,
+ * so a seat being watched still sends one each interval to hear back. Server CPU is the CPU time of the threads that
+ * answer, which are started in their own ThreadGroup
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class HeartbeatBenchmark {
+    private static final int measuredMillis = 10000;
+    private static final String checkString = "LH_CHECK_CONNECTION";
+    private static final String pingString = "LH_PING";
+    private static final String pongString = "LH_PONG";
+
+    /**
+     * Runs the benchmark and prints the packets per second and server CPU of both modes
+     * 
+     * @param args The number of seats, 100 if not given
+     * @throws Exception Throws an Exception when a loopback socket fails
+     */
+    public static void main(String[] args) throws Exception{
+        int seats = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        double[] udp = measureUdp(seats);
+        double[] tcp = measureTcp(seats);
+        System.out.printf("%-4s %7.1f messages/s %7.1f ms server CPU per second, %d seats every %d ms%n", "udp", udp[0], udp[1], seats, Config.checkDelay.get());
+        System.out.printf("%-4s %7.1f messages/s %7.1f ms server CPU per second, %d seats every %d ms%n", "tcp", tcp[0], tcp[1], seats, Config.keepaliveInterval.get());
+        System.out.printf("tcp liveness sends %.0f%% fewer messages and uses %.0f%% less server CPU%n", (1 - tcp[0] / udp[0]) * 100, (1 - tcp[1] / udp[1]) * 100);
+    }
+
+    /**
+     * Sends heartbeat datagrams from every seat to a DiscoveryHandler hosting no rooms, so its search for the seat's sessions finds none
+     * and the cost measured is a lower bound
+     * 
+     * @param seats The number of seats
+     * @return Returns the datagrams sent and received per second, and the server's CPU milliseconds per second
+     * @throws Exception Throws an Exception when a loopback socket fails
+     */
+    private static double[] measureUdp(int seats) throws Exception{
+        int port;
+
+        try(DatagramSocket probe = new DatagramSocket(0)){
+            port = probe.getLocalPort();
+        }
+
+        ThreadGroup serverGroup = new ThreadGroup("server");
+        DiscoveryHandler[] handler = new DiscoveryHandler[1];
+        Thread starter = new Thread(serverGroup, () -> {
+            handler[0] = new DiscoveryHandler(port, new RoomHost(message -> {}));
+            handler[0].setDaemon(true);
+            handler[0].start();
+        });
+        starter.start();
+        starter.join();
+        Thread.sleep(200);
+        AtomicLong messages = new AtomicLong();
+        List<DatagramSocket> sockets = new ArrayList<DatagramSocket>();
+
+        for(int seat = 0; seat < seats; seat++){
+            DatagramSocket socket = new DatagramSocket();
+            socket.setSoTimeout(Config.heartbeatTimeout.get());
+            sockets.add(socket);
+            Thread seatThread = new Thread(() -> {
+                byte[] buffer = new byte[Config.datagramBufferSize.get()];
+
+                try{
+
+                    while(true){
+                        byte[] check = (checkString + FrameTrace.now()).getBytes();
+                        socket.send(new DatagramPacket(check, check.length, InetAddress.getLoopbackAddress(), port));
+                        messages.incrementAndGet();
+                        socket.receive(new DatagramPacket(buffer, buffer.length));
+                        messages.incrementAndGet();
+                        Thread.sleep(Config.checkDelay.get());
+                    }
+
+                } catch(IOException ioE){
+                    // The benchmark closed the socket
+                } catch(InterruptedException iE){
+                    return;
+                }
+
+            });
+            seatThread.setDaemon(true);
+            seatThread.start();
+        }
+
+        double[] result = measure(serverGroup, messages);
+
+        for(DatagramSocket socket : sockets){
+            socket.close();
+        }
+
+        handler[0].interrupt();
+        return result;
+    }
+
+    /**
+     * Sends keepalives on a loopback session from every seat, each answered by a reader standing in for the seat's ClientHandler
+     * 
+     * @param seats The number of seats
+     * @return Returns the keepalives and replies per second, and the server's CPU milliseconds per second
+     * @throws Exception Throws an Exception when a loopback socket fails
+     */
+    private static double[] measureTcp(int seats) throws Exception{
+        ThreadGroup serverGroup = new ThreadGroup("server");
+        AtomicLong messages = new AtomicLong();
+        List<Socket> sockets = new ArrayList<Socket>();
+
+        try(ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())){
+
+            for(int seat = 0; seat < seats; seat++){
+                Socket client = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+                Socket server = serverSocket.accept();
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(server);
+                MuxOutput clientOut = new MuxOutput(client.getOutputStream(), Config.chunkSize.get());
+                MuxInput clientIn = new MuxInput(client.getInputStream(), Config.maxMessageSize.get());
+                Thread serverThread = new Thread(serverGroup, () -> {
+
+                    try{
+                        MuxOutput serverOut = new MuxOutput(server.getOutputStream(), Config.chunkSize.get());
+                        MuxInput serverIn = new MuxInput(server.getInputStream(), Config.maxMessageSize.get());
+
+                        while(true){
+                            String command = serverIn.read().getText();
+                            long received = FrameTrace.now();
+                            serverOut.send(MuxChannel.CONTROL, pongString + command.substring(pingString.length()) + "," + received + "," + FrameTrace.now());
+                        }
+
+                    } catch(IOException ioE){
+                        // The benchmark closed the socket
+                    }
+
+                });
+                Thread seatThread = new Thread(() -> {
+
+                    try{
+
+                        while(true){
+                            clientOut.send(MuxChannel.CONTROL, pingString + FrameTrace.now());
+                            messages.incrementAndGet();
+                            clientIn.read();
+                            messages.incrementAndGet();
+                            Thread.sleep(Config.keepaliveInterval.get());
+                        }
+
+                    } catch(IOException ioE){
+                        // The benchmark closed the socket
+                    } catch(InterruptedException iE){
+                        return;
+                    }
+
+                });
+                serverThread.setDaemon(true);
+                seatThread.setDaemon(true);
+                serverThread.start();
+                seatThread.start();
+            }
+
+            double[] result = measure(serverGroup, messages);
+
+            for(Socket socket : sockets){
+                socket.close();
+            }
+
+            return result;
+        }
+
+    }
+
+    /**
+     * Counts messages and the CPU time of the server's threads for measuredMillis
+     * 
+     * @param serverGroup The ThreadGroup of the threads answering heartbeats
+     * @param messages The count of messages sent and received by the seats
+     * @return Returns the messages per second, and the server's CPU milliseconds per second
+     * @throws InterruptedException Throws an InterruptedException when interrupted while measuring
+     */
+    private static double[] measure(ThreadGroup serverGroup, AtomicLong messages) throws InterruptedException{
+        Thread.sleep(Math.max(Config.checkDelay.get(), Config.keepaliveInterval.get()));
+        long startMessages = messages.get();
+        long startCpu = cpuTime(serverGroup);
+        long started = System.nanoTime();
+        Thread.sleep(measuredMillis);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        return new double[]{(messages.get() - startMessages) / seconds, (cpuTime(serverGroup) - startCpu) / 1e6 / seconds};
+    }
+
+    /**
+     * @param group The ThreadGroup
+     * @return Returns the CPU nanoseconds used so far by the live threads of the group
+     */
+    private static long cpuTime(ThreadGroup group){
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Thread[] threads = new Thread[group.activeCount() * 2 + 16];
+        int count = group.enumerate(threads);
+        long total = 0;
+
+        for(int i = 0; i < count; i++){
+            total += Math.max(0, bean.getThreadCpuTime(threads[i].getId()));
+        }
+
+        return total;
+    }
+
+}
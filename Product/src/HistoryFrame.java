@@ -0,0 +1,66 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.Arrays;
+
+/**
+ * This is a frame captured while the Client was offline, sent on the HISTORY channel once it reconnects together with when it was captured
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class HistoryFrame {
+    private long capturedAt;
+    private FrameMessage frame;
+
+    /**
+     * Constructor for the HistoryFrame class
+     * 
+     * @param capturedAt The capture time in milliseconds since the epoch
+     * @param frame The frame
+     */
+    public HistoryFrame(long capturedAt, FrameMessage frame){
+        this.capturedAt = capturedAt;
+        this.frame = frame;
+    }
+
+    /**
+     * Parses a HistoryFrame from the bytes of a HISTORY channel message
+     * 
+     * @param message The bytes of the message
+     * @return Returns the parsed HistoryFrame
+     * @throws IOException Throws an IOException when the message is malformed
+     */
+    public static HistoryFrame parse(byte[] message) throws IOException{
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(message));
+        long capturedAt = input.readLong();
+        return new HistoryFrame(capturedAt, FrameMessage.parse(Arrays.copyOfRange(message, Long.BYTES, message.length)));
+    }
+
+    /**
+     * @return Returns the bytes of the HISTORY channel message
+     * @throws IOException Never thrown as the message is written to memory
+     */
+    public byte[] toBytes() throws IOException{
+        byte[] frameBytes = frame.toBytes();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(frameBytes.length + Long.BYTES);
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        dataOutput.writeLong(capturedAt);
+        dataOutput.write(frameBytes);
+        return output.toByteArray();
+    }
+
+    /**
+     * @return Returns the capture time in milliseconds since the epoch
+     */
+    public long getCapturedAt(){return capturedAt;}
+
+    /**
+     * @return Returns the frame
+     */
+    public FrameMessage getFrame(){return frame;}
+
+}
@@ -0,0 +1,63 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * This is the class that shrinks captured frames so they are no larger than they will be displayed
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ImageScaler {
+
+    /**
+     * Scales an image down, preserving its aspect ratio, until it fits inside the given size.
+     * While the image is at least twice too large it is halved by averaging 2x2 blocks, which is faster than drawing it scaled
+     * and does not skip pixels the way bilinear filtering does at large reductions. Images that already fit are returned unchanged
+     * 
+     * @param image The image to be scaled
+     * @param maxWidth The maximum width of the result
+     * @param maxHeight The maximum height of the result
+     * @return Returns the scaled image
+     */
+    public static BufferedImage fit(BufferedImage image, int maxWidth, int maxHeight){
+        double scale = Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight());
+
+        if(scale >= 1){
+            return image;
+        }
+
+        while(scale <= 0.5 && image.getWidth() >= 2 && image.getHeight() >= 2){
+            image = halve(image);
+            scale = Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight());
+        }
+
+        if(scale >= 1){
+            return image;
+        }
+
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    /**
+     * Halves an image in both directions with PixelKernels
+     * 
+     * @param image The image to be halved
+     * @return Returns the halved image
+     */
+    private static BufferedImage halve(BufferedImage image){
+        BufferedImage half = new BufferedImage(image.getWidth() / 2, image.getHeight() / 2, BufferedImage.TYPE_INT_RGB);
+        int[] target = ((DataBufferInt) half.getRaster().getDataBuffer()).getData();
+        PixelKernels.get().downscale2x(FramePixels.read(image), image.getWidth(), image.getHeight(), target);
+        return half;
+    }
+
+}
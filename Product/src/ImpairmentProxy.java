@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is a local proxy which sits between Clients and a Server and makes the network between them worse on purpose.
+ * It forwards the TCP session connections and the UDP discovery/heartbeat datagrams on the same port as the Server,
+ * adding latency and jitter, capping the bandwidth of the link in each direction, losing datagrams, and cutting connections.
+ * TCP cannot lose bytes, so a lost TCP segment is modelled as the retransmission delay it would cause instead
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ImpairmentProxy {
+    private int listenPort;
+    private InetAddress targetAddress;
+    private int targetPort;
+    private int latency;
+    private int jitter;
+    private LossModel lossModel;
+    private Random random = new Random(3);
+
+    private ServerSocket serverSocket;
+    private DatagramSocket datagramSocket;
+    private Pacer upstreamPacer;
+    private Pacer downstreamPacer;
+    private List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+    private Map<SocketAddress, DatagramSocket> relays = new ConcurrentHashMap<SocketAddress, DatagramSocket>();
+    private ScheduledExecutorService datagramScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private AtomicLong upstreamBytes = new AtomicLong();
+    private AtomicLong downstreamBytes = new AtomicLong();
+    private AtomicLong datagramsForwarded = new AtomicLong();
+    private AtomicLong datagramsLost = new AtomicLong();
+    private AtomicLong connections = new AtomicLong();
+
+    private static final int chunkSize = 16384;
+    private static final int bufferedChunks = 16;
+    private static final int retransmitDelay = 200;
+
+    /**
+     * This is a piece of a TCP stream waiting to be delivered
+     */
+    private static class Chunk {
+        private byte[] data;
+        private long deliverAt;
+
+        /**
+         * Constructor for the Chunk class
+         * 
+         * @param data The bytes of the chunk, or null to mark the end of the stream
+         * @param deliverAt The System.nanoTime at which the chunk may be delivered
+         */
+        public Chunk(byte[] data, long deliverAt){
+            this.data = data;
+            this.deliverAt = deliverAt;
+        }
+
+    }
+
+    /**
+     * Constructor for the ImpairmentProxy class
+     * 
+     * @param listenPort The port Clients connect to
+     * @param targetAddress The InetAddress of the Server
+     * @param targetPort The port of the Server
+     * @param latency The one-way delay added in each direction in milliseconds
+     * @param jitter The largest random extra delay in milliseconds
+     * @param bytesPerSecond The bandwidth of each direction of the link, or 0 for no limit
+     * @param lossRate The probability of a datagram or TCP segment being lost
+     */
+    public ImpairmentProxy(int listenPort, InetAddress targetAddress, int targetPort, int latency, int jitter, long bytesPerSecond, double lossRate){
+        this.listenPort = listenPort;
+        this.targetAddress = targetAddress;
+        this.targetPort = targetPort;
+        this.latency = latency;
+        this.jitter = jitter;
+        lossModel = new LossModel(lossRate, 5);
+        upstreamPacer = new Pacer(bytesPerSecond);
+        downstreamPacer = new Pacer(bytesPerSecond);
+    }
+
+    /**
+     * Starts accepting connections and datagrams
+     * 
+     * @throws IOException Throws an IOException when the port cannot be bound
+     */
+    public void start() throws IOException{
+        serverSocket = new ServerSocket(listenPort, 200, InetAddress.getLoopbackAddress());
+        listenPort = serverSocket.getLocalPort();
+        datagramSocket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), listenPort));
+
+        startDaemon(() -> {
+
+            try{
+
+                while(!serverSocket.isClosed()){
+                    Socket client = serverSocket.accept();
+                    Socket server = new Socket(targetAddress, targetPort);
+                    client.setTcpNoDelay(true);
+                    server.setTcpNoDelay(true);
+                    sockets.add(client);
+                    sockets.add(server);
+                    connections.incrementAndGet();
+                    forward(client, server, upstreamPacer, upstreamBytes);
+                    forward(server, client, downstreamPacer, downstreamBytes);
+                }
+
+            } catch(IOException ioE){
+
+                if(!serverSocket.isClosed()){
+                    System.out.println("Proxy stopped accepting connections");
+                }
+
+            }
+
+        });
+
+        startDaemon(() -> {
+            byte[] recvBuf = new byte[65536];
+
+            try{
+
+                while(!datagramSocket.isClosed()){
+                    DatagramPacket packet = new DatagramPacket(recvBuf, recvBuf.length);
+                    datagramSocket.receive(packet);
+                    DatagramSocket relay = getRelay(packet.getSocketAddress());
+                    sendLater(relay, new DatagramPacket(Arrays.copyOf(packet.getData(), packet.getLength()), packet.getLength(), targetAddress, targetPort));
+                }
+
+            } catch(IOException ioE){
+
+                if(!datagramSocket.isClosed()){
+                    System.out.println("Proxy stopped relaying datagrams");
+                }
+
+            }
+
+        });
+
+    }
+
+    /**
+     * Stops the proxy and closes every connection
+     */
+    public void close(){
+
+        try{
+            serverSocket.close();
+        } catch(IOException ioE){
+            System.out.println("Could not close proxy socket");
+        }
+
+        datagramSocket.close();
+        disconnectAll();
+
+        for(DatagramSocket relay : relays.values()){
+            relay.close();
+        }
+
+        datagramScheduler.shutdownNow();
+    }
+
+    /**
+     * Cuts every forwarded TCP connection, as if the Wi-Fi dropped
+     */
+    public void disconnectAll(){
+
+        for(Socket socket : sockets){
+
+            try{
+                socket.close();
+            } catch(IOException ioE){
+                System.out.println("Could not close forwarded socket");
+            }
+
+        }
+
+        sockets.clear();
+    }
+
+    /**
+     * Gets the DatagramSocket which relays datagrams from one Client to the Server, creating it on the first datagram.
+     * Replies from the Server arriving on it are relayed back to that Client
+     * 
+     * @param client The address of the Client
+     * @return Returns the relay DatagramSocket
+     * @throws IOException Throws an IOException when the DatagramSocket cannot be opened
+     */
+    private DatagramSocket getRelay(SocketAddress client) throws IOException{
+        DatagramSocket relay = relays.get(client);
+
+        if(relay != null){
+            return relay;
+        }
+
+        DatagramSocket created = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        relays.put(client, created);
+
+        startDaemon(() -> {
+            byte[] recvBuf = new byte[65536];
+
+            try{
+
+                while(!created.isClosed()){
+                    DatagramPacket packet = new DatagramPacket(recvBuf, recvBuf.length);
+                    created.receive(packet);
+                    sendLater(datagramSocket, new DatagramPacket(Arrays.copyOf(packet.getData(), packet.getLength()), packet.getLength(), client));
+                }
+
+            } catch(IOException ioE){
+
+                if(!created.isClosed()){
+                    System.out.println("Relay for " + client + " stopped");
+                }
+
+            }
+
+        });
+
+        return created;
+    }
+
+    /**
+     * Sends a datagram after the impaired delay, unless the loss model drops it
+     * 
+     * @param socket The DatagramSocket to send from
+     * @param packet The datagram to be sent
+     */
+    private void sendLater(DatagramSocket socket, DatagramPacket packet){
+
+        if(lossModel.drop()){
+            datagramsLost.incrementAndGet();
+            return;
+        }
+
+        datagramScheduler.schedule(() -> {
+
+            try{
+                socket.send(packet);
+                datagramsForwarded.incrementAndGet();
+            } catch(IOException ioE){
+
+                if(!socket.isClosed()){
+                    System.out.println("Could not relay datagram");
+                }
+
+            }
+
+        }, delay(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Returns the delay of the next datagram or segment in milliseconds
+     */
+    private synchronized long delay(){
+        return latency + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+    }
+
+    /**
+     * Forwards one direction of a TCP connection through a bounded queue, so a slow link pushes back on the sender as a real bottleneck would
+     * 
+     * @param from The Socket bytes are read from
+     * @param to The Socket bytes are written to
+     * @param pacer The Pacer of the direction
+     * @param counter Counts the bytes forwarded in the direction
+     */
+    private void forward(Socket from, Socket to, Pacer pacer, AtomicLong counter){
+        LinkedBlockingQueue<Chunk> queue = new LinkedBlockingQueue<Chunk>(bufferedChunks);
+
+        startDaemon(() -> {
+            byte[] buffer = new byte[chunkSize];
+            long lastDelivery = 0;
+
+            try{
+                InputStream input = from.getInputStream();
+                int read;
+
+                while((read = input.read(buffer)) != -1){
+                    long extra = lossModel.drop() ? retransmitDelay : 0;
+                    // Chunks never overtake each other, a TCP stream stays in order however the jitter falls
+                    lastDelivery = Math.max(lastDelivery, System.nanoTime() + (delay() + extra) * 1000000L);
+                    queue.put(new Chunk(Arrays.copyOf(buffer, read), lastDelivery));
+                }
+
+            } catch(IOException | InterruptedException ex){
+                System.out.println("Proxy stopped reading from " + from.getRemoteSocketAddress());
+            }
+
+            queue.offer(new Chunk(null, 0));
+        });
+
+        startDaemon(() -> {
+
+            try{
+                OutputStream output = to.getOutputStream();
+
+                while(true){
+                    Chunk chunk = queue.take();
+
+                    if(chunk.data == null){
+                        break;
+                    }
+
+                    long wait = chunk.deliverAt - System.nanoTime();
+
+                    if(wait > 0){
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    }
+
+                    pacer.acquire(chunk.data.length);
+                    output.write(chunk.data);
+                    counter.addAndGet(chunk.data.length);
+                }
+
+            } catch(IOException | InterruptedException ex){
+                System.out.println("Proxy stopped writing to " + to.getRemoteSocketAddress());
+            }
+
+            try{
+                from.close();
+                to.close();
+            } catch(IOException ioE){
+                System.out.println("Could not close forwarded sockets");
+            }
+
+        });
+
+    }
+
+    /**
+     * Starts a daemon thread
+     * 
+     * @param task The Runnable run by the thread
+     */
+    private static void startDaemon(Runnable task){
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return Returns the port Clients should connect to
+     */
+    public int getListenPort(){return listenPort;}
+
+    /**
+     * @return Returns the number of bytes forwarded from Clients to the Server
+     */
+    public long getUpstreamBytes(){return upstreamBytes.get();}
+
+    /**
+     * @return Returns the number of bytes forwarded from the Server to Clients
+     */
+    public long getDownstreamBytes(){return downstreamBytes.get();}
+
+    /**
+     * @return Returns the number of datagrams relayed
+     */
+    public long getDatagramsForwarded(){return datagramsForwarded.get();}
+
+    /**
+     * @return Returns the number of datagrams lost on purpose
+     */
+    public long getDatagramsLost(){return datagramsLost.get();}
+
+    /**
+     * @return Returns the number of TCP connections accepted
+     */
+    public long getConnections(){return connections.get();}
+
+}
@@ -0,0 +1,459 @@
+import java.awt.image.BufferedImage;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the harness which runs scripted network scenarios unattended, such as 30 clients at 2 Mbit/s with 2% loss.
+ * Synthetic load clients speak the real session protocol through an ImpairmentProxy to a headless sink standing in for the Server,
+ * which cannot run without a display. Every frame carries its capture time, so the sink can report frame latency and how stale the
+ * newest frame of each seat is (freshness), alongside heartbeat replies and reconnects.
+ * 
+ * Each argument is a properties file describing one scenario, or a --key=value setting of a single scenario. The keys are
+ * clients, duration (s), fps, width and height of the frames, latency (ms), jitter (ms), bandwidth (kbit/s shared by the link,
+ * 0 for no limit), loss (0 to 1), and disconnectEvery (s, 0 for never)
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ImpairmentScenario {
+    private Properties settings;
+    private List<Double> latencies = Collections.synchronizedList(new ArrayList<Double>());
+    private List<Double> freshness = Collections.synchronizedList(new ArrayList<Double>());
+    private Map<Integer, Long> newestCaptures = new ConcurrentHashMap<Integer, Long>();
+    private AtomicLong framesSent = new AtomicLong();
+    private AtomicLong framesReceived = new AtomicLong();
+    private AtomicLong heartbeatsSent = new AtomicLong();
+    private AtomicLong heartbeatsAnswered = new AtomicLong();
+    private AtomicLong reconnects = new AtomicLong();
+    private byte[][] frames;
+    private volatile boolean running = true;
+
+    private static final String checkString = "LH_CHECK_CONNECTION";
+    private static final String connectedString = "LH_CONNECTED";
+    private static final int freshnessDelay = 100;
+    private static final int heartbeatDelay = 1000;
+    private static final int reconnectDelay = 500;
+
+    /**
+     * Runs every scenario given in the arguments, or the default classroom scenario when there are none
+     * 
+     * @param args Scenario properties files, or --key=value settings of a single scenario
+     * @throws Exception Throws an Exception when a scenario cannot be set up
+     */
+    public static void main(String[] args) throws Exception{
+        List<Properties> scenarios = new ArrayList<Properties>();
+        Properties inline = new Properties();
+
+        for(String arg : args){
+
+            if(arg.startsWith("--") && arg.contains("=")){
+                inline.setProperty(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else{
+                Properties file = new Properties();
+
+                try(InputStream input = new FileInputStream(arg)){
+                    file.load(input);
+                }
+
+                scenarios.add(file);
+            }
+
+        }
+
+        if(scenarios.isEmpty()){
+            scenarios.add(inline);
+        }
+
+        for(Properties scenario : scenarios){
+            new ImpairmentScenario(scenario).run();
+        }
+
+    }
+
+    /**
+     * Constructor for the ImpairmentScenario class
+     * 
+     * @param settings The settings of the scenario
+     */
+    public ImpairmentScenario(Properties settings){
+        this.settings = settings;
+    }
+
+    /**
+     * Starts the sink, the proxy, and the load clients, lets the scenario play out, and prints the report
+     * 
+     * @throws Exception Throws an Exception when the sockets cannot be bound
+     */
+    public void run() throws Exception{
+        int clients = getInt("clients", 30);
+        int duration = getInt("duration", 30);
+        int fps = getInt("fps", 5);
+        int width = getInt("width", 1280);
+        int height = getInt("height", 800);
+        int latency = getInt("latency", 20);
+        int jitter = getInt("jitter", 5);
+        int bandwidth = getInt("bandwidth", 2000);
+        double loss = Double.parseDouble(settings.getProperty("loss", "0.02"));
+        int disconnectEvery = getInt("disconnectEvery", 0);
+
+        frames = encodeFrames(width, height, 8);
+        ServerSocket sinkSocket = new ServerSocket(0, 200, InetAddress.getLoopbackAddress());
+        DatagramSocket sinkDatagrams = new DatagramSocket(sinkSocket.getLocalPort(), InetAddress.getLoopbackAddress());
+        ImpairmentProxy proxy = new ImpairmentProxy(0, InetAddress.getLoopbackAddress(), sinkSocket.getLocalPort(), latency, jitter, bandwidth * 1000L / 8, loss);
+        proxy.start();
+        startDaemon(() -> acceptSessions(sinkSocket));
+        startDaemon(() -> answerHeartbeats(sinkDatagrams));
+        startDaemon(this::sampleFreshness);
+
+        for(int i = 0; i < clients; i++){
+            int id = i;
+            startDaemon(() -> streamFrames(id, proxy.getListenPort(), fps, width + "x" + height));
+            startDaemon(() -> sendHeartbeats(proxy.getListenPort()));
+        }
+
+        long end = System.currentTimeMillis() + duration * 1000L;
+        long nextDisconnect = System.currentTimeMillis() + disconnectEvery * 1000L;
+
+        while(System.currentTimeMillis() < end){
+            Thread.sleep(100);
+
+            if(disconnectEvery > 0 && System.currentTimeMillis() >= nextDisconnect){
+                proxy.disconnectAll();
+                nextDisconnect += disconnectEvery * 1000L;
+            }
+
+        }
+
+        running = false;
+        proxy.close();
+        sinkSocket.close();
+        sinkDatagrams.close();
+
+        System.out.printf("%n%d clients, %d kbit/s, %d+-%d ms, %.1f%% loss, disconnect every %d s, %d s at %d fps of %dx%d (%d KB)%n", clients, bandwidth, latency, jitter, loss * 100, disconnectEvery, duration, fps, width, height, frames[0].length / 1024);
+        System.out.printf("  frames      sent %d, received %d (%.2f fps per client)%n", framesSent.get(), framesReceived.get(), framesReceived.get() / (double) duration / clients);
+        report("  latency", latencies);
+        report("  freshness", freshness);
+        System.out.printf("  heartbeats  answered %d of %d%n", heartbeatsAnswered.get(), heartbeatsSent.get());
+        System.out.printf("  sessions    %d connections, %d reconnects%n", proxy.getConnections(), reconnects.get());
+        System.out.printf("  link        %.0f kbit/s up, %.0f kbit/s down, %d datagrams lost%n", proxy.getUpstreamBytes() * 8 / 1000.0 / duration, proxy.getDownstreamBytes() * 8 / 1000.0 / duration, proxy.getDatagramsLost());
+    }
+
+    /**
+     * Accepts sessions on the sink the way the Server does, answering the handshake and asking for display 0
+     * 
+     * @param sinkSocket The ServerSocket of the sink
+     */
+    private void acceptSessions(ServerSocket sinkSocket){
+
+        try{
+
+            while(running){
+                Socket socket = sinkSocket.accept();
+                startDaemon(() -> receiveFrames(socket));
+            }
+
+        } catch(IOException ioE){
+
+            if(running){
+                System.out.println("Sink stopped accepting sessions");
+            }
+
+        }
+
+    }
+
+    /**
+     * Reads the handshake and then the frames of one session, recording the latency of every frame
+     * 
+     * @param socket The Socket of the session
+     */
+    private void receiveFrames(Socket socket){
+
+        try{
+            MuxInput input = new MuxInput(socket.getInputStream(), Config.maxMessageSize.get());
+            MuxOutput output = new MuxOutput(socket.getOutputStream(), Config.chunkSize.get());
+
+            // Resume token, username, displays, codecs, transports
+            for(int i = 0; i < 5; i++){
+                input.read();
+            }
+
+            output.send(MuxChannel.CONTROL, "LH_CODEC" + JpegCodec.name);
+            output.send(MuxChannel.CONTROL, "LH_TOKEN" + socket.getPort());
+            output.send(MuxChannel.CONTROL, "LH_START0");
+
+            while(running){
+                MuxInput.Message message = input.read();
+
+                if(message.getChannel() == MuxChannel.FRAME){
+                    ByteBuffer data = ByteBuffer.wrap(FrameMessage.parse(message.getData()).getData());
+                    int id = data.getInt();
+                    long captured = data.getLong();
+                    latencies.add((System.nanoTime() - captured) / 1e6);
+                    newestCaptures.put(id, captured);
+                    framesReceived.incrementAndGet();
+                }
+
+            }
+
+        } catch(IOException ioE){
+            closeQuietly(socket);
+        }
+
+    }
+
+    /**
+     * Answers heartbeat datagrams the way the DiscoveryHandler does
+     * 
+     * @param socket The DatagramSocket of the sink
+     */
+    private void answerHeartbeats(DatagramSocket socket){
+        byte[] recvBuf = new byte[Config.datagramBufferSize.get()];
+
+        try{
+
+            while(running){
+                DatagramPacket packet = new DatagramPacket(recvBuf, recvBuf.length);
+                socket.receive(packet);
+
+                if(new String(packet.getData(), 0, packet.getLength()).trim().equals(checkString)){
+                    byte[] sendData = connectedString.getBytes();
+                    socket.send(new DatagramPacket(sendData, sendData.length, packet.getSocketAddress()));
+                }
+
+            }
+
+        } catch(IOException ioE){
+
+            if(running){
+                System.out.println("Sink stopped answering heartbeats");
+            }
+
+        }
+
+    }
+
+    /**
+     * Samples how old the newest frame of every seat is, which is what a teacher looking at the grid would see
+     */
+    private void sampleFreshness(){
+
+        try{
+
+            while(running){
+                Thread.sleep(freshnessDelay);
+                long now = System.nanoTime();
+
+                for(long captured : newestCaptures.values()){
+                    freshness.add((now - captured) / 1e6);
+                }
+
+            }
+
+        } catch(InterruptedException iE){
+            System.out.println("Freshness sampling interrupted");
+        }
+
+    }
+
+    /**
+     * Streams frames from one load client through the proxy, reconnecting whenever the connection is cut
+     * 
+     * @param id The id of the load client
+     * @param port The port of the proxy
+     * @param fps The number of frames captured per second
+     * @param display The size of the display sent in the handshake
+     */
+    private void streamFrames(int id, int port, int fps, String display){
+        int frame = id;
+
+        while(running){
+            Socket socket = null;
+
+            try{
+                socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                socket.setTcpNoDelay(true);
+                MuxOutput output = new MuxOutput(socket.getOutputStream(), Config.chunkSize.get());
+                MuxInput input = new MuxInput(socket.getInputStream(), Config.maxMessageSize.get());
+                output.send(MuxChannel.CONTROL, "LH_RESUME");
+                output.send(MuxChannel.CONTROL, "load-" + id);
+                output.send(MuxChannel.CONTROL, display);
+                output.send(MuxChannel.CONTROL, JpegCodec.name);
+                output.send(MuxChannel.CONTROL, "tcp");
+
+                while(!input.read().getText().startsWith("LH_START"));
+
+                while(running){
+                    long captured = System.nanoTime();
+                    byte[] encoded = frames[frame++ % frames.length];
+                    byte[] data = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + encoded.length).putInt(id).putLong(captured).put(encoded).array();
+                    output.send(MuxChannel.FRAME, new FrameMessage(0, JpegCodec.name, data).toBytes());
+                    framesSent.incrementAndGet();
+                    long wait = captured + 1000000000L / fps - System.nanoTime();
+
+                    if(wait > 0){
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    }
+
+                }
+
+            } catch(IOException | InterruptedException ex){
+
+                if(running){
+                    reconnects.incrementAndGet();
+                }
+
+            }
+
+            closeQuietly(socket);
+
+            try{
+                Thread.sleep(reconnectDelay);
+            } catch(InterruptedException iE){
+                return;
+            }
+
+        }
+
+    }
+
+    /**
+     * Sends heartbeats from one load client through the proxy and counts the replies
+     * 
+     * @param port The port of the proxy
+     */
+    private void sendHeartbeats(int port){
+
+        try(DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())){
+            socket.setSoTimeout(heartbeatDelay);
+            byte[] sendData = checkString.getBytes();
+            byte[] recvBuf = new byte[Config.datagramBufferSize.get()];
+
+            while(running){
+                long sent = System.currentTimeMillis();
+                socket.send(new DatagramPacket(sendData, sendData.length, InetAddress.getLoopbackAddress(), port));
+                heartbeatsSent.incrementAndGet();
+
+                try{
+                    socket.receive(new DatagramPacket(recvBuf, recvBuf.length));
+                    heartbeatsAnswered.incrementAndGet();
+                } catch(SocketTimeoutException stE){
+                    continue;
+                }
+
+                Thread.sleep(Math.max(0, sent + heartbeatDelay - System.currentTimeMillis()));
+            }
+
+        } catch(IOException | InterruptedException ex){
+
+            if(running){
+                System.out.println("Heartbeats stopped");
+            }
+
+        }
+
+    }
+
+    /**
+     * @param name The name of the setting
+     * @param defaultValue The value used when the scenario does not set it
+     * @return Returns the integer value of a scenario setting
+     */
+    private int getInt(String name, int defaultValue){
+        return Integer.parseInt(settings.getProperty(name, Integer.toString(defaultValue)).trim());
+    }
+
+    /**
+     * Encodes a few synthetic screens once, so that many load clients do not need a CPU each to encode
+     * 
+     * @param width The width of the frames
+     * @param height The height of the frames
+     * @param count The number of frames
+     * @return Returns the encoded frames
+     */
+    private static byte[][] encodeFrames(int width, int height, int count){
+        byte[][] encoded = new byte[count][];
+        FrameCodec codec = new JpegCodec(Config.compressionQuality.get());
+
+        try{
+
+            for(int i = 0; i < count; i++){
+                BufferedImage image = SyntheticScreenSource.render(width, height, i);
+                encoded[i] = codec.encode(image);
+            }
+
+        } catch(IOException ioE){
+            throw new IllegalStateException("Could not encode synthetic frames", ioE);
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Prints the median, 95th, and 99th percentiles of some measurements
+     * 
+     * @param name The name of the measurements
+     * @param values The measurements in milliseconds
+     */
+    private static void report(String name, List<Double> values){
+        List<Double> sorted = new ArrayList<Double>(values);
+        Collections.sort(sorted);
+
+        if(sorted.isEmpty()){
+            System.out.printf("%-12s no samples%n", name);
+            return;
+        }
+
+        System.out.printf("%-12s p50 %8.1f ms   p95 %8.1f ms   p99 %8.1f ms%n", name, sorted.get(sorted.size() / 2), sorted.get((int) (sorted.size() * 0.95)), sorted.get((int) (sorted.size() * 0.99)));
+    }
+
+    /**
+     * Closes a Socket, ignoring failures
+     * 
+     * @param socket The Socket to be closed, which may be null
+     */
+    private static void closeQuietly(Socket socket){
+
+        if(socket == null){
+            return;
+        }
+
+        try{
+            socket.close();
+        } catch(IOException ioE){
+            System.out.println("Could not close socket");
+        }
+
+    }
+
+    /**
+     * Starts a daemon thread
+     * 
+     * @param task The Runnable run by the thread
+     */
+    private static void startDaemon(Runnable task){
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+}
@@ -0,0 +1,71 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.awt.image.BufferedImage;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * This is the lossy FrameCodec which encodes frames as JPEG images
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class JpegCodec implements FrameCodec {
+    private ImageWriter jpgWriter;
+    private ImageWriteParam jpgWriteParam;
+
+    public static final String name = "jpeg";
+
+    /**
+     * Constructor for the JpegCodec class
+     * 
+     * @param quality The JPEG compression quality, from 0 to 1
+     */
+    public JpegCodec(float quality){
+        jpgWriter = ImageIO.getImageWritersByFormatName("jpg").next();
+        jpgWriteParam = jpgWriter.getDefaultWriteParam();
+        jpgWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        jpgWriteParam.setCompressionQuality(quality);
+    }
+
+    /**
+     * @return Returns the name of the codec
+     */
+    @Override
+    public String getName(){return name;}
+
+    /**
+     * Encodes a frame as a JPEG image
+     * 
+     * @param image The frame to be encoded
+     * @return Returns the JPEG bytes
+     * @throws IOException Throws an IOException when the image cannot be written
+     */
+    @Override
+    public synchronized byte[] encode(BufferedImage image) throws IOException{
+        ByteArrayOutputStream imgOutput = new ByteArrayOutputStream();
+        ImageOutputStream imgOutputStream = ImageIO.createImageOutputStream(imgOutput);
+        jpgWriter.setOutput(imgOutputStream);
+        jpgWriter.write(null, new IIOImage(image, null, null), jpgWriteParam);
+        imgOutputStream.close();
+        return imgOutput.toByteArray();
+    }
+
+    /**
+     * Decodes a JPEG image
+     * 
+     * @param data The JPEG bytes
+     * @return Returns the decoded frame
+     * @throws IOException Throws an IOException when the bytes are not a readable image, larger than maxFramePixels, or the budget has no room
+     */
+    @Override
+    public BufferedImage decode(byte[] data) throws IOException{
+        return FrameCodecs.readImage(data, "JPEG");
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * This is a histogram of latencies with logarithmic buckets, eight to every doubling, so it takes a fixed few kilobytes however many
+ * values it holds and reports any percentile to within about 9%
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    private long[] counts = new long[bucketCount];
+    private long total = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    private static final int subBuckets = 8;
+    private static final int bucketCount = 40 * subBuckets;
+
+    /**
+     * Records a latency. Negative values, which clock error can produce, are recorded as 0
+     * 
+     * @param micros The latency in microseconds
+     */
+    public synchronized void record(long micros){
+        micros = Math.max(0, micros);
+        counts[bucketOf(micros)]++;
+        total++;
+        sum += micros;
+        max = Math.max(max, micros);
+    }
+
+    /**
+     * Finds the bucket of a value. Values below 8 have a bucket each, above that each doubling is split into eight
+     * 
+     * @param micros The value
+     * @return Returns the index of the bucket
+     */
+    private static int bucketOf(long micros){
+
+        if(micros < subBuckets){
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int mantissa = (int) (micros >>> (exponent - 3)) & (subBuckets - 1);
+        return Math.min(bucketCount - 1, (exponent - 2) * subBuckets + mantissa);
+    }
+
+    /**
+     * Finds the middle of a bucket
+     * 
+     * @param bucket The index of the bucket
+     * @return Returns the value in the middle of the bucket
+     */
+    private static double middleOf(int bucket){
+
+        if(bucket < subBuckets){
+            return bucket;
+        }
+
+        int exponent = bucket / subBuckets + 2;
+        int mantissa = bucket % subBuckets;
+        return (subBuckets + mantissa + 0.5) * Math.pow(2, exponent - 3);
+    }
+
+    /**
+     * Gets a percentile
+     * 
+     * @param fraction The percentile as a fraction, such as 0.99
+     * @return Returns the percentile in microseconds, or 0 if nothing was recorded
+     */
+    public synchronized double percentile(double fraction){
+
+        if(total == 0){
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+
+        for(int i = 0; i < counts.length; i++){
+            seen += counts[i];
+
+            if(seen >= Math.max(rank, 1)){
+                return Math.min(middleOf(i), max);
+            }
+
+        }
+
+        return max;
+    }
+
+    /**
+     * @return Returns the number of latencies recorded
+     */
+    public synchronized long getCount(){return total;}
+
+    /**
+     * @return Returns the mean latency in microseconds, or 0 if nothing was recorded
+     */
+    public synchronized double getMean(){return total == 0 ? 0 : sum / (double) total;}
+
+    /**
+     * @return Returns the largest latency in microseconds
+     */
+    public synchronized long getMax(){return max;}
+
+}
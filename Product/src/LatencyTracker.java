@@ -0,0 +1,184 @@
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This is the Server's breakdown of a session's frame latency into stages, each with its own LatencyHistogram.
+ * Client times are moved onto the Server's clock with the offset the Client sends in each FrameTrace. A stage is recorded as soon as both
+ * of its ends are known, which for the send queue and the network is when the next frame arrives with the time this one was written
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class LatencyTracker {
+    private LatencyHistogram[] histograms = new LatencyHistogram[stages.length];
+    private Map<Integer, Record> pending = new LinkedHashMap<Integer, Record>(){
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Record> eldest){
+            return size() > maxPending;
+        }
+
+    };
+
+    public static final String[] stages = {"capture+encode", "send queue", "network", "decode", "render", "total"};
+    public static final String csvHeader = "session,user,stage,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms";
+    private static final int captureStage = 0;
+    private static final int queueStage = 1;
+    private static final int networkStage = 2;
+    private static final int decodeStage = 3;
+    private static final int renderStage = 4;
+    private static final int totalStage = 5;
+    private static final int maxPending = 64;
+
+    /**
+     * These are the times of a frame that has not had every stage recorded yet, all on the Server's clock
+     */
+    private static class Record {
+        private long captured;
+        private long encoded;
+        private long received;
+        private long decoded = 0;
+        private long sent = 0;
+        private Boolean displayed = false;
+    }
+
+    /**
+     * Constructor for the LatencyTracker class
+     */
+    public LatencyTracker(){
+
+        for(int i = 0; i < histograms.length; i++){
+            histograms[i] = new LatencyHistogram();
+        }
+
+    }
+
+    /**
+     * Records a frame's arrival, along with when the frame before it was written to the network
+     * 
+     * @param trace The FrameTrace the Client attached
+     * @param received When the frame was read, on the Server's clock
+     */
+    public synchronized void received(FrameTrace trace, long received){
+        Record record = new Record();
+        record.captured = trace.getCaptured() + trace.getClockOffset();
+        record.encoded = trace.getEncoded() + trace.getClockOffset();
+        record.received = received;
+        pending.put(trace.getSequence(), record);
+        histograms[captureStage].record(record.encoded - record.captured);
+        Record previous = pending.get(trace.getPreviousSequence());
+
+        if(previous != null && trace.getPreviousSent() > 0 && previous.sent == 0){
+            previous.sent = trace.getPreviousSent() + trace.getClockOffset();
+            histograms[queueStage].record(previous.sent - previous.encoded);
+            histograms[networkStage].record(previous.received - previous.sent);
+            removeIfDone(trace.getPreviousSequence(), previous);
+        }
+
+    }
+
+    /**
+     * Records when a frame finished decoding
+     * 
+     * @param sequence The number of the frame
+     * @param decoded When decoding finished, on the Server's clock
+     */
+    public synchronized void decoded(int sequence, long decoded){
+        Record record = pending.get(sequence);
+
+        if(record != null){
+            record.decoded = decoded;
+            histograms[decodeStage].record(decoded - record.received);
+        }
+
+    }
+
+    /**
+     * Records when a decoded frame was shown
+     * 
+     * @param sequence The number of the frame
+     * @param displayed When the frame was shown, on the Server's clock
+     */
+    public synchronized void displayed(int sequence, long displayed){
+        Record record = pending.get(sequence);
+
+        if(record != null && record.decoded > 0){
+            record.displayed = true;
+            histograms[renderStage].record(displayed - record.decoded);
+            histograms[totalStage].record(displayed - record.captured);
+            removeIfDone(sequence, record);
+        }
+
+    }
+
+    /**
+     * Forgets a frame once every stage it can have has been recorded
+     * 
+     * @param sequence The number of the frame
+     * @param record The times of the frame
+     */
+    private void removeIfDone(int sequence, Record record){
+
+        if(record.displayed && record.sent > 0){
+            pending.remove(sequence);
+        }
+
+    }
+
+    /**
+     * Describes every stage as a line of its count and percentiles in milliseconds
+     * 
+     * @return Returns the description
+     */
+    public String summarize(){
+        StringBuilder summary = new StringBuilder();
+
+        for(int i = 0; i < stages.length; i++){
+            LatencyHistogram histogram = histograms[i];
+            summary.append(String.format("%-15s n=%-6d p50 %7.1f  p90 %7.1f  p99 %7.1f  max %7.1f ms%n", stages[i], histogram.getCount(),
+                histogram.percentile(0.5) / 1000, histogram.percentile(0.9) / 1000, histogram.percentile(0.99) / 1000, histogram.getMax() / 1000.0));
+        }
+
+        return summary.toString();
+    }
+
+    /**
+     * Describes every stage as a JSON object of its count and percentiles in milliseconds, keyed by the stage's name
+     * 
+     * @return Returns the JSON object
+     */
+    public String toJson(){
+        StringBuilder json = new StringBuilder("{");
+
+        for(int i = 0; i < stages.length; i++){
+            LatencyHistogram histogram = histograms[i];
+            json.append(String.format(Locale.ROOT, "%s\"%s\":{\"count\":%d,\"mean_ms\":%.3f,\"p50_ms\":%.3f,\"p90_ms\":%.3f,\"p99_ms\":%.3f,\"max_ms\":%.3f}", i > 0 ? "," : "",
+                stages[i], histogram.getCount(), histogram.getMean() / 1000, histogram.percentile(0.5) / 1000, histogram.percentile(0.9) / 1000,
+                histogram.percentile(0.99) / 1000, histogram.getMax() / 1000.0));
+        }
+
+        return json.append("}").toString();
+    }
+
+    /**
+     * Describes every stage as a CSV row under csvHeader
+     * 
+     * @param session The id of the session
+     * @param user The name of the student
+     * @return Returns the rows, each ending with a line break
+     */
+    public String toCsv(long session, String user){
+        StringBuilder csv = new StringBuilder();
+        String name = "\"" + user.replace("\"", "\"\"") + "\"";
+
+        for(int i = 0; i < stages.length; i++){
+            LatencyHistogram histogram = histograms[i];
+            csv.append(String.format(Locale.ROOT, "%d,%s,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n", session, name, stages[i], histogram.getCount(), histogram.getMean() / 1000,
+                histogram.percentile(0.5) / 1000, histogram.percentile(0.9) / 1000, histogram.percentile(0.99) / 1000, histogram.getMax() / 1000.0));
+        }
+
+        return csv.toString();
+    }
+
+}
@@ -0,0 +1,36 @@
+import java.util.Random;
+
+/**
+ * This is the class that decides which datagrams are deliberately dropped, used to reproduce lossy networks on loopback
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class LossModel {
+    private double lossRate;
+    private Random random;
+
+    /**
+     * A LossModel which never drops anything
+     */
+    public static final LossModel none = new LossModel(0, 0);
+
+    /**
+     * Constructor for the LossModel class
+     * 
+     * @param lossRate The probability of each datagram being dropped, from 0 to 1
+     * @param seed The seed of the random generator, so that runs are repeatable
+     */
+    public LossModel(double lossRate, long seed){
+        this.lossRate = lossRate;
+        random = new Random(seed);
+    }
+
+    /**
+     * @return Returns whether the next datagram should be dropped
+     */
+    public synchronized Boolean drop(){
+        return lossRate > 0 && random.nextDouble() < lossRate;
+    }
+
+}
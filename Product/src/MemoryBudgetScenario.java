@@ -0,0 +1,440 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import java.awt.image.BufferedImage;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * This is the harness which feeds adversarial messages to the receiving side of a session and checks that the MemoryGovernor's budget holds,
+ * both in the bytes reserved and in the bytes the reading thread really allocates. It runs headless, without a Server or a network.
+ * The cases are chunk headers claiming more than the budget, a message of many chunks, Deflate, CopyRect, PNG, and JPEG headers claiming
+ * huge frames, and many connections trickling in partial messages at once. Prints each case and exits with status 1 if any failed
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class MemoryBudgetScenario {
+    private int failures = 0;
+
+    private static final long budget = 8 * 1024 * 1024;
+    private static final int memoryWait = 200;
+    private static final int slack = 256 * 1024;
+    private static final int slowConnections = 16;
+
+    /**
+     * Runs every case
+     * 
+     * @param args Settings as --key=value, such as --chunkSize=65536
+     * @throws Exception Throws an Exception when a case cannot be set up
+     */
+    public static void main(String[] args) throws Exception{
+        // The codecs reserve from the shared MemoryGovernor, so its budget is set before it is created
+        System.setProperty("streamer.memoryBudget", String.valueOf(budget / 1024 / 1024));
+        Config.load(args);
+        MemoryBudgetScenario scenario = new MemoryBudgetScenario();
+        // Loads the configuration and the classes used, so that what they allocate once is not counted against the first case
+        MemoryGovernor.get().release(0);
+        ByteArrayOutputStream warmup = new ByteArrayOutputStream();
+        writeHeader(warmup, MuxChannel.FRAME, MuxOutput.lastChunkFlag, (int) budget * 2);
+        readFails(new MuxInput(new ByteArrayInputStream(warmup.toByteArray()), Integer.MAX_VALUE, new MemoryGovernor(budget), memoryWait));
+
+        try{
+            new DeflateCodec().decode(new byte[0]);
+        } catch(IOException ioE){
+            // Expected, only the classes were wanted
+        }
+
+        BufferedImage small = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        new PngCodec().decode(new PngCodec().encode(small));
+        new JpegCodec(1).decode(new JpegCodec(1).encode(small));
+
+        scenario.oversizedLengthHeader();
+        scenario.manyChunks();
+        scenario.largeSealedChunk();
+        scenario.oversizedDeflateHeader();
+        scenario.oversizedCopyRectHeader();
+        scenario.oversizedImageHeaders();
+        scenario.slowPartialChunks();
+        System.out.println(scenario.failures == 0 ? "All cases passed" : scenario.failures + " checks failed");
+        System.exit(scenario.failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * A single chunk claiming twice the budget, and one claiming just under the budget while another message holds most of it
+     * 
+     * @throws IOException Throws an IOException when a frame within the budget cannot be encoded or decoded
+     */
+    private void oversizedLengthHeader() throws IOException{
+        MemoryGovernor governor = new MemoryGovernor(budget);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeHeader(bytes, MuxChannel.FRAME, MuxOutput.lastChunkFlag, (int) budget * 2);
+        long allocated = allocatedBytes();
+        Boolean refused = readFails(new MuxInput(new ByteArrayInputStream(bytes.toByteArray()), Integer.MAX_VALUE, governor, memoryWait));
+        check("chunk claiming twice the budget is refused", refused);
+        long used = allocatedBytes() - allocated;
+        check("refused chunk allocated " + used / 1024 + " KB", used < slack);
+        check("refused chunk left nothing reserved", governor.getReserved() == 0);
+
+        governor.tryReserve(budget - 1024 * 1024);
+        bytes.reset();
+        writeHeader(bytes, MuxChannel.FRAME, MuxOutput.lastChunkFlag, 2 * 1024 * 1024);
+        allocated = allocatedBytes();
+        refused = readFails(new MuxInput(new ByteArrayInputStream(bytes.toByteArray()), Integer.MAX_VALUE, governor, memoryWait));
+        check("chunk past a nearly full budget waits and is refused", refused);
+        used = allocatedBytes() - allocated;
+        check("waiting chunk allocated " + used / 1024 + " KB", used < slack);
+    }
+
+    /**
+     * A message of many chunks is held once as chunks and once assembled, and both are reserved before they are allocated
+     * 
+     * @throws IOException Throws an IOException when a frame within the budget cannot be encoded or decoded
+     */
+    private void manyChunks() throws IOException{
+        MemoryGovernor governor = new MemoryGovernor(budget);
+        int size = 3 * 1024 * 1024;
+        byte[] message = new byte[size];
+
+        for(int i = 0; i < size; i++){
+            message[i] = (byte) (i * 31);
+        }
+
+        byte[] bytes = writeChunks(message, Config.chunkSize.get());
+        long allocated = allocatedBytes();
+        MuxInput.Message received = new MuxInput(new ByteArrayInputStream(bytes), Config.maxMessageSize.get(), governor, memoryWait).read();
+        long used = allocatedBytes() - allocated;
+        check("message of " + bytes.length / Config.chunkSize.get() + " chunks arrives intact", Arrays.equals(received.getData(), message));
+        check("message reserves exactly its size once assembled", governor.getReserved() == size);
+        check("message allocated " + used / 1024 + " KB, within its chunks and one copy", used <= 2L * size + slack);
+        received.release();
+        check("released message leaves nothing reserved", governor.getReserved() == 0);
+
+        int tooLarge = (int) (budget * 3 / 4);
+        bytes = writeChunks(new byte[tooLarge], Config.chunkSize.get());
+        allocated = allocatedBytes();
+        Boolean refused = readFails(new MuxInput(new ByteArrayInputStream(bytes), Config.maxMessageSize.get(), governor, memoryWait));
+        used = allocatedBytes() - allocated;
+        check("message whose chunks and copy exceed the budget is refused", refused);
+        check("refused message allocated " + used / 1024 + " KB, within the budget", used <= budget + slack);
+        check("refused message left nothing reserved", governor.getReserved() == 0);
+    }
+
+    /**
+     * An encrypted chunk larger than chunkSize is read into a buffer reserved for just that chunk, which is given back once it is opened
+     * 
+     * @throws Exception Throws an Exception when the JVM has no AES-GCM or the chunk cannot be written
+     */
+    private void largeSealedChunk() throws Exception{
+        MemoryGovernor governor = new MemoryGovernor(budget);
+        byte[] toServer = new byte[32];
+        byte[] toClient = new byte[32];
+        Arrays.fill(toServer, (byte) 1);
+        Arrays.fill(toClient, (byte) 2);
+        int size = 1024 * 1024;
+        byte[] message = new byte[size];
+        message[size - 1] = 42;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MuxOutput output = new MuxOutput(bytes, size, new MuxCipher(toServer, toClient));
+        CountDownLatch written = new CountDownLatch(1);
+        output.send(MuxChannel.FRAME, message, written::countDown);
+        written.await();
+        output.close();
+
+        // The write thread flushes just after handing over the last chunk
+        while(bytes.size() < size + MuxOutput.headerSize + MuxCipher.tagSize){
+            Thread.sleep(1);
+        }
+
+        MuxInput input = new MuxInput(new ByteArrayInputStream(bytes.toByteArray()), Config.maxMessageSize.get(), governor, memoryWait,
+            new MuxCipher(toClient, toServer));
+        long allocated = allocatedBytes();
+        MuxInput.Message received = input.read();
+        long used = allocatedBytes() - allocated;
+        check("encrypted chunk of " + size / 1024 + " KB arrives intact", Arrays.equals(received.getData(), message));
+        check("encrypted chunk reserves only its opened size once read", governor.getReserved() == size);
+        check("encrypted chunk allocated " + used / 1024 + " KB, within it and its sealed copy", used <= 2L * size + slack);
+        received.release();
+        check("released encrypted chunk leaves nothing reserved", governor.getReserved() == 0);
+    }
+
+    /**
+     * Deflate frames claiming sizes past maxFramePixels or past the budget, and a real frame, which still decodes
+     * 
+     * @throws IOException Throws an IOException when a frame within the budget cannot be encoded or decoded
+     */
+    private void oversizedDeflateHeader() throws IOException{
+        DeflateCodec codec = new DeflateCodec();
+        checkRefused("Deflate frame claiming 65535x65535", codec, ByteBuffer.allocate(16).putInt(65535).putInt(65535).array());
+        checkRefused("Deflate frame claiming 1920x1080, past the budget", codec, ByteBuffer.allocate(16).putInt(1920).putInt(1080).array());
+
+        BufferedImage image = new BufferedImage(320, 200, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(10, 20, 0x123456);
+        BufferedImage decoded = codec.decode(new DeflateCodec().encode(image));
+        check("Deflate frame within the budget decodes", decoded.getWidth() == 320 && (decoded.getRGB(10, 20) & 0xFFFFFF) == 0x123456);
+        check("decoding left nothing reserved", MemoryGovernor.get().getReserved() == 0);
+    }
+
+    /**
+     * A CopyRect frame claiming a size past maxFramePixels
+     * 
+     * @throws IOException Throws an IOException when a frame within the budget cannot be encoded or decoded
+     */
+    private void oversizedCopyRectHeader() throws IOException{
+        checkRefused("CopyRect frame claiming 65535x65535", new CopyRectCodec(), ByteBuffer.allocate(32).putInt(65535).putInt(65535).putInt(0).putInt(-1).array());
+    }
+
+    /**
+     * PNG and JPEG images of a few bytes whose headers claim sizes past maxFramePixels or past the budget, and real images, which still decode
+     * 
+     * @throws IOException Throws an IOException when an image within the budget cannot be encoded or decoded
+     */
+    private void oversizedImageHeaders() throws IOException{
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(10, 20, 0x123456);
+        byte[] png = new PngCodec().encode(image);
+        byte[] jpeg = new JpegCodec(1).encode(image);
+        checkRefused("PNG of " + png.length + " bytes claiming 16000x16000", new PngCodec(), resizePng(png, 16000, 16000));
+        checkRefused("PNG claiming 4000x3000, past the budget", new PngCodec(), resizePng(png, 4000, 3000));
+        checkRefused("JPEG of " + jpeg.length + " bytes claiming 65535x65535", new JpegCodec(1), resizeJpeg(jpeg, 65535, 65535));
+        checkRefused("JPEG claiming 4000x3000, past the budget", new JpegCodec(1), resizeJpeg(jpeg, 4000, 3000));
+
+        BufferedImage decoded = new PngCodec().decode(png);
+        check("PNG within the budget decodes", decoded.getWidth() == 64 && (decoded.getRGB(10, 20) & 0xFFFFFF) == 0x123456);
+        check("JPEG within the budget decodes", new JpegCodec(1).decode(jpeg).getWidth() == 64);
+        check("decoding images left nothing reserved", MemoryGovernor.get().getReserved() == 0);
+    }
+
+    /**
+     * Many connections at once each send most of a message and then trickle in the rest a few bytes at a time.
+     * The reservations of every connection together never exceed the budget, and those that cannot fit give up after memoryWait
+     * 
+     * @throws Exception Throws an Exception when the connections cannot be set up or waited for
+     */
+    private void slowPartialChunks() throws Exception{
+        MemoryGovernor governor = new MemoryGovernor(budget);
+        int chunk = Config.chunkSize.get();
+        int messageChunks = (int) (budget / slowConnections / chunk * 2);
+        AtomicLong peak = new AtomicLong();
+        AtomicInteger refused = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        Thread watcher = new Thread(() -> {
+
+            while(!Thread.currentThread().isInterrupted()){
+                peak.accumulateAndGet(governor.getReserved(), Math::max);
+                Thread.onSpinWait();
+            }
+
+        });
+        watcher.start();
+
+        for(int connection = 0; connection < slowConnections; connection++){
+            PipedOutputStream writer = new PipedOutputStream();
+            InputStream reader = new PipedInputStream(writer, chunk + MuxOutput.headerSize);
+            MuxInput input = new MuxInput(reader, Config.maxMessageSize.get(), governor, memoryWait);
+            Thread readThread = new Thread(() -> {
+
+                try{
+                    input.read().release();
+                    completed.incrementAndGet();
+                } catch(IOException ioE){
+                    refused.incrementAndGet();
+                }
+
+            });
+            Thread writeThread = new Thread(() -> {
+
+                try(DataOutputStream output = new DataOutputStream(writer)){
+
+                    for(int i = 0; i < messageChunks; i++){
+                        writeHeader(output, MuxChannel.FRAME, i == messageChunks - 1 ? MuxOutput.lastChunkFlag : 0, chunk);
+
+                        for(int written = 0; written < chunk; written += 512){
+                            output.write(new byte[512]);
+
+                            if(i == messageChunks - 1){
+                                Thread.sleep(1);
+                            }
+
+                        }
+
+                    }
+
+                } catch(IOException | InterruptedException ex){
+                    // The reader gave up and the pipe broke
+                }
+
+            });
+            threads.add(readThread);
+            threads.add(writeThread);
+            readThread.start();
+            writeThread.start();
+        }
+
+        for(Thread thread : threads){
+            thread.join();
+        }
+
+        watcher.interrupt();
+        watcher.join();
+        check(slowConnections + " slow connections reserved at most " + peak.get() / 1024 + " KB of a " + budget / 1024 + " KB budget", peak.get() <= budget);
+        check(completed.get() + " completed and " + refused.get() + " gave up, none stuck", completed.get() + refused.get() == slowConnections && completed.get() > 0);
+        check("slow connections left nothing reserved", governor.getReserved() == 0);
+    }
+
+    /**
+     * Checks that decoding a forged frame fails without allocating or reserving its claimed size
+     * 
+     * @param name The name of the case
+     * @param codec The codec decoding the frame
+     * @param data The forged frame
+     */
+    private void checkRefused(String name, FrameCodec codec, byte[] data){
+        long allocated = allocatedBytes();
+        Boolean refused = false;
+
+        try{
+            codec.decode(data);
+        } catch(IOException ioE){
+            refused = true;
+        }
+
+        long used = allocatedBytes() - allocated;
+        check(name + " is refused", refused);
+        check(name + " allocated " + used / 1024 + " KB", used < slack);
+        check(name + " left nothing reserved", MemoryGovernor.get().getReserved() == 0);
+    }
+
+    /**
+     * Forges the size in a PNG's header, recomputing the header's checksum
+     * 
+     * @param png The PNG
+     * @param width The width claimed
+     * @param height The height claimed
+     * @return Returns the forged PNG
+     */
+    private static byte[] resizePng(byte[] png, int width, int height){
+        byte[] forged = png.clone();
+        // The signature, then the header chunk's length and type, then its width and height
+        ByteBuffer.wrap(forged, 16, 8).putInt(width).putInt(height);
+        CRC32 crc = new CRC32();
+        crc.update(forged, 12, 17);
+        ByteBuffer.wrap(forged, 29, 4).putInt((int) crc.getValue());
+        return forged;
+    }
+
+    /**
+     * Forges the size in a JPEG's start of frame segment
+     * 
+     * @param jpeg The JPEG
+     * @param width The width claimed, at most 65535
+     * @param height The height claimed, at most 65535
+     * @return Returns the forged JPEG
+     * @throws IllegalArgumentException Throws an IllegalArgumentException when the JPEG has no baseline start of frame segment
+     */
+    private static byte[] resizeJpeg(byte[] jpeg, int width, int height){
+        byte[] forged = jpeg.clone();
+
+        for(int i = 2; i + 9 < forged.length; i++){
+
+            if((forged[i] & 0xFF) == 0xFF && (forged[i + 1] & 0xFF) == 0xC0){
+                // The marker, the segment's length, and the sample precision come before the height and width
+                ByteBuffer.wrap(forged, i + 5, 4).putShort((short) height).putShort((short) width);
+                return forged;
+            }
+
+        }
+
+        throw new IllegalArgumentException("No start of frame segment");
+    }
+
+    /**
+     * @param input The MuxInput
+     * @return Returns whether reading a message failed
+     */
+    private static Boolean readFails(MuxInput input){
+
+        try{
+            input.read().release();
+            return false;
+        } catch(IOException ioE){
+            return true;
+        }
+
+    }
+
+    /**
+     * Splits a message into FRAME chunks as a MuxOutput writes them
+     * 
+     * @param message The message
+     * @param chunkSize The largest chunk
+     * @return Returns the chunks with their headers
+     * @throws IOException Never thrown as the chunks are written to memory
+     */
+    private static byte[] writeChunks(byte[] message, int chunkSize) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.length + message.length / chunkSize * MuxOutput.headerSize + 64);
+
+        for(int offset = 0; offset < message.length; offset += chunkSize){
+            int length = Math.min(chunkSize, message.length - offset);
+            writeHeader(bytes, MuxChannel.FRAME, offset + length == message.length ? MuxOutput.lastChunkFlag : 0, length);
+            bytes.write(message, offset, length);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a chunk header, which a forged chunk can follow with fewer bytes than it claims
+     * 
+     * @param output The stream written to
+     * @param channel The channel of the chunk
+     * @param flags The flags of the chunk
+     * @param length The length the chunk claims
+     * @throws IOException Throws an IOException when the stream cannot be written to
+     */
+    private static void writeHeader(OutputStream output, MuxChannel channel, int flags, int length) throws IOException{
+        output.write(channel.ordinal());
+        output.write(flags);
+        output.write(ByteBuffer.allocate(4).putInt(length).array());
+    }
+
+    /**
+     * @return Returns the bytes the current thread has allocated so far
+     */
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Prints the outcome of a check and counts it if it failed
+     * 
+     * @param name What was checked
+     * @param passed Whether the check passed
+     */
+    private void check(String name, Boolean passed){
+        System.out.println((passed ? "PASS " : "FAIL ") + name);
+
+        if(!passed){
+            failures++;
+        }
+
+    }
+
+}
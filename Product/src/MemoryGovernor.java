@@ -0,0 +1,206 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * This is the process-wide budget for bytes of messages being received or handled, so no number of clients, honest or not, can make
+ * the Server run out of heap. Readers reserve bytes before allocating and release them once a message has been handled; a reader that
+ * cannot get its bytes waits, which stops reading its Socket and lets TCP slow the client down, and gives up after a while so that
+ * readers holding partial messages cannot wait on each other forever. Listeners are told when the budget becomes tight or critical
+ * so the Server can ask for less and turn away new sessions
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class MemoryGovernor {
+    private long budget;
+    private long reserved = 0;
+    private long rejected = 0;
+    private Level level = Level.NORMAL;
+    private List<Consumer<Level>> listeners = new CopyOnWriteArrayList<Consumer<Level>>();
+
+    private static MemoryGovernor instance = null;
+    private static final double tightFraction = 0.75;
+    private static final double criticalFraction = 0.9;
+
+    /**
+     * These are how close the reserved bytes are to the budget
+     */
+    public enum Level {
+        /**
+         * Below three quarters of the budget
+         */
+        NORMAL,
+
+        /**
+         * Above three quarters of the budget, where sessions nobody is watching are asked for less
+         */
+        TIGHT,
+
+        /**
+         * Above nine tenths of the budget, where new sessions are also refused
+         */
+        CRITICAL
+    }
+
+    /**
+     * Constructor for the MemoryGovernor class
+     * 
+     * @param budget The most bytes that may be reserved at once
+     */
+    public MemoryGovernor(long budget){
+        this.budget = budget;
+    }
+
+    /**
+     * Gets the governor shared by the whole process, whose budget is memoryBudget or, if that is 0, a quarter of the maximum heap
+     * 
+     * @return Returns the shared MemoryGovernor
+     */
+    public static synchronized MemoryGovernor get(){
+
+        if(instance == null){
+            long budget = Config.memoryBudget.get() > 0 ? Config.memoryBudget.get() * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 4;
+            instance = new MemoryGovernor(budget);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Reserves bytes, waiting for other reservations to be released if the budget does not have room
+     * 
+     * @param bytes The number of bytes
+     * @param timeout The longest to wait in milliseconds
+     * @return Returns whether the bytes were reserved, which is never the case for more bytes than the whole budget
+     * @throws InterruptedException Throws an InterruptedException when the thread is interrupted while waiting
+     */
+    public boolean reserve(long bytes, long timeout) throws InterruptedException{
+        long deadline = System.currentTimeMillis() + timeout;
+        Level changed;
+
+        synchronized(this){
+
+            if(bytes > budget){
+                rejected++;
+                return false;
+            }
+
+            while(reserved + bytes > budget){
+                long remaining = deadline - System.currentTimeMillis();
+
+                if(remaining <= 0){
+                    rejected++;
+                    return false;
+                }
+
+                wait(remaining);
+            }
+
+            reserved += bytes;
+            changed = updateLevel();
+        }
+
+        notifyListeners(changed);
+        return true;
+    }
+
+    /**
+     * Reserves bytes only if the budget has room now
+     * 
+     * @param bytes The number of bytes
+     * @return Returns whether the bytes were reserved
+     */
+    public boolean tryReserve(long bytes){
+
+        try{
+            return reserve(bytes, 0);
+        } catch(InterruptedException iE){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+    }
+
+    /**
+     * Releases reserved bytes
+     * 
+     * @param bytes The number of bytes
+     */
+    public void release(long bytes){
+        Level changed;
+
+        synchronized(this){
+            reserved = Math.max(0, reserved - bytes);
+            changed = updateLevel();
+            notifyAll();
+        }
+
+        notifyListeners(changed);
+    }
+
+    /**
+     * Recomputes the level. Must be called while holding the lock
+     * 
+     * @return Returns the new level if it changed, or null
+     */
+    private Level updateLevel(){
+        Level current = reserved > budget * criticalFraction ? Level.CRITICAL : reserved > budget * tightFraction ? Level.TIGHT : Level.NORMAL;
+
+        if(current == level){
+            return null;
+        }
+
+        level = current;
+        return current;
+    }
+
+    /**
+     * Tells every listener about a change of level
+     * 
+     * @param changed The new level, or null if it did not change
+     */
+    private void notifyListeners(Level changed){
+
+        if(changed == null){
+            return;
+        }
+
+        System.out.println("Memory budget now " + changed + " with " + getReserved() / 1024 + " of " + budget / 1024 + " KB in flight");
+
+        for(Consumer<Level> listener : listeners){
+            listener.accept(changed);
+        }
+
+    }
+
+    /**
+     * Adds a listener called, on the thread that reserved or released, whenever the level changes
+     * 
+     * @param listener The listener
+     */
+    public void addListener(Consumer<Level> listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * @return Returns how close the reserved bytes are to the budget
+     */
+    public synchronized Level getLevel(){return level;}
+
+    /**
+     * @return Returns the number of bytes reserved
+     */
+    public synchronized long getReserved(){return reserved;}
+
+    /**
+     * @return Returns the most bytes that may be reserved at once
+     */
+    public long getBudget(){return budget;}
+
+    /**
+     * @return Returns the number of reservations refused
+     */
+    public synchronized long getRejected(){return rejected;}
+
+}
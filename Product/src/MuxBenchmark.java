@@ -0,0 +1,181 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is the benchmark which measures how long a command takes to arrive while the same connection is saturated with frames.
+ * The receiving side is throttled to a classroom Wi-Fi share so that frames back up as they would on a congested network.
+ * Commands sent on the control channel are compared with commands sent in line with the frames, as they were before channels existed
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class MuxBenchmark {
+    private static final int frameSize = 300 * 1024;
+    private static final int bytesPerSecond = 2 * 1024 * 1024;
+    private static final int socketBufferSize = 64 * 1024;
+    private static final int commandDelay = 50;
+    private static final int commandCount = 60;
+
+    /**
+     * Runs the benchmark with and without a separate control channel and prints the command latencies
+     * 
+     * @param args Unused
+     * @throws Exception Throws an Exception when the loopback connection fails
+     */
+    public static void main(String[] args) throws Exception{
+        report("in line with frames", measure(MuxChannel.FRAME));
+        report("control channel", measure(MuxChannel.CONTROL));
+    }
+
+    /**
+     * Streams frames over a loopback connection while sending timestamped commands
+     * 
+     * @param commandChannel The channel commands are sent on
+     * @return Returns the latency of every command in milliseconds
+     * @throws Exception Throws an Exception when the loopback connection fails
+     */
+    private static List<Double> measure(MuxChannel commandChannel) throws Exception{
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        serverSocket.setReceiveBufferSize(socketBufferSize);
+        Socket sender = new Socket();
+        sender.setSendBufferSize(socketBufferSize);
+        sender.connect(serverSocket.getLocalSocketAddress());
+        Socket receiver = serverSocket.accept();
+        MuxOutput output = new MuxOutput(sender.getOutputStream(), Config.chunkSize.get());
+        MuxInput input = new MuxInput(new ThrottledInputStream(receiver.getInputStream(), bytesPerSecond), Config.maxMessageSize.get());
+        List<Double> latencies = Collections.synchronizedList(new ArrayList<Double>());
+
+        Thread frameThread = new Thread(() -> {
+            byte[] frame = new byte[frameSize];
+
+            try{
+
+                while(true){
+                    output.send(MuxChannel.FRAME, frame);
+                }
+
+            } catch(IOException ioE){
+                System.out.println("Frame sender stopped");
+            }
+
+        });
+
+        Thread readThread = new Thread(() -> {
+
+            try{
+
+                while(latencies.size() < commandCount){
+                    MuxInput.Message message = input.read();
+
+                    if(message.getData().length == Long.BYTES){
+                        long sent = ByteBuffer.wrap(message.getData()).getLong();
+                        latencies.add((System.nanoTime() - sent) / 1e6);
+                    }
+
+                }
+
+            } catch(IOException ioE){
+                System.out.println("Reader stopped");
+            }
+
+        });
+
+        frameThread.setDaemon(true);
+        frameThread.start();
+        readThread.start();
+        Thread.sleep(1000);
+
+        for(int i = 0; i < commandCount; i++){
+            output.send(commandChannel, ByteBuffer.allocate(Long.BYTES).putLong(System.nanoTime()).array());
+            Thread.sleep(commandDelay);
+        }
+
+        readThread.join();
+        output.close();
+        sender.close();
+        receiver.close();
+        serverSocket.close();
+        return latencies;
+    }
+
+    /**
+     * Prints the median, 99th percentile, and maximum of the latencies
+     * 
+     * @param name The name of the measured configuration
+     * @param latencies The latencies in milliseconds
+     */
+    private static void report(String name, List<Double> latencies){
+        List<Double> sorted = new ArrayList<Double>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("%-20s p50 %8.1f ms   p99 %8.1f ms   max %8.1f ms%n", name, sorted.get(sorted.size() / 2), sorted.get((int) (sorted.size() * 0.99)), sorted.get(sorted.size() - 1));
+    }
+
+    /**
+     * This is an InputStream which delivers at most a fixed number of bytes per second
+     */
+    private static class ThrottledInputStream extends FilterInputStream {
+        private int bytesPerSecond;
+        private long start = System.nanoTime();
+        private long total = 0;
+
+        /**
+         * Constructor for the ThrottledInputStream class
+         * 
+         * @param input The InputStream to be throttled
+         * @param bytesPerSecond The largest number of bytes delivered per second
+         */
+        public ThrottledInputStream(InputStream input, int bytesPerSecond){
+            super(input);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException{
+            throttle(1);
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException{
+            int read = super.read(b, off, Math.min(len, 4096));
+            throttle(read);
+            return read;
+        }
+
+        /**
+         * Sleeps until the bytes delivered so far fit within the rate
+         * 
+         * @param count The number of bytes just delivered
+         * @throws IOException Throws an IOException when interrupted
+         */
+        private void throttle(int count) throws IOException{
+            total += Math.max(count, 0);
+            long due = start + total * 1000000000L / bytesPerSecond;
+            long wait = due - System.nanoTime();
+
+            if(wait > 0){
+
+                try{
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch(InterruptedException iE){
+                    throw new IOException("Interrupted");
+                }
+
+            }
+
+        }
+
+    }
+
+}
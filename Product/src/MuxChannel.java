@@ -0,0 +1,66 @@
+/**
+ * These are the logical channels multiplexed over a session's Socket, in order of priority.
+ * A chunk of a higher priority channel is always written before any waiting chunk of a lower priority channel
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public enum MuxChannel {
+    /**
+     * Commands, handshake messages, and alerts
+     */
+    CONTROL(0),
+
+    /**
+     * Mouse pointer positions, where only the newest position matters
+     */
+    CURSOR(0),
+
+    /**
+     * Single frames requested by a snapshot of every seat, ahead of streamed frames so that streaming cannot starve them
+     */
+    SNAPSHOT(1),
+
+    /**
+     * Encoded screen frames
+     */
+    FRAME(2),
+
+    /**
+     * Chunks of files pushed to seats, below frames so that a push to the whole class never holds up a frame or a command
+     */
+    FILE(4),
+
+    /**
+     * Frames captured while the client was offline, uploaded last and throttled so that they never hold up the live stream
+     */
+    HISTORY(2);
+
+    private int capacity;
+
+    /**
+     * Constructor for the MuxChannel enum
+     * 
+     * @param capacity The number of messages that may wait to be sent before senders block, or 0 for no limit
+     */
+    private MuxChannel(int capacity){
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return Returns the number of messages that may wait to be sent before senders block, or 0 for no limit
+     */
+    public int getCapacity(){return capacity;}
+
+    /**
+     * Gets a channel from its wire id
+     * 
+     * @param id The id of the channel
+     * @return Returns the channel, or null if the id is unknown
+     */
+    public static MuxChannel fromId(int id){
+        MuxChannel[] channels = values();
+        return id >= 0 && id < channels.length ? channels[id] : null;
+    }
+
+}
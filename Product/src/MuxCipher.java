@@ -0,0 +1,249 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.Socket;
+
+import java.nio.charset.StandardCharsets;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This is the class that encrypts and authenticates every chunk a MuxOutput writes and a MuxInput reads with AES-GCM under a pre-shared key,
+ * so nobody on the school network without sharedKey can watch student screens or inject commands.
+ * Before any chunk, each side of a new connection sends a magic string and a random nonce, and both derive fresh keys for the connection
+ * from sharedKey and the two nonces. That is the whole handshake, one round trip with no certificates, so a session resuming after its
+ * connection broke is as fast as it was in plaintext. A chunk's six byte header is left readable but authenticated, its bytes are encrypted
+ * straight from the message into a buffer reused for every chunk, and the nonce of each chunk is its number on the connection, so it is
+ * never sent. A tampered, replayed, reordered, or wrongly keyed chunk fails to open and ends the connection
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class MuxCipher {
+    private Cipher sealCipher;
+    private Cipher openCipher;
+    private SecretKeySpec sealKey;
+    private SecretKeySpec openKey;
+    private byte[] sealNonce = new byte[nonceSize];
+    private byte[] openNonce = new byte[nonceSize];
+    private long sealed = 0;
+    private long opened = 0;
+
+    private static byte[] sharedKey = null;
+    private static String sharedKeyPassphrase = null;
+    private static SecureRandom random = new SecureRandom();
+
+    public static final int tagSize = 16;
+    private static final int nonceSize = 12;
+    private static final int handshakeNonceSize = 16;
+    private static final byte[] magic = "LH_SEC1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] clientLabel = "LH client to server".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] serverLabel = "LH server to client".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] keySalt = "LH_SHAREDKEY".getBytes(StandardCharsets.US_ASCII);
+    private static final int keyIterations = 65536;
+
+    /**
+     * Constructor for the MuxCipher class
+     * 
+     * @param sealMaterial The key and nonce prefix of chunks sent, 20 bytes or more
+     * @param openMaterial The key and nonce prefix of chunks received, 20 bytes or more
+     * @throws GeneralSecurityException Throws a GeneralSecurityException when the JVM has no AES-GCM
+     */
+    public MuxCipher(byte[] sealMaterial, byte[] openMaterial) throws GeneralSecurityException{
+        sealKey = new SecretKeySpec(sealMaterial, 0, 16, "AES");
+        openKey = new SecretKeySpec(openMaterial, 0, 16, "AES");
+        System.arraycopy(sealMaterial, 16, sealNonce, 0, 4);
+        System.arraycopy(openMaterial, 16, openNonce, 0, 4);
+        sealCipher = Cipher.getInstance("AES/GCM/NoPadding");
+        openCipher = Cipher.getInstance("AES/GCM/NoPadding");
+    }
+
+    /**
+     * Gets the key derived from the sharedKey setting, deriving it again only when the setting changed
+     * 
+     * @return Returns the key, or null when sharedKey is empty and connections are not encrypted
+     * @throws IOException Throws an IOException when the JVM cannot derive keys
+     */
+    public static synchronized byte[] getSharedKey() throws IOException{
+        String passphrase = Config.sharedKey.get();
+
+        if(passphrase.isEmpty()){
+            return null;
+        }
+
+        if(!passphrase.equals(sharedKeyPassphrase)){
+            sharedKey = deriveKey(passphrase);
+            sharedKeyPassphrase = passphrase;
+        }
+
+        return sharedKey;
+    }
+
+    /**
+     * Derives a key from a passphrase, stretched so that a captured connection does not let a short passphrase be guessed quickly
+     * 
+     * @param passphrase The passphrase
+     * @return Returns the 32 byte key
+     * @throws IOException Throws an IOException when the JVM cannot derive keys
+     */
+    public static byte[] deriveKey(String passphrase) throws IOException{
+
+        try{
+            PBEKeySpec spec = new PBEKeySpec(passphrase.toCharArray(), keySalt, keyIterations, 256);
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch(GeneralSecurityException gsE){
+            throw new IOException("Could not derive the shared key: " + gsE.getMessage());
+        }
+
+    }
+
+    /**
+     * Runs the handshake of a new connection if sharedKey is set, before anything else is sent on the Socket
+     * 
+     * @param socket The connected Socket
+     * @param client Whether this side opened the connection
+     * @return Returns the MuxCipher of the connection, or null when sharedKey is empty and the connection is not encrypted
+     * @throws IOException Throws an IOException when the other side does not encrypt or the Socket fails
+     */
+    public static MuxCipher negotiate(Socket socket, Boolean client) throws IOException{
+        return negotiate(socket, client, getSharedKey());
+    }
+
+    /**
+     * Runs the handshake of a new connection, before anything else is sent on the Socket
+     * 
+     * @param socket The connected Socket
+     * @param client Whether this side opened the connection
+     * @param key The shared key, or null to not encrypt
+     * @return Returns the MuxCipher of the connection, or null when the key is null
+     * @throws IOException Throws an IOException when the other side does not encrypt or the Socket fails
+     */
+    public static MuxCipher negotiate(Socket socket, Boolean client, byte[] key) throws IOException{
+
+        if(key == null){
+            return null;
+        }
+
+        byte[] ownNonce = new byte[handshakeNonceSize];
+        random.nextBytes(ownNonce);
+        byte[] hello = Arrays.copyOf(magic, magic.length + handshakeNonceSize);
+        System.arraycopy(ownNonce, 0, hello, magic.length, handshakeNonceSize);
+        OutputStream output = socket.getOutputStream();
+        output.write(hello);
+        output.flush();
+
+        // Read without buffering so that no byte meant for the MuxInput is taken
+        DataInputStream input = new DataInputStream(socket.getInputStream());
+        byte[] reply = new byte[hello.length];
+        input.readFully(reply);
+
+        if(!Arrays.equals(Arrays.copyOf(reply, magic.length), magic)){
+            throw new IOException("Peer does not encrypt, check that both sides have the same sharedKey");
+        }
+
+        byte[] peerNonce = Arrays.copyOfRange(reply, magic.length, reply.length);
+        byte[] clientNonce = client ? ownNonce : peerNonce;
+        byte[] serverNonce = client ? peerNonce : ownNonce;
+
+        try{
+            byte[] toServer = derive(key, clientLabel, clientNonce, serverNonce);
+            byte[] toClient = derive(key, serverLabel, clientNonce, serverNonce);
+            return client ? new MuxCipher(toServer, toClient) : new MuxCipher(toClient, toServer);
+        } catch(GeneralSecurityException gsE){
+            throw new IOException("Could not set up encryption: " + gsE.getMessage());
+        }
+
+    }
+
+    /**
+     * Derives the key and nonce prefix of one direction of a connection
+     * 
+     * @param key The shared key
+     * @param label The label of the direction
+     * @param clientNonce The nonce sent by the client
+     * @param serverNonce The nonce sent by the server
+     * @return Returns 32 bytes, of which the first 16 are the key and the next 4 the nonce prefix
+     * @throws GeneralSecurityException Throws a GeneralSecurityException when the JVM has no HMAC-SHA256
+     */
+    private static byte[] derive(byte[] key, byte[] label, byte[] clientNonce, byte[] serverNonce) throws GeneralSecurityException{
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        mac.update(label);
+        mac.update(clientNonce);
+        mac.update(serverNonce);
+        return mac.doFinal();
+    }
+
+    /**
+     * Encrypts a chunk. Only called by the write thread of a MuxOutput
+     * 
+     * @param header The header of the chunk, whose length is already the sealed length
+     * @param data The array holding the chunk
+     * @param offset The offset of the chunk in the array
+     * @param length The length of the chunk
+     * @param output The array the sealed chunk is written to, at least length + tagSize long
+     * @return Returns the length of the sealed chunk
+     * @throws IOException Throws an IOException when the chunk cannot be encrypted
+     */
+    public int seal(byte[] header, byte[] data, int offset, int length, byte[] output) throws IOException{
+
+        try{
+            sealCipher.init(Cipher.ENCRYPT_MODE, sealKey, new GCMParameterSpec(tagSize * 8, nextNonce(sealNonce, sealed++)));
+            sealCipher.updateAAD(header);
+            return sealCipher.doFinal(data, offset, length, output, 0);
+        } catch(GeneralSecurityException gsE){
+            throw new IOException("Could not encrypt chunk: " + gsE.getMessage());
+        }
+
+    }
+
+    /**
+     * Decrypts and authenticates a chunk. Only called by the thread reading a MuxInput
+     * 
+     * @param header The header of the chunk as received
+     * @param data The array holding the sealed chunk
+     * @param length The length of the sealed chunk
+     * @param output The array the chunk is written to, at least length - tagSize long
+     * @throws IOException Throws an IOException when the chunk fails authentication
+     */
+    public void open(byte[] header, byte[] data, int length, byte[] output) throws IOException{
+
+        try{
+            openCipher.init(Cipher.DECRYPT_MODE, openKey, new GCMParameterSpec(tagSize * 8, nextNonce(openNonce, opened++)));
+            openCipher.updateAAD(header);
+            openCipher.doFinal(data, 0, length, output, 0);
+        } catch(GeneralSecurityException gsE){
+            throw new IOException("Chunk failed authentication, check that both sides have the same sharedKey");
+        }
+
+    }
+
+    /**
+     * Writes the number of a chunk after the nonce prefix
+     * 
+     * @param nonce The nonce, whose first 4 bytes are the prefix
+     * @param counter The number of the chunk on the connection
+     * @return Returns the nonce
+     */
+    private static byte[] nextNonce(byte[] nonce, long counter){
+
+        for(int i = nonceSize - 1; i >= 4; i--){
+            nonce[i] = (byte) counter;
+            counter >>>= 8;
+        }
+
+        return nonce;
+    }
+
+}
@@ -0,0 +1,387 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is the class that reads chunks written by a MuxOutput and reassembles them into whole messages.
+ * Given a MemoryGovernor, it reserves every chunk before allocating it and holds the reservation until the message is released,
+ * so a client claiming huge lengths runs into the budget instead of the heap. A message of several chunks is copied once into an array of
+ * exactly its size, which is reserved too before the chunks are given back. Given a MuxCipher, every chunk is opened before it is used
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class MuxInput {
+    private DataInputStream in;
+    private int maxMessageSize;
+    private List<List<byte[]>> partial;
+    private int[] buffered;
+    private StreamerEvents.FrameReceived[] frameReads;
+    private MemoryGovernor governor;
+    private int memoryWait;
+    private long[] held;
+    private MuxCipher cipher = null;
+    private byte[] sealed = null;
+    private byte[] header = new byte[MuxOutput.headerSize];
+    private volatile long lastRead = System.currentTimeMillis();
+
+    /**
+     * This is a complete message received on a channel
+     */
+    public static class Message {
+        private MuxChannel channel;
+        private byte[] data;
+        private StreamerEvents.FrameReceived received;
+        private MemoryGovernor governor = null;
+        private long reserved = 0;
+
+        /**
+         * Constructor for the Message class
+         * 
+         * @param channel The channel the message was received on
+         * @param data The contents of the message
+         */
+        public Message(MuxChannel channel, byte[] data){
+            this(channel, data, null);
+        }
+
+        /**
+         * Constructor for the Message class
+         * 
+         * @param channel The channel the message was received on
+         * @param data The contents of the message
+         * @param received The FrameReceived event timing the read of a FRAME message, or null
+         */
+        public Message(MuxChannel channel, byte[] data, StreamerEvents.FrameReceived received){
+            this.channel = channel;
+            this.data = data;
+            this.received = received;
+        }
+
+        /**
+         * @return Returns the channel the message was received on
+         */
+        public MuxChannel getChannel(){return channel;}
+
+        /**
+         * @return Returns the contents of the message
+         */
+        public byte[] getData(){return data;}
+
+        /**
+         * @return Returns the contents of the message as text
+         */
+        public String getText(){return new String(data).trim();}
+
+        /**
+         * @return Returns the FrameReceived event timed from the first chunk of a FRAME message to its last, for the reader to fill in
+         * and commit, or null for other channels
+         */
+        public StreamerEvents.FrameReceived getReceivedEvent(){return received;}
+
+        /**
+         * Gives the message's bytes back to the MemoryGovernor once it has been handled. Does nothing if called again
+         */
+        public void release(){
+
+            if(governor != null && reserved > 0){
+                governor.release(reserved);
+                reserved = 0;
+            }
+
+        }
+
+    }
+
+    /**
+     * Constructor for the MuxInput class
+     * 
+     * @param input The InputStream of the Socket
+     * @param maxMessageSize The largest message accepted before the connection is considered corrupt
+     */
+    public MuxInput(InputStream input, int maxMessageSize){
+        this(input, maxMessageSize, null, 0);
+    }
+
+    /**
+     * Constructor for the MuxInput class
+     * 
+     * @param input The InputStream of the Socket
+     * @param maxMessageSize The largest message accepted before the connection is considered corrupt
+     * @param governor The MemoryGovernor chunks are reserved from, or null for no budget
+     * @param memoryWait The longest to wait for the budget to have room for a chunk in milliseconds before the connection is given up
+     */
+    public MuxInput(InputStream input, int maxMessageSize, MemoryGovernor governor, int memoryWait){
+        in = new DataInputStream(input);
+        this.maxMessageSize = maxMessageSize;
+        this.governor = governor;
+        this.memoryWait = memoryWait;
+        partial = new ArrayList<List<byte[]>>();
+
+        for(int i = 0; i < MuxChannel.values().length; i++){
+            partial.add(null);
+        }
+
+        buffered = new int[partial.size()];
+        frameReads = new StreamerEvents.FrameReceived[partial.size()];
+        held = new long[partial.size()];
+    }
+
+    /**
+     * Constructor for the MuxInput class
+     * 
+     * @param input The InputStream of the Socket
+     * @param maxMessageSize The largest message accepted before the connection is considered corrupt
+     * @param governor The MemoryGovernor chunks are reserved from, or null for no budget
+     * @param memoryWait The longest to wait for the budget to have room for a chunk in milliseconds before the connection is given up
+     * @param cipher The MuxCipher chunks are opened with, or null if they are sent in plaintext
+     */
+    public MuxInput(InputStream input, int maxMessageSize, MemoryGovernor governor, int memoryWait, MuxCipher cipher){
+        this(input, maxMessageSize, governor, memoryWait);
+        this.cipher = cipher;
+    }
+
+    /**
+     * Reads chunks until a message is complete. The message must be released once handled if there is a MemoryGovernor.
+     * Once this has thrown the MuxInput is unusable and holds no reservations
+     * 
+     * @return Returns the completed message
+     * @throws IOException Throws an IOException when the InputStream cannot be read from, the chunks are malformed, or the memory budget
+     * stays full for memoryWait
+     */
+    public Message read() throws IOException{
+
+        try{
+            return readMessage();
+        } catch(IOException ioE){
+
+            for(int i = 0; i < held.length; i++){
+
+                if(governor != null && held[i] > 0){
+                    governor.release(held[i]);
+                }
+
+                held[i] = 0;
+                buffered[i] = 0;
+                partial.set(i, null);
+            }
+
+            throw ioE;
+        }
+
+    }
+
+    /**
+     * Reads chunks until a message is complete
+     * 
+     * @return Returns the completed message
+     * @throws IOException Throws an IOException when the InputStream cannot be read from, the chunks are malformed, or the memory budget
+     * stays full for memoryWait
+     */
+    private Message readMessage() throws IOException{
+
+        while(true){
+            int id = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            int length = in.readInt();
+            lastRead = System.currentTimeMillis();
+            MuxChannel channel = MuxChannel.fromId(id);
+
+            if(channel == null){
+                throw new IOException("Unknown channel " + id);
+            }
+
+            int sealedLength = length;
+
+            if(cipher != null){
+
+                if(length < MuxCipher.tagSize){
+                    throw new IOException("Sealed chunk on " + channel + " is too short");
+                }
+
+                length -= MuxCipher.tagSize;
+            }
+
+            List<byte[]> chunks = partial.get(id);
+
+            if(length < 0 || (long) buffered[id] + length > maxMessageSize){
+                throw new IOException("Message on " + channel + " exceeds " + maxMessageSize + " bytes");
+            }
+
+            if(channel == MuxChannel.FRAME && frameReads[id] == null){
+                frameReads[id] = new StreamerEvents.FrameReceived();
+                frameReads[id].begin();
+            }
+
+            reserve(id, length);
+            byte[] chunk = new byte[length];
+
+            if(cipher == null){
+                in.readFully(chunk);
+            } else{
+                readSealed(id, flags, sealedLength, chunk);
+            }
+
+            if((flags & MuxOutput.lastChunkFlag) != 0){
+                StreamerEvents.FrameReceived received = frameReads[id];
+                frameReads[id] = null;
+
+                if(received != null){
+                    received.end();
+                }
+
+                Message message;
+
+                if(chunks == null){
+                    message = new Message(channel, chunk, received);
+                } else{
+                    chunks.add(chunk);
+                    message = new Message(channel, assemble(id, chunks, buffered[id] + length), received);
+                    partial.set(id, null);
+                    buffered[id] = 0;
+                }
+
+                message.governor = governor;
+                message.reserved = held[id];
+                held[id] = 0;
+                return message;
+            }
+
+            if(chunks == null){
+                chunks = new ArrayList<byte[]>();
+                partial.set(id, chunks);
+            }
+
+            chunks.add(chunk);
+            buffered[id] += length;
+        }
+
+    }
+
+    /**
+     * Copies the chunks of a message into one array. The array is reserved before it is allocated, and once it is filled the chunks'
+     * reservation is given back, so the message holds exactly its own size
+     * 
+     * @param id The id of the channel
+     * @param chunks The chunks of the message
+     * @param length The total length of the chunks
+     * @return Returns the message
+     * @throws IOException Throws an IOException when the budget stays full for memoryWait
+     */
+    private byte[] assemble(int id, List<byte[]> chunks, int length) throws IOException{
+        long chunksHeld = held[id];
+        reserve(id, length);
+        byte[] message = new byte[length];
+        int offset = 0;
+
+        for(byte[] chunk : chunks){
+            System.arraycopy(chunk, 0, message, offset, chunk.length);
+            offset += chunk.length;
+        }
+
+        chunks.clear();
+        StreamerEvents.allocated("MuxInput message", length);
+
+        if(governor != null){
+            governor.release(chunksHeld);
+            held[id] -= chunksHeld;
+        }
+
+        return message;
+    }
+
+    /**
+     * @return Returns when the header of the last chunk was read, or the MuxInput was created if none has been, in milliseconds since the epoch
+     */
+    public long getLastRead(){return lastRead;}
+
+    /**
+     * Reads a sealed chunk and opens it. Chunks no larger than chunkSize are read into a buffer reused for every chunk, larger ones into
+     * a buffer reserved for just that chunk, so a client sending one huge chunk does not leave every later chunk holding its size
+     * 
+     * @param id The id of the channel
+     * @param flags The flags of the chunk
+     * @param sealedLength The length of the sealed chunk
+     * @param chunk The array the opened chunk is written to
+     * @throws IOException Throws an IOException when the InputStream cannot be read from or the chunk fails authentication
+     */
+    private void readSealed(int id, int flags, int sealedLength, byte[] chunk) throws IOException{
+        byte[] input;
+        int reusable = Config.chunkSize.get() + MuxCipher.tagSize;
+
+        if(sealedLength <= reusable){
+
+            if(sealed == null){
+                sealed = new byte[reusable];
+            }
+
+            input = sealed;
+        } else{
+            reserve(id, sealedLength);
+            input = new byte[sealedLength];
+        }
+
+        try{
+            in.readFully(input, 0, sealedLength);
+            openSealed(id, flags, sealedLength, input, chunk);
+        } finally{
+
+            if(input != sealed && governor != null){
+                governor.release(sealedLength);
+                held[id] -= sealedLength;
+            }
+
+        }
+
+    }
+
+    /**
+     * Opens a sealed chunk, authenticating its header along with it
+     * 
+     * @param id The id of the channel
+     * @param flags The flags of the chunk
+     * @param sealedLength The length of the sealed chunk
+     * @param input The array holding the sealed chunk
+     * @param chunk The array the opened chunk is written to
+     * @throws IOException Throws an IOException when the chunk fails authentication
+     */
+    private void openSealed(int id, int flags, int sealedLength, byte[] input, byte[] chunk) throws IOException{
+        header[0] = (byte) id;
+        header[1] = (byte) flags;
+        header[2] = (byte) (sealedLength >>> 24);
+        header[3] = (byte) (sealedLength >>> 16);
+        header[4] = (byte) (sealedLength >>> 8);
+        header[5] = (byte) sealedLength;
+        cipher.open(header, input, sealedLength, chunk);
+    }
+
+    /**
+     * Reserves the bytes of a chunk from the MemoryGovernor, adding them to those held by the channel's message
+     * 
+     * @param id The id of the channel
+     * @param length The length of the chunk
+     * @throws IOException Throws an IOException when the budget stays full for memoryWait
+     */
+    private void reserve(int id, int length) throws IOException{
+
+        if(governor == null){
+            return;
+        }
+
+        try{
+
+            if(!governor.reserve(length, memoryWait)){
+                throw new IOException("Memory budget exhausted");
+            }
+
+        } catch(InterruptedException iE){
+            throw new IOException("Interrupted while waiting for memory");
+        }
+
+        held[id] += length;
+    }
+
+}
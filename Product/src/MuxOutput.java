@@ -0,0 +1,304 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * This is the class that writes messages from every MuxChannel onto a single OutputStream.
+ * Messages are split into chunks and a dedicated thread always writes the next chunk of the highest priority channel,
+ * so a command sent in the middle of a large frame goes out after at most one chunk instead of after the whole frame.
+ * Each chunk is written as a one byte channel id, a one byte flag set on the last chunk of a message, a four byte length, and the chunk itself,
+ * which is sealed by the connection's MuxCipher if it is encrypted
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class MuxOutput {
+    private OutputStream out;
+    private int chunkSize;
+    private ArrayDeque<byte[]>[] queues;
+    private int[] offsets;
+    private byte[][] latest;
+    private Map<byte[], Runnable> writeListeners = new IdentityHashMap<byte[], Runnable>();
+    private Object lock = new Object();
+    private volatile IOException failure = null;
+    private volatile Boolean closed = false;
+    private MuxCipher cipher;
+    private volatile long lastWritten = System.currentTimeMillis();
+
+    public static final int headerSize = 6;
+    public static final int lastChunkFlag = 1;
+
+    /**
+     * Constantly writes the next chunk of the highest priority channel
+     */
+    private Thread writeThread = new Thread(() -> {
+
+        try{
+            writeChunks();
+        } catch(IOException ioE){
+            failure = ioE;
+        } catch(InterruptedException iE){
+            failure = new IOException("Write thread interrupted");
+        }
+
+        synchronized(lock){
+            lock.notifyAll();
+        }
+
+    });
+
+    /**
+     * Constructor for the MuxOutput class
+     * 
+     * @param output The OutputStream of the Socket
+     * @param chunkSize The largest number of message bytes written in one chunk
+     */
+    public MuxOutput(OutputStream output, int chunkSize){
+        this(output, chunkSize, null);
+    }
+
+    /**
+     * Constructor for the MuxOutput class
+     * 
+     * @param output The OutputStream of the Socket
+     * @param chunkSize The largest number of message bytes written in one chunk
+     * @param cipher The MuxCipher chunks are sealed with, or null to write them in plaintext
+     */
+    @SuppressWarnings("unchecked")
+    public MuxOutput(OutputStream output, int chunkSize, MuxCipher cipher){
+        this.out = new BufferedOutputStream(output, chunkSize + headerSize + MuxCipher.tagSize);
+        this.chunkSize = chunkSize;
+        this.cipher = cipher;
+        queues = (ArrayDeque<byte[]>[]) new ArrayDeque<?>[MuxChannel.values().length];
+        offsets = new int[queues.length];
+        latest = new byte[queues.length][];
+
+        for(int i = 0; i < queues.length; i++){
+            queues[i] = new ArrayDeque<byte[]>();
+        }
+
+        writeThread.setDaemon(true);
+        writeThread.start();
+    }
+
+    /**
+     * Queues a message to be sent. Blocks while the channel already has as many messages waiting as its capacity allows
+     * 
+     * @param channel The channel the message is sent on
+     * @param message The message to be sent
+     * @throws IOException Throws an IOException when the connection has failed or been closed
+     */
+    public void send(MuxChannel channel, byte[] message) throws IOException{
+        send(channel, message, null);
+    }
+
+    /**
+     * Queues a message to be sent, to be followed by a call once its last chunk has been handed to the OutputStream.
+     * Blocks while the channel already has as many messages waiting as its capacity allows
+     * 
+     * @param channel The channel the message is sent on
+     * @param message The message to be sent
+     * @param onWritten Called on the write thread once the message is written, or null
+     * @throws IOException Throws an IOException when the connection has failed or been closed
+     */
+    public void send(MuxChannel channel, byte[] message, Runnable onWritten) throws IOException{
+        ArrayDeque<byte[]> queue = queues[channel.ordinal()];
+
+        synchronized(lock){
+
+            while(channel.getCapacity() > 0 && queue.size() >= channel.getCapacity() && failure == null && !closed){
+
+                try{
+                    lock.wait();
+                } catch(InterruptedException iE){
+                    throw new IOException("Interrupted while sending");
+                }
+
+            }
+
+            if(failure != null){
+                throw failure;
+            } else if(closed){
+                throw new IOException("Connection closed");
+            }
+
+            queue.add(message);
+
+            if(onWritten != null){
+                writeListeners.put(message, onWritten);
+            }
+
+            lock.notifyAll();
+        }
+
+    }
+
+    /**
+     * Queues a message which makes the previous one sent this way obsolete, such as a pointer position.
+     * If that message is still waiting and has not started being written it is replaced, so stale values never queue up and the sender
+     * never blocks. Messages queued with send are never replaced
+     * 
+     * @param channel The channel the message is sent on
+     * @param message The message to be sent
+     * @throws IOException Throws an IOException when the connection has failed or been closed
+     */
+    public void sendLatest(MuxChannel channel, byte[] message) throws IOException{
+        ArrayDeque<byte[]> queue = queues[channel.ordinal()];
+
+        synchronized(lock){
+
+            if(failure != null){
+                throw failure;
+            } else if(closed){
+                throw new IOException("Connection closed");
+            }
+
+            byte[] waiting = latest[channel.ordinal()];
+            Boolean started = queue.peek() == waiting && offsets[channel.ordinal()] > 0;
+
+            if(waiting != null && queue.peekLast() == waiting && !started){
+                queue.pollLast();
+            }
+
+            queue.add(message);
+            latest[channel.ordinal()] = message;
+            lock.notifyAll();
+        }
+
+    }
+
+    /**
+     * Queues a text message to be sent
+     * 
+     * @param channel The channel the message is sent on
+     * @param message The text to be sent
+     * @throws IOException Throws an IOException when the connection has failed or been closed
+     */
+    public void send(MuxChannel channel, String message) throws IOException{
+        send(channel, message.getBytes());
+    }
+
+    /**
+     * Stops the write thread once every queued message has been written. Does not close the underlying stream
+     */
+    public void close(){
+
+        synchronized(lock){
+            closed = true;
+            lock.notifyAll();
+        }
+
+    }
+
+    /**
+     * @return Returns when the last chunk was written, or the MuxOutput was created if none has been, in milliseconds since the epoch
+     */
+    public long getLastWritten(){return lastWritten;}
+
+    /**
+     * Finds the highest priority channel with a message waiting. Must be called while holding the lock
+     * 
+     * @return Returns the index of the channel, or -1 if nothing is waiting
+     */
+    private int nextChannel(){
+
+        for(int i = 0; i < queues.length; i++){
+
+            if(!queues[i].isEmpty()){
+                return i;
+            }
+
+        }
+
+        return -1;
+    }
+
+    /**
+     * Writes chunks until the MuxOutput is closed, flushing whenever no more chunks are waiting. The lock is only held to pick the next chunk,
+     * never while writing or flushing
+     * 
+     * @throws IOException Throws an IOException when the OutputStream cannot be written to
+     * @throws InterruptedException Throws an InterruptedException when the thread is interrupted while waiting for messages
+     */
+    private void writeChunks() throws IOException, InterruptedException{
+        byte[] header = new byte[headerSize];
+        byte[] sealed = cipher == null ? null : new byte[chunkSize + MuxCipher.tagSize];
+
+        while(true){
+            byte[] message;
+            int channel;
+            int offset;
+            int length;
+            Boolean last;
+            Runnable onWritten = null;
+
+            synchronized(lock){
+                channel = nextChannel();
+
+                while(channel == -1 && !closed){
+                    lock.wait();
+                    channel = nextChannel();
+                }
+
+                if(channel == -1){
+                    break;
+                }
+
+                message = queues[channel].peek();
+                offset = offsets[channel];
+                length = Math.min(chunkSize, message.length - offset);
+                last = offset + length == message.length;
+
+                if(last){
+                    onWritten = writeListeners.remove(message);
+                    queues[channel].poll();
+                    offsets[channel] = 0;
+                    lock.notifyAll();
+                } else{
+                    offsets[channel] += length;
+                }
+
+            }
+
+            int written = cipher == null ? length : length + MuxCipher.tagSize;
+            header[0] = (byte) channel;
+            header[1] = (byte) (last ? lastChunkFlag : 0);
+            header[2] = (byte) (written >>> 24);
+            header[3] = (byte) (written >>> 16);
+            header[4] = (byte) (written >>> 8);
+            header[5] = (byte) written;
+            out.write(header);
+
+            if(cipher == null){
+                out.write(message, offset, length);
+            } else{
+                out.write(sealed, 0, cipher.seal(header, message, offset, length, sealed));
+            }
+
+            Boolean idle;
+
+            synchronized(lock){
+                idle = nextChannel() == -1;
+            }
+
+            // Flushed outside the lock, as a flush blocked by a full socket would otherwise block every thread sending a message
+            if(idle){
+                out.flush();
+            }
+
+            lastWritten = System.currentTimeMillis();
+
+            if(onWritten != null){
+                onWritten.run();
+            }
+
+        }
+
+        out.flush();
+    }
+
+}
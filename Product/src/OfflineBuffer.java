@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * This is the bounded ring buffer on disk that frames captured while the Client is offline are kept in until they are uploaded.
+ * Each frame is a JPEG named after its capture time and display, so the buffer survives the Client restarting and the oldest frames
+ * are dropped first once it holds more than its size limit
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class OfflineBuffer {
+    private File directory;
+    private TreeMap<String, Long> frames = new TreeMap<String, Long>();
+    private long totalSize = 0;
+
+    private static final String extension = ".jpg";
+
+    /**
+     * Constructor for the OfflineBuffer class, which picks up any frames left in the directory by an earlier run
+     * 
+     * @param directory The directory the frames are kept in
+     */
+    public OfflineBuffer(File directory){
+        this.directory = directory;
+        directory.mkdirs();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(extension) && parseKey(name) != null);
+
+        if(files != null){
+
+            for(File file : files){
+                frames.put(file.getName(), file.length());
+                totalSize += file.length();
+            }
+
+        }
+
+    }
+
+    /**
+     * Adds a frame, dropping the oldest frames until the buffer is within its size limit
+     * 
+     * @param capturedAt The capture time in milliseconds since the epoch
+     * @param display The index of the display
+     * @param jpeg The encoded frame
+     * @param maxSize The most bytes the buffer may hold
+     * @throws IOException Throws an IOException when the frame cannot be written
+     */
+    public synchronized void add(long capturedAt, int display, byte[] jpeg, long maxSize) throws IOException{
+        String name = nameOf(capturedAt, display);
+        File temporary = new File(directory, "." + name);
+        Files.write(temporary.toPath(), jpeg);
+        Files.move(temporary.toPath(), new File(directory, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Long previous = frames.put(name, (long) jpeg.length);
+        totalSize += jpeg.length - (previous == null ? 0 : previous);
+
+        while(totalSize > maxSize && frames.size() > 1){
+            remove(frames.firstKey());
+        }
+
+    }
+
+    /**
+     * Lists the oldest frames
+     * 
+     * @param count The most frames to list
+     * @return Returns the names of up to count frames, oldest first
+     */
+    public synchronized List<String> oldest(int count){
+        List<String> names = new ArrayList<String>();
+
+        for(String name : frames.keySet()){
+
+            if(names.size() == count){
+                break;
+            }
+
+            names.add(name);
+        }
+
+        return names;
+    }
+
+    /**
+     * Reads a frame
+     * 
+     * @param name The name of the frame
+     * @return Returns the encoded frame, or null if it has been dropped
+     */
+    public synchronized byte[] read(String name){
+
+        if(!frames.containsKey(name)){
+            return null;
+        }
+
+        try{
+            return Files.readAllBytes(new File(directory, name).toPath());
+        } catch(IOException ioE){
+            remove(name);
+            return null;
+        }
+
+    }
+
+    /**
+     * Removes a frame, such as once the Server has filed it
+     * 
+     * @param name The name of the frame
+     */
+    public synchronized void remove(String name){
+        Long size = frames.remove(name);
+
+        if(size != null){
+            totalSize -= size;
+            new File(directory, name).delete();
+        }
+
+    }
+
+    /**
+     * Names a frame after its capture time and display, zero padded so names sort in capture order
+     * 
+     * @param capturedAt The capture time in milliseconds since the epoch
+     * @param display The index of the display
+     * @return Returns the name of the frame
+     */
+    public static String nameOf(long capturedAt, int display){
+        return String.format("%013d-%d", capturedAt, display) + extension;
+    }
+
+    /**
+     * Parses the capture time and display out of a frame's name
+     * 
+     * @param name The name of the frame
+     * @return Returns the capture time and the display, or null if the name is not a frame's
+     */
+    public static long[] parseKey(String name){
+
+        try{
+            String[] parts = name.substring(0, name.length() - extension.length()).split("-");
+            return new long[]{Long.parseLong(parts[0]), Integer.parseInt(parts[1])};
+        } catch(RuntimeException rE){
+            return null;
+        }
+
+    }
+
+    /**
+     * @return Returns the number of frames waiting
+     */
+    public synchronized int size(){return frames.size();}
+
+    /**
+     * @return Returns the number of bytes waiting
+     */
+    public synchronized long getTotalSize(){return totalSize;}
+
+}
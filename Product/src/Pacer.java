@@ -0,0 +1,63 @@
+/**
+ * This is the class that spaces out reads or writes so that together they never exceed a bandwidth.
+ * Waiting callers are given room in the order they asked for it, so no caller sharing the bandwidth is starved
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class Pacer {
+    private volatile long bytesPerSecond;
+    private long nextFree = System.nanoTime();
+
+    /**
+     * Constructor for the Pacer class
+     * 
+     * @param bytesPerSecond The bandwidth, or 0 for no limit
+     */
+    public Pacer(long bytesPerSecond){
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Waits until the bandwidth has room for a number of bytes
+     * 
+     * @param bytes The number of bytes about to be read or written
+     * @throws InterruptedException Throws an InterruptedException when interrupted while waiting
+     */
+    public void acquire(int bytes) throws InterruptedException{
+        long rate = bytesPerSecond;
+
+        if(rate <= 0){
+            return;
+        }
+
+        long start;
+
+        synchronized(this){
+            start = Math.max(nextFree, System.nanoTime());
+            nextFree = start + bytes * 1000000000L / rate;
+        }
+
+        long wait = start - System.nanoTime();
+
+        if(wait > 0){
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+
+    }
+
+    /**
+     * Changes the bandwidth, which applies from the next call to acquire
+     * 
+     * @param bytesPerSecond The bandwidth, or 0 for no limit
+     */
+    public void setBytesPerSecond(long bytesPerSecond){
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return Returns the bandwidth, or 0 for no limit
+     */
+    public long getBytesPerSecond(){return bytesPerSecond;}
+
+}
@@ -0,0 +1,106 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.awt.image.BufferedImage;
+
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * This is the class that computes the difference hash (dHash) of a frame, a 64 bit fingerprint that stays nearly the same under
+ * scaling and compression. The frame is averaged into a grid of 9 by 8 luminance cells, and each bit says whether a cell is darker than
+ * the one to its right, so screens showing the same windows have hashes only a few bits apart
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class PerceptualHash {
+    private static final int columns = 9;
+    private static final int rows = 8;
+    private static final int readSubsampling = 4;
+
+    /**
+     * Computes the dHash of an image
+     * 
+     * @param image The image
+     * @return Returns the hash, whose bit 63 - (row * 8 + column) is set when that cell is darker than the cell to its right
+     */
+    public static long hash(BufferedImage image){
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = FramePixels.read(image);
+        long[] sums = new long[columns * rows];
+        int[] counts = new int[columns * rows];
+
+        for(int y = 0; y < height; y++){
+            int row = y * rows / height * columns;
+
+            for(int x = 0; x < width; x++){
+                int pixel = pixels[y * width + x];
+                int cell = row + x * columns / width;
+                sums[cell] += ((pixel >> 16 & 0xFF) * 299 + (pixel >> 8 & 0xFF) * 587 + (pixel & 0xFF) * 114) / 1000;
+                counts[cell]++;
+            }
+
+        }
+
+        long hash = 0;
+
+        for(int row = 0; row < rows; row++){
+
+            for(int column = 0; column < columns - 1; column++){
+                int cell = row * columns + column;
+                // Compares the averages without dividing, as sums[a] / counts[a] < sums[b] / counts[b]
+                hash = hash << 1 | (sums[cell] * Math.max(1, counts[cell + 1]) < sums[cell + 1] * Math.max(1, counts[cell]) ? 1 : 0);
+            }
+
+        }
+
+        return hash;
+    }
+
+    /**
+     * Reads an image file at a quarter of its size, which is plenty for the hash and much cheaper than reading it whole
+     * 
+     * @param file The image file
+     * @return Returns the hash of the image
+     * @throws IOException Throws an IOException when the file cannot be read or is not an image
+     */
+    public static long hash(File file) throws IOException{
+
+        try(ImageInputStream input = ImageIO.createImageInputStream(file)){
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+
+            if(readers == null || !readers.hasNext()){
+                throw new IOException("Not an image: " + file);
+            }
+
+            ImageReader reader = readers.next();
+
+            try{
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(readSubsampling, readSubsampling, 0, 0);
+                return hash(reader.read(0, param));
+            } finally{
+                reader.dispose();
+            }
+
+        }
+
+    }
+
+    /**
+     * @param a The first hash
+     * @param b The second hash
+     * @return Returns the number of bits the hashes differ in
+     */
+    public static int distance(long a, long b){
+        return Long.bitCount(a ^ b);
+    }
+
+}
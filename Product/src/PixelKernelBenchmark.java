@@ -0,0 +1,87 @@
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * This is the benchmark which compares the vector PixelKernels with the scalar ones on 1080p and 1440p frames, checking the results match.
+ * Run with java --add-modules jdk.incubator.vector PixelKernelBenchmark once vector/VectorPixelKernels.java is compiled, otherwise both
+ * columns are the scalar kernels.
+ * JMH is not available to this project, so each kernel is warmed up and then timed over repeated runs
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class PixelKernelBenchmark {
+    private static final int warmupRuns = 200;
+    private static final int measuredRuns = 200;
+
+    /**
+     * Runs every kernel at both frame sizes and prints milliseconds per frame for each implementation
+     * 
+     * @param args Unused
+     */
+    public static void main(String[] args){
+        PixelKernels scalar = new ScalarPixelKernels();
+        PixelKernels selected = PixelKernels.get();
+        System.out.printf("%-22s %10s %10s %8s%n", "kernel", scalar.getName(), selected.getName(), "speedup");
+
+        for(int[] size : new int[][] {{1920, 1080}, {2560, 1440}}){
+            int width = size[0];
+            int height = size[1];
+            int[] before = FramePixels.read(SyntheticScreenSource.render(width, height, 0)).clone();
+            int[] after = FramePixels.read(SyntheticScreenSource.render(width, height, 1)).clone();
+            String label = " " + height + "p";
+
+            compare("countChanged" + label, scalar, selected, kernels -> new int[] {kernels.countChanged(before, after, 0, after.length)});
+
+            compare("downscale2x" + label, scalar, selected, kernels -> {
+                int[] target = new int[(width / 2) * (height / 2)];
+                kernels.downscale2x(after, width, height, target);
+                return target;
+            });
+        }
+
+    }
+
+    /**
+     * Times a kernel with both implementations and prints the results
+     * 
+     * @param name The name of the kernel and frame size
+     * @param scalar The scalar kernels
+     * @param selected The kernels chosen for this JVM
+     * @param kernel Runs the kernel and returns its result
+     */
+    private static void compare(String name, PixelKernels scalar, PixelKernels selected, Function<PixelKernels, int[]> kernel){
+        Boolean matches = Arrays.equals(kernel.apply(scalar), kernel.apply(selected));
+        double scalarMs = time(scalar, kernel);
+        double selectedMs = time(selected, kernel);
+        System.out.printf("%-22s %8.2fms %8.2fms %7.1fx%s%n", name, scalarMs, selectedMs, scalarMs / selectedMs, matches ? "" : "   MISMATCH");
+    }
+
+    /**
+     * @param kernels The implementation to be timed
+     * @param kernel Runs the kernel
+     * @return Returns the average milliseconds per run after warming up
+     */
+    private static double time(PixelKernels kernels, Function<PixelKernels, int[]> kernel){
+        int sink = 0;
+
+        for(int i = 0; i < warmupRuns; i++){
+            sink += kernel.apply(kernels)[0];
+        }
+
+        long start = System.nanoTime();
+
+        for(int i = 0; i < measuredRuns; i++){
+            sink += kernel.apply(kernels)[0];
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e6 / measuredRuns;
+
+        if(sink == 42){
+            System.out.println();
+        }
+
+        return elapsed;
+    }
+
+}
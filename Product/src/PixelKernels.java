@@ -0,0 +1,47 @@
+/**
+ * This is the interface for the per-pixel loops that dominate frame processing, working on packed RGB ints in row order.
+ * Call get() for the fastest implementation this JVM can run
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public interface PixelKernels {
+
+    /**
+     * Counts the pixels that differ between two frames
+     * 
+     * @param before The previous frame
+     * @param after The new frame
+     * @param offset The index of the first pixel compared
+     * @param length The number of pixels compared
+     * @return Returns the number of pixels that differ
+     */
+    public int countChanged(int[] before, int[] after, int offset, int length);
+
+    /**
+     * Halves a frame in both directions, each pixel of the result being the rounded average of a 2x2 block.
+     * An odd last row or column is dropped
+     * 
+     * @param source The frame to be halved
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param target The result, at least (width / 2) * (height / 2) long
+     */
+    public void downscale2x(int[] source, int width, int height, int[] target);
+
+    /**
+     * @return Returns the name of the implementation
+     */
+    public String getName();
+
+    /**
+     * Gets the shared kernels, which use the Vector API when the optional VectorPixelKernels class was compiled, the JVM was started
+     * with --add-modules jdk.incubator.vector, and vectorKernels is enabled, and plain loops otherwise
+     * 
+     * @return Returns the kernels
+     */
+    public static PixelKernels get(){
+        return ScalarPixelKernels.select();
+    }
+
+}
@@ -0,0 +1,50 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.awt.image.BufferedImage;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This is the lossless FrameCodec which encodes frames as PNG images using ImageIO
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class PngCodec implements FrameCodec {
+
+    public static final String name = "png";
+
+    /**
+     * @return Returns the name of the codec
+     */
+    @Override
+    public String getName(){return name;}
+
+    /**
+     * Encodes a frame as a PNG image
+     * 
+     * @param image The frame to be encoded
+     * @return Returns the PNG bytes
+     * @throws IOException Throws an IOException when the image cannot be written
+     */
+    @Override
+    public byte[] encode(BufferedImage image) throws IOException{
+        ByteArrayOutputStream imgOutput = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", imgOutput);
+        return imgOutput.toByteArray();
+    }
+
+    /**
+     * Decodes a PNG image
+     * 
+     * @param data The PNG bytes
+     * @return Returns the decoded frame
+     * @throws IOException Throws an IOException when the bytes are not a readable image, larger than maxFramePixels, or the budget has no room
+     */
+    @Override
+    public BufferedImage decode(byte[] data) throws IOException{
+        return FrameCodecs.readImage(data, "PNG");
+    }
+
+}
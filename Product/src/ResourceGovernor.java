@@ -0,0 +1,164 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * This is the class that keeps the client within its CPU budget, so that streaming does not make a student's laptop sluggish.
+ * Every sample compares the CPU the process used since the last sample, as a share of the whole machine, with cpuBudget. Over budget, or
+ * while the machine is busy with other programs, the client steps up its throttle, and each step lengthens the capture interval and later also
+ * shrinks the capture. After a few samples comfortably under budget it steps back down. While running on battery the budget is halved and
+ * the client stays at least one step down. The power state is read from /sys/class/power_supply where it exists and is otherwise taken as mains
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ResourceGovernor {
+    private com.sun.management.OperatingSystemMXBean bean = null;
+    private int step = 0;
+    private int calmSamples = 0;
+    private String reason = "";
+    private volatile Throttle throttle = Throttle.none;
+
+    private static final int[] intervalPercents = {100, 150, 200, 300, 400, 600};
+    private static final int[] scalePercents = {100, 100, 85, 75, 60, 50};
+    private static final double calmFraction = 0.6;
+    private static final double systemBusy = 0.9;
+    private static final int calmSamplesNeeded = 3;
+    private static final File powerSupplies = new File("/sys/class/power_supply");
+
+    /**
+     * Constructor for the ResourceGovernor class
+     */
+    public ResourceGovernor(){
+
+        if(ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean){
+            bean = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        } else{
+            System.out.println("CPU load is not available, capture will not be throttled for CPU");
+        }
+
+    }
+
+    /**
+     * Samples the CPU load and power state and updates the throttle
+     * 
+     * @param budget The percentage of the whole machine's CPU the client may use, 0 for no budget
+     * @return Returns whether the throttle changed
+     */
+    public Boolean sample(int budget){
+
+        if(budget <= 0){
+            return update(Double.NaN, Double.NaN, false, 0);
+        }
+
+        double processLoad = bean == null ? Double.NaN : bean.getProcessCpuLoad();
+        double systemLoad = bean == null ? Double.NaN : bean.getCpuLoad();
+        return update(processLoad, systemLoad, isOnBattery(), budget);
+    }
+
+    /**
+     * Updates the throttle from one sample
+     * 
+     * @param processLoad The share of the whole machine's CPU the process used since the last sample, negative or NaN if unknown
+     * @param systemLoad The share of the whole machine's CPU every process used since the last sample, negative or NaN if unknown
+     * @param onBattery Whether the machine is running on battery
+     * @param budget The percentage of the whole machine's CPU the client may use, 0 for no budget
+     * @return Returns whether the throttle changed
+     */
+    public synchronized Boolean update(double processLoad, double systemLoad, Boolean onBattery, int budget){
+        int minimum = onBattery && budget > 0 ? 1 : 0;
+        double allowed = (onBattery ? budget / 2.0 : budget) / 100;
+        Boolean known = budget > 0 && processLoad >= 0;
+        Boolean busy = known && systemLoad >= systemBusy && processLoad > allowed / 2;
+
+        if(known && (processLoad > allowed || busy)){
+            calmSamples = 0;
+
+            if(step < intervalPercents.length - 1){
+                step++;
+                reason = processLoad > allowed ? "cpu" : "system";
+            }
+
+        } else if(step > minimum && (!known || processLoad < allowed * calmFraction && systemLoad < systemBusy)){
+
+            if(++calmSamples >= calmSamplesNeeded){
+                calmSamples = 0;
+                step--;
+            }
+
+        } else{
+            calmSamples = 0;
+        }
+
+        if(step < minimum){
+            step = minimum;
+            reason = "battery";
+        } else if(step == minimum && minimum > 0){
+            reason = "battery";
+        } else if(step == 0){
+            reason = "";
+        }
+
+        Throttle current = throttle;
+
+        if(current.getStep() == step && current.getReason().equals(reason)){
+            return false;
+        }
+
+        throttle = new Throttle(step, intervalPercents[step], scalePercents[step], reason);
+        System.out.println("Capture throttle now step " + step + (reason.isEmpty() ? "" : " for " + reason));
+        return true;
+    }
+
+    /**
+     * @return Returns whether the machine is running on battery, which is false when it cannot be told
+     */
+    private Boolean isOnBattery(){
+        File[] supplies = powerSupplies.listFiles();
+
+        if(supplies == null){
+            return false;
+        }
+
+        Boolean discharging = false;
+
+        for(File supply : supplies){
+            String type = readLine(new File(supply, "type"));
+
+            if(type.equals("Mains") && readLine(new File(supply, "online")).equals("1")){
+                return false;
+            }
+
+            if(type.equals("Battery") && readLine(new File(supply, "status")).equals("Discharging")){
+                discharging = true;
+            }
+
+        }
+
+        return discharging;
+    }
+
+    /**
+     * @param file A one line file
+     * @return Returns the line of the file without surrounding whitespace, or "" if it cannot be read
+     */
+    private static String readLine(File file){
+
+        try{
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+        } catch(IOException ioE){
+            return "";
+        }
+
+    }
+
+    /**
+     * @return Returns the throttle currently applied
+     */
+    public Throttle getThrottle(){return throttle;}
+
+}
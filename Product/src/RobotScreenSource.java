@@ -0,0 +1,63 @@
+import java.awt.AWTException;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+
+/**
+ * This is the ScreenSource which captures every display reported by the local GraphicsEnvironment
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class RobotScreenSource implements ScreenSource {
+    private GraphicsDevice[] devices;
+    private Robot[] robots;
+
+    /**
+     * Constructor for the RobotScreenSource class.
+     * Creates one Robot per screen device so each display is captured by its own device
+     * 
+     * @throws AWTException Throws an AWTException when a Robot cannot be created, likely due to insufficient permissions
+     */
+    public RobotScreenSource() throws AWTException{
+        devices = GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices();
+        robots = new Robot[devices.length];
+
+        for(int i = 0; i < devices.length; i++){
+            robots[i] = new Robot(devices[i]);
+        }
+
+    }
+
+    /**
+     * @return Returns the number of screen devices
+     */
+    @Override
+    public int getDisplayCount(){return devices.length;}
+
+    /**
+     * Gets the bounds of a display in virtual screen coordinates
+     * 
+     * @param display The index of the display
+     * @return Returns the bounds of the display
+     */
+    @Override
+    public Rectangle getDisplayBounds(int display){
+        return devices[display].getDefaultConfiguration().getBounds();
+    }
+
+    /**
+     * Captures a display. On high-DPI screens the Robot returns the image in user space size,
+     * which is then further reduced by the ImageScaler before encoding
+     * 
+     * @param display The index of the display
+     * @return Returns the captured image
+     */
+    @Override
+    public BufferedImage capture(int display){
+        return robots[display].createScreenCapture(getDisplayBounds(display));
+    }
+
+}
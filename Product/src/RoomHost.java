@@ -0,0 +1,156 @@
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * This is the class that hosts every room of the server in one process.
+ * Rooms share the listening Socket, the DiscoveryHandler, the thread accepting connections, and the MemoryGovernor, while each room keeps its
+ * own sessions, viewed session, and bandwidth. Clients name their room when discovering and during the handshake, so servers sharing a network
+ * only answer for the rooms they host. The unnamed room "" is the one clients that name no room join
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class RoomHost {
+    private ConcurrentHashMap<String, Server> rooms = new ConcurrentHashMap<String, Server>();
+    private AtomicLong nextSessionId = new AtomicLong(1);
+    private Consumer<String> errorListener;
+    private ServerSocket serverSocket = null;
+    private DiscoveryHandler discoveryHandler = null;
+    private Thread acceptThread = null;
+    private volatile Boolean stopped = false;
+
+    /**
+     * Constructor for the RoomHost class
+     * 
+     * @param errorListener Called with a message when the host stops accepting connections unexpectedly
+     */
+    public RoomHost(Consumer<String> errorListener){
+        this.errorListener = errorListener;
+    }
+
+    /**
+     * Opens the listening Socket and starts discovery and accepting connections
+     * 
+     * @param port The port used for both TCP connections and discovery
+     * @throws IOException Throws an IOException when the listening Socket cannot be opened
+     */
+    public void start(int port) throws IOException{
+        serverSocket = new ServerSocket(port);
+        discoveryHandler = new DiscoveryHandler(port, this);
+        discoveryHandler.start();
+        acceptThread = new Thread(() -> {
+
+            try{
+
+                while(true){
+                    Socket s = serverSocket.accept();
+                    new ClientHandler(s, this, nextSessionId.getAndIncrement()).start();
+                }
+
+            } catch(IOException e){
+
+                if(!stopped){
+                    errorListener.accept("Server suddenly stopped");
+                }
+
+            }
+
+        });
+        acceptThread.start();
+    }
+
+    /**
+     * Stops accepting connections and answering discovery
+     */
+    public void stop(){
+        stopped = true;
+
+        try{
+
+            if(serverSocket != null){
+                serverSocket.close();
+            }
+
+        } catch(IOException ioE){
+            System.out.println("Could not close server socket");
+        }
+
+        if(discoveryHandler != null){
+            discoveryHandler.interrupt();
+        }
+
+        if(acceptThread != null){
+            acceptThread.interrupt();
+        }
+
+    }
+
+    /**
+     * Adds a room
+     * 
+     * @param id The id clients use to name the room
+     * @param room The Server of the room
+     * @return Returns whether the room was added, which it is not if the id is already hosted
+     */
+    public boolean addRoom(String id, Server room){
+        return rooms.putIfAbsent(id, room) == null;
+    }
+
+    /**
+     * Removes a room
+     * 
+     * @param id The id of the room
+     * @return Returns the number of rooms still hosted
+     */
+    public int removeRoom(String id){
+        rooms.remove(id);
+        return rooms.size();
+    }
+
+    /**
+     * Gets a room by its id
+     * 
+     * @param id The id of the room
+     * @return Returns the Server of the room, or null if it is not hosted
+     */
+    public Server getRoom(String id){
+        return rooms.get(id);
+    }
+
+    /**
+     * @return Returns the Server of every hosted room, ordered by id
+     */
+    public List<Server> getRooms(){
+        List<Server> hosted = new ArrayList<Server>(rooms.values());
+        hosted.sort((a, b) -> a.getRoomId().compareTo(b.getRoomId()));
+        return hosted;
+    }
+
+    /**
+     * Gets every session connected from an address, in any room
+     * 
+     * @param address The InetAddress of the client
+     * @return Returns the ClientHandlers connected from the address
+     */
+    public Set<ClientHandler> findByAddress(InetAddress address){
+        Set<ClientHandler> clients = new HashSet<ClientHandler>();
+
+        for(Server room : rooms.values()){
+            clients.addAll(room.getRegistry().findByAddress(address));
+        }
+
+        return clients;
+    }
+
+}
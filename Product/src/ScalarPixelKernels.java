@@ -0,0 +1,109 @@
+/**
+ * These are the PixelKernels written as plain loops, which run on every JVM and define the exact results the vector kernels must match
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class ScalarPixelKernels implements PixelKernels {
+    private static PixelKernels selected = null;
+
+    public static final int lowChannels = 0x00FF00FF;
+    public static final int blockRounding = 0x00020002;
+
+    /**
+     * Chooses the kernels the first time they are needed. The vector kernels are loaded by name, as they are only compiled on request
+     * and need the incubator module, so that this class and everything using it still loads without them
+     * 
+     * @return Returns the chosen kernels
+     */
+    static synchronized PixelKernels select(){
+
+        if(selected == null){
+            selected = new ScalarPixelKernels();
+
+            if(Config.vectorKernels.get() && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){
+
+                try{
+                    selected = (PixelKernels) Class.forName("VectorPixelKernels").getDeclaredConstructor().newInstance();
+                } catch(ClassNotFoundException cnfE){
+                    System.out.println("Vector kernels not compiled, using scalar kernels");
+                } catch(ReflectiveOperationException | LinkageError ex){
+                    System.out.println("Vector kernels unavailable, using scalar kernels");
+                }
+
+            }
+
+        }
+
+        return selected;
+    }
+
+    /**
+     * @return Returns the name of the implementation
+     */
+    @Override
+    public String getName(){return "scalar";}
+
+    /**
+     * Counts the pixels that differ between two frames
+     * 
+     * @param before The previous frame
+     * @param after The new frame
+     * @param offset The index of the first pixel compared
+     * @param length The number of pixels compared
+     * @return Returns the number of pixels that differ
+     */
+    @Override
+    public int countChanged(int[] before, int[] after, int offset, int length){
+        int count = 0;
+
+        for(int i = offset; i < offset + length; i++){
+
+            if(before[i] != after[i]){
+                count++;
+            }
+
+        }
+
+        return count;
+    }
+
+    /**
+     * Halves a frame in both directions. Two channels are averaged at once in each int, red and blue in the low bits of each half
+     * and alpha and green once shifted down, since a sum of four bytes still fits in 16 bits
+     * 
+     * @param source The frame to be halved
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param target The result, at least (width / 2) * (height / 2) long
+     */
+    @Override
+    public void downscale2x(int[] source, int width, int height, int[] target){
+        int targetWidth = width / 2;
+
+        for(int ty = 0; ty < height / 2; ty++){
+            int top = ty * 2 * width;
+            int bottom = top + width;
+
+            for(int tx = 0; tx < targetWidth; tx++){
+                target[ty * targetWidth + tx] = average(source[top + tx * 2], source[top + tx * 2 + 1], source[bottom + tx * 2], source[bottom + tx * 2 + 1]);
+            }
+
+        }
+
+    }
+
+    /**
+     * @param a The top left pixel
+     * @param b The top right pixel
+     * @param c The bottom left pixel
+     * @param d The bottom right pixel
+     * @return Returns the rounded average of four pixels, channel by channel
+     */
+    protected static int average(int a, int b, int c, int d){
+        int low = (a & lowChannels) + (b & lowChannels) + (c & lowChannels) + (d & lowChannels);
+        int high = ((a >>> 8) & lowChannels) + ((b >>> 8) & lowChannels) + ((c >>> 8) & lowChannels) + ((d >>> 8) & lowChannels);
+        return (((low + blockRounding) >>> 2) & lowChannels) | ((((high + blockRounding) >>> 2) & lowChannels) << 8);
+    }
+
+}
@@ -0,0 +1,33 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * This is the interface for anything the Client can capture frames from, one per attached display
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public interface ScreenSource {
+
+    /**
+     * @return Returns the number of displays that can be captured
+     */
+    public int getDisplayCount();
+
+    /**
+     * Gets the bounds of a display in virtual screen coordinates
+     * 
+     * @param display The index of the display
+     * @return Returns the bounds of the display
+     */
+    public Rectangle getDisplayBounds(int display);
+
+    /**
+     * Captures the current contents of a display
+     * 
+     * @param display The index of the display
+     * @return Returns the captured image
+     */
+    public BufferedImage capture(int display);
+
+}
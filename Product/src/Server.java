@@ -1,9 +1,23 @@
-import java.net.ServerSocket;
 import java.net.Socket;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import java.awt.image.BufferedImage;
+
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.scene.Scene;
 
@@ -12,12 +26,19 @@ import javafx.application.Platform;
 
 import javafx.scene.image.ImageView;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import javafx.geometry.Bounds;
 
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.layout.HBox;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.TextField;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableView;
@@ -27,59 +48,69 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+
+import javafx.util.Duration;
+
 /**
- * This is the main class for the server which handles the GUI, client connections, and discovery
+ * This is the main class for the server which handles the GUI and client connections of a room.
+ * Every room has its own instance and window, and they share one RoomHost which accepts connections and handles discovery
  * 
  * @author Jonathan Zhao
  * @version 1.0
  */
 public class Server extends Application {
-	private int maxClients = 100;
-	private int port = 53;
 	private Boolean streaming = false;
-	private ClientHandler activeClient = null;
-	private ServerSocket serverSocket = null;
-	private Socket clientSocket = null;
-	private DiscoveryHandler discoveryHandler = null;
+	private volatile ClientHandler activeClient = null;
+	private RoomHost host = null;
+	private String roomId = "";
+	private int bandwidthOverride = -1;
+	private Pacer pacer = new Pacer(0);
 
 	private Stage mainStage = null;
 	private ImageView streamView = new ImageView();
+	private ImageView cursorView = new ImageView();
+	private byte[] cursorShape = null;
 	private BorderPane rootNode = new BorderPane();
 	private Button streamControlBtn = new Button("START");
 	private Button sendMsgBtn = new Button("SEND");
+	private Button snapshotBtn = new Button("SNAPSHOT ALL");
+	private Button sendFileBtn = new Button("SEND FILE");
+	private Button latencyBtn = new Button("LATENCY");
+	private Button findSimilarBtn = new Button("FIND SIMILAR");
+	private Button exportVideoBtn = new Button("EXPORT VIDEO");
+	private ConcurrentLinkedQueue<Runnable> shownListeners = new ConcurrentLinkedQueue<Runnable>();
+	private ChoiceBox<String> displayChoice = new ChoiceBox<String>();
+	private ChoiceBox<String> codecChoice = new ChoiceBox<String>();
 	private TextField messageField = new TextField();
 
+	private SessionRegistry registry = new SessionRegistry();
 	private ObservableList<ClientHandler> clientList = FXCollections.observableArrayList();
 	private TableView<ClientHandler> UIclients = new TableView<ClientHandler>(clientList);
 	private TableColumn<ClientHandler, String> UIconnected = new TableColumn<ClientHandler, String>("Connected Computers");
+	private TableColumn<ClientHandler, String> UIactivity = new TableColumn<ClientHandler, String>("Activity");
 
-	private VBox menu = new VBox(streamControlBtn, UIclients);
+	private VBox menu = new VBox(streamControlBtn, snapshotBtn, sendFileBtn, latencyBtn, findSimilarBtn, exportVideoBtn, displayChoice, codecChoice, UIclients);
 	private HBox msgBox = new HBox(sendMsgBtn, messageField);
 
 	private static final int menuWidth = 200;
 	private static final int msgBoxHeight = 30;
+	private static final int similarLimit = 50;
+	private static final int endDelay = 1000;
 
 	private Alert errorAlert = new Alert(Alert.AlertType.ERROR);
 	private Alert infoAlert = new Alert(Alert.AlertType.INFORMATION);
 
 	/**
-	 * Constantly accepts and processes new clients
+	 * Copies the session registry into the GUI's client list at a fixed rate, coalescing every change since the last refresh
 	 */
-	private Thread acceptThread = new Thread(() -> {
-
-		try{
-
-			while(true){
-				clientSocket = serverSocket.accept();
-				tryAdd(clientSocket);
-			}
+	private Timeline listRefreshTimeline =
+	new Timeline(new KeyFrame(Duration.millis(Config.listRefreshDelay.get()), e -> {
+		refreshClientList();
+	}));
 
-		} catch(IOException e){
-			showError("Server suddenly stopped");
-		}
-
-	});
-	
 	/**
 	 * Shows an error message in the GUI
 	 * 
@@ -113,45 +144,122 @@ public class Server extends Application {
 	/**
 	 * Calls the application launch method
 	 * 
-	 * @param args Command line arguments are unused
+	 * @param args Command line arguments of the form --name=value override the configuration
 	 */
 	public static void main(String[] args){
+		Config.load(args);
 		launch(args);
 	}
 
 	/**
-	 * Creates the scene and starts the server
+	 * Opens a window for every room in the rooms setting and starts the server, which hosts them all.
+	 * This instance, launched by JavaFX, is the first room. Recorded frames start being indexed in the background, and the HTTP API is served
+	 * unless apiPort is 0
 	 * 
-	 * @param mainStage The Stage the GUI is showed on
+	 * @param mainStage The Stage the first room's GUI is showed on
 	 */
 	public void start(Stage mainStage){
-		this.mainStage = mainStage;
-		mainStage.setOnCloseRequest(e -> {
+		RoomHost roomHost = new RoomHost(this::showError);
+		FrameIndexer.get();
+		String[] rooms = Config.rooms.get().split(",");
+
+		for(int i = 0; i < rooms.length; i++){
+			Server room = i == 0 ? this : new Server();
+
+			if(!room.openRoom(roomHost, rooms[i].trim(), i == 0 ? mainStage : new Stage())){
+				showError("Room " + rooms[i].trim() + " is listed twice");
+			}
+
+		}
+
+		try{
+			roomHost.start(Config.port.get());
+			showInfo("Server started");
+		} catch(IOException e){
+			showError("Server could not be created");
+		}
+
+		if(Config.apiPort.get() > 0){
 
 			try{
-				showInfo("Server stopping");
-				shutdownClients();
-				serverSocket.close();
-				discoveryHandler.interrupt();
-				acceptThread.interrupt();
-				Platform.exit();
-				System.exit(0);
-			} catch(Exception ex){
-				ex.printStackTrace();
+				new ApiServer(roomHost).start(Config.apiAddress.get(), Config.apiPort.get());
+			} catch(IOException e){
+				System.out.println("API could not be started on port " + Config.apiPort.get() + ": " + e.getMessage());
 			}
 
-		});
+		}
+
+	}
+
+	/**
+	 * Creates the scene of a room and adds the room to the RoomHost
+	 * 
+	 * @param host The RoomHost the room is hosted by
+	 * @param spec The id of the room, optionally followed by a colon and the room's bandwidth in KB/s
+	 * @param stage The Stage the room's GUI is showed on
+	 * @return Returns whether the room was added, which it is not if another room has the same id
+	 */
+	private Boolean openRoom(RoomHost host, String spec, Stage stage){
+		int split = spec.indexOf(':');
+		this.host = host;
+		this.mainStage = stage;
+		roomId = split < 0 ? spec : spec.substring(0, split).trim();
+
+		if(split >= 0){
+
+			try{
+				bandwidthOverride = Integer.parseInt(spec.substring(split + 1).trim());
+			} catch(NumberFormatException nfE){
+				System.out.println("Invalid bandwidth for room " + roomId + ", using roomBandwidth");
+			}
+
+		}
+
+		if(!host.addRoom(roomId, this)){
+			return false;
+		}
 
+		updateBandwidth();
+		Config.addListener(() -> updateBandwidth());
+		MemoryGovernor.get().addListener(level -> applyDegradation());
+		mainStage.setTitle(roomId.isEmpty() ? "Server" : "Room " + roomId);
+		mainStage.setOnCloseRequest(e -> closeRoom());
 		createScene();
+		listRefreshTimeline.setCycleCount(Animation.INDEFINITE);
+		listRefreshTimeline.play();
+		return true;
+	}
+
+	/**
+	 * Ends every session of the room and removes it from the RoomHost, stopping the server once no room is left
+	 */
+	private void closeRoom(){
 
 		try{
-			startServer();
-		} catch(IOException e){
-			showError("Server could not be created");
+			listRefreshTimeline.stop();
+			shutdownClients();
+
+			if(host.removeRoom(roomId) == 0){
+				showInfo("Server stopping");
+				host.stop();
+				Platform.exit();
+				System.exit(0);
+			}
+
+		} catch(Exception ex){
+			ex.printStackTrace();
 		}
 
 	}
 
+	/**
+	 * Sets the room's bandwidth to its own, or if it has none to roomBandwidth
+	 */
+	private void updateBandwidth(){
+		int kilobytes = bandwidthOverride >= 0 ? bandwidthOverride : Config.roomBandwidth.get();
+		pacer.setBytesPerSecond(kilobytes * 1024L);
+	}
+
 	/**
 	 * Requests a ClientHandler to stream, disabling all others
 	 * 
@@ -159,7 +267,7 @@ public class Server extends Application {
 	 */
 	private void stream(ClientHandler chosenClient) throws IOException {
 
-		for(ClientHandler client : clientList){
+		for(ClientHandler client : registry.snapshot()){
 
 			if(client != chosenClient){
 				client.stopStreaming();
@@ -246,17 +354,29 @@ public class Server extends Application {
 		rootNode.setCenter(streamView);
 		rootNode.setLeft(menu);
 		rootNode.setBottom(msgBox);
+		cursorView.setManaged(false);
+		cursorView.setMouseTransparent(true);
+		cursorView.setVisible(false);
+		rootNode.getChildren().add(cursorView);
 		UIconnected.setCellValueFactory(new PropertyValueFactory<ClientHandler, String>("username"));
-		UIconnected.prefWidthProperty().bind(UIclients.prefWidthProperty());
+		UIconnected.prefWidthProperty().bind(UIclients.prefWidthProperty().multiply(0.5));
 		UIclients.getColumns().add(UIconnected);
+		UIactivity.setCellValueFactory(new PropertyValueFactory<ClientHandler, String>("activity"));
+		UIactivity.prefWidthProperty().bind(UIclients.prefWidthProperty().multiply(0.45));
+		UIclients.getColumns().add(UIactivity);
 		UIclients.setPrefWidth(menuWidth);
-		UIclients.prefHeightProperty().bind(mainStage.heightProperty().subtract(sendMsgBtn.heightProperty()).subtract(streamControlBtn.heightProperty()));
-		UIclients.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
+		UIclients.prefHeightProperty().bind(mainStage.heightProperty().subtract(sendMsgBtn.heightProperty()).subtract(streamControlBtn.heightProperty()).subtract(snapshotBtn.heightProperty()).subtract(sendFileBtn.heightProperty()).subtract(latencyBtn.heightProperty()).subtract(findSimilarBtn.heightProperty()).subtract(exportVideoBtn.heightProperty()).subtract(displayChoice.heightProperty()).subtract(codecChoice.heightProperty()));
+		UIclients.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 		UIclients.getSelectionModel().setCellSelectionEnabled(true);
 		UIclients.getSelectionModel().selectedItemProperty().addListener((obs, ol, ne) -> {
 
 			if(ne != null){
 				activeClient = ne;
+				applyDegradation();
+				displayChoice.getItems().setAll(ne.getDisplays());
+				displayChoice.getSelectionModel().select(ne.getViewedDisplay());
+				codecChoice.getItems().setAll(ne.getCodecs());
+				codecChoice.getSelectionModel().select(ne.getCodec());
 
 				try{
 					stream(ne);
@@ -269,6 +389,36 @@ public class Server extends Application {
 
 		});
 
+		displayChoice.setPrefWidth(menuWidth);
+		displayChoice.getSelectionModel().selectedIndexProperty().addListener((obs, ol, ne) -> {
+
+			if(activeClient != null && ne.intValue() >= 0){
+
+				try{
+					activeClient.viewDisplay(ne.intValue());
+				} catch(IOException ioE){
+					showError("Could not switch display");
+				}
+
+			}
+
+		});
+
+		codecChoice.setPrefWidth(menuWidth);
+		codecChoice.getSelectionModel().selectedItemProperty().addListener((obs, ol, ne) -> {
+
+			if(activeClient != null && ne != null){
+
+				try{
+					activeClient.setCodec(ne);
+				} catch(IOException ioE){
+					showError("Could not switch codec");
+				}
+
+			}
+
+		});
+
 		streamControlBtn.setPrefWidth(menuWidth);
 		streamControlBtn.setOnAction(e -> {
 
@@ -305,6 +455,46 @@ public class Server extends Application {
 			sendMessageText();
 		});
 
+		snapshotBtn.setPrefWidth(menuWidth);
+		snapshotBtn.setOnAction(e -> {
+			takeSnapshot();
+		});
+
+		sendFileBtn.setPrefWidth(menuWidth);
+		sendFileBtn.setOnAction(e -> {
+			File file = new FileChooser().showOpenDialog(mainStage);
+
+			if(file != null){
+				pushFile(file);
+			}
+
+		});
+
+		latencyBtn.setPrefWidth(menuWidth);
+		latencyBtn.setOnAction(e -> {
+			showLatency();
+		});
+
+		findSimilarBtn.setPrefWidth(menuWidth);
+		findSimilarBtn.setOnAction(e -> {
+			Image query = streamView.getImage();
+
+			if(query == null){
+				File file = new FileChooser().showOpenDialog(mainStage);
+				query = file == null ? null : new Image(file.toURI().toString());
+			}
+
+			if(query != null){
+				findSimilar(query);
+			}
+
+		});
+
+		exportVideoBtn.setPrefWidth(menuWidth);
+		exportVideoBtn.setOnAction(e -> {
+			exportVideo();
+		});
+
 		messageField.prefWidthProperty().bind(mainStage.widthProperty().subtract(sendMsgBtn.widthProperty()));
 		messageField.setOnAction(e -> {
 			sendMessageText();
@@ -313,17 +503,320 @@ public class Server extends Application {
 		streamView.setPreserveRatio(true);
 		streamView.fitWidthProperty().bind(mainStage.widthProperty().subtract(menuWidth));
 		streamView.fitHeightProperty().bind(mainStage.heightProperty().subtract(msgBoxHeight));
-		mainStage.setScene(new Scene(rootNode, 1200, 600));
+		Scene scene = new Scene(rootNode, 1200, 600);
+		scene.addPostLayoutPulseListener(() -> {
+			Runnable listener;
+
+			while((listener = shownListeners.poll()) != null){
+				listener.run();
+			}
+
+		});
+		mainStage.setScene(scene);
 		mainStage.show();
 	}
 
 	/**
-	 * Sets the image of the Server ImageView
+	 * Runs a task once the image last set has been laid out for the next frame JavaFX draws
+	 * 
+	 * @param listener The task to be run on the JavaFX thread
+	 */
+	public void whenShown(Runnable listener){
+		shownListeners.add(listener);
+		Platform.requestNextPulse();
+	}
+
+	/**
+	 * Shows the latency breakdown of the viewed client, offering to export that of every connected client as CSV
+	 */
+	private void showLatency(){
+
+		if(activeClient == null){
+			showError("No client selected!");
+			return;
+		}
+
+		ButtonType export = new ButtonType("Export CSV", ButtonBar.ButtonData.OTHER);
+		Alert latencyAlert = new Alert(Alert.AlertType.INFORMATION, "", ButtonType.OK, export);
+		latencyAlert.setTitle("Latency");
+		latencyAlert.setHeaderText("Frame latency of " + activeClient.usernameProperty().get());
+		latencyAlert.getDialogPane().setStyle("-fx-font-family: monospace;");
+		latencyAlert.setContentText(activeClient.getLatency().summarize());
+
+		if(latencyAlert.showAndWait().orElse(ButtonType.OK) == export){
+			FileChooser chooser = new FileChooser();
+			chooser.setInitialFileName("latency.csv");
+			File file = chooser.showSaveDialog(mainStage);
+
+			if(file != null){
+				exportLatency(file);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Lists the recorded frames of every room that look most like an image, such as the frame being shown, to find which seats had the same
+	 * window open and when
+	 * 
+	 * @param query The image to search for
+	 */
+	private void findSimilar(Image query){
+
+		if(query.isError() || query.getPixelReader() == null){
+			showError("Could not read the image to search for");
+			return;
+		}
+
+		int width = (int) query.getWidth();
+		int height = (int) query.getHeight();
+		int[] pixels = new int[width * height];
+		query.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		FrameIndexer indexer = FrameIndexer.get();
+		int maxDistance = Config.similarDistance.get();
+		long started = System.nanoTime();
+		List<FrameIndex.Match> matches = indexer.search(PerceptualHash.hash(FramePixels.wrap(pixels, width, height)), maxDistance, similarLimit);
+		long elapsed = (System.nanoTime() - started) / 1000;
+		StringBuilder text = new StringBuilder();
+
+		for(FrameIndex.Match match : matches){
+			text.append(String.format("%2d  %s%n", match.getDistance(), match.getFrame()));
+		}
+
+		Alert similarAlert = new Alert(Alert.AlertType.INFORMATION);
+		similarAlert.setTitle("Similar frames");
+		similarAlert.setHeaderText(matches.size() + " closest of " + indexer.size() + " recorded frames within " + maxDistance + " bits, found in " + elapsed + " us"
+			+ (indexer.getPending() > 0 ? "\n" + indexer.getPending() + " new frames not yet indexed" : ""));
+		similarAlert.getDialogPane().setStyle("-fx-font-family: monospace;");
+		similarAlert.setContentText(matches.isEmpty() ? "No similar frames" : text.toString());
+		similarAlert.showAndWait();
+	}
+
+	/**
+	 * Exports the viewed display's history of the viewed client to an MJPEG AVI in the background, so it can be watched in any video player
+	 */
+	private void exportVideo(){
+
+		if(activeClient == null || activeClient.getHistory() == null){
+			showError("No client selected!");
+			return;
+		}
+
+		String username = activeClient.usernameProperty().get();
+		File directory = activeClient.getHistory().getDirectory();
+		int display = Math.max(0, displayChoice.getSelectionModel().getSelectedIndex());
+		FileChooser chooser = new FileChooser();
+		chooser.setInitialFileName(username + "-d" + (display + 1) + ".avi");
+		File file = chooser.showSaveDialog(mainStage);
+
+		if(file == null){
+			return;
+		}
+
+		exportVideoBtn.setDisable(true);
+
+		new Thread(() -> {
+
+			try{
+				long started = System.nanoTime();
+				List<File> frames = AviExporter.findFrames(directory, display);
+				long bytes = new AviExporter(Config.exportFrameRate.get(), Config.exportMaxGap.get()).export(frames, file);
+				showInfo("Exported " + frames.size() + " frames of " + username + " to " + file.getName() + " (" + bytes / 1024 / 1024 + " MB) in "
+					+ (System.nanoTime() - started) / 1000000 + " ms");
+			} catch(IOException ioE){
+				showError("Could not export " + username + "'s history: " + ioE.getMessage());
+			}
+
+			Platform.runLater(() -> {
+				exportVideoBtn.setDisable(false);
+			});
+		}).start();
+	}
+
+	/**
+	 * Writes the latency breakdown of every connected client to a CSV file
+	 * 
+	 * @param file The file to be written
+	 */
+	private void exportLatency(File file){
+		StringBuilder csv = new StringBuilder(LatencyTracker.csvHeader).append(System.lineSeparator());
+
+		for(ClientHandler client : registry.snapshot()){
+			csv.append(client.getLatency().toCsv(client.getSessionId(), client.usernameProperty().get()));
+		}
+
+		try{
+			Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+		} catch(IOException ioE){
+			showError("Could not write " + file.getName());
+		}
+
+	}
+
+	/**
+	 * Sets the image of the Server ImageView.
+	 * JPEG frames are handed to JavaFX directly since its decoder is faster than ImageIO's, once the size in their header has been checked
+	 * and reserved, other codecs are decoded first
 	 * 
 	 * @param bytes The byte array to be converted into an image
+	 * @param codec The codec the bytes were encoded with
+	 * @throws IOException Throws an IOException when the bytes cannot be decoded, are larger than maxFramePixels, or the budget has no room
+	 */
+	public void setImage(byte[] bytes, FrameCodec codec) throws IOException{
+
+		if(codec.getName().equals(JpegCodec.name)){
+			long reserved = FrameCodecs.reserveImage(bytes, "JPEG");
+
+			try{
+				streamView.setImage(new Image(new ByteArrayInputStream(bytes)));
+			} finally{
+				MemoryGovernor.get().release(reserved);
+			}
+
+		} else{
+			streamView.setImage(toFxImage(codec.decode(bytes)));
+		}
+
+	}
+
+	/**
+	 * Takes a snapshot of every connected seat in the background and reports where it was saved and which seats missed the deadline
+	 */
+	private void takeSnapshot(){
+		List<ClientHandler> seats = registry.snapshot();
+
+		if(seats.isEmpty()){
+			showError("No clients connected!");
+			return;
+		}
+
+		snapshotBtn.setDisable(true);
+
+		new Thread(() -> {
+
+			try{
+				SnapshotCollector collector = new SnapshotCollector(seats, new File(Config.snapshotDirectory.get()), Config.snapshotDeadline.get(), Config.snapshotTileWidth.get());
+				SnapshotCollector.Result result = collector.collect();
+				String missed = result.getMissed().isEmpty() ? "" : "\nMissed the deadline: " + String.join(", ", result.getMissed());
+				showInfo("Captured " + result.getCaptured() + " of " + seats.size() + " seats to " + result.getDirectory().getAbsolutePath() + missed);
+			} catch(IOException ioE){
+				showError("Could not save snapshot");
+			}
+
+			Platform.runLater(() -> {
+				snapshotBtn.setDisable(false);
+			});
+		}).start();
+	}
+
+	/**
+	 * Pushes a file in the background to the selected seats, or to every connected seat if none are selected, and reports how many received it
+	 * 
+	 * @param file The file to be pushed
+	 */
+	private void pushFile(File file){
+		List<ClientHandler> seats = new ArrayList<ClientHandler>(UIclients.getSelectionModel().getSelectedItems());
+
+		if(seats.isEmpty()){
+			seats = registry.snapshot();
+		}
+
+		if(seats.isEmpty()){
+			showError("No clients connected!");
+			return;
+		}
+
+		List<ClientHandler> targets = seats;
+		sendFileBtn.setDisable(true);
+
+		new Thread(() -> {
+
+			try{
+				FileSource source = new FileSource(file);
+				List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>();
+
+				for(ClientHandler seat : targets){
+					results.add(seat.pushFile(source));
+				}
+
+				Platform.runLater(() -> {
+					sendFileBtn.setDisable(false);
+				});
+
+				CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+				List<String> failed = new ArrayList<String>();
+
+				for(int i = 0; i < targets.size(); i++){
+
+					if(!results.get(i).join()){
+						failed.add(targets.get(i).usernameProperty().get());
+					}
+
+				}
+
+				String missed = failed.isEmpty() ? "" : "\nNot received by: " + String.join(", ", failed);
+				showInfo("Sent " + file.getName() + " to " + (targets.size() - failed.size()) + " of " + targets.size() + " seats" + missed);
+			} catch(IOException ioE){
+				showError("Could not read " + file.getName() + ": " + ioE.getMessage());
+				Platform.runLater(() -> {
+					sendFileBtn.setDisable(false);
+				});
+			}
+
+		}).start();
+	}
+
+	/**
+	 * Draws the student's mouse pointer over the stream, or hides it
+	 * 
+	 * @param x The horizontal position as a fraction of the frame's width, outside 0 to 1 to hide the pointer
+	 * @param y The vertical position as a fraction of the frame's height, outside 0 to 1 to hide the pointer
+	 * @param shape The PNG of the pointer's shape, whose hotspot is its top left corner
 	 */
-	public void setImage(byte[] bytes){
-		streamView.setImage(new Image(new ByteArrayInputStream(bytes)));
+	public void setCursor(float x, float y, byte[] shape){
+
+		Platform.runLater(() -> {
+
+			if(shape != cursorShape && shape != null){
+
+				try{
+					long reserved = FrameCodecs.reserveImage(shape, "PNG");
+
+					try{
+						cursorView.setImage(new Image(new ByteArrayInputStream(shape)));
+					} finally{
+						MemoryGovernor.get().release(reserved);
+					}
+
+				} catch(IOException ioE){
+					System.out.println("Dropped pointer shape: " + ioE.getMessage());
+				}
+
+				cursorShape = shape;
+			}
+
+			Bounds frame = streamView.getBoundsInParent();
+			cursorView.relocate(frame.getMinX() + x * frame.getWidth(), frame.getMinY() + y * frame.getHeight());
+			cursorView.setVisible(streamView.getImage() != null && x >= 0 && x <= 1 && y >= 0 && y <= 1);
+			cursorView.toFront();
+		});
+
+	}
+
+	/**
+	 * Copies a decoded frame into a JavaFX image
+	 * 
+	 * @param image The decoded frame
+	 * @return Returns the JavaFX image
+	 */
+	private static WritableImage toFxImage(BufferedImage image){
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getType() == BufferedImage.TYPE_INT_ARGB ? FramePixels.read(image) : image.getRGB(0, 0, width, height, null, 0, width);
+		WritableImage fxImage = new WritableImage(width, height);
+		fxImage.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		return fxImage;
 	}
 
 	/**
@@ -338,70 +831,149 @@ public class Server extends Application {
 			streamView.fitWidthProperty().bind(mainStage.widthProperty().subtract(menuWidth));
 			streamView.fitHeightProperty().bind(mainStage.heightProperty().subtract(msgBoxHeight));
 			rootNode.setCenter(streamView);
+			cursorView.setVisible(false);
 			streaming = false;
 		});
 		
 	}
 
 	/**
-	 * Starts up all the network logic of the Server
-	 * 
-	 * @throws IOException Throws an IOException whenever the Server fails to start up
-	 */
-	private void startServer() throws IOException {
-		serverSocket = new ServerSocket(port);
-		discoveryHandler = new DiscoveryHandler(port);
-		discoveryHandler.start();
-		DiscoveryHandler.setClientList(clientList);
-		showInfo("Server started");
-		acceptThread.start();
+	 * @return Returns the id clients use to name the room
+	 */
+	public String getRoomId(){return roomId;}
+
+	/**
+	 * @return Returns the room's session registry
+	 */
+	public SessionRegistry getRegistry(){return registry;}
+
+	/**
+	 * @return Returns the Pacer every session of the room shares, which limits the bytes read from the room's clients to its bandwidth
+	 */
+	public Pacer getPacer(){return pacer;}
+
+	/**
+	 * @return Returns the codec new sessions should use when the client supports it
+	 */
+	public String getPreferredCodec(){
+		return Config.codec.get();
 	}
 
 	/**
-	 * Removes a ClientHandler from the active client list
+	 * Removes a ClientHandler from the session registry.
+	 * The GUI's client list catches up on its next refresh
 	 * 
-	 * @param client The ClientHandler to be removed from the client list
+	 * @param client The ClientHandler to be removed
 	 */
 	public void removeClient(ClientHandler client){
 		client.stopConnection();
-		clientList.remove(client);
+		registry.remove(client);
 	}
 
 	/**
-	 * Attempts to create a new ClientHandler and add it to the active user list.
-	 * Fails when the maximum number of users has been reached
+	 * Brings the GUI's client list up to date with the session registry if anything changed, and every seat's activity up to date.
+	 * Must be called on the JavaFX application thread
+	 */
+	private void refreshClientList(){
+
+		for(ClientHandler client : clientList){
+			client.updateActivity();
+		}
+
+		if(!registry.pollChanged()){
+			return;
+		}
+
+		List<ClientHandler> snapshot = registry.snapshot();
+		clientList.retainAll(snapshot);
+		snapshot.removeAll(clientList);
+		clientList.addAll(snapshot);
+	}
+
+	/**
+	 * Attempts to add a ClientHandler to the session registry.
+	 * Fails when the maximum number of users has been reached or the MemoryGovernor is nearly out of room
 	 * 
-	 * @param s The Socket that is connected to the new client
+	 * @param client The ClientHandler that finished its handshake
+	 * @return Returns whether the ClientHandler was added
 	 */
-	private synchronized void tryAdd(Socket s){
+	public boolean tryRegister(ClientHandler client){
 
-		try{
+		if(MemoryGovernor.get().getLevel() == MemoryGovernor.Level.CRITICAL){
+			System.out.println("Memory budget nearly exhausted, refusing new session");
+			return false;
+		}
 
-			if(clientList.size() < maxClients){
-				clientList.add(new ClientHandler(s, this));
-			} else{
-				s.close();
+		if(!registry.tryAdd(client, Config.maxClients.get())){
+			return false;
+		}
+
+		applyDegradation();
+		return true;
+	}
+
+	/**
+	 * Asks every session except the one being watched to send less while the MemoryGovernor is past its normal level,
+	 * and lets every session send normally again once it is not
+	 */
+	private void applyDegradation(){
+		Boolean pressured = MemoryGovernor.get().getLevel() != MemoryGovernor.Level.NORMAL;
+		ClientHandler watched = activeClient;
+
+		for(ClientHandler client : registry.snapshot()){
+
+			try{
+				client.setDegraded(pressured && client != watched);
+			} catch(IOException ioE){
+				System.out.println("Could not change degradation of " + client.usernameProperty().get());
 			}
 
-		} catch(IOException ioE){
-			ioE.printStackTrace();
 		}
 
 	}
 
 	/**
-	 * Shuts down every ClientHandler in the active client list
+	 * Reattaches a reconnecting client to its existing session
+	 * 
+	 * @param token The resumption token presented by the client
+	 * @param s The new Socket connected to the client
+	 * @param cipher The MuxCipher negotiated on the Socket, or null if it is not encrypted
+	 * @return Returns whether the session exists and took over the Socket
+	 */
+	public boolean resumeSession(String token, Socket s, MuxCipher cipher){
+		ClientHandler client = registry.findByToken(token);
+		return client != null && client.resume(s, cipher);
+	}
+
+	/**
+	 * Shuts down every ClientHandler in the session registry, first telling each client its session has ended.
+	 * Waits at most endDelay for the notices to be written so a stalled client cannot hold up closing the room
 	 */
 	private void shutdownClients(){
+		List<ClientHandler> clients = new ArrayList<ClientHandler>();
+		List<CompletableFuture<Void>> ended = new ArrayList<CompletableFuture<Void>>();
 
-		for(ClientHandler client : clientList){
+		for(ClientHandler client : registry.snapshot()){
 
 			if(client != null){
-				client.stopConnection();
+				clients.add(client);
+				ended.add(client.endSession());
 			}
 
 		}
 
+		try{
+			CompletableFuture.allOf(ended.toArray(new CompletableFuture<?>[0])).get(endDelay, TimeUnit.MILLISECONDS);
+		} catch(TimeoutException | ExecutionException ex){
+			System.out.println("Not every client was told its session ended");
+		} catch(InterruptedException iE){
+			Thread.currentThread().interrupt();
+		}
+
+		for(ClientHandler client : clients){
+			client.stopConnection();
+		}
+
 	}
 	
 }
\ No newline at end of file
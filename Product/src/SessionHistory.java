@@ -0,0 +1,60 @@
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * This is the Server's on-disk history of a student's screens, filled with the frames their Client captured while it was offline.
+ * Frames are filed by username, day, and capture time, so a student's history carries on across sessions and a frame uploaded twice
+ * after a dropped connection is simply written again
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class SessionHistory {
+    private File directory;
+
+    /**
+     * Constructor for the SessionHistory class
+     * 
+     * @param root The directory every student's history is kept under
+     * @param username The name of the student
+     */
+    public SessionHistory(File root, String username){
+        String name = username.replaceAll("[^A-Za-z0-9._-]", "_");
+        directory = new File(root, name.isEmpty() || name.startsWith(".") ? "user" + name : name);
+    }
+
+    /**
+     * Files a frame under the day and time it was captured
+     * 
+     * @param frame The frame, which must be JPEG encoded
+     * @return Returns the file the frame was saved to
+     * @throws IOException Throws an IOException when the frame is not JPEG or cannot be written
+     */
+    public synchronized File add(HistoryFrame frame) throws IOException{
+
+        if(!frame.getFrame().getCodec().equals(JpegCodec.name)){
+            throw new IOException("History frames must be " + JpegCodec.name + ", not " + frame.getFrame().getCodec());
+        }
+
+        Date capturedAt = new Date(frame.getCapturedAt());
+        File day = new File(directory, new SimpleDateFormat("yyyy-MM-dd").format(capturedAt));
+        day.mkdirs();
+        File file = new File(day, new SimpleDateFormat("HH-mm-ss.SSS").format(capturedAt) + "-d" + (frame.getFrame().getDisplay() + 1) + ".jpg");
+        File temporary = new File(day, "." + file.getName());
+        Files.write(temporary.toPath(), frame.getFrame().getData());
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * @return Returns the directory the student's history is kept in
+     */
+    public File getDirectory(){return directory;}
+
+}
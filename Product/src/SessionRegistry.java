@@ -0,0 +1,153 @@
+import java.net.InetAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the class that stores every connected session and is the authoritative client list.
+ * It may be used from any thread; the GUI's list is only a periodically refreshed snapshot of it
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class SessionRegistry {
+    private ConcurrentHashMap<Long, ClientHandler> sessions = new ConcurrentHashMap<Long, ClientHandler>();
+    private ConcurrentHashMap<InetAddress, Set<ClientHandler>> addresses = new ConcurrentHashMap<InetAddress, Set<ClientHandler>>();
+    private ConcurrentHashMap<String, ClientHandler> tokens = new ConcurrentHashMap<String, ClientHandler>();
+    private AtomicInteger size = new AtomicInteger();
+    private AtomicBoolean changed = new AtomicBoolean();
+    private List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+    /**
+     * Adds a session unless the registry is full
+     * 
+     * @param client The ClientHandler of the session
+     * @param maxClients The maximum number of sessions allowed
+     * @return Returns whether the session was added
+     */
+    public boolean tryAdd(ClientHandler client, int maxClients){
+        int current;
+
+        do{
+            current = size.get();
+
+            if(current >= maxClients){
+                return false;
+            }
+
+        } while(!size.compareAndSet(current, current + 1));
+
+        sessions.put(client.getSessionId(), client);
+        tokens.put(client.getSessionToken(), client);
+        addresses.computeIfAbsent(client.getAddress(), a -> ConcurrentHashMap.newKeySet()).add(client);
+        changed.set(true);
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * Removes a session
+     * 
+     * @param client The ClientHandler of the session
+     * @return Returns whether the session was registered
+     */
+    public boolean remove(ClientHandler client){
+
+        if(!sessions.remove(client.getSessionId(), client)){
+            return false;
+        }
+
+        size.decrementAndGet();
+        tokens.remove(client.getSessionToken(), client);
+        addresses.computeIfPresent(client.getAddress(), (a, clients) -> {
+            clients.remove(client);
+            return clients.isEmpty() ? null : clients;
+        });
+        changed.set(true);
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * Gets a session by its id
+     * 
+     * @param sessionId The id of the session
+     * @return Returns the ClientHandler of the session, or null if there is none
+     */
+    public ClientHandler get(long sessionId){
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Gets a session by its resumption token
+     * 
+     * @param token The token issued to the client at handshake
+     * @return Returns the ClientHandler of the session, or null if there is none
+     */
+    public ClientHandler findByToken(String token){
+        return tokens.get(token);
+    }
+
+    /**
+     * Gets every session connected from an address
+     * 
+     * @param address The InetAddress of the client
+     * @return Returns the ClientHandlers connected from the address
+     */
+    public Set<ClientHandler> findByAddress(InetAddress address){
+        Set<ClientHandler> clients = addresses.get(address);
+        return clients == null ? Collections.<ClientHandler>emptySet() : clients;
+    }
+
+    /**
+     * @return Returns the number of sessions
+     */
+    public int size(){return size.get();}
+
+    /**
+     * @return Returns every session, ordered by session id
+     */
+    public List<ClientHandler> snapshot(){
+        List<ClientHandler> snapshot = new ArrayList<ClientHandler>(sessions.values());
+        snapshot.sort((a, b) -> Long.compare(a.getSessionId(), b.getSessionId()));
+        return snapshot;
+    }
+
+    /**
+     * Adds a listener which is run, on the thread that made the change, whenever a session is added or removed.
+     * Unlike pollChanged it does not take the change away from the GUI
+     * 
+     * @param listener The Runnable to be run
+     */
+    public void addListener(Runnable listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * Runs every listener
+     */
+    private void notifyListeners(){
+
+        for(Runnable listener : listeners){
+            listener.run();
+        }
+
+    }
+
+    /**
+     * Checks and clears whether sessions were added or removed since the last call.
+     * Lets the GUI coalesce any number of changes into a single refresh
+     * 
+     * @return Returns whether the sessions changed
+     */
+    public boolean pollChanged(){
+        return changed.getAndSet(false);
+    }
+
+}
@@ -0,0 +1,273 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.text.SimpleDateFormat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This is the class that takes a snapshot of every seat at once.
+ * Every client is asked for one frame in parallel, and each frame is written to its own file and shrunk into its tile of a contact sheet
+ * as soon as it arrives, so at most a couple of full size frames are ever decoded at a time however many seats there are.
+ * Seats whose frame has not arrived by the deadline are marked on the sheet and listed in the report, while frames that arrived in time
+ * are still saved even if they are waiting to be decoded when the deadline passes
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class SnapshotCollector {
+    private List<ClientHandler> seats;
+    private File directory;
+    private long deadline;
+    private int tileWidth;
+    private int tileHeight;
+    private int columns;
+    private BufferedImage sheet;
+    private boolean[] missedSeats;
+    private List<String> missed = new ArrayList<String>();
+
+    private static final int labelHeight = 18;
+    private static final int decodeThreads = 2;
+
+    /**
+     * This is the outcome of a snapshot
+     */
+    public static class Result {
+        private File directory;
+        private int captured;
+        private List<String> missed;
+
+        /**
+         * Constructor for the Result class
+         * 
+         * @param directory The directory the snapshot was written to
+         * @param captured The number of seats captured
+         * @param missed The names of the seats that missed the deadline
+         */
+        public Result(File directory, int captured, List<String> missed){
+            this.directory = directory;
+            this.captured = captured;
+            this.missed = missed;
+        }
+
+        /**
+         * @return Returns the directory the snapshot was written to
+         */
+        public File getDirectory(){return directory;}
+
+        /**
+         * @return Returns the number of seats captured
+         */
+        public int getCaptured(){return captured;}
+
+        /**
+         * @return Returns the names of the seats that missed the deadline
+         */
+        public List<String> getMissed(){return missed;}
+
+    }
+
+    /**
+     * Constructor for the SnapshotCollector class
+     * 
+     * @param seats The sessions to be captured
+     * @param parent The directory a new timestamped directory is created in
+     * @param deadline How long to wait for the seats in milliseconds
+     * @param tileWidth The width of each seat on the contact sheet
+     */
+    public SnapshotCollector(List<ClientHandler> seats, File parent, long deadline, int tileWidth){
+        this.seats = seats;
+        this.directory = new File(parent, new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()));
+        this.deadline = deadline;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileWidth * 5 / 8;
+        this.columns = Math.max(1, (int) Math.ceil(Math.sqrt(seats.size())));
+        this.missedSeats = new boolean[seats.size()];
+    }
+
+    /**
+     * Requests every seat's frame, waits until they have all arrived or the deadline passes, and writes the contact sheet and report.
+     * Blocks, so must not be called on the JavaFX thread
+     * 
+     * @return Returns the outcome of the snapshot
+     * @throws IOException Throws an IOException when the snapshot cannot be written to disk
+     */
+    public Result collect() throws IOException{
+
+        if(!directory.mkdirs()){
+            throw new IOException("Could not create " + directory);
+        }
+
+        int rows = Math.max(1, (seats.size() + columns - 1) / columns);
+        sheet = new BufferedImage(columns * tileWidth, rows * (tileHeight + labelHeight), BufferedImage.TYPE_INT_RGB);
+        ExecutorService decoders = Executors.newFixedThreadPool(decodeThreads);
+        List<CompletableFuture<FrameMessage>> requests = new ArrayList<CompletableFuture<FrameMessage>>();
+        List<CompletableFuture<Void>> placed = new ArrayList<CompletableFuture<Void>>();
+        long end = System.currentTimeMillis() + deadline;
+
+        for(int i = 0; i < seats.size(); i++){
+            int seat = i;
+            requests.add(seats.get(i).requestSnapshot());
+            placed.add(requests.get(i).thenAcceptAsync(frame -> place(seat, frame), decoders));
+        }
+
+        await(requests, Math.max(0, end - System.currentTimeMillis()));
+        List<CompletableFuture<Void>> arrived = new ArrayList<CompletableFuture<Void>>();
+
+        synchronized(this){
+
+            for(int i = 0; i < seats.size(); i++){
+
+                if(requests.get(i).isDone() && !requests.get(i).isCompletedExceptionally()){
+                    arrived.add(placed.get(i));
+                } else{
+                    missedSeats[i] = true;
+                    missed.add(seats.get(i).usernameProperty().get());
+                    label(i, "missed deadline", Color.RED);
+                }
+
+            }
+
+        }
+
+        await(arrived, Long.MAX_VALUE);
+        decoders.shutdownNow();
+        int captured = 0;
+
+        for(CompletableFuture<Void> seat : arrived){
+
+            if(!seat.isCompletedExceptionally()){
+                captured++;
+            }
+
+        }
+
+        ImageIO.write(sheet, "png", new File(directory, "contact-sheet.png"));
+        writeReport(captured);
+        return new Result(directory, captured, new ArrayList<String>(missed));
+    }
+
+    /**
+     * Waits for futures to complete, ignoring how they completed
+     * 
+     * @param futures The futures to wait for
+     * @param timeout The longest time to wait in milliseconds
+     */
+    private static void await(List<? extends CompletableFuture<?>> futures, long timeout){
+
+        try{
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(timeout, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException | ExecutionException ex){
+            // Late and failed seats are found by checking each future
+        } catch(InterruptedException iE){
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    /**
+     * Writes a seat's frame to its own file and draws it into its tile, unless the deadline has already passed
+     * 
+     * @param seat The index of the seat
+     * @param frame The frame the seat sent
+     */
+    private void place(int seat, FrameMessage frame){
+
+        try{
+            String name = String.format("%03d-%s.jpg", seat + 1, seats.get(seat).usernameProperty().get().replaceAll("[^A-Za-z0-9._-]", "_"));
+
+            File file = new File(directory, name);
+
+            try(FileOutputStream output = new FileOutputStream(file)){
+                output.write(frame.getData());
+            }
+
+            FrameIndexer.get().offer(file);
+
+            BufferedImage thumbnail = ImageScaler.fit(FrameCodecs.create(frame.getCodec(), 1).decode(frame.getData()), tileWidth, tileHeight);
+
+            synchronized(this){
+
+                if(missedSeats[seat]){
+                    return;
+                }
+
+                Graphics2D g = sheet.createGraphics();
+                g.drawImage(thumbnail, tileX(seat) + (tileWidth - thumbnail.getWidth()) / 2, tileY(seat) + (tileHeight - thumbnail.getHeight()) / 2, null);
+                g.dispose();
+                label(seat, "", Color.WHITE);
+            }
+
+        } catch(IOException | IllegalArgumentException ex){
+            throw new IllegalStateException("Could not save snapshot of seat " + (seat + 1), ex);
+        }
+
+    }
+
+    /**
+     * Writes the seat's name and a note under its tile. Must be called while synchronized on this collector
+     * 
+     * @param seat The index of the seat
+     * @param note The text after the name, which may be empty
+     * @param color The colour of the text
+     */
+    private void label(int seat, String note, Color color){
+        Graphics2D g = sheet.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(color);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        String text = (seat + 1) + ". " + seats.get(seat).usernameProperty().get() + (note.isEmpty() ? "" : " - " + note);
+        g.drawString(text, tileX(seat) + 4, tileY(seat) + tileHeight + labelHeight - 5);
+        g.dispose();
+    }
+
+    /**
+     * Writes a text report of every seat and whether it made the deadline
+     * 
+     * @param captured The number of seats captured
+     * @throws IOException Throws an IOException when the report cannot be written
+     */
+    private void writeReport(int captured) throws IOException{
+
+        try(PrintWriter report = new PrintWriter(new File(directory, "report.txt"))){
+            report.println("Captured " + captured + " of " + seats.size() + " seats within " + deadline + "ms");
+
+            for(int i = 0; i < seats.size(); i++){
+                report.println((i + 1) + ". " + seats.get(i).usernameProperty().get() + (missedSeats[i] ? " MISSED" : ""));
+            }
+
+        }
+
+    }
+
+    /**
+     * @param seat The index of the seat
+     * @return Returns the left of the seat's tile on the contact sheet
+     */
+    private int tileX(int seat){return (seat % columns) * tileWidth;}
+
+    /**
+     * @param seat The index of the seat
+     * @return Returns the top of the seat's tile on the contact sheet
+     */
+    private int tileY(int seat){return (seat / columns) * (tileHeight + labelHeight);}
+
+}
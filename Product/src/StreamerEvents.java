@@ -0,0 +1,181 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * These are the Java Flight Recorder events of the connection and frame lifecycle.
+ * They cost next to nothing unless a recording enables them, and streamer.jfc enables all of them for a recording kept running
+ * during class, so a pause can be lined up with the garbage collection and lock contention recorded alongside them
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class StreamerEvents {
+
+    /**
+     * Records a BufferAllocation if a recording wants it
+     * 
+     * @param site Where the buffer was allocated
+     * @param size The size of the buffer in bytes
+     */
+    public static void allocated(String site, int size){
+        BufferAllocation event = new BufferAllocation();
+
+        if(event.isEnabled()){
+            event.site = site;
+            event.size = size;
+            event.commit();
+        }
+
+    }
+
+    /**
+     * A session registered with the Server, or resumed on a new connection
+     */
+    @Name("csia.SessionConnect")
+    @Label("Session Connect")
+    @Category({"CSIA", "Session"})
+    @StackTrace(false)
+    public static class SessionConnect extends Event {
+        @Label("Session")
+        public long session;
+
+        @Label("User")
+        public String user;
+
+        @Label("Room")
+        public String room;
+
+        @Label("Address")
+        public String address;
+
+        @Label("Resumed")
+        @Description("Whether an existing session was reattached to a new connection")
+        public boolean resumed;
+    }
+
+    /**
+     * A session's connection broke or the session ended
+     */
+    @Name("csia.SessionDisconnect")
+    @Label("Session Disconnect")
+    @Category({"CSIA", "Session"})
+    @StackTrace(false)
+    public static class SessionDisconnect extends Event {
+        @Label("Session")
+        public long session;
+
+        @Label("User")
+        public String user;
+
+        @Label("Reason")
+        public String reason;
+    }
+
+    /**
+     * A frame was read, its duration being the time from its first chunk to its last
+     */
+    @Name("csia.FrameReceived")
+    @Label("Frame Received")
+    @Category({"CSIA", "Frame"})
+    @StackTrace(false)
+    public static class FrameReceived extends Event {
+        @Label("Session")
+        public long session;
+
+        @Label("Display")
+        public int display;
+
+        @Label("Codec")
+        public String codec;
+
+        @Label("Size")
+        @DataAmount
+        public int size;
+
+        @Label("Transport")
+        public String transport;
+    }
+
+    /**
+     * A frame was decoded and set as the shown image, its duration being the decode
+     */
+    @Name("csia.FrameDecoded")
+    @Label("Frame Decoded")
+    @Category({"CSIA", "Frame"})
+    @StackTrace(false)
+    public static class FrameDecoded extends Event {
+        @Label("Session")
+        public long session;
+
+        @Label("Codec")
+        public String codec;
+
+        @Label("Size")
+        @DataAmount
+        public int size;
+
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    /**
+     * A heartbeat from a client was answered
+     */
+    @Name("csia.HeartbeatReceived")
+    @Label("Heartbeat Received")
+    @Category({"CSIA", "Session"})
+    @StackTrace(false)
+    public static class HeartbeatReceived extends Event {
+        @Label("Address")
+        public String address;
+
+        @Label("Sessions")
+        @Description("The number of sessions from the address whose timers were reset")
+        public int sessions;
+
+        @Label("Since Previous")
+        @Description("The time since the previous heartbeat of the first of those sessions")
+        @Timespan(Timespan.MILLISECONDS)
+        public long sincePrevious;
+    }
+
+    /**
+     * A client looking for the Server was answered
+     */
+    @Name("csia.DiscoveryRequest")
+    @Label("Discovery Request")
+    @Category({"CSIA", "Session"})
+    @StackTrace(false)
+    public static class DiscoveryRequest extends Event {
+        @Label("Address")
+        public String address;
+
+        @Label("Room")
+        public String room;
+    }
+
+    /**
+     * A buffer was allocated for a received message or datagram. Off by default as it is the most frequent event
+     */
+    @Name("csia.BufferAllocation")
+    @Enabled(false)
+    @Label("Buffer Allocation")
+    @Category({"CSIA", "Memory"})
+    @StackTrace(false)
+    public static class BufferAllocation extends Event {
+        @Label("Site")
+        public String site;
+
+        @Label("Size")
+        @DataAmount
+        public int size;
+    }
+
+}
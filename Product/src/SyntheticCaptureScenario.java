@@ -0,0 +1,259 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import java.io.IOException;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the harness which runs the synthetic capture path end to end without a screen or a Server. Frames are drawn by the same
+ * SyntheticScreenSource the Client uses when synthetic is true, scaled, encoded, and framed as Client.sendScreen does, sent over a loopback
+ * session's MuxOutput and over the UDP transport, then parsed and decoded as ClientHandler does. Every decoded frame is compared with the
+ * frame that was drawn: its display, its size within maxCaptureWidth and maxCaptureHeight, and its pixels, exactly for lossless codecs
+ * and within a small average error for JPEG. Prints each case and exits with status 1 if any failed
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class SyntheticCaptureScenario {
+    private int failures = 0;
+
+    private static final int framesPerDisplay = 6;
+    private static final int receiveTimeout = 5000;
+    private static final double jpegTolerance = 12;
+    private static final Rectangle[] displays = {new Rectangle(1920, 1080), new Rectangle(2560, 1440)};
+
+    /**
+     * Runs every codec over both transports
+     * 
+     * @param args Settings as --key=value, such as --maxCaptureWidth=1920
+     * @throws Exception Throws an Exception when a loopback socket cannot be opened
+     */
+    public static void main(String[] args) throws Exception{
+        Config.load(args);
+        SyntheticCaptureScenario scenario = new SyntheticCaptureScenario();
+
+        for(String codec : FrameCodecs.supported){
+            scenario.run(codec, "tcp");
+            scenario.run(codec, "udp");
+        }
+
+        System.out.println(scenario.failures == 0 ? "All cases passed" : scenario.failures + " checks failed");
+        System.exit(scenario.failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Captures frames of every display alternately, sends them over a transport, and checks what arrives
+     * 
+     * @param codecName The name of the codec
+     * @param transport The transport, tcp or udp
+     * @throws Exception Throws an Exception when a loopback socket cannot be opened
+     */
+    private void run(String codecName, String transport) throws Exception{
+        String name = codecName + " over " + transport;
+        SyntheticScreenSource source = new SyntheticScreenSource(displays);
+        LinkedBlockingQueue<byte[]> received = new LinkedBlockingQueue<byte[]>();
+        List<BufferedImage> expected = new ArrayList<BufferedImage>();
+        Map<Integer, FrameCodec> encoders = new HashMap<Integer, FrameCodec>();
+        int sent = 0;
+
+        try(Loopback loopback = new Loopback(transport, received)){
+
+            for(int frame = 0; frame < framesPerDisplay; frame++){
+
+                for(int display = 0; display < source.getDisplayCount(); display++){
+                    BufferedImage capture = ImageScaler.fit(source.capture(display), Config.maxCaptureWidth.get(), Config.maxCaptureHeight.get());
+                    FrameCodec encoder = encoders.computeIfAbsent(display, d -> FrameCodecs.create(codecName, Config.compressionQuality.get()));
+                    FrameTrace trace = new FrameTrace(sent, FrameTrace.now(), FrameTrace.now(), sent - 1, 0, 0);
+                    loopback.send(new FrameMessage(display, encoder.getName(), encoder.encode(capture), trace).toBytes());
+                    expected.add(capture);
+                    sent++;
+                }
+
+            }
+
+            Map<Integer, FrameCodec> decoders = new HashMap<Integer, FrameCodec>();
+            List<Double> errors = new ArrayList<Double>();
+            int delivered = 0;
+            Boolean matched = true;
+            Boolean fits = true;
+            Boolean ordered = true;
+
+            for(int i = 0; i < sent; i++){
+                byte[] message = received.poll(receiveTimeout, TimeUnit.MILLISECONDS);
+
+                if(message == null){
+                    break;
+                }
+
+                delivered++;
+                FrameMessage frame = FrameMessage.parse(message);
+                BufferedImage drawn = expected.get(i);
+                BufferedImage decoded = decoders.computeIfAbsent(frame.getDisplay(), d -> FrameCodecs.create(codecName, 1)).decode(frame.getData());
+                ordered &= frame.getTrace() != null && frame.getTrace().getSequence() == i && frame.getDisplay() == i % displays.length;
+                fits &= decoded.getWidth() <= Config.maxCaptureWidth.get() && decoded.getHeight() <= Config.maxCaptureHeight.get()
+                    && Math.abs((double) decoded.getWidth() / decoded.getHeight() - (double) displays[frame.getDisplay()].width / displays[frame.getDisplay()].height) < 0.01;
+
+                if(decoded.getWidth() != drawn.getWidth() || decoded.getHeight() != drawn.getHeight()){
+                    matched = false;
+                    continue;
+                }
+
+                double error = meanError(drawn, decoded);
+                errors.add(error);
+                matched &= codecName.equals(JpegCodec.name) ? error <= jpegTolerance : error == 0;
+            }
+
+            check(name + ": " + delivered + " of " + sent + " frames arrived", delivered == sent);
+            check(name + ": frames arrived in order with their display and trace", ordered);
+            check(name + ": every frame fits " + Config.maxCaptureWidth.get() + "x" + Config.maxCaptureHeight.get() + " with its display's aspect ratio", fits);
+            check(name + ": pixels match the drawn frames, worst average error " + String.format("%.2f", errors.isEmpty() ? 0 : Collections.max(errors)), matched);
+        }
+
+    }
+
+    /**
+     * @param expected The frame that was drawn
+     * @param actual The frame that was decoded, of the same size
+     * @return Returns the average difference of each colour channel, from 0 to 255
+     */
+    private static double meanError(BufferedImage expected, BufferedImage actual){
+        int[] a = FramePixels.read(expected);
+        int[] b = FramePixels.read(actual);
+        long total = 0;
+
+        for(int i = 0; i < a.length; i++){
+            total += Math.abs(((a[i] >> 16) & 0xFF) - ((b[i] >> 16) & 0xFF)) + Math.abs(((a[i] >> 8) & 0xFF) - ((b[i] >> 8) & 0xFF))
+                + Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+        }
+
+        return (double) total / a.length / 3;
+    }
+
+    /**
+     * Prints the outcome of a check and counts it if it failed
+     * 
+     * @param name What was checked
+     * @param passed Whether the check passed
+     */
+    private void check(String name, Boolean passed){
+        System.out.println((passed ? "PASS " : "FAIL ") + name);
+
+        if(!passed){
+            failures++;
+        }
+
+    }
+
+    /**
+     * This is a loopback connection carrying frames the way a session does over one transport
+     */
+    private static class Loopback implements AutoCloseable {
+        private Socket client;
+        private Socket server;
+        private MuxOutput output;
+        private DatagramSocket udpSocket = null;
+        private DatagramSocket frameSocket = null;
+        private UdpFrameSender sender = null;
+
+        /**
+         * Constructor for the Loopback class
+         * 
+         * @param transport The transport, tcp or udp
+         * @param received The queue every message that arrives is added to
+         * @throws IOException Throws an IOException when a loopback socket cannot be opened
+         */
+        public Loopback(String transport, LinkedBlockingQueue<byte[]> received) throws IOException{
+
+            try(ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())){
+                client = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+                server = serverSocket.accept();
+            }
+
+            output = new MuxOutput(client.getOutputStream(), Config.chunkSize.get());
+            MuxInput input = new MuxInput(server.getInputStream(), Config.maxMessageSize.get(), MemoryGovernor.get(), Config.memoryWait.get());
+            Thread readThread = new Thread(() -> {
+
+                try{
+
+                    while(true){
+                        MuxInput.Message message = input.read();
+                        received.add(message.getData());
+                        message.release();
+                    }
+
+                } catch(IOException ioE){
+                    // The scenario closed the connection
+                }
+
+            });
+            readThread.setDaemon(true);
+            readThread.start();
+
+            if(transport.equals("udp")){
+                frameSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+                frameSocket.setReceiveBufferSize(4 * 1024 * 1024);
+                new UdpFrameReceiver(frameSocket, InetAddress.getLoopbackAddress(), LossModel.none, received::add).start();
+                udpSocket = new DatagramSocket();
+                sender = new UdpFrameSender(udpSocket, InetAddress.getLoopbackAddress(), frameSocket.getLocalPort(), Config.udpPayloadSize.get(),
+                    Config.udpGroupSize.get(), LossModel.none);
+            }
+
+        }
+
+        /**
+         * Sends a FRAME channel message over the transport
+         * 
+         * @param message The message
+         * @throws IOException Throws an IOException when the message cannot be sent
+         */
+        public void send(byte[] message) throws IOException{
+
+            if(sender == null){
+                output.send(MuxChannel.FRAME, message);
+            } else{
+                sender.send(message);
+
+                // Paces the datagrams so a loopback receive buffer never overflows
+                try{
+                    Thread.sleep(20);
+                } catch(InterruptedException iE){
+                    throw new IOException("Interrupted while sending");
+                }
+
+            }
+
+        }
+
+        /**
+         * Closes every socket
+         * 
+         * @throws IOException Throws an IOException when a Socket cannot be closed
+         */
+        @Override
+        public void close() throws IOException{
+            output.close();
+            client.close();
+            server.close();
+
+            if(udpSocket != null){
+                udpSocket.close();
+                frameSocket.close();
+            }
+
+        }
+
+    }
+
+}
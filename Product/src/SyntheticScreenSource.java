@@ -0,0 +1,92 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * This is a ScreenSource which draws artificial desktop-like frames instead of reading the screen.
+ * Used to run the Client headless and to feed benchmarks with repeatable frames
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class SyntheticScreenSource implements ScreenSource {
+    private Rectangle[] bounds;
+    private int[] frameCounts;
+
+    private static final int lineHeight = 18;
+
+    /**
+     * Constructor for the SyntheticScreenSource class
+     * 
+     * @param sizes The size of every display, laid out side by side
+     */
+    public SyntheticScreenSource(Rectangle... sizes){
+        bounds = new Rectangle[sizes.length];
+        frameCounts = new int[sizes.length];
+        int x = 0;
+
+        for(int i = 0; i < sizes.length; i++){
+            bounds[i] = new Rectangle(x, 0, sizes[i].width, sizes[i].height);
+            x += sizes[i].width;
+        }
+
+    }
+
+    /**
+     * @return Returns the number of simulated displays
+     */
+    @Override
+    public int getDisplayCount(){return bounds.length;}
+
+    /**
+     * Gets the bounds of a simulated display
+     * 
+     * @param display The index of the display
+     * @return Returns the bounds of the display
+     */
+    @Override
+    public Rectangle getDisplayBounds(int display){return new Rectangle(bounds[display]);}
+
+    /**
+     * Draws the next frame of a simulated display: a title bar, a side panel, and lines of text that scroll by one line per frame
+     * 
+     * @param display The index of the display
+     * @return Returns the drawn frame
+     */
+    @Override
+    public synchronized BufferedImage capture(int display){
+        return render(bounds[display].width, bounds[display].height, frameCounts[display]++);
+    }
+
+    /**
+     * Draws a single desktop-like frame
+     * 
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param frame The frame number, which decides how far the text has scrolled
+     * @return Returns the drawn frame
+     */
+    public static BufferedImage render(int width, int height, int frame){
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0xF3F3F3));
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(0x2B579A));
+        g.fillRect(0, 0, width, 32);
+        g.setColor(new Color(0xE1E1E1));
+        g.fillRect(0, 32, width / 5, height - 32);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+        g.setColor(Color.BLACK);
+
+        for(int y = 32 + lineHeight; y < height; y += lineHeight){
+            int line = (y / lineHeight) + frame;
+            g.drawString("    " + line + ": public void method" + (line % 97) + "(int value){ return value * " + (line % 13) + "; }", width / 5 + 8, y);
+        }
+
+        g.dispose();
+        return image;
+    }
+
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+
+/**
+ * This is how much a client has slowed its capture to stay within its CPU budget, sent as a command on the CONTROL channel whenever it changes
+ * so that the teacher can see why a seat's frame rate dropped
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class Throttle {
+    private int step;
+    private int intervalPercent;
+    private int scalePercent;
+    private String reason;
+
+    /**
+     * This is the Throttle of a client that is not slowed down
+     */
+    public static final Throttle none = new Throttle(0, 100, 100, "");
+
+    /**
+     * Constructor for the Throttle class
+     * 
+     * @param step How many steps the client has slowed down by, 0 for none
+     * @param intervalPercent The capture interval as a percentage of captureInterval
+     * @param scalePercent The most capture width and height as a percentage of maxCaptureWidth and maxCaptureHeight
+     * @param reason Why the client slowed down: "cpu", "system", "battery", or "" when it has not
+     */
+    public Throttle(int step, int intervalPercent, int scalePercent, String reason){
+        this.step = step;
+        this.intervalPercent = intervalPercent;
+        this.scalePercent = scalePercent;
+        this.reason = reason;
+    }
+
+    /**
+     * Parses a Throttle from the text following the command string
+     * 
+     * @param text The comma separated step, interval percentage, scale percentage, and reason
+     * @return Returns the parsed Throttle
+     * @throws IOException Throws an IOException when the text is malformed
+     */
+    public static Throttle parse(String text) throws IOException{
+        String[] fields = text.split(",", 4);
+
+        if(fields.length != 4){
+            throw new IOException("Malformed throttle " + text);
+        }
+
+        try{
+            return new Throttle(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), fields[3]);
+        } catch(NumberFormatException nfE){
+            throw new IOException("Malformed throttle " + text);
+        }
+
+    }
+
+    /**
+     * @return Returns the text sent after the command string
+     */
+    public String format(){
+        return step + "," + intervalPercent + "," + scalePercent + "," + reason;
+    }
+
+    /**
+     * @return Returns a short description for the teacher, such as "Slowed 3x, 75% size (CPU)", or "" when the client is not slowed down
+     */
+    public String describe(){
+
+        if(step == 0){
+            return "";
+        }
+
+        String description = "Slowed " + (intervalPercent % 100 == 0 ? String.valueOf(intervalPercent / 100) : String.valueOf(intervalPercent / 100.0)) + "x";
+
+        if(scalePercent < 100){
+            description += ", " + scalePercent + "% size";
+        }
+
+        return reason.isEmpty() ? description : description + " (" + (reason.equals("cpu") ? "CPU" : reason) + ")";
+    }
+
+    /**
+     * @param interval The capture interval in milliseconds without throttling
+     * @return Returns the throttled capture interval
+     */
+    public int applyInterval(int interval){
+        return (int) ((long) interval * intervalPercent / 100);
+    }
+
+    /**
+     * @param size The most capture width or height without throttling
+     * @return Returns the throttled most capture width or height
+     */
+    public int applyScale(int size){
+        return Math.max(1, size * scalePercent / 100);
+    }
+
+    /**
+     * @return Returns how many steps the client has slowed down by, 0 for none
+     */
+    public int getStep(){return step;}
+
+    /**
+     * @return Returns the capture interval as a percentage of captureInterval
+     */
+    public int getIntervalPercent(){return intervalPercent;}
+
+    /**
+     * @return Returns the most capture width and height as a percentage of maxCaptureWidth and maxCaptureHeight
+     */
+    public int getScalePercent(){return scalePercent;}
+
+    /**
+     * @return Returns why the client slowed down: "cpu", "system", "battery", or "" when it has not
+     */
+    public String getReason(){return reason;}
+
+}
@@ -0,0 +1,81 @@
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the benchmark which streams frames over the UDP transport on loopback with injected packet loss
+ * and reports how many frames arrive intact, how many were saved by parity, and how many were dropped as stale
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class UdpBenchmark {
+    private static final int frameCount = 300;
+    private static final int minFrameSize = 20 * 1024;
+    private static final int maxFrameSize = 200 * 1024;
+    private static final int frameDelay = 10;
+    private static final double[] lossRates = {0, 0.001, 0.01, 0.05};
+
+    /**
+     * Runs the benchmark at several loss rates
+     * 
+     * @param args Unused
+     * @throws Exception Throws an Exception when the loopback sockets fail
+     */
+    public static void main(String[] args) throws Exception{
+        System.out.printf("%-6s %10s %10s %10s %10s%n", "loss", "sent", "delivered", "corrupt", "recovered");
+
+        for(double lossRate : lossRates){
+            measure(lossRate);
+        }
+
+    }
+
+    /**
+     * Streams frames at one loss rate
+     * 
+     * @param lossRate The probability of a datagram being lost
+     * @throws Exception Throws an Exception when the loopback sockets fail
+     */
+    private static void measure(double lossRate) throws Exception{
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        DatagramSocket receiveSocket = new DatagramSocket(0, loopback);
+        receiveSocket.setReceiveBufferSize(4 * 1024 * 1024);
+        DatagramSocket sendSocket = new DatagramSocket(0, loopback);
+        Random random = new Random(7);
+        byte[][] frames = new byte[frameCount][];
+        AtomicLong corrupt = new AtomicLong();
+
+        for(int i = 0; i < frameCount; i++){
+            frames[i] = new byte[minFrameSize + random.nextInt(maxFrameSize - minFrameSize)];
+            random.nextBytes(frames[i]);
+            frames[i][0] = (byte) i;
+            frames[i][1] = (byte) (i >> 8);
+        }
+
+        UdpFrameReceiver receiver = new UdpFrameReceiver(receiveSocket, loopback, LossModel.none, frame -> {
+            int index = (frame[0] & 0xFF) | ((frame[1] & 0xFF) << 8);
+
+            if(index >= frameCount || !Arrays.equals(frame, frames[index])){
+                corrupt.incrementAndGet();
+            }
+
+        });
+        receiver.start();
+        UdpFrameSender sender = new UdpFrameSender(sendSocket, loopback, receiveSocket.getLocalPort(), Config.udpPayloadSize.get(), Config.udpGroupSize.get(), new LossModel(lossRate, 11));
+
+        for(byte[] frame : frames){
+            sender.send(frame);
+            Thread.sleep(frameDelay);
+        }
+
+        Thread.sleep(500);
+        receiveSocket.close();
+        sendSocket.close();
+        System.out.printf("%-6s %10d %10d %10d %10d%n", lossRate * 100 + "%", frameCount, receiver.getDelivered(), corrupt.get(), receiver.getRecovered());
+    }
+
+}
@@ -0,0 +1,297 @@
+import java.io.IOException;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * This is the class that receives frames sent by a UdpFrameSender.
+ * Lost chunks are rebuilt from parity where possible. As soon as a frame is complete it is delivered and every older frame that is still
+ * incomplete is dropped, so a lost datagram never holds up newer frames
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class UdpFrameReceiver extends Thread {
+    private DatagramSocket socket;
+    private InetAddress source;
+    private LossModel lossModel;
+    private Consumer<byte[]> listener;
+    private TreeMap<Integer, PendingFrame> pending = new TreeMap<Integer, PendingFrame>();
+    private int lastDelivered = -1;
+    private volatile long delivered = 0;
+    private volatile long recovered = 0;
+    private volatile long dropped = 0;
+
+    private static final int maxPendingFrames = 4;
+
+    /**
+     * This is a frame whose chunks are still arriving
+     */
+    private static class PendingFrame {
+        private int length;
+        private int payloadSize;
+        private int groupSize;
+        private byte[][] chunks;
+        private byte[][] parity;
+        private int received = 0;
+
+        /**
+         * Constructor for the PendingFrame class
+         * 
+         * @param length The length of the frame
+         * @param chunkCount The number of data chunks in the frame
+         * @param payloadSize The size of every chunk except the last
+         * @param groupSize The number of chunks covered by each parity chunk
+         */
+        public PendingFrame(int length, int chunkCount, int payloadSize, int groupSize){
+            this.length = length;
+            this.payloadSize = payloadSize;
+            this.groupSize = groupSize;
+            chunks = new byte[chunkCount][];
+            parity = new byte[(chunkCount + groupSize - 1) / groupSize][];
+        }
+
+        /**
+         * Rebuilds every group missing exactly one chunk from its parity
+         * 
+         * @return Returns the number of chunks rebuilt
+         */
+        public int recover(){
+            int rebuilt = 0;
+
+            for(int group = 0; group < parity.length; group++){
+
+                if(parity[group] == null){
+                    continue;
+                }
+
+                int missing = -1;
+                int end = Math.min(chunks.length, (group + 1) * groupSize);
+
+                for(int i = group * groupSize; i < end; i++){
+
+                    if(chunks[i] == null){
+
+                        if(missing != -1){
+                            missing = -2;
+                            break;
+                        }
+
+                        missing = i;
+                    }
+
+                }
+
+                if(missing < 0){
+                    continue;
+                }
+
+                byte[] chunk = parity[group].clone();
+
+                for(int i = group * groupSize; i < end; i++){
+
+                    if(i != missing){
+
+                        for(int j = 0; j < chunks[i].length; j++){
+                            chunk[j] ^= chunks[i][j];
+                        }
+
+                    }
+
+                }
+
+                int chunkLength = Math.min(payloadSize, length - missing * payloadSize);
+                chunks[missing] = chunkLength == chunk.length ? chunk : Arrays.copyOf(chunk, chunkLength);
+                received++;
+                rebuilt++;
+            }
+
+            return rebuilt;
+        }
+
+        /**
+         * @return Returns the reassembled frame
+         */
+        public byte[] assemble(){
+            byte[] frame = new byte[length];
+
+            for(int i = 0; i < chunks.length; i++){
+                System.arraycopy(chunks[i], 0, frame, i * payloadSize, chunks[i].length);
+            }
+
+            return frame;
+        }
+
+    }
+
+    /**
+     * Constructor for the UdpFrameReceiver class
+     * 
+     * @param socket The DatagramSocket frames arrive on
+     * @param source The InetAddress frames are accepted from, or null to accept any
+     * @param lossModel Decides which received datagrams are discarded, for testing
+     * @param listener Called with every completed frame
+     */
+    public UdpFrameReceiver(DatagramSocket socket, InetAddress source, LossModel lossModel, Consumer<byte[]> listener){
+        this.socket = socket;
+        this.source = source;
+        this.lossModel = lossModel;
+        this.listener = listener;
+        setDaemon(true);
+    }
+
+    /**
+     * Constantly receives datagrams until the socket is closed. A datagram or frame that fails, even with a RuntimeException from the listener,
+     * is logged and skipped
+     */
+    @Override
+    public void run(){
+        byte[] recvBuf = new byte[65536];
+        DatagramPacket packet = new DatagramPacket(recvBuf, recvBuf.length);
+
+        while(!socket.isClosed()){
+
+            try{
+                packet.setLength(recvBuf.length);
+                socket.receive(packet);
+
+                if((source == null || source.equals(packet.getAddress())) && !lossModel.drop()){
+                    receiveChunk(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+                }
+
+            } catch(IOException ioE){
+
+                if(!socket.isClosed()){
+                    System.out.println("Failed to receive frame datagram");
+                }
+
+            } catch(RuntimeException rE){
+                // A malformed frame must not stop every later frame from arriving
+                System.out.println("Dropped frame datagram: " + rE);
+            }
+
+        }
+
+    }
+
+    /**
+     * Stores a received chunk and delivers its frame if it is now complete
+     * 
+     * @param packet The contents of the datagram
+     */
+    private void receiveChunk(ByteBuffer packet){
+
+        if(packet.remaining() < UdpFrameSender.headerSize){
+            return;
+        }
+
+        int sequence = packet.getInt();
+        int length = packet.getInt();
+        int index = packet.getShort() & 0xFFFF;
+        int chunkCount = packet.getShort() & 0xFFFF;
+        int groupSize = packet.get() & 0xFF;
+        int flags = packet.get();
+        int payloadSize = packet.getShort() & 0xFFFF;
+
+        if(sequence <= lastDelivered || chunkCount == 0 || groupSize == 0 || payloadSize == 0 || length < 0 || (long) payloadSize * chunkCount < length || length > Config.maxMessageSize.get()){
+            return;
+        }
+
+        PendingFrame frame = pending.get(sequence);
+
+        if(frame == null){
+            frame = new PendingFrame(length, chunkCount, payloadSize, groupSize);
+            pending.put(sequence, frame);
+
+            while(pending.size() > maxPendingFrames){
+                pending.pollFirstEntry();
+                dropped++;
+            }
+
+        }
+
+        byte[] payload = new byte[packet.remaining()];
+        packet.get(payload);
+
+        if((flags & UdpFrameSender.parityFlag) != 0){
+
+            if(index < frame.parity.length && payload.length == frame.payloadSize){
+                frame.parity[index] = payload;
+            }
+
+        } else if(index < frame.chunks.length && frame.chunks[index] == null && payload.length == Math.min(frame.payloadSize, length - index * frame.payloadSize)){
+            frame.chunks[index] = payload;
+            frame.received++;
+        }
+
+        if(frame.received < frame.chunks.length){
+            recovered += frame.recover();
+        }
+
+        if(frame.received == frame.chunks.length){
+            deliver(sequence, frame);
+        }
+
+    }
+
+    /**
+     * Delivers a completed frame and drops every older incomplete frame.
+     * The frame is dropped instead when the MemoryGovernor has no room for its reassembled copy
+     * 
+     * @param sequence The sequence number of the frame
+     * @param frame The completed frame
+     */
+    private void deliver(int sequence, PendingFrame frame){
+        lastDelivered = sequence;
+        Iterator<Map.Entry<Integer, PendingFrame>> older = pending.headMap(sequence, true).entrySet().iterator();
+
+        while(older.hasNext()){
+
+            if(older.next().getKey() != sequence){
+                dropped++;
+            }
+
+            older.remove();
+        }
+
+        MemoryGovernor governor = MemoryGovernor.get();
+
+        if(!governor.tryReserve(frame.length)){
+            dropped++;
+            return;
+        }
+
+        try{
+            delivered++;
+            listener.accept(frame.assemble());
+        } finally{
+            governor.release(frame.length);
+        }
+
+    }
+
+    /**
+     * @return Returns the number of frames delivered
+     */
+    public long getDelivered(){return delivered;}
+
+    /**
+     * @return Returns the number of chunks rebuilt from parity
+     */
+    public long getRecovered(){return recovered;}
+
+    /**
+     * @return Returns the number of incomplete frames dropped in favour of newer ones
+     */
+    public long getDropped(){return dropped;}
+
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This is the class that sends frames as datagrams.
+ * Each frame is split into chunks that fit in one datagram, and every group of chunks is followed by a parity chunk holding the XOR of the group,
+ * which lets the receiver rebuild any single lost chunk of a group without waiting for a retransmission.
+ * Each datagram starts with the frame's sequence number and length, the chunk (or group) index, the number of chunks, the group size,
+ * the flags, and the chunk size
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class UdpFrameSender {
+    private DatagramSocket socket;
+    private InetAddress address;
+    private int port;
+    private int payloadSize;
+    private int groupSize;
+    private LossModel lossModel;
+    private int frameSequence = 0;
+
+    public static final int headerSize = 16;
+    public static final int parityFlag = 1;
+
+    /**
+     * Constructor for the UdpFrameSender class
+     * 
+     * @param socket The DatagramSocket frames are sent from
+     * @param address The InetAddress of the receiver
+     * @param port The port of the receiver
+     * @param payloadSize The number of frame bytes carried by each datagram
+     * @param groupSize The number of chunks covered by each parity chunk
+     * @param lossModel Decides which datagrams are dropped instead of sent
+     */
+    public UdpFrameSender(DatagramSocket socket, InetAddress address, int port, int payloadSize, int groupSize, LossModel lossModel){
+        this.socket = socket;
+        this.address = address;
+        this.port = port;
+        this.payloadSize = payloadSize;
+        this.groupSize = groupSize;
+        this.lossModel = lossModel;
+    }
+
+    /**
+     * Sends a frame
+     * 
+     * @param frame The bytes of the frame
+     * @throws IOException Throws an IOException when a datagram cannot be sent
+     */
+    public synchronized void send(byte[] frame) throws IOException{
+        int sequence = frameSequence++;
+        int chunks = Math.max(1, (frame.length + payloadSize - 1) / payloadSize);
+        byte[] parity = new byte[payloadSize];
+
+        for(int i = 0; i < chunks; i++){
+            int offset = i * payloadSize;
+            int length = Math.min(payloadSize, frame.length - offset);
+            sendChunk(sequence, frame.length, i, chunks, 0, frame, offset, length);
+
+            for(int j = 0; j < length; j++){
+                parity[j] ^= frame[offset + j];
+            }
+
+            if(i % groupSize == groupSize - 1 || i == chunks - 1){
+                sendChunk(sequence, frame.length, i / groupSize, chunks, parityFlag, parity, 0, payloadSize);
+                parity = new byte[payloadSize];
+            }
+
+        }
+
+    }
+
+    /**
+     * Sends a single chunk of a frame
+     * 
+     * @param sequence The sequence number of the frame
+     * @param frameLength The length of the whole frame
+     * @param index The index of the chunk, or of the group for a parity chunk
+     * @param chunks The number of data chunks in the frame
+     * @param flags The flags of the chunk
+     * @param data The array holding the chunk
+     * @param offset The offset of the chunk in the array
+     * @param length The length of the chunk
+     * @throws IOException Throws an IOException when the datagram cannot be sent
+     */
+    private void sendChunk(int sequence, int frameLength, int index, int chunks, int flags, byte[] data, int offset, int length) throws IOException{
+
+        if(lossModel.drop()){
+            return;
+        }
+
+        ByteBuffer packet = ByteBuffer.allocate(headerSize + length);
+        packet.putInt(sequence);
+        packet.putInt(frameLength);
+        packet.putShort((short) index);
+        packet.putShort((short) chunks);
+        packet.put((byte) groupSize);
+        packet.put((byte) flags);
+        packet.putShort((short) payloadSize);
+        packet.put(data, offset, length);
+        socket.send(new DatagramPacket(packet.array(), packet.capacity(), address, port));
+    }
+
+    /**
+     * @param address The InetAddress of a server
+     * @param port The port a session receives its frames on
+     * @return Returns whether frames are sent to that server and port, so a resumed session can keep this sender and its frame sequence
+     */
+    public Boolean sendsTo(InetAddress address, int port){
+        return this.address.equals(address) && this.port == port;
+    }
+
+}
@@ -0,0 +1,105 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * These are the PixelKernels written with the incubating Vector API, which the JIT compiles to the widest SIMD instructions the CPU has.
+ * Results match ScalarPixelKernels exactly. It is kept out of src so the default build needs no incubator module and stays warning free;
+ * to use it, compile it into the directory src was compiled to, here out, with
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/VectorPixelKernels.java and start the JVM with --add-modules jdk.incubator.vector
+ * 
+ * @author Jonathan Zhao
+ * @version 1.0
+ */
+public class VectorPixelKernels extends ScalarPixelKernels {
+    private static final VectorSpecies<Integer> ints = IntVector.SPECIES_PREFERRED;
+    private static final int lanes = ints.length();
+    private static final int[] evenIndexes = new int[lanes];
+    private static final int[] oddIndexes = new int[lanes];
+
+    static{
+
+        for(int i = 0; i < lanes; i++){
+            evenIndexes[i] = i * 2;
+            oddIndexes[i] = i * 2 + 1;
+        }
+
+    }
+
+    /**
+     * @return Returns the name of the implementation
+     */
+    @Override
+    public String getName(){return "vector" + ints.vectorBitSize();}
+
+    /**
+     * Counts the pixels that differ between two frames a vector at a time
+     * 
+     * @param before The previous frame
+     * @param after The new frame
+     * @param offset The index of the first pixel compared
+     * @param length The number of pixels compared
+     * @return Returns the number of pixels that differ
+     */
+    @Override
+    public int countChanged(int[] before, int[] after, int offset, int length){
+        int count = 0;
+        int i = offset;
+        int end = offset + ints.loopBound(length);
+
+        for(; i < end; i += lanes){
+            VectorMask<Integer> changed = IntVector.fromArray(ints, before, i).compare(VectorOperators.NE, IntVector.fromArray(ints, after, i));
+            count += changed.trueCount();
+        }
+
+        return count + super.countChanged(before, after, i, offset + length - i);
+    }
+
+    /**
+     * Halves a frame in both directions, gathering the even and odd pixels of each row pair into separate vectors
+     * 
+     * @param source The frame to be halved
+     * @param width The width of the frame
+     * @param height The height of the frame
+     * @param target The result, at least (width / 2) * (height / 2) long
+     */
+    @Override
+    public void downscale2x(int[] source, int width, int height, int[] target){
+        int targetWidth = width / 2;
+        int end = ints.loopBound(targetWidth);
+
+        for(int ty = 0; ty < height / 2; ty++){
+            int top = ty * 2 * width;
+            int bottom = top + width;
+            int tx = 0;
+
+            for(; tx < end; tx += lanes){
+                IntVector a = IntVector.fromArray(ints, source, top + tx * 2, evenIndexes, 0);
+                IntVector b = IntVector.fromArray(ints, source, top + tx * 2, oddIndexes, 0);
+                IntVector c = IntVector.fromArray(ints, source, bottom + tx * 2, evenIndexes, 0);
+                IntVector d = IntVector.fromArray(ints, source, bottom + tx * 2, oddIndexes, 0);
+                IntVector low = a.and(lowChannels).add(b.and(lowChannels)).add(c.and(lowChannels)).add(d.and(lowChannels));
+                IntVector high = highChannels(a).add(highChannels(b)).add(highChannels(c)).add(highChannels(d));
+                low = low.add(blockRounding).lanewise(VectorOperators.LSHR, 2).and(lowChannels);
+                high = high.add(blockRounding).lanewise(VectorOperators.LSHR, 2).and(lowChannels).lanewise(VectorOperators.LSHL, 8);
+                low.or(high).intoArray(target, ty * targetWidth + tx);
+            }
+
+            for(; tx < targetWidth; tx++){
+                target[ty * targetWidth + tx] = average(source[top + tx * 2], source[top + tx * 2 + 1], source[bottom + tx * 2], source[bottom + tx * 2 + 1]);
+            }
+
+        }
+
+    }
+
+    /**
+     * @param pixels The pixels
+     * @return Returns the alpha and green channels of each pixel shifted down into the positions of red and blue
+     */
+    private static IntVector highChannels(IntVector pixels){
+        return pixels.lanewise(VectorOperators.LSHR, 8).and(lowChannels);
+    }
+
+}